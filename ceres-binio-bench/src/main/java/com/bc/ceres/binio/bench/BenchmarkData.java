@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+/**
+ * Synthetic data used by the benchmarks. All data is generated from a fixed seed,
+ * so that subsequent runs operate on identical files.
+ */
+public final class BenchmarkData {
+
+    public static final long SEED = 20140313L;
+
+    /**
+     * The number of elements of the simple sequences.
+     */
+    public static final int VALUE_COUNT = 4 * 1024 * 1024;
+
+    /**
+     * The number of records of the compound sequences.
+     */
+    public static final int RECORD_COUNT = 64 * 1024;
+
+    /**
+     * The number of bytes of the variable-size part of a {@link #VAR_RECORD_TYPE} record.
+     */
+    public static final int EXTRA_COUNT = 5;
+
+    public static final CompoundType VALUES_TYPE =
+            COMPOUND("Values",
+                     MEMBER("Floats", SEQUENCE(FLOAT, VALUE_COUNT)),
+                     MEMBER("Ints", SEQUENCE(INT, VALUE_COUNT)));
+
+    public static final CompoundType FIX_RECORD_TYPE =
+            COMPOUND("FixRecord",
+                     MEMBER("id", INT),
+                     MEMBER("lat", FLOAT),
+                     MEMBER("lon", FLOAT),
+                     MEMBER("value", DOUBLE),
+                     MEMBER("flags", USHORT),
+                     MEMBER("spare", SEQUENCE(BYTE, 1 + EXTRA_COUNT)));
+
+    public static final CompoundType VAR_RECORD_TYPE =
+            COMPOUND("VarRecord",
+                     MEMBER("id", INT),
+                     MEMBER("lat", FLOAT),
+                     MEMBER("lon", FLOAT),
+                     MEMBER("value", DOUBLE),
+                     MEMBER("flags", USHORT),
+                     MEMBER("count", UBYTE),
+                     MEMBER("extra", VAR_SEQUENCE(BYTE, "count")));
+
+    /**
+     * Both record types have the same layout in the file.
+     */
+    public static final int RECORD_SIZE = FIX_RECORD_TYPE.getSize();
+
+    public static final CompoundType RECORDS_TYPE =
+            COMPOUND("Records",
+                     MEMBER("FixRecords", SEQUENCE(FIX_RECORD_TYPE, RECORD_COUNT)),
+                     MEMBER("VarRecords", SEQUENCE(VAR_RECORD_TYPE, RECORD_COUNT)));
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Creates a file in the format given by {@link #VALUES_TYPE}.
+     *
+     * @param byteOrder The byte order.
+     * @return The file, which is deleted on exit.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static File createValuesFile(ByteOrder byteOrder) throws IOException {
+        final Random random = new Random(SEED);
+        final ByteBuffer buffer = ByteBuffer.allocate(VALUES_TYPE.getSize()).order(byteOrder);
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            buffer.putFloat(random.nextFloat());
+        }
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            buffer.putInt(random.nextInt());
+        }
+        return createFile("values", buffer.array());
+    }
+
+    /**
+     * Creates a file in the format given by {@link #RECORDS_TYPE}.
+     *
+     * @param byteOrder The byte order.
+     * @return The file, which is deleted on exit.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static File createRecordsFile(ByteOrder byteOrder) throws IOException {
+        final Random random = new Random(SEED);
+        final ByteBuffer buffer = ByteBuffer.allocate(2 * RECORD_COUNT * RECORD_SIZE).order(byteOrder);
+        for (int k = 0; k < 2; k++) {
+            for (int i = 0; i < RECORD_COUNT; i++) {
+                buffer.putInt(i);
+                buffer.putFloat(180.0F * random.nextFloat() - 90.0F);
+                buffer.putFloat(360.0F * random.nextFloat() - 180.0F);
+                buffer.putDouble(random.nextGaussian());
+                buffer.putShort((short) random.nextInt(1 << 16));
+                buffer.put((byte) EXTRA_COUNT);
+                for (int j = 0; j < EXTRA_COUNT; j++) {
+                    buffer.put((byte) random.nextInt());
+                }
+            }
+        }
+        return createFile("records", buffer.array());
+    }
+
+    /**
+     * Creates an array of element indexes in random order.
+     *
+     * @param count The number of indexes.
+     * @param bound The upper bound (exclusive) of the indexes.
+     * @return The indexes.
+     */
+    public static int[] createRandomIndexes(int count, int bound) {
+        final Random random = new Random(SEED);
+        final int[] indexes = new int[count];
+        for (int i = 0; i < count; i++) {
+            indexes[i] = random.nextInt(bound);
+        }
+        return indexes;
+    }
+
+    public static DataContext createContext(CompoundType type, ByteOrder byteOrder, File file) throws IOException {
+        return new DataFormat(type, byteOrder).createContext(file, "r");
+    }
+
+    private static File createFile(String prefix, byte[] data) throws IOException {
+        final File file = File.createTempFile("ceres-binio-bench-" + prefix + "-", ".dat");
+        file.deleteOnExit();
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.write(data);
+        } finally {
+            raf.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.util.ByteArrayCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk decoding of primitive arrays by {@link ByteArrayCodec}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ByteArrayCodecBenchmark {
+
+    private static final int BYTE_COUNT = 1024 * 1024;
+
+    @Param({"BIG_ENDIAN", "LITTLE_ENDIAN"})
+    public String byteOrder;
+
+    private ByteArrayCodec codec;
+    private byte[] data;
+    private short[] shorts;
+    private int[] ints;
+    private long[] longs;
+    private float[] floats;
+    private double[] doubles;
+
+    @Setup
+    public void setUp() {
+        codec = ByteArrayCodec.getInstance("BIG_ENDIAN".equals(byteOrder) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        data = new byte[BYTE_COUNT];
+        new Random(BenchmarkData.SEED).nextBytes(data);
+        shorts = new short[BYTE_COUNT / 2];
+        ints = new int[BYTE_COUNT / 4];
+        longs = new long[BYTE_COUNT / 8];
+        floats = new float[BYTE_COUNT / 4];
+        doubles = new double[BYTE_COUNT / 8];
+    }
+
+    @Benchmark
+    public short[] getShorts() {
+        codec.getShorts(data, 0, shorts, 0, shorts.length);
+        return shorts;
+    }
+
+    @Benchmark
+    public int[] getInts() {
+        codec.getInts(data, 0, ints, 0, ints.length);
+        return ints;
+    }
+
+    @Benchmark
+    public long[] getLongs() {
+        codec.getLongs(data, 0, longs, 0, longs.length);
+        return longs;
+    }
+
+    @Benchmark
+    public float[] getFloats() {
+        codec.getFloats(data, 0, floats, 0, floats.length);
+        return floats;
+    }
+
+    @Benchmark
+    public double[] getDoubles() {
+        codec.getDoubles(data, 0, doubles, 0, doubles.length);
+        return doubles;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.SequenceData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Member access of compounds of known size ({@code FixCompound}) compared to
+ * compounds comprising a variable-size member ({@code VarCompound}). Both record types
+ * have the same layout, only the last member of the latter is declared as variable sequence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompoundAccessBenchmark {
+
+    private File file;
+    private DataContext context;
+    private SequenceData fixRecords;
+    private SequenceData varRecords;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkData.createRecordsFile(ByteOrder.BIG_ENDIAN);
+        context = BenchmarkData.createContext(BenchmarkData.RECORDS_TYPE, ByteOrder.BIG_ENDIAN, file);
+        fixRecords = context.getData().getSequence("FixRecords");
+        varRecords = context.getData().getSequence("VarRecords");
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.dispose();
+        file.delete();
+    }
+
+    @Benchmark
+    public void fixCompound(Blackhole blackhole) throws IOException {
+        readRecords(fixRecords, blackhole);
+    }
+
+    @Benchmark
+    public void varCompound(Blackhole blackhole) throws IOException {
+        readRecords(varRecords, blackhole);
+    }
+
+    private static void readRecords(SequenceData records, Blackhole blackhole) throws IOException {
+        final int n = records.getElementCount();
+        for (int i = 0; i < n; i++) {
+            final CompoundData record = records.getCompound(i);
+            blackhole.consume(record.getInt(0));
+            blackhole.consume(record.getFloat(1));
+            blackhole.consume(record.getFloat(2));
+            blackhole.consume(record.getDouble(3));
+            blackhole.consume(record.getInt(4));
+        }
+    }
+}
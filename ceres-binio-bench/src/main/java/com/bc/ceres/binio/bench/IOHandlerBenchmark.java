@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.IOHandler;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.util.ByteArrayIOHandler;
+import com.bc.ceres.binio.util.FileChannelIOHandler;
+import com.bc.ceres.binio.util.MappedFileChannelIOHandler;
+import com.bc.ceres.binio.util.RandomAccessFileIOHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading a sequence of simple types through the different {@link IOHandler} implementations.
+ * A new context is created for each invocation, so that all data is read through the handler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IOHandlerBenchmark {
+
+    @Param({"RandomAccessFile", "FileChannel", "MappedFileChannel", "ByteArray"})
+    public String handler;
+
+    private File file;
+    private RandomAccessFile raf;
+    private IOHandler ioHandler;
+    private DataFormat format;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = BenchmarkData.createValuesFile(ByteOrder.BIG_ENDIAN);
+        raf = new RandomAccessFile(file, "r");
+        if ("RandomAccessFile".equals(handler)) {
+            ioHandler = new RandomAccessFileIOHandler(raf);
+        } else if ("FileChannel".equals(handler)) {
+            ioHandler = new FileChannelIOHandler(raf.getChannel());
+        } else if ("MappedFileChannel".equals(handler)) {
+            ioHandler = new MappedFileChannelIOHandler(raf.getChannel(), FileChannel.MapMode.READ_ONLY);
+        } else if ("ByteArray".equals(handler)) {
+            final byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            ioHandler = new ByteArrayIOHandler(data);
+        } else {
+            throw new IllegalArgumentException("handler: " + handler);
+        }
+        format = new DataFormat(BenchmarkData.VALUES_TYPE, ByteOrder.BIG_ENDIAN);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        raf.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public void readFloats(Blackhole blackhole) throws IOException {
+        final DataContext context = format.createContext(ioHandler);
+        try {
+            final SequenceData floats = context.getData().getSequence("Floats");
+            final int n = floats.getElementCount();
+            for (int i = 0; i < n; i++) {
+                blackhole.consume(floats.getFloat(i));
+            }
+        } finally {
+            context.dispose();
+        }
+    }
+}
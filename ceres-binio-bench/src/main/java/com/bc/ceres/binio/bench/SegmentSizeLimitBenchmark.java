@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.SequenceData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The effect of the {@code ceres.binio.segmentSizeLimit} system property on reading
+ * sequences of simple types and of compounds. A new context is created for each invocation,
+ * so that all segments are read again.
+ * <p>
+ * The limit is read once, when the binio internals are initialised, so it is passed to the
+ * forked JVM on the command line. There is one subclass per limit, run e.g.
+ * <pre>
+ *     java -jar ceres-binio-bench/target/benchmarks.jar SegmentSizeLimitBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public abstract class SegmentSizeLimitBenchmark {
+
+    @Fork(value = 1, jvmArgsAppend = "-Dceres.binio.segmentSizeLimit=4096")
+    public static class Limit4K extends SegmentSizeLimitBenchmark {
+    }
+
+    @Fork(value = 1, jvmArgsAppend = "-Dceres.binio.segmentSizeLimit=16384")
+    public static class Limit16K extends SegmentSizeLimitBenchmark {
+    }
+
+    @Fork(value = 1, jvmArgsAppend = "-Dceres.binio.segmentSizeLimit=65536")
+    public static class Limit64K extends SegmentSizeLimitBenchmark {
+    }
+
+    @Fork(value = 1, jvmArgsAppend = "-Dceres.binio.segmentSizeLimit=1048576")
+    public static class Limit1M extends SegmentSizeLimitBenchmark {
+    }
+
+    private File valuesFile;
+    private File recordsFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        valuesFile = BenchmarkData.createValuesFile(ByteOrder.BIG_ENDIAN);
+        recordsFile = BenchmarkData.createRecordsFile(ByteOrder.BIG_ENDIAN);
+    }
+
+    @TearDown
+    public void tearDown() {
+        valuesFile.delete();
+        recordsFile.delete();
+    }
+
+    @Benchmark
+    public void readFloats(Blackhole blackhole) throws IOException {
+        final DataContext context = BenchmarkData.createContext(BenchmarkData.VALUES_TYPE, ByteOrder.BIG_ENDIAN,
+                                                                valuesFile);
+        try {
+            final SequenceData floats = context.getData().getSequence("Floats");
+            final int n = floats.getElementCount();
+            for (int i = 0; i < n; i++) {
+                blackhole.consume(floats.getFloat(i));
+            }
+        } finally {
+            context.dispose();
+        }
+    }
+
+    @Benchmark
+    public void readRecords(Blackhole blackhole) throws IOException {
+        final DataContext context = BenchmarkData.createContext(BenchmarkData.RECORDS_TYPE, ByteOrder.BIG_ENDIAN,
+                                                                recordsFile);
+        try {
+            final SequenceData records = context.getData().getSequence("VarRecords");
+            final int n = records.getElementCount();
+            for (int i = 0; i < n; i++) {
+                final CompoundData record = records.getCompound(i);
+                blackhole.consume(record.getFloat(1));
+                blackhole.consume(record.getFloat(2));
+            }
+        } finally {
+            context.dispose();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.bench;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.SequenceData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential and random element access of sequences of simple types.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SequenceAccessBenchmark {
+
+    private static final int RANDOM_ACCESS_COUNT = 1024 * 1024;
+
+    @Param({"BIG_ENDIAN", "LITTLE_ENDIAN"})
+    public String byteOrder;
+
+    private File file;
+    private DataContext context;
+    private SequenceData floats;
+    private SequenceData ints;
+    private int[] randomIndexes;
+
+    @Setup
+    public void setUp() throws IOException {
+        final ByteOrder order = "BIG_ENDIAN".equals(byteOrder) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+        file = BenchmarkData.createValuesFile(order);
+        context = BenchmarkData.createContext(BenchmarkData.VALUES_TYPE, order, file);
+        floats = context.getData().getSequence("Floats");
+        ints = context.getData().getSequence("Ints");
+        randomIndexes = BenchmarkData.createRandomIndexes(RANDOM_ACCESS_COUNT, BenchmarkData.VALUE_COUNT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.dispose();
+        file.delete();
+    }
+
+    @Benchmark
+    public void sequentialGetFloat(Blackhole blackhole) throws IOException {
+        final int n = floats.getElementCount();
+        for (int i = 0; i < n; i++) {
+            blackhole.consume(floats.getFloat(i));
+        }
+    }
+
+    @Benchmark
+    public void sequentialGetInt(Blackhole blackhole) throws IOException {
+        final int n = ints.getElementCount();
+        for (int i = 0; i < n; i++) {
+            blackhole.consume(ints.getInt(i));
+        }
+    }
+
+    @Benchmark
+    public void randomGetFloat(Blackhole blackhole) throws IOException {
+        for (int index : randomIndexes) {
+            blackhole.consume(floats.getFloat(index));
+        }
+    }
+
+    @Benchmark
+    public void randomGetInt(Blackhole blackhole) throws IOException {
+        for (int index : randomIndexes) {
+            blackhole.consume(ints.getInt(index));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+/**
+ * JMH benchmarks of the Ceres Binary I/O Library.
+ * <p>
+ * All benchmarks operate on synthetic data generated by {@link com.bc.ceres.binio.bench.BenchmarkData}
+ * from a fixed seed. The module is only built if the {@code benchmarks} profile is active.
+ * Build it and run e.g.
+ * <pre>
+ *     mvn -P benchmarks install
+ *     java -jar ceres-binio-bench/target/benchmarks.jar SequenceAccessBenchmark -rf json
+ * </pre>
+ */
+package com.bc.ceres.binio.bench;
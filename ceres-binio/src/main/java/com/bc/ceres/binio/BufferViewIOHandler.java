@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An optional capability of an {@link IOHandler}: provides read-only views of the
+ * underlying data, e.g. of a memory-mapped file, so that data can be decoded without
+ * copying it into an intermediate array.
+ *
+ * @since Ceres 0.14
+ */
+public interface BufferViewIOHandler extends IOHandler {
+
+    /**
+     * Gets a read-only view of {@code size} bytes starting at the given position.
+     * The returned buffer's position is zero and its capacity is {@code size}.
+     * Callers may change the returned buffer's position, limit and byte order.
+     * <p/>
+     * If a view cannot be provided for the given range, e.g. because it exceeds the current size of the
+     * file, {@code null} is returned and the data must be {@link #read read} instead.
+     *
+     * @param context  The I/O context.
+     * @param position The file position of the first byte; must be non-negative.
+     * @param size     The number of bytes.
+     * @return The read-only view or {@code null}.
+     * @throws IOException If an I/O error occurs.
+     */
+    ByteBuffer getBufferView(DataContext context, long position, int size) throws IOException;
+}
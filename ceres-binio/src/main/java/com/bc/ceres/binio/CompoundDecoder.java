@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import java.nio.ByteOrder;
+
+/**
+ * A decoder for records of a fixed-size {@link CompoundType} stored in a byte array.
+ * <p>
+ * Implementations are generated and compiled at runtime for a given compound type and byte order
+ * (see {@link com.bc.ceres.binio.util.CompoundDecoderFactory}), so that member access
+ * is performed by straight-line code using constant member offsets.
+ * <pre>
+ *     CompoundDecoder decoder = CompoundDecoderFactory.getDecoder(type, format.getByteOrder());
+ *     int x = type.getMemberIndex("x");
+ *     float value = decoder.getFloat(data, recordIndex * type.getSize(), x);
+ * </pre>
+ * Only compounds whose members are all of simple types are supported.
+ * Type conversions follow the rules of {@link CompoundData}.
+ *
+ * @since Ceres 0.14
+ */
+public interface CompoundDecoder {
+
+    CompoundType getType();
+
+    ByteOrder getByteOrder();
+
+    byte getByte(byte[] data, int recordOffset, int memberIndex);
+
+    int getUByte(byte[] data, int recordOffset, int memberIndex);
+
+    short getShort(byte[] data, int recordOffset, int memberIndex);
+
+    int getUShort(byte[] data, int recordOffset, int memberIndex);
+
+    int getInt(byte[] data, int recordOffset, int memberIndex);
+
+    long getUInt(byte[] data, int recordOffset, int memberIndex);
+
+    long getLong(byte[] data, int recordOffset, int memberIndex);
+
+    float getFloat(byte[] data, int recordOffset, int memberIndex);
+
+    double getDouble(byte[] data, int recordOffset, int memberIndex);
+
+    void setByte(byte[] data, int recordOffset, int memberIndex, byte value);
+
+    void setShort(byte[] data, int recordOffset, int memberIndex, short value);
+
+    void setInt(byte[] data, int recordOffset, int memberIndex, int value);
+
+    void setLong(byte[] data, int recordOffset, int memberIndex, long value);
+
+    void setFloat(byte[] data, int recordOffset, int memberIndex, float value);
+
+    void setDouble(byte[] data, int recordOffset, int memberIndex, double value);
+
+    /**
+     * Creates the column arrays used by {@link #decode}. The element type of each array matches the
+     * storage size of the member: {@code byte[]} for (u)byte, {@code short[]} for (u)short,
+     * {@code int[]} for (u)int, {@code long[]} for (u)long, {@code float[]} and {@code double[]}.
+     * Unsigned values are stored with their raw bits.
+     *
+     * @param length The number of elements of each column.
+     * @return The column arrays, one per member.
+     */
+    Object[] createColumns(int length);
+
+    /**
+     * Decodes a number of consecutive records into primitive columns.
+     *
+     * @param data         The record data.
+     * @param offset       The offset of the first record in {@code data}.
+     * @param recordCount  The number of records to decode.
+     * @param columns      The column arrays as created by {@link #createColumns(int)}.
+     *                     Columns which are {@code null} are skipped.
+     * @param columnOffset The index of the first element written into each column.
+     */
+    void decode(byte[] data, int offset, int recordCount, Object[] columns, int columnOffset);
+}
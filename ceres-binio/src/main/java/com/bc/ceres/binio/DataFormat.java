@@ -19,6 +19,7 @@ package com.bc.ceres.binio;
 import com.bc.ceres.binio.internal.DataContextImpl;
 import com.bc.ceres.binio.util.FileChannelIOHandler;
 import com.bc.ceres.binio.util.RandomAccessFileIOHandler;
+import com.bc.ceres.binio.util.ReadOnlyFileChannelIOHandler;
 import com.bc.ceres.core.Assert;
 
 import java.io.File;
@@ -66,12 +67,41 @@ public class DataFormat {
      *             <tt>"rwd"</tt>. See also mode description in {@link RandomAccessFile#RandomAccessFile(java.io.File, String)}.
      * @return The context.
      * @throws FileNotFoundException If in read-only mode and the file could nt be found.
+     * @see #createConcurrentContext(java.io.File)
      */
     public DataContext createContext(File file, String mode) throws FileNotFoundException {
+        return createFileContext(file, mode, false);
+    }
+
+    /**
+     * Creates a new read-only file data context, which can be read by multiple threads concurrently.
+     * <p>
+     * The context is in {@link ExtendedDataContext#setConcurrent(boolean) concurrent mode} and uses a
+     * {@link ReadOnlyFileChannelIOHandler}, so that the threads don't contend on a common lock.
+     * Note that the file channel is interruptible: if a thread is interrupted while reading, the channel
+     * is closed and the context cannot be read anymore. Use {@link #createContext(java.io.File, String)}
+     * if reading threads may be interrupted.
+     *
+     * @param file the file object
+     * @return The context.
+     * @throws FileNotFoundException If the file could not be found.
+     * @since Ceres 0.14
+     */
+    public ExtendedDataContext createConcurrentContext(File file) throws FileNotFoundException {
+        return createFileContext(file, "r", true);
+    }
+
+    private ExtendedDataContext createFileContext(File file, String mode, boolean concurrent) throws FileNotFoundException {
         Assert.notNull(file, "file");
         Assert.notNull(mode, "mode");
         final RandomAccessFile raf = new RandomAccessFile(file, mode);
-        return new DataContextImpl(this, new RandomAccessFileIOHandler(raf)) {
+        final IOHandler ioHandler;
+        if (concurrent) {
+            ioHandler = new ReadOnlyFileChannelIOHandler(raf.getChannel());
+        } else {
+            ioHandler = new RandomAccessFileIOHandler(raf);
+        }
+        final DataContextImpl context = new DataContextImpl(this, ioHandler) {
             private boolean disposed;
 
             @Override
@@ -94,6 +124,8 @@ public class DataFormat {
             }
 
         };
+        context.setConcurrent(concurrent);
+        return context;
     }
 
     public DataContext createContext(RandomAccessFile raf) {
@@ -182,6 +214,14 @@ public class DataFormat {
         typeDefMap.put(name, type);
     }
 
+    /**
+     * @return The names of the type definitions of this format, excluding those of the basis format.
+     * @since Ceres 0.14
+     */
+    public String[] getTypeDefNames() {
+        return typeDefMap.keySet().toArray(new String[typeDefMap.size()]);
+    }
+
     public Type removeTypeDef(String name) {
         Assert.notNull(name, "name");
         return typeDefMap.remove(name);
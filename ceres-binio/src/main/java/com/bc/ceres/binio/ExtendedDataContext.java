@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import java.io.IOException;
+
+/**
+ * A {@link DataContext} providing projections, a bounded segment cache, an offset index,
+ * I/O statistics and a concurrent mode.
+ * <p>
+ * All contexts created by {@link DataFormat} implement this interface:
+ * <pre>
+ *     ExtendedDataContext context = (ExtendedDataContext) format.createContext(file, "r");
+ *     context.setSegmentCacheCapacity(64 * 1024 * 1024);
+ * </pre>
+ * Implementations of {@link DataContext} which do not implement this interface are still supported,
+ * their instances use no offset index, record no statistics and are not concurrent.
+ * <p>
+ * The memory used by data segments may also be bounded by setting the {@code ceres.binio.segmentCacheCapacity}
+ * system property.
+ *
+ * @since Ceres 0.14
+ */
+public interface ExtendedDataContext extends DataContext {
+
+    /**
+     * Creates a projection of the given compound type onto the given members.
+     * A projection reads only the given members of a sequence of records into primitive column arrays.
+     *
+     * @param type        The compound type. Its size must be known.
+     * @param memberNames The names of the projected members, which must be of simple types.
+     * @return The projection.
+     */
+    Projection createProjection(CompoundType type, String... memberNames);
+
+    /**
+     * @return The maximum number of bytes held by the data segments of this context.
+     *         A negative value means unlimited.
+     */
+    long getSegmentCacheCapacity();
+
+    /**
+     * Sets the maximum number of bytes held by the data segments of this context.
+     * If the capacity is exceeded, the least recently used segments are flushed and their data is released.
+     * Released data is read again on next access. A negative value, which is the default, means unlimited.
+     *
+     * @param capacity The capacity in bytes.
+     * @throws IOException If flushing evicted segment data fails.
+     */
+    void setSegmentCacheCapacity(long capacity) throws IOException;
+
+    /**
+     * @return The index used to record the positions of variable-size structures, or {@code null}.
+     */
+    OffsetIndex getOffsetIndex();
+
+    /**
+     * Sets the index used to record and look up the positions of variable-size structures.
+     * By default, no index is used.
+     *
+     * @param offsetIndex The index, or {@code null}.
+     */
+    void setOffsetIndex(OffsetIndex offsetIndex);
+
+    /**
+     * @return The I/O statistics of this context.
+     */
+    IOStatistics getStatistics();
+
+    /**
+     * @return {@code true} if instances of this context may be read by multiple threads concurrently.
+     */
+    boolean isConcurrent();
+
+    /**
+     * Sets the concurrent mode. In concurrent mode, the data of a segment shared by multiple instances
+     * is read exactly once and safely published to all threads, so that a single instance tree,
+     * e.g. the one returned by {@link #getData()}, can be read by multiple threads concurrently.
+     * Each segment is guarded by its own lock, there is no lock shared by all instances.
+     * <p>
+     * The {@link IOHandler} must support concurrent reads, e.g.
+     * {@link com.bc.ceres.binio.util.ReadOnlyFileChannelIOHandler}. Values are written under the
+     * segment's lock, so that writes are never lost by a concurrent eviction from the segment cache.
+     * Writing the same values from multiple threads is not supported. By default, the concurrent mode is off.
+     *
+     * @param concurrent {@code true} to enable the concurrent mode.
+     */
+    void setConcurrent(boolean concurrent);
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe I/O statistics of a {@link DataContext} or of an I/O handler.
+ * <p>
+ * Each context records the number of data segments materialized, i.e. read from its I/O handler,
+ * and the number of segment reuses, i.e. instances whose first data access was served by the
+ * already materialized segment of another instance. Read and write calls are recorded by the
+ * {@link com.bc.ceres.binio.util.InstrumentedIOHandler}, which reports both to its own
+ * statistics and to the statistics of the calling context.
+ * <p>
+ * Latencies are recorded in histograms of {@link #LATENCY_BUCKET_COUNT} buckets. Bucket {@code 0}
+ * counts calls which took less than one microsecond, bucket {@code i > 0} counts calls which took
+ * {@code 2^(i-1)} up to {@code 2^i} microseconds, the last bucket counts all longer calls.
+ * <p>
+ * Statistics can be registered as JMX MBeans by {@link #registerMBean(String)}, an immutable
+ * copy of the current values is obtained by {@link #snapshot()}.
+ *
+ * @since Ceres 0.14
+ */
+public class IOStatistics implements IOStatisticsMBean {
+
+    public static final int LATENCY_BUCKET_COUNT = 24;
+
+    /**
+     * The JMX domain of registered statistics.
+     */
+    public static final String MBEAN_DOMAIN = "com.bc.ceres.binio";
+
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong readBytes = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLongArray readLatencies = new AtomicLongArray(LATENCY_BUCKET_COUNT);
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong writeBytes = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicLongArray writeLatencies = new AtomicLongArray(LATENCY_BUCKET_COUNT);
+    private final AtomicLong segmentCount = new AtomicLong();
+    private final AtomicLong segmentBytes = new AtomicLong();
+    private final AtomicLong segmentReuseCount = new AtomicLong();
+
+    public void recordRead(long byteCount, long nanos) {
+        readCount.incrementAndGet();
+        readBytes.addAndGet(byteCount);
+        readNanos.addAndGet(nanos);
+        readLatencies.incrementAndGet(getLatencyBucket(nanos));
+    }
+
+    public void recordWrite(long byteCount, long nanos) {
+        writeCount.incrementAndGet();
+        writeBytes.addAndGet(byteCount);
+        writeNanos.addAndGet(nanos);
+        writeLatencies.incrementAndGet(getLatencyBucket(nanos));
+    }
+
+    public void recordSegment(long byteCount) {
+        segmentCount.incrementAndGet();
+        segmentBytes.addAndGet(byteCount);
+    }
+
+    public void recordSegmentReuse() {
+        segmentReuseCount.incrementAndGet();
+    }
+
+    @Override
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    @Override
+    public long getReadBytes() {
+        return readBytes.get();
+    }
+
+    @Override
+    public long getReadTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(readNanos.get());
+    }
+
+    @Override
+    public long[] getReadLatencyHistogram() {
+        return toArray(readLatencies);
+    }
+
+    @Override
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    @Override
+    public long getWriteBytes() {
+        return writeBytes.get();
+    }
+
+    @Override
+    public long getWriteTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writeNanos.get());
+    }
+
+    @Override
+    public long[] getWriteLatencyHistogram() {
+        return toArray(writeLatencies);
+    }
+
+    @Override
+    public long getSegmentCount() {
+        return segmentCount.get();
+    }
+
+    @Override
+    public long getSegmentBytes() {
+        return segmentBytes.get();
+    }
+
+    @Override
+    public long getSegmentReuseCount() {
+        return segmentReuseCount.get();
+    }
+
+    /**
+     * Resets all values to zero. Calls recorded concurrently may be partially lost.
+     */
+    @Override
+    public void reset() {
+        readCount.set(0);
+        readBytes.set(0);
+        readNanos.set(0);
+        writeCount.set(0);
+        writeBytes.set(0);
+        writeNanos.set(0);
+        for (int i = 0; i < LATENCY_BUCKET_COUNT; i++) {
+            readLatencies.set(i, 0);
+            writeLatencies.set(i, 0);
+        }
+        segmentCount.set(0);
+        segmentBytes.set(0);
+        segmentReuseCount.set(0);
+    }
+
+    /**
+     * @return An immutable copy of the current values.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(getReadCount(), getReadBytes(), readNanos.get(), getReadLatencyHistogram(),
+                            getWriteCount(), getWriteBytes(), writeNanos.get(), getWriteLatencyHistogram(),
+                            getSegmentCount(), getSegmentBytes(), getSegmentReuseCount());
+    }
+
+    /**
+     * Registers these statistics at the platform MBean server. An MBean already registered
+     * with the same name is replaced.
+     *
+     * @param name The value of the {@code name} key of the MBean's object name.
+     * @return The object name, e.g. {@code com.bc.ceres.binio:type=IOStatistics,name="SMOS"}.
+     * @throws JMException If the registration fails.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        final ObjectName objectName = new ObjectName(MBEAN_DOMAIN + ":type=IOStatistics,name=" + ObjectName.quote(name));
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+        }
+        return objectName;
+    }
+
+    /**
+     * Unregisters an MBean registered by {@link #registerMBean(String)}.
+     *
+     * @param objectName The object name.
+     * @throws JMException If the MBean is not registered.
+     */
+    public static void unregisterMBean(ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    static int getLatencyBucket(long nanos) {
+        final long micros = nanos / 1000L;
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(LATENCY_BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static long[] toArray(AtomicLongArray array) {
+        final long[] values = new long[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * An immutable copy of {@link IOStatistics}.
+     */
+    public static final class Snapshot {
+        private final long readCount;
+        private final long readBytes;
+        private final long readNanos;
+        private final long[] readLatencyHistogram;
+        private final long writeCount;
+        private final long writeBytes;
+        private final long writeNanos;
+        private final long[] writeLatencyHistogram;
+        private final long segmentCount;
+        private final long segmentBytes;
+        private final long segmentReuseCount;
+
+        Snapshot(long readCount, long readBytes, long readNanos, long[] readLatencyHistogram,
+                 long writeCount, long writeBytes, long writeNanos, long[] writeLatencyHistogram,
+                 long segmentCount, long segmentBytes, long segmentReuseCount) {
+            this.readCount = readCount;
+            this.readBytes = readBytes;
+            this.readNanos = readNanos;
+            this.readLatencyHistogram = readLatencyHistogram;
+            this.writeCount = writeCount;
+            this.writeBytes = writeBytes;
+            this.writeNanos = writeNanos;
+            this.writeLatencyHistogram = writeLatencyHistogram;
+            this.segmentCount = segmentCount;
+            this.segmentBytes = segmentBytes;
+            this.segmentReuseCount = segmentReuseCount;
+        }
+
+        public long getReadCount() {
+            return readCount;
+        }
+
+        public long getReadBytes() {
+            return readBytes;
+        }
+
+        public long getReadNanos() {
+            return readNanos;
+        }
+
+        public long[] getReadLatencyHistogram() {
+            return readLatencyHistogram.clone();
+        }
+
+        public long getWriteCount() {
+            return writeCount;
+        }
+
+        public long getWriteBytes() {
+            return writeBytes;
+        }
+
+        public long getWriteNanos() {
+            return writeNanos;
+        }
+
+        public long[] getWriteLatencyHistogram() {
+            return writeLatencyHistogram.clone();
+        }
+
+        public long getSegmentCount() {
+            return segmentCount;
+        }
+
+        public long getSegmentBytes() {
+            return segmentBytes;
+        }
+
+        public long getSegmentReuseCount() {
+            return segmentReuseCount;
+        }
+
+        /**
+         * Computes the difference to an earlier snapshot, e.g. to obtain the statistics of a single operation.
+         *
+         * @param earlier The earlier snapshot.
+         * @return The values recorded since the earlier snapshot.
+         */
+        public Snapshot minus(Snapshot earlier) {
+            return new Snapshot(readCount - earlier.readCount,
+                                readBytes - earlier.readBytes,
+                                readNanos - earlier.readNanos,
+                                minus(readLatencyHistogram, earlier.readLatencyHistogram),
+                                writeCount - earlier.writeCount,
+                                writeBytes - earlier.writeBytes,
+                                writeNanos - earlier.writeNanos,
+                                minus(writeLatencyHistogram, earlier.writeLatencyHistogram),
+                                segmentCount - earlier.segmentCount,
+                                segmentBytes - earlier.segmentBytes,
+                                segmentReuseCount - earlier.segmentReuseCount);
+        }
+
+        @Override
+        public String toString() {
+            return "IOStatistics.Snapshot[" +
+                   "readCount=" + readCount +
+                   ", readBytes=" + readBytes +
+                   ", readMillis=" + TimeUnit.NANOSECONDS.toMillis(readNanos) +
+                   ", writeCount=" + writeCount +
+                   ", writeBytes=" + writeBytes +
+                   ", writeMillis=" + TimeUnit.NANOSECONDS.toMillis(writeNanos) +
+                   ", segmentCount=" + segmentCount +
+                   ", segmentBytes=" + segmentBytes +
+                   ", segmentReuseCount=" + segmentReuseCount +
+                   "]";
+        }
+
+        private static long[] minus(long[] values1, long[] values2) {
+            final long[] values = new long[values1.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = values1[i] - values2[i];
+            }
+            return values;
+        }
+    }
+}
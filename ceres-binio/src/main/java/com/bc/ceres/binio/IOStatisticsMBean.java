@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+/**
+ * The management interface of {@link IOStatistics}.
+ *
+ * @since Ceres 0.14
+ */
+public interface IOStatisticsMBean {
+
+    long getReadCount();
+
+    long getReadBytes();
+
+    long getReadTimeMillis();
+
+    long[] getReadLatencyHistogram();
+
+    long getWriteCount();
+
+    long getWriteBytes();
+
+    long getWriteTimeMillis();
+
+    long[] getWriteLatencyHistogram();
+
+    long getSegmentCount();
+
+    long getSegmentBytes();
+
+    long getSegmentReuseCount();
+
+    void reset();
+}
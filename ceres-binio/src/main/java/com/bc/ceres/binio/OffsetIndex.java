@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the resolved positions of variable-size structures.
+ * <p>
+ * Resolving the size of compounds and sequences of variable size requires reading the count
+ * members of all preceding elements. If an index is set on a {@link ExtendedDataContext}
+ * (see {@link ExtendedDataContext#setOffsetIndex(OffsetIndex)}), resolved element positions are recorded,
+ * and instances created later at the same position can access any element directly.
+ * <p>
+ * An index is valid for a given data file and format only. It can either be shared in memory
+ * (see {@link #getShared(File, String)}) or persisted to a sidecar file
+ * (see {@link #load(File, File, String)} and {@link #store(File)}). Both are validated against
+ * the data file's length and modification time. An index must not be used for data which is modified.
+ * <p>
+ * Entries are keyed by the position and the structure of a type, so that distinct types
+ * of the same name do not share entries. At most {@link #MAX_SHARED_INDEX_COUNT} indexes are shared,
+ * the least recently used index is dropped first.
+ *
+ * @since Ceres 0.14
+ */
+public final class OffsetIndex {
+
+    private static final int MAGIC = 0x42494458; // "BIDX"
+    private static final int VERSION = 2;
+
+    /**
+     * The maximum number of indexes kept by {@link #getShared(File, String)}.
+     */
+    public static final int MAX_SHARED_INDEX_COUNT = 32;
+
+    private static final Map<String, OffsetIndex> sharedIndexes = new LinkedHashMap<String, OffsetIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OffsetIndex> eldest) {
+            return size() > MAX_SHARED_INDEX_COUNT;
+        }
+    };
+    private static final Map<Type, String> typeKeys = new WeakHashMap<Type, String>();
+
+    private final String formatName;
+    private final long fileLength;
+    private final long fileLastModified;
+    private final ConcurrentHashMap<String, long[]> entries;
+    private volatile boolean modified;
+
+    /**
+     * Creates a new in-memory index which is not bound to a file.
+     */
+    public OffsetIndex() {
+        this(null, -1L, -1L);
+    }
+
+    /**
+     * Creates a new, empty index for the given data file and format.
+     *
+     * @param dataFile   The data file.
+     * @param formatName The name of the data format.
+     */
+    public OffsetIndex(File dataFile, String formatName) {
+        this(formatName, dataFile.length(), dataFile.lastModified());
+    }
+
+    private OffsetIndex(String formatName, long fileLength, long fileLastModified) {
+        this.formatName = formatName;
+        this.fileLength = fileLength;
+        this.fileLastModified = fileLastModified;
+        this.entries = new ConcurrentHashMap<String, long[]>();
+    }
+
+    /**
+     * Gets the shared in-memory index for the given data file and format.
+     * A new index is created if none exists yet or if the data file has changed since
+     * the existing index was created. Only the {@link #MAX_SHARED_INDEX_COUNT} most recently
+     * used indexes are kept.
+     *
+     * @param dataFile   The data file.
+     * @param formatName The name of the data format.
+     * @return The shared index.
+     * @throws IOException If the canonical path of the data file cannot be determined.
+     */
+    public static OffsetIndex getShared(File dataFile, String formatName) throws IOException {
+        final String key = dataFile.getCanonicalPath() + '#' + formatName;
+        synchronized (sharedIndexes) {
+            OffsetIndex index = sharedIndexes.get(key);
+            if (index == null || !index.isValid(dataFile, formatName)) {
+                index = new OffsetIndex(dataFile, formatName);
+                sharedIndexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @param dataFile The data file.
+     * @return The default sidecar file used to persist the index of the given data file.
+     */
+    public static File getSidecarFile(File dataFile) {
+        return new File(dataFile.getPath() + ".bidx");
+    }
+
+    /**
+     * Loads an index from a sidecar file.
+     *
+     * @param indexFile  The sidecar file.
+     * @param dataFile   The data file.
+     * @param formatName The name of the data format.
+     * @return The loaded index, or a new, empty index if the sidecar file does not exist,
+     *         is unreadable or does not match the data file and format.
+     */
+    public static OffsetIndex load(File indexFile, File dataFile, String formatName) {
+        if (indexFile.isFile()) {
+            try {
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+                try {
+                    final OffsetIndex index = read(in, indexFile.length(), dataFile, formatName);
+                    if (index != null) {
+                        return index;
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                // ignore, index is rebuilt
+            }
+        }
+        return new OffsetIndex(dataFile, formatName);
+    }
+
+    /**
+     * Stores this index in a sidecar file, if it has been modified since it has been created or loaded.
+     *
+     * @param indexFile The sidecar file.
+     * @throws IOException If an I/O error occurs.
+     */
+    public void store(File indexFile) throws IOException {
+        if (!modified && indexFile.isFile()) {
+            return;
+        }
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+        modified = false;
+    }
+
+    /**
+     * @param dataFile   The data file.
+     * @param formatName The name of the data format.
+     * @return {@code true} if this index has been created for the given data file and format
+     *         and the data file has not changed since.
+     */
+    public boolean isValid(File dataFile, String formatName) {
+        return formatName != null && formatName.equals(this.formatName)
+                && dataFile.length() == fileLength
+                && dataFile.lastModified() == fileLastModified;
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the positions recorded for the structure of the given type at the given position.
+     *
+     * @param type     The type of the structure.
+     * @param position The position of the structure.
+     * @return The recorded positions, or {@code null}.
+     */
+    public long[] get(Type type, long position) {
+        return entries.get(createKey(type, position));
+    }
+
+    /**
+     * Records the positions of the structure of the given type at the given position.
+     * The positions must not be modified afterwards.
+     *
+     * @param type      The type of the structure.
+     * @param position  The position of the structure.
+     * @param positions The positions, for example the positions of all elements followed by the end position.
+     */
+    public void put(Type type, long position, long[] positions) {
+        if (entries.put(createKey(type, position), positions) == null) {
+            modified = true;
+        }
+    }
+
+    private static String createKey(Type type, long position) {
+        String typeKey;
+        synchronized (typeKeys) {
+            typeKey = typeKeys.get(type);
+            if (typeKey == null) {
+                final StringBuilder signature = new StringBuilder();
+                appendSignature(type, signature, new IdentityHashMap<Type, Boolean>());
+                typeKey = type.getName() + '#' + Long.toHexString(hash(signature));
+                typeKeys.put(type, typeKey);
+            }
+        }
+        return typeKey + '@' + position;
+    }
+
+    private static void appendSignature(Type type, StringBuilder signature, Map<Type, Boolean> visited) {
+        signature.append(type.getName());
+        if (visited.put(type, Boolean.TRUE) != null) {
+            return;
+        }
+        if (type instanceof CompoundType) {
+            final CompoundType compoundType = (CompoundType) type;
+            signature.append('{');
+            for (int i = 0; i < compoundType.getMemberCount(); i++) {
+                signature.append(compoundType.getMemberName(i)).append(':');
+                appendSignature(compoundType.getMemberType(i), signature, visited);
+                signature.append(';');
+            }
+            signature.append('}');
+        } else if (type instanceof SequenceType) {
+            final SequenceType sequenceType = (SequenceType) type;
+            signature.append('<');
+            appendSignature(sequenceType.getElementType(), signature, visited);
+            signature.append('>');
+        }
+    }
+
+    private static long hash(CharSequence signature) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < signature.length(); i++) {
+            hash ^= signature.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(formatName != null ? formatName : "");
+        out.writeLong(fileLength);
+        out.writeLong(fileLastModified);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, long[]> entry : entries.entrySet()) {
+            final long[] positions = entry.getValue();
+            out.writeUTF(entry.getKey());
+            writeVarLong(out, positions.length);
+            long previous = 0;
+            for (long position : positions) {
+                // positions are increasing, so the deltas are small non-negative numbers
+                writeVarLong(out, position - previous);
+                previous = position;
+            }
+        }
+    }
+
+    /**
+     * @param byteCount The size of the sidecar file, which bounds all counts read.
+     * @return The index or {@code null}, if the sidecar file is outdated or has an unknown format.
+     */
+    private static OffsetIndex read(DataInputStream in, long byteCount, File dataFile, String formatName) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            return null;
+        }
+        final OffsetIndex index = new OffsetIndex(in.readUTF(), in.readLong(), in.readLong());
+        if (!index.isValid(dataFile, formatName)) {
+            // don't read the entries of an outdated index
+            return null;
+        }
+        // an entry is encoded in at least 3 bytes, a position in at least 1 byte
+        final int entryCount = checkCount(in.readInt(), 3, byteCount);
+        for (int i = 0; i < entryCount; i++) {
+            final String key = in.readUTF();
+            final long[] positions = new long[checkCount(readVarLong(in), 1, byteCount)];
+            long previous = 0;
+            for (int j = 0; j < positions.length; j++) {
+                positions[j] = previous + readVarLong(in);
+                previous = positions[j];
+            }
+            index.entries.put(key, positions);
+        }
+        return index;
+    }
+
+    /**
+     * Validates the number of elements which follow against the size of the sidecar file,
+     * so that corrupt files don't cause huge allocations.
+     */
+    private static int checkCount(long count, int minElementSize, long byteCount) throws IOException {
+        if (count < 0 || count > byteCount / minElementSize) {
+            throw new IOException("Invalid element count " + count);
+        }
+        return (int) count;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed index entry.");
+    }
+}
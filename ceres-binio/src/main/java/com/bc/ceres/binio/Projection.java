@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import java.io.IOException;
+
+/**
+ * A projection of a fixed-size {@link CompoundType} onto a subset of its members.
+ * <p>
+ * A projection reads the values of the projected members of consecutive records into
+ * primitive column arrays. Only the byte ranges of the projected members are read,
+ * ranges which are separated by at most {@link #getGapLimit() gapLimit} bytes are
+ * coalesced into a single read of up to {@code ceres.binio.segmentSizeLimit} bytes.
+ * <pre>
+ *     Projection projection = context.createProjection(recordType, "lat", "lon", "flags");
+ *     Object[] columns = projection.read(records);
+ *     float[] lat = (float[]) columns[0];
+ * </pre>
+ * The element type of each column array matches the storage size of the member:
+ * {@code byte[]} for (u)byte, {@code short[]} for (u)short, {@code int[]} for (u)int,
+ * {@code long[]} for (u)long, {@code float[]} and {@code double[]}.
+ * Unsigned values are stored with their raw bits.
+ * <p>
+ * Only members of simple types can be projected. The projection reads directly from the context's
+ * {@link IOHandler}, so pending modifications of instances must be flushed before.
+ *
+ * @see ExtendedDataContext#createProjection(CompoundType, String...)
+ * @since Ceres 0.14
+ */
+public interface Projection {
+
+    CompoundType getType();
+
+    /**
+     * @return The names of the projected members, in column order.
+     */
+    String[] getMemberNames();
+
+    /**
+     * @return The maximum number of unused bytes between two member ranges which are read at once.
+     */
+    int getGapLimit();
+
+    /**
+     * @param gapLimit The maximum number of unused bytes between two member ranges which are read at once.
+     *                 Zero means that only adjacent ranges are coalesced.
+     */
+    void setGapLimit(int gapLimit);
+
+    /**
+     * @param length The number of elements of each column.
+     * @return The column arrays, one per projected member.
+     */
+    Object[] createColumns(int length);
+
+    /**
+     * Reads the projected members of all elements of the given sequence.
+     *
+     * @param sequence A sequence whose element type is the type of this projection.
+     * @return The column arrays, one per projected member.
+     * @throws IOException If an I/O error occurs.
+     */
+    Object[] read(SequenceData sequence) throws IOException;
+
+    /**
+     * Reads the projected members of consecutive records.
+     *
+     * @param position    The stream or file position of the first record.
+     * @param recordCount The number of records.
+     * @return The column arrays, one per projected member.
+     * @throws IOException If an I/O error occurs.
+     */
+    Object[] read(long position, int recordCount) throws IOException;
+
+    /**
+     * Reads the projected members of consecutive records into the given columns.
+     *
+     * @param position     The stream or file position of the first record.
+     * @param recordCount  The number of records.
+     * @param columns      The column arrays as created by {@link #createColumns(int)}.
+     * @param columnOffset The index of the first column element to be set.
+     * @throws IOException If an I/O error occurs.
+     */
+    void read(long position, int recordCount, Object[] columns, int columnOffset) throws IOException;
+}
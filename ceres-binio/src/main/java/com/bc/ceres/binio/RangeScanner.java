@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import java.io.IOException;
+
+/**
+ * Scans contiguous ranges of a sequence and combines the results of the individual ranges.
+ * Used by {@link com.bc.ceres.binio.util.ParallelScan}, which calls {@link #scan} concurrently
+ * for different ranges.
+ *
+ * @param <T> The result type.
+ * @since Ceres 0.14
+ */
+public interface RangeScanner<T> {
+
+    /**
+     * Scans a range of elements. The given sequence is confined to the calling thread.
+     *
+     * @param range       A sequence comprising the elements of the range.
+     * @param rangeOffset The index of the range's first element in the scanned sequence.
+     * @return The result for the range.
+     * @throws IOException If an I/O error occurs.
+     */
+    T scan(SequenceData range, int rangeOffset) throws IOException;
+
+    /**
+     * Combines the results of two adjacent ranges. Must be associative.
+     *
+     * @param result1 The result of the preceding range.
+     * @param result2 The result of the following range.
+     * @return The combined result.
+     */
+    T combine(T result1, T result2);
+}
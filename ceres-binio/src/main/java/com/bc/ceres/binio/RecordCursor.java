@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import java.io.IOException;
+
+/**
+ * A cursor over the records of a sequence of fixed-size compounds.
+ * <p>
+ * The cursor is a reusable, mutable view of the current record. In contrast to
+ * {@link SequenceData#getCompound(int)}, moving to the next record does not create any objects,
+ * records are read in chunks into an array owned by the cursor.
+ * <pre>
+ *     RecordCursor cursor = sequence.cursor();
+ *     int x = cursor.getMemberIndex("x");
+ *     while (cursor.next()) {
+ *         float value = cursor.getFloat(x);
+ *         ...
+ *     }
+ * </pre>
+ * Only members of simple types can be accessed. The cursor reads directly from the context's
+ * {@link IOHandler}, so pending modifications of instances must be flushed before.
+ *
+ * @since Ceres 0.14
+ */
+public interface RecordCursor {
+
+    CompoundType getType();
+
+    int getRecordCount();
+
+    /**
+     * @return The index of the current record, or {@code -1} if {@link #next()} has not been called yet.
+     */
+    int getRecordIndex();
+
+    /**
+     * @return The stream or file position of the current record.
+     */
+    long getPosition();
+
+    /**
+     * Moves the cursor to the next record.
+     *
+     * @return {@code false} if there are no more records.
+     * @throws IOException If an I/O error occurs.
+     */
+    boolean next() throws IOException;
+
+    int getMemberIndex(String name);
+
+    byte getByte(int memberIndex);
+
+    int getUByte(int memberIndex);
+
+    short getShort(int memberIndex);
+
+    int getUShort(int memberIndex);
+
+    int getInt(int memberIndex);
+
+    long getUInt(int memberIndex);
+
+    long getLong(int memberIndex);
+
+    float getFloat(int memberIndex);
+
+    double getDouble(int memberIndex);
+}
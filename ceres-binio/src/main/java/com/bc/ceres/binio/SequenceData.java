@@ -16,6 +16,8 @@
 
 package com.bc.ceres.binio;
 
+import java.io.IOException;
+
 /**
  * A sequence of elements of same type.
  */
@@ -35,6 +37,60 @@ public interface SequenceData extends CollectionData {
     @Deprecated
     SequenceType getSequenceType();
 
-    // todo - get<type>s(index, array, off, len)
-    // todo - set<type>s(index, array, off, len)
+    /**
+     * Creates a cursor over the elements of this sequence, which must be compounds of known size.
+     *
+     * @return A new cursor positioned before the first element.
+     * @throws IOException         If an I/O error occurs.
+     * @throws DataAccessException If the element type is not a compound type of known size.
+     * @since Ceres 0.14
+     */
+    RecordCursor cursor() throws IOException;
+
+    /**
+     * Creates a new sequence instance for the elements in the given index range.
+     * The new instance reads its data independently of this sequence, it does not share
+     * any segments with it. Hence sub-sequences may be confined to different threads,
+     * given that the context's {@link IOHandler} supports concurrent reads.
+     * Pending modifications of this sequence must be flushed before.
+     *
+     * @param fromIndex The index of the first element, inclusive.
+     * @param toIndex   The index of the last element, exclusive.
+     * @return A new sequence of {@code toIndex - fromIndex} elements.
+     * @throws IOException If an I/O error occurs while resolving element positions.
+     * @see com.bc.ceres.binio.util.ParallelScan
+     * @since Ceres 0.14
+     */
+    SequenceData createSubSequence(int fromIndex, int toIndex) throws IOException;
+
+    /////////////////////////////////////////////////////////////////////////
+    // Bulk data access
+    //
+    // Transfer 'length' elements starting at element 'index' from or to the given array,
+    // beginning at array index 'offset'. Values are converted as for the indexed
+    // single-element methods. Sequences of non-simple element types throw a DataAccessException.
+
+    void getBytes(int index, byte[] values, int offset, int length) throws IOException;
+
+    void setBytes(int index, byte[] values, int offset, int length) throws IOException;
+
+    void getShorts(int index, short[] values, int offset, int length) throws IOException;
+
+    void setShorts(int index, short[] values, int offset, int length) throws IOException;
+
+    void getInts(int index, int[] values, int offset, int length) throws IOException;
+
+    void setInts(int index, int[] values, int offset, int length) throws IOException;
+
+    void getLongs(int index, long[] values, int offset, int length) throws IOException;
+
+    void setLongs(int index, long[] values, int offset, int length) throws IOException;
+
+    void getFloats(int index, float[] values, int offset, int length) throws IOException;
+
+    void setFloats(int index, float[] values, int offset, int length) throws IOException;
+
+    void getDoubles(int index, double[] values, int offset, int length) throws IOException;
+
+    void setDoubles(int index, double[] values, int offset, int length) throws IOException;
 }
@@ -22,6 +22,7 @@ import com.bc.ceres.binio.DataFormat;
 import com.bc.ceres.binio.SequenceType;
 import com.bc.ceres.binio.SimpleType;
 import com.bc.ceres.binio.Type;
+import com.bc.ceres.binio.util.DataFormatCache;
 import com.bc.ceres.core.Assert;
 import org.jdom2.Document;
 import org.jdom2.Element;
@@ -29,7 +30,10 @@ import org.jdom2.JDOMException;
 import org.jdom2.Namespace;
 import org.jdom2.input.SAXBuilder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -39,6 +43,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import static com.bc.ceres.binio.TypeBuilder.*;
 
@@ -65,6 +71,7 @@ public class BinX {
     private boolean arrayVariableInlined;
     private Map<String, SimpleType> primitiveTypes;
     private Namespace namespace;
+    private DataFormatCache dataFormatCache;
     private static int anonymousCompoundId = 0;
 
     public BinX() {
@@ -178,12 +185,53 @@ public class BinX {
         this.arrayVariableInlined = arrayVariableInlined;
     }
 
+    public DataFormatCache getDataFormatCache() {
+        return dataFormatCache;
+    }
+
+    /**
+     * Sets the cache used by {@link #readDataFormat(URI, String)}. If a cache is set, formats are
+     * looked up by a hash of the schema content and of the settings of this object, including
+     * the current type definitions. Only if no entry is found, the schema is parsed and the result is cached.
+     *
+     * @param dataFormatCache The cache, or {@code null}.
+     * @since Ceres 0.14
+     */
+    public void setDataFormatCache(DataFormatCache dataFormatCache) {
+        this.dataFormatCache = dataFormatCache;
+    }
+
     public DataFormat readDataFormat(URI uri) throws BinXException, IOException {
         return readDataFormat(uri, uri.toString());
     }
 
     public DataFormat readDataFormat(URI uri, String formatName) throws BinXException, IOException {
-        DataFormat format = new DataFormat(parseDocument(uri));
+        if (dataFormatCache == null) {
+            return createDataFormat(parseDocument(uri, null), formatName);
+        }
+        final byte[] schema = readSchema(uri);
+        final String key = createCacheKey(schema, formatName);
+        if (key == null) {
+            return createDataFormat(parseDocument(uri, schema), formatName);
+        }
+        DataFormat format = dataFormatCache.get(key);
+        if (format != null) {
+            for (String name : format.getTypeDefNames()) {
+                definitions.put(name, format.getTypeDef(name));
+            }
+            return format;
+        }
+        format = createDataFormat(parseDocument(uri, schema), formatName);
+        try {
+            dataFormatCache.put(key, format);
+        } catch (IOException e) {
+            // the format cannot be cached, e.g. the cache directory is not writable
+        }
+        return format;
+    }
+
+    private DataFormat createDataFormat(CompoundType type, String formatName) {
+        DataFormat format = new DataFormat(type);
         format.setName(formatName);
         for (Map.Entry<String, Type> entry : definitions.entrySet()) {
             format.addTypeDef(entry.getKey(), entry.getValue());
@@ -191,11 +239,55 @@ public class BinX {
         return format;
     }
 
-    private CompoundType parseDocument(URI uri) throws IOException, BinXException {
+    /**
+     * @return The cache key, or {@code null} if the current type definitions cannot be cached.
+     */
+    private String createCacheKey(byte[] schema, String formatName) {
+        final StringBuilder settings = new StringBuilder();
+        settings.append(formatName).append('\n');
+        settings.append(new TreeMap<String, String>(parameters)).append('\n');
+        settings.append(new TreeMap<String, String>(varNameMap)).append('\n');
+        settings.append(new TreeSet<String>(inlinedStructs)).append('\n');
+        settings.append(elementCountPostfix).append('\n');
+        settings.append(singleDatasetStructInlined).append('\n');
+        settings.append(arrayVariableInlined).append('\n');
+        final DataFormat definitionsFormat = new DataFormat();
+        for (Map.Entry<String, Type> entry : definitions.entrySet()) {
+            definitionsFormat.addTypeDef(entry.getKey(), entry.getValue());
+        }
+        try {
+            return DataFormatCache.computeKey(schema,
+                                              settings.toString().getBytes("UTF-8"),
+                                              DataFormatCache.writeDataFormat(definitionsFormat));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static byte[] readSchema(URI uri) throws IOException {
+        final InputStream stream = uri.toURL().openStream();
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private CompoundType parseDocument(URI uri, byte[] schema) throws IOException, BinXException {
         SAXBuilder builder = new SAXBuilder();
         Document document;
         try {
-            document = builder.build(uri.toURL());
+            if (schema != null) {
+                document = builder.build(new ByteArrayInputStream(schema), uri.toString());
+            } else {
+                document = builder.build(uri.toURL());
+            }
         } catch (JDOMException e) {
             throw new BinXException(MessageFormat.format("Failed to read ''{0}''", uri), e);
         }
@@ -18,18 +18,24 @@ package com.bc.ceres.binio.expr;
 
 import com.bc.ceres.binio.CollectionData;
 import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
+
+import java.text.MessageFormat;
 
 // todo - allow for path syntax, e.g. "../../Bt_Data_Counter"
 
 public abstract class ReferenceExpr extends AbstractExpression {
-    private String name;
-    private int index;
+    private final String name;
+    private final int index;
+    private volatile Binding binding;
 
     public ReferenceExpr(String name) {
         this.name = name;
+        this.index = -1;
     }
 
     public ReferenceExpr(int index) {
+        this.name = null;
         this.index = index;
     }
 
@@ -44,10 +50,36 @@ public abstract class ReferenceExpr extends AbstractExpression {
         return true;
     }
 
+    /**
+     * Gets the index of the referenced member. Names are bound to member indexes once per compound type.
+     *
+     * @param parent The compound containing the referenced member.
+     * @return The member index.
+     */
     protected int getIndex(CollectionData parent) {
-        if (index == -1) {
-            index = ((CompoundData) parent).getMemberIndex(name);
+        if (name == null) {
+            return index;
+        }
+        final CompoundType compoundType = ((CompoundData) parent).getType();
+        Binding binding = this.binding;
+        if (binding == null || binding.compoundType != compoundType) {
+            binding = new Binding(compoundType, compoundType.getMemberIndex(name));
+            this.binding = binding;
+        }
+        if (binding.index == -1) {
+            throw new IllegalArgumentException(MessageFormat.format("''{0}'' is not a member of ''{1}''",
+                                                                    name, compoundType.getName()));
+        }
+        return binding.index;
+    }
+
+    private static final class Binding {
+        private final CompoundType compoundType;
+        private final int index;
+
+        private Binding(CompoundType compoundType, int index) {
+            this.compoundType = compoundType;
+            this.index = index;
         }
-        return index;
     }
-}
\ No newline at end of file
+}
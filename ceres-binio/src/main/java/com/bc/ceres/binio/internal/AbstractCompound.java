@@ -24,19 +24,28 @@ import com.bc.ceres.binio.DataContext;
 import com.bc.ceres.binio.SequenceData;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 
 abstract class AbstractCompound extends AbstractCollection implements CompoundInstance {
 
+    private static final long COUNT_NOT_EVALUATED = Long.MIN_VALUE;
+    private static final AtomicIntegerFieldUpdater<AbstractCompound> MODIFICATION_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(AbstractCompound.class, "modificationCount");
+
     private final CompoundType compoundType;
     private final long position;
-    private final MemberInstance[] members;
+    private final AtomicReferenceArray<MemberInstance> members;
+    private volatile AtomicLongArray counts;
+    private volatile int modificationCount;
 
     protected AbstractCompound(DataContext context, CollectionData parent, CompoundType compoundType, long position) {
         super(context, parent);
         this.compoundType = compoundType;
         this.position = position;
-        this.members = new MemberInstance[compoundType.getMemberCount()];
+        this.members = new AtomicReferenceArray<MemberInstance>(compoundType.getMemberCount());
     }
 
     @Override
@@ -67,11 +76,78 @@ abstract class AbstractCompound extends AbstractCollection implements CompoundIn
 
     protected MemberInstance getMemberInstance(int index) throws IOException {
         ensureSizeResolved(index - 1);
-        return members[index];
+        return members.get(index);
     }
 
     protected void setMemberInstance(int index, MemberInstance memberInstance) {
-        members[index] = memberInstance;
+        members.set(index, memberInstance);
+    }
+
+    /**
+     * Sets the member instance at the given index, unless another thread has already done so.
+     *
+     * @param index          The member index.
+     * @param memberInstance The new member instance.
+     * @return The member instance actually set.
+     */
+    protected MemberInstance installMemberInstance(int index, MemberInstance memberInstance) {
+        if (members.compareAndSet(index, null, memberInstance)) {
+            return memberInstance;
+        }
+        return members.get(index);
+    }
+
+    /**
+     * Gets the value of an integer member which is referenced as element count by variable sequences.
+     * The value is read once, subsequent calls return the memoized value until the member is set.
+     * No lock is held while the value is read, because reading may resolve other instances.
+     *
+     * @param index The member index.
+     * @return The member value.
+     * @throws IOException If an I/O error occurs.
+     */
+    int getCount(int index) throws IOException {
+        final AtomicLongArray counts = getCounts();
+        final long count = counts.get(index);
+        if (count != COUNT_NOT_EVALUATED) {
+            return (int) count;
+        }
+        final int modificationCount = this.modificationCount;
+        final int value = getInt(index);
+        if (counts.compareAndSet(index, COUNT_NOT_EVALUATED, value) && this.modificationCount != modificationCount) {
+            // a member has been set meanwhile, so the memoized value may be stale
+            counts.compareAndSet(index, value, COUNT_NOT_EVALUATED);
+        }
+        return value;
+    }
+
+    private AtomicLongArray getCounts() {
+        AtomicLongArray counts = this.counts;
+        if (counts == null) {
+            synchronized (this) {
+                counts = this.counts;
+                if (counts == null) {
+                    counts = new AtomicLongArray(members.length());
+                    for (int i = 0; i < counts.length(); i++) {
+                        counts.set(i, COUNT_NOT_EVALUATED);
+                    }
+                    this.counts = counts;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Called after a member has been set. The modification count is incremented even if no count
+     * has been memoized yet, because a concurrent {@link #getCount} may be about to memoize one.
+     */
+    private void invalidateCount(int index) {
+        MODIFICATION_COUNT.incrementAndGet(this);
+        final AtomicLongArray counts = this.counts;
+        if (counts != null) {
+            counts.set(index, COUNT_NOT_EVALUATED);
+        }
     }
 
     @Override
@@ -124,36 +200,42 @@ abstract class AbstractCompound extends AbstractCollection implements CompoundIn
     public void setByte(int index, byte value) throws IOException {
         final MemberInstance memberInstance = getMemberInstance(index);
         memberInstance.setByte(value);
+        invalidateCount(index);
     }
 
     @Override
     public void setShort(int index, short value) throws IOException {
         final MemberInstance memberInstance = getMemberInstance(index);
         memberInstance.setShort(value);
+        invalidateCount(index);
     }
 
     @Override
     public void setInt(int index, int value) throws IOException {
         final MemberInstance memberInstance = getMemberInstance(index);
         memberInstance.setInt(value);
+        invalidateCount(index);
     }
 
     @Override
     public void setLong(int index, long value) throws IOException {
         final MemberInstance memberInstance = getMemberInstance(index);
         memberInstance.setLong(value);
+        invalidateCount(index);
     }
 
     @Override
     public void setFloat(int index, float value) throws IOException {
         final MemberInstance memberInstance = getMemberInstance(index);
         memberInstance.setFloat(value);
+        invalidateCount(index);
     }
 
     @Override
     public void setDouble(int index, double value) throws IOException {
         final MemberInstance memberInstance = getMemberInstance(index);
         memberInstance.setDouble(value);
+        invalidateCount(index);
     }
 
     @Override
@@ -285,7 +367,8 @@ abstract class AbstractCompound extends AbstractCollection implements CompoundIn
 
     @Override
     public void flush() throws IOException {
-        for (MemberInstance member : members) {
+        for (int i = 0; i < members.length(); i++) {
+            final MemberInstance member = members.get(i);
             if (member != null) {
                 member.flush();
             }
@@ -51,6 +51,29 @@ abstract class AbstractSequence extends AbstractCollection implements SequenceIn
         return this;
     }
 
+    @Override
+    public SequenceData createSubSequence(int fromIndex, int toIndex) throws IOException {
+        resolveSize();
+        final int elementCount = getElementCount();
+        if (fromIndex < 0 || toIndex > elementCount || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException(MessageFormat.format("fromIndex = {0}, toIndex = {1}, elementCount = {2}",
+                                                                     fromIndex, toIndex, elementCount));
+        }
+        final Type elementType = getType().getElementType();
+        final long position;
+        if (elementType.isSizeKnown()) {
+            position = getPosition() + (long) fromIndex * elementType.getSize();
+        } else if (fromIndex < elementCount) {
+            final CollectionData element = elementType.isCompoundType() ? getCompound(fromIndex) : getSequence(fromIndex);
+            position = element.getPosition();
+        } else {
+            position = getPosition() + getSize();
+        }
+        return InstanceFactory.createSequence(getContext(), getParent(),
+                                              TypeBuilder.SEQUENCE(elementType, toIndex - fromIndex),
+                                              position, getContext().getFormat().getByteOrder());
+    }
+
     SequenceType resolveSequenceType() throws IOException {
         SequenceType unresolvedSequenceType = getType();
         if (unresolvedSequenceType.isSizeKnown()) {
@@ -17,9 +17,12 @@
 package com.bc.ceres.binio.internal;
 
 import com.bc.ceres.binio.CollectionData;
+import com.bc.ceres.binio.CompoundType;
 import com.bc.ceres.binio.DataAccessException;
 import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.RecordCursor;
 import com.bc.ceres.binio.SequenceType;
+import com.bc.ceres.binio.Type;
 
 import java.io.IOException;
 
@@ -38,6 +41,16 @@ abstract class AbstractSequenceOfCollections extends AbstractSequence {
         return position;
     }
 
+    @Override
+    public RecordCursor cursor() throws IOException {
+        resolveSize();
+        final Type elementType = getType().getElementType();
+        if (!elementType.isCompoundType() || !elementType.isSizeKnown()) {
+            throw new DataAccessException(getTypeErrorMsg());
+        }
+        return new FixRecordCursor(getContext(), (CompoundType) elementType, getPosition(), getElementCount());
+    }
+
     @Override
     public byte getByte(int index) {
         throw new DataAccessException();
@@ -97,4 +110,64 @@ abstract class AbstractSequenceOfCollections extends AbstractSequence {
     public void setDouble(int index, double value) throws IOException {
         throw new DataAccessException();
     }
+
+    @Override
+    public void getBytes(int index, byte[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void setBytes(int index, byte[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void getShorts(int index, short[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void setShorts(int index, short[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void getInts(int index, int[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void setInts(int index, int[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void getLongs(int index, long[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void setLongs(int index, long[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void getFloats(int index, float[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void setFloats(int index, float[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void getDoubles(int index, double[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
+
+    @Override
+    public void setDoubles(int index, double[] values, int offset, int length) throws IOException {
+        throw new DataAccessException(getTypeErrorMsg());
+    }
 }
\ No newline at end of file
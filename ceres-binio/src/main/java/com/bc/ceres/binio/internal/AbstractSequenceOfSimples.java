@@ -19,17 +19,22 @@ package com.bc.ceres.binio.internal;
 import com.bc.ceres.binio.CollectionData;
 import com.bc.ceres.binio.DataAccessException;
 import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOStatistics;
+import com.bc.ceres.binio.RecordCursor;
 import com.bc.ceres.binio.SequenceType;
 
 import java.io.IOException;
+import java.text.MessageFormat;
 
 abstract class AbstractSequenceOfSimples extends AbstractSequence {
     private final int elementSize;
-    private DataAccessor dataAccessor;
+    private final DataAccessor dataAccessor;
+    private boolean accessed;
 
     protected AbstractSequenceOfSimples(DataContext context, CollectionData parent, SequenceType sequenceType) {
         super(context, parent, sequenceType);
         this.elementSize = sequenceType.getElementType().getSize();
+        this.dataAccessor = DataAccessor.getInstance(sequenceType.getElementType(), context.getFormat().getByteOrder());
     }
 
     protected abstract Segment getSegment();
@@ -39,79 +44,162 @@ abstract class AbstractSequenceOfSimples extends AbstractSequence {
     @Override
     public byte getByte(int index) throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getByte(getSegment().getData(), getSegmentOffset(index));
+        return getSegment().getByte(dataAccessor, getSegmentOffset(index));
     }
 
     @Override
     public short getShort(int index) throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getShort(getSegment().getData(), getSegmentOffset(index));
+        return getSegment().getShort(dataAccessor, getSegmentOffset(index));
     }
 
     @Override
     public int getInt(int index) throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getInt(getSegment().getData(), getSegmentOffset(index));
+        return getSegment().getInt(dataAccessor, getSegmentOffset(index));
     }
 
     @Override
     public long getLong(int index) throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getLong(getSegment().getData(), getSegmentOffset(index));
+        return getSegment().getLong(dataAccessor, getSegmentOffset(index));
     }
 
     @Override
     public float getFloat(int index) throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getFloat(getSegment().getData(), getSegmentOffset(index));
+        return getSegment().getFloat(dataAccessor, getSegmentOffset(index));
     }
 
     @Override
     public double getDouble(int index) throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getDouble(getSegment().getData(), getSegmentOffset(index));
+        return getSegment().getDouble(dataAccessor, getSegmentOffset(index));
     }
 
     @Override
     public void setByte(int index, byte value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setByte(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        getSegment().setByte(dataAccessor, getSegmentOffset(index), value);
     }
 
     @Override
     public void setShort(int index, short value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setShort(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        getSegment().setShort(dataAccessor, getSegmentOffset(index), value);
     }
 
     @Override
     public void setInt(int index, int value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setInt(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        getSegment().setInt(dataAccessor, getSegmentOffset(index), value);
     }
 
     @Override
     public void setLong(int index, long value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setLong(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        getSegment().setLong(dataAccessor, getSegmentOffset(index), value);
     }
 
     @Override
     public void setFloat(int index, float value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setFloat(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        getSegment().setFloat(dataAccessor, getSegmentOffset(index), value);
     }
 
     @Override
     public void setDouble(int index, double value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setDouble(getSegment().getData(), getSegmentOffset(index), value);
-        getSegment().setDirty(true);
+        getSegment().setDouble(dataAccessor, getSegmentOffset(index), value);
+    }
+
+    @Override
+    public void getBytes(int index, byte[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().getBytes(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void getShorts(int index, short[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().getShorts(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void getInts(int index, int[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().getInts(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void getLongs(int index, long[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().getLongs(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void getFloats(int index, float[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().getFloats(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void getDoubles(int index, double[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().getDoubles(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void setBytes(int index, byte[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().setBytes(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void setShorts(int index, short[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().setShorts(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void setInts(int index, int[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().setInts(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void setLongs(int index, long[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().setLongs(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void setFloats(int index, float[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().setFloats(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public void setDoubles(int index, double[] values, int offset, int length) throws IOException {
+        ensureDataAccessible();
+        checkRange(index, length);
+        getSegment().setDoubles(dataAccessor, getSegmentOffset(index), values, offset, length);
+    }
+
+    @Override
+    public RecordCursor cursor() {
+        throw new DataAccessException(getTypeErrorMsg());
     }
 
     @Override
@@ -128,9 +216,21 @@ abstract class AbstractSequenceOfSimples extends AbstractSequence {
         return getSegmentOffset() + index * elementSize;
     }
 
+    private void checkRange(int index, int length) {
+        if (index < 0 || length < 0 || index + length > getElementCount()) {
+            throw new IndexOutOfBoundsException(MessageFormat.format("index = {0}, length = {1}, elementCount = {2}",
+                                                                     index, length, getElementCount()));
+        }
+    }
+
     private void ensureDataAccessible() throws IOException {
-        if (dataAccessor == null) {
-            dataAccessor = DataAccessor.getInstance(getType().getElementType(), getContext().getFormat().getByteOrder());
+        if (!accessed) {
+            // a racy check, it is only used for statistics
+            accessed = true;
+            final IOStatistics statistics = DataContextImpl.statisticsOf(getContext());
+            if (statistics != null && isDataAccessible()) {
+                statistics.recordSegmentReuse();
+            }
         }
         if (!isDataAccessible()) {
             if (!isSizeResolved()) {
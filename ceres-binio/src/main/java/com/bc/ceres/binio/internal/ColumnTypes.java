@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.internal;
+
+import com.bc.ceres.binio.SimpleType;
+
+import java.lang.reflect.Array;
+
+/**
+ * The column arrays used by {@link com.bc.ceres.binio.Projection}s and
+ * {@link com.bc.ceres.binio.CompoundDecoder}s.
+ * The element type of a column is the signed Java type of the member's size, unsigned values
+ * are stored with their raw bits.
+ *
+ * @since Ceres 0.14
+ */
+public final class ColumnTypes {
+
+    private ColumnTypes() {
+    }
+
+    /**
+     * @param type A simple type.
+     * @return The element type of a column of the given simple type.
+     */
+    public static Class<?> getColumnType(SimpleType type) {
+        if (type == SimpleType.FLOAT) {
+            return float.class;
+        } else if (type == SimpleType.DOUBLE) {
+            return double.class;
+        }
+        switch (type.getSize()) {
+            case 1:
+                return byte.class;
+            case 2:
+                return short.class;
+            case 4:
+                return int.class;
+            default:
+                return long.class;
+        }
+    }
+
+    /**
+     * @param type   A simple type.
+     * @param length The number of elements.
+     * @return A new column of the given simple type.
+     */
+    public static Object createColumn(SimpleType type, int length) {
+        return Array.newInstance(getColumnType(type), length);
+    }
+}
@@ -20,14 +20,17 @@ import com.bc.ceres.binio.SimpleType;
 import com.bc.ceres.binio.Type;
 import com.bc.ceres.binio.util.ByteArrayCodec;
 
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 abstract class DataAccessor {
 
     protected final ByteArrayCodec codec;
+    protected final int elementSize;
 
-    protected DataAccessor(ByteOrder byteOrder) {
+    protected DataAccessor(ByteOrder byteOrder, int elementSize) {
         this.codec = ByteArrayCodec.getInstance(byteOrder);
+        this.elementSize = elementSize;
     }
 
     public final ByteOrder getByteOrder() {
@@ -46,6 +49,18 @@ abstract class DataAccessor {
 
     public abstract double getDouble(byte[] array, int position);
 
+    public abstract byte getByte(ByteBuffer buffer, int position);
+
+    public abstract short getShort(ByteBuffer buffer, int position);
+
+    public abstract int getInt(ByteBuffer buffer, int position);
+
+    public abstract long getLong(ByteBuffer buffer, int position);
+
+    public abstract float getFloat(ByteBuffer buffer, int position);
+
+    public abstract double getDouble(ByteBuffer buffer, int position);
+
     public abstract void setByte(byte[] array, int position, byte value);
 
     public abstract void setShort(byte[] array, int position, short value);
@@ -58,7 +73,175 @@ abstract class DataAccessor {
 
     public abstract void setDouble(byte[] array, int position, double value);
 
+    /////////////////////////////////////////////////////////////////////////
+    // Bulk data access
+    //
+    // The default implementations convert element by element. Accessors whose element type
+    // matches the array type override them in order to use the array codecs of ByteArrayCodec
+    // or the typed views of ByteBuffer.
+
+    public void getBytes(byte[] array, int position, byte[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getByte(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getShorts(byte[] array, int position, short[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getShort(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getInts(byte[] array, int position, int[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getInt(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getLongs(byte[] array, int position, long[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getLong(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getFloats(byte[] array, int position, float[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getFloat(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getDoubles(byte[] array, int position, double[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getDouble(array, position);
+            position += elementSize;
+        }
+    }
+
+    public void getBytes(ByteBuffer buffer, int position, byte[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getByte(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getShorts(ByteBuffer buffer, int position, short[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getShort(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getInts(ByteBuffer buffer, int position, int[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getInt(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getLongs(ByteBuffer buffer, int position, long[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getLong(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getFloats(ByteBuffer buffer, int position, float[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getFloat(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void getDoubles(ByteBuffer buffer, int position, double[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            values[offset + i] = getDouble(buffer, position);
+            position += elementSize;
+        }
+    }
+
+    public void setBytes(byte[] array, int position, byte[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setByte(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setShorts(byte[] array, int position, short[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setShort(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setInts(byte[] array, int position, int[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setInt(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setLongs(byte[] array, int position, long[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setLong(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setFloats(byte[] array, int position, float[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setFloat(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    public void setDoubles(byte[] array, int position, double[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            setDouble(array, position, values[offset + i]);
+            position += elementSize;
+        }
+    }
+
+    private static final SimpleType[] TYPES = {
+            SimpleType.BYTE, SimpleType.UBYTE,
+            SimpleType.SHORT, SimpleType.USHORT,
+            SimpleType.INT, SimpleType.UINT,
+            SimpleType.LONG, SimpleType.ULONG,
+            SimpleType.FLOAT, SimpleType.DOUBLE,
+    };
+    private static final DataAccessor[] BIG_ENDIAN_INSTANCES = createInstances(ByteOrder.BIG_ENDIAN);
+    private static final DataAccessor[] LITTLE_ENDIAN_INSTANCES = createInstances(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Gets the accessor for the given simple type and byte order. Accessors are immutable and shared.
+     *
+     * @param type      The simple type.
+     * @param byteOrder The byte order.
+     * @return The accessor.
+     */
     public static DataAccessor getInstance(Type type, ByteOrder byteOrder) {
+        final DataAccessor[] instances = byteOrder == ByteOrder.LITTLE_ENDIAN ? LITTLE_ENDIAN_INSTANCES : BIG_ENDIAN_INSTANCES;
+        for (int i = 0; i < TYPES.length; i++) {
+            if (type == TYPES[i]) {
+                return instances[i];
+            }
+        }
+        throw new IllegalArgumentException("type: DataAccessor not implemented for " + type);
+    }
+
+    private static DataAccessor[] createInstances(ByteOrder byteOrder) {
+        final DataAccessor[] instances = new DataAccessor[TYPES.length];
+        for (int i = 0; i < TYPES.length; i++) {
+            instances[i] = createInstance(TYPES[i], byteOrder);
+        }
+        return instances;
+    }
+
+    private static DataAccessor createInstance(Type type, ByteOrder byteOrder) {
         if (type == SimpleType.BYTE) {
             return new Byte(byteOrder);
         } else if (type == SimpleType.UBYTE) {
@@ -86,7 +269,7 @@ abstract class DataAccessor {
 
     static final class Byte extends DataAccessor {
         Byte(ByteOrder byteOrder) {
-            super(byteOrder);
+            super(byteOrder, 1);
         }
 
         @Override
@@ -149,11 +332,58 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setByte(array, position, (byte) value);
         }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return buffer.get(position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getByte(buffer, position);
+        }
+
+        @Override
+        public void getBytes(byte[] array, int position, byte[] values, int offset, int length) {
+            codec.getBytes(array, position, values, offset, length);
+        }
+
+        @Override
+        public void getBytes(ByteBuffer buffer, int position, byte[] values, int offset, int length) {
+            final ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            view.get(values, offset, length);
+        }
+
+        @Override
+        public void setBytes(byte[] array, int position, byte[] values, int offset, int length) {
+            codec.setBytes(array, position, values, offset, length);
+        }
     }
 
     static final class UByte extends DataAccessor {
         UByte(ByteOrder byteOrder) {
-            super(byteOrder);
+            super(byteOrder, 1);
         }
 
         @Override
@@ -215,11 +445,58 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setByte(array, position, (byte) value);
         }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return buffer.get(position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getInt(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return getByte(buffer, position) & 0xFF;
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public void getBytes(byte[] array, int position, byte[] values, int offset, int length) {
+            codec.getBytes(array, position, values, offset, length);
+        }
+
+        @Override
+        public void getBytes(ByteBuffer buffer, int position, byte[] values, int offset, int length) {
+            final ByteBuffer view = buffer.duplicate();
+            view.position(position);
+            view.get(values, offset, length);
+        }
+
+        @Override
+        public void setBytes(byte[] array, int position, byte[] values, int offset, int length) {
+            codec.setBytes(array, position, values, offset, length);
+        }
     }
 
     static final class Short extends DataAccessor {
         Short(ByteOrder byteOrder) {
-            super(byteOrder);
+            super(byteOrder, 2);
         }
 
         @Override
@@ -281,11 +558,58 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setShort(array, position, (short) value);
         }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getShort(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return buffer.getShort(position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return getShort(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getShort(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getShort(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getShort(buffer, position);
+        }
+
+        @Override
+        public void getShorts(byte[] array, int position, short[] values, int offset, int length) {
+            codec.getShorts(array, position, values, offset, length);
+        }
+
+        @Override
+        public void getShorts(ByteBuffer buffer, int position, short[] values, int offset, int length) {
+            final ByteBuffer view = buffer.duplicate().order(buffer.order());
+            view.position(position);
+            view.asShortBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setShorts(byte[] array, int position, short[] values, int offset, int length) {
+            codec.setShorts(array, position, values, offset, length);
+        }
     }
 
     static final class UShort extends DataAccessor {
         UShort(ByteOrder byteOrder) {
-            super(byteOrder);
+            super(byteOrder, 2);
         }
 
         @Override
@@ -347,11 +671,58 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setShort(array, position, (short) value);
         }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getInt(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return buffer.getShort(position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return getShort(buffer, position) & 0xFFFF;
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public void getShorts(byte[] array, int position, short[] values, int offset, int length) {
+            codec.getShorts(array, position, values, offset, length);
+        }
+
+        @Override
+        public void getShorts(ByteBuffer buffer, int position, short[] values, int offset, int length) {
+            final ByteBuffer view = buffer.duplicate().order(buffer.order());
+            view.position(position);
+            view.asShortBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setShorts(byte[] array, int position, short[] values, int offset, int length) {
+            codec.setShorts(array, position, values, offset, length);
+        }
     }
 
     static final class Int extends DataAccessor {
         Int(ByteOrder byteOrder) {
-            super(byteOrder);
+            super(byteOrder, 4);
         }
 
         @Override
@@ -413,11 +784,58 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setInt(array, position, (int) value);
         }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getInt(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getInt(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return buffer.getInt(position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getInt(buffer, position);
+        }
+
+        @Override
+        public void getInts(byte[] array, int position, int[] values, int offset, int length) {
+            codec.getInts(array, position, values, offset, length);
+        }
+
+        @Override
+        public void getInts(ByteBuffer buffer, int position, int[] values, int offset, int length) {
+            final ByteBuffer view = buffer.duplicate().order(buffer.order());
+            view.position(position);
+            view.asIntBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setInts(byte[] array, int position, int[] values, int offset, int length) {
+            codec.setInts(array, position, values, offset, length);
+        }
     }
 
     static final class UInt extends DataAccessor {
         UInt(ByteOrder byteOrder) {
-            super(byteOrder);
+            super(byteOrder, 4);
         }
 
         @Override
@@ -479,11 +897,58 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setInt(array, position, (int) value);
         }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getLong(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getLong(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return buffer.getInt(position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return getInt(buffer, position) & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getLong(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getLong(buffer, position);
+        }
+
+        @Override
+        public void getInts(byte[] array, int position, int[] values, int offset, int length) {
+            codec.getInts(array, position, values, offset, length);
+        }
+
+        @Override
+        public void getInts(ByteBuffer buffer, int position, int[] values, int offset, int length) {
+            final ByteBuffer view = buffer.duplicate().order(buffer.order());
+            view.position(position);
+            view.asIntBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setInts(byte[] array, int position, int[] values, int offset, int length) {
+            codec.setInts(array, position, values, offset, length);
+        }
     }
 
     static final class Long extends DataAccessor {
         Long(ByteOrder byteOrder) {
-            super(byteOrder);
+            super(byteOrder, 8);
         }
 
         @Override
@@ -545,11 +1010,58 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setLong(array, position, (long) value);
         }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getLong(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getLong(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return (int) getLong(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return buffer.getLong(position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return getLong(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getLong(buffer, position);
+        }
+
+        @Override
+        public void getLongs(byte[] array, int position, long[] values, int offset, int length) {
+            codec.getLongs(array, position, values, offset, length);
+        }
+
+        @Override
+        public void getLongs(ByteBuffer buffer, int position, long[] values, int offset, int length) {
+            final ByteBuffer view = buffer.duplicate().order(buffer.order());
+            view.position(position);
+            view.asLongBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setLongs(byte[] array, int position, long[] values, int offset, int length) {
+            codec.setLongs(array, position, values, offset, length);
+        }
     }
 
     static final class Float extends DataAccessor {
         Float(ByteOrder byteOrder) {
-            super(byteOrder);
+            super(byteOrder, 4);
         }
 
         @Override
@@ -611,11 +1123,58 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             setFloat(array, position, (float) value);
         }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getFloat(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getFloat(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return (int) getFloat(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return (long) getFloat(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return buffer.getFloat(position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return getFloat(buffer, position);
+        }
+
+        @Override
+        public void getFloats(byte[] array, int position, float[] values, int offset, int length) {
+            codec.getFloats(array, position, values, offset, length);
+        }
+
+        @Override
+        public void getFloats(ByteBuffer buffer, int position, float[] values, int offset, int length) {
+            final ByteBuffer view = buffer.duplicate().order(buffer.order());
+            view.position(position);
+            view.asFloatBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setFloats(byte[] array, int position, float[] values, int offset, int length) {
+            codec.setFloats(array, position, values, offset, length);
+        }
     }
 
     static final class Double extends DataAccessor {
         Double(ByteOrder byteOrder) {
-            super(byteOrder);
+            super(byteOrder, 8);
         }
 
         @Override
@@ -677,5 +1236,52 @@ abstract class DataAccessor {
         public void setDouble(byte[] array, int position, double value) {
             codec.setDouble(array, position, value);
         }
+
+        @Override
+        public byte getByte(ByteBuffer buffer, int position) {
+            return (byte) getDouble(buffer, position);
+        }
+
+        @Override
+        public short getShort(ByteBuffer buffer, int position) {
+            return (short) getDouble(buffer, position);
+        }
+
+        @Override
+        public int getInt(ByteBuffer buffer, int position) {
+            return (int) getDouble(buffer, position);
+        }
+
+        @Override
+        public long getLong(ByteBuffer buffer, int position) {
+            return (long) getDouble(buffer, position);
+        }
+
+        @Override
+        public float getFloat(ByteBuffer buffer, int position) {
+            return (float) getDouble(buffer, position);
+        }
+
+        @Override
+        public double getDouble(ByteBuffer buffer, int position) {
+            return buffer.getDouble(position);
+        }
+
+        @Override
+        public void getDoubles(byte[] array, int position, double[] values, int offset, int length) {
+            codec.getDoubles(array, position, values, offset, length);
+        }
+
+        @Override
+        public void getDoubles(ByteBuffer buffer, int position, double[] values, int offset, int length) {
+            final ByteBuffer view = buffer.duplicate().order(buffer.order());
+            view.position(position);
+            view.asDoubleBuffer().get(values, offset, length);
+        }
+
+        @Override
+        public void setDoubles(byte[] array, int position, double[] values, int offset, int length) {
+            codec.setDoubles(array, position, values, offset, length);
+        }
     }
 }
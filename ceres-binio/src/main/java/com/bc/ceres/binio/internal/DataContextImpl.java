@@ -18,16 +18,23 @@ package com.bc.ceres.binio.internal;
 
 import com.bc.ceres.binio.*;
 
+import java.io.Flushable;
 import java.io.IOException;
 
-public class DataContextImpl implements DataContext {
+public class DataContextImpl implements ExtendedDataContext {
     private final DataFormat format;
     private final IOHandler handler;
+    private final SegmentCache segmentCache;
+    private final IOStatistics statistics;
+    private volatile OffsetIndex offsetIndex;
     private volatile CompoundData data;
+    private volatile boolean concurrent;
 
     public DataContextImpl(DataFormat format, IOHandler handler) {
         this.format = format;
         this.handler = handler;
+        this.segmentCache = new SegmentCache(SegmentCache.getDefaultCapacity());
+        this.statistics = new IOStatistics();
     }
 
     @Override
@@ -40,6 +47,57 @@ public class DataContextImpl implements DataContext {
         return handler;
     }
 
+    @Override
+    public long getSegmentCacheCapacity() {
+        return segmentCache.getCapacity();
+    }
+
+    @Override
+    public void setSegmentCacheCapacity(long capacity) throws IOException {
+        segmentCache.setCapacity(this, capacity);
+    }
+
+    @Override
+    public OffsetIndex getOffsetIndex() {
+        return offsetIndex;
+    }
+
+    @Override
+    public void setOffsetIndex(OffsetIndex offsetIndex) {
+        this.offsetIndex = offsetIndex;
+    }
+
+    @Override
+    public IOStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    @Override
+    public void setConcurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+    }
+
+    SegmentCache getSegmentCache() {
+        return segmentCache;
+    }
+
+    static OffsetIndex offsetIndexOf(DataContext context) {
+        return context instanceof ExtendedDataContext ? ((ExtendedDataContext) context).getOffsetIndex() : null;
+    }
+
+    static IOStatistics statisticsOf(DataContext context) {
+        return context instanceof ExtendedDataContext ? ((ExtendedDataContext) context).getStatistics() : null;
+    }
+
+    static boolean isConcurrent(DataContext context) {
+        return context instanceof ExtendedDataContext && ((ExtendedDataContext) context).isConcurrent();
+    }
+
     @Override
     public CompoundData getData() {
         if (data == null ) {
@@ -67,6 +125,11 @@ public class DataContextImpl implements DataContext {
         return InstanceFactory.createCompound(this, null, type, position, format.getByteOrder());
     }
 
+    @Override
+    public Projection createProjection(CompoundType type, String... memberNames) {
+        return new ProjectionImpl(this, type, memberNames);
+    }
+
     @Override
     public CompoundData getData(long position) {
         return createData(format.getType(), position);
@@ -86,5 +149,17 @@ public class DataContextImpl implements DataContext {
                 // ignore
             }
         }
+        try {
+            segmentCache.clear(this);
+        } catch (IOException e) {
+            // ignore
+        }
+        if (handler instanceof Flushable) {
+            try {
+                ((Flushable) handler).flush();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.internal;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataAccessException;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.RecordCursor;
+import com.bc.ceres.binio.SimpleType;
+import com.bc.ceres.binio.Type;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+
+/**
+ * A {@link RecordCursor} over a sequence of compounds of known size.
+ * Records are read in chunks of up to {@link Segment#getSegmentSizeLimit()} bytes.
+ */
+final class FixRecordCursor implements RecordCursor {
+    private final DataContext context;
+    private final CompoundType type;
+    private final long position;
+    private final int recordCount;
+    private final int recordSize;
+    private final int[] memberOffsets;
+    private final DataAccessor[] memberAccessors;
+    private final byte[] chunk;
+    private byte[] tailChunk;
+
+    private byte[] data;
+    private int recordIndex;
+    private int chunkStartIndex;
+    private int chunkRecordCount;
+    private int recordOffset;
+
+    FixRecordCursor(DataContext context, CompoundType type, long position, int recordCount) {
+        if (!type.isSizeKnown()) {
+            throw new IllegalArgumentException("type");
+        }
+        this.context = context;
+        this.type = type;
+        this.position = position;
+        this.recordCount = recordCount;
+        this.recordSize = type.getSize();
+        final int memberCount = type.getMemberCount();
+        this.memberOffsets = new int[memberCount];
+        this.memberAccessors = new DataAccessor[memberCount];
+        int memberOffset = 0;
+        for (int i = 0; i < memberCount; i++) {
+            final Type memberType = type.getMemberType(i);
+            memberOffsets[i] = memberOffset;
+            if (memberType instanceof SimpleType) {
+                memberAccessors[i] = DataAccessor.getInstance(memberType, context.getFormat().getByteOrder());
+            }
+            memberOffset += memberType.getSize();
+        }
+        final long chunkRecords = Math.max(1L, Segment.getSegmentSizeLimit() / Math.max(1, recordSize));
+        this.chunk = new byte[(int) Math.min(chunkRecords, Math.max(1, recordCount)) * recordSize];
+        this.recordIndex = -1;
+        this.chunkStartIndex = 0;
+        this.chunkRecordCount = 0;
+    }
+
+    @Override
+    public CompoundType getType() {
+        return type;
+    }
+
+    @Override
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public int getRecordIndex() {
+        return recordIndex;
+    }
+
+    @Override
+    public long getPosition() {
+        return position + (long) recordIndex * recordSize;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (recordIndex + 1 >= recordCount) {
+            recordIndex = recordCount;
+            return false;
+        }
+        recordIndex++;
+        if (recordIndex >= chunkStartIndex + chunkRecordCount) {
+            readChunk(recordIndex);
+        }
+        recordOffset = (recordIndex - chunkStartIndex) * recordSize;
+        return true;
+    }
+
+    @Override
+    public int getMemberIndex(String name) {
+        return type.getMemberIndex(name);
+    }
+
+    @Override
+    public byte getByte(int memberIndex) {
+        return getAccessor(memberIndex).getByte(data, recordOffset + memberOffsets[memberIndex]);
+    }
+
+    @Override
+    public int getUByte(int memberIndex) {
+        return getByte(memberIndex) & 0xFF;
+    }
+
+    @Override
+    public short getShort(int memberIndex) {
+        return getAccessor(memberIndex).getShort(data, recordOffset + memberOffsets[memberIndex]);
+    }
+
+    @Override
+    public int getUShort(int memberIndex) {
+        return getShort(memberIndex) & 0xFFFF;
+    }
+
+    @Override
+    public int getInt(int memberIndex) {
+        return getAccessor(memberIndex).getInt(data, recordOffset + memberOffsets[memberIndex]);
+    }
+
+    @Override
+    public long getUInt(int memberIndex) {
+        return getInt(memberIndex) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public long getLong(int memberIndex) {
+        return getAccessor(memberIndex).getLong(data, recordOffset + memberOffsets[memberIndex]);
+    }
+
+    @Override
+    public float getFloat(int memberIndex) {
+        return getAccessor(memberIndex).getFloat(data, recordOffset + memberOffsets[memberIndex]);
+    }
+
+    @Override
+    public double getDouble(int memberIndex) {
+        return getAccessor(memberIndex).getDouble(data, recordOffset + memberOffsets[memberIndex]);
+    }
+
+    private DataAccessor getAccessor(int memberIndex) {
+        final DataAccessor accessor = memberAccessors[memberIndex];
+        if (accessor == null) {
+            throw new DataAccessException(MessageFormat.format("Illegal data access, member ''{0}'' is not of a simple type",
+                                                               type.getMemberName(memberIndex)));
+        }
+        if (recordIndex < 0 || recordIndex >= recordCount) {
+            throw new DataAccessException("Cursor is not positioned on a record");
+        }
+        return accessor;
+    }
+
+    private void readChunk(int startIndex) throws IOException {
+        final int maxChunkRecords = recordSize > 0 ? chunk.length / recordSize : recordCount;
+        final int n = Math.min(maxChunkRecords, recordCount - startIndex);
+        if (n == maxChunkRecords) {
+            data = chunk;
+        } else {
+            // never read beyond the end of the sequence, some handlers report EOF
+            if (tailChunk == null || tailChunk.length != n * recordSize) {
+                tailChunk = new byte[n * recordSize];
+            }
+            data = tailChunk;
+        }
+        context.getHandler().read(context, data, position + (long) startIndex * recordSize);
+        chunkStartIndex = startIndex;
+        chunkRecordCount = n;
+    }
+}
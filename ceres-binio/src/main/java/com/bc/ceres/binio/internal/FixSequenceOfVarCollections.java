@@ -25,11 +25,11 @@ import java.util.Arrays;
 final class FixSequenceOfVarCollections extends AbstractSequenceOfCollections {
     private final Type unresolvedElementType;
     private long[] elementOffsets;
-    private int maxResolvedElementIndex;
+    private volatile int maxResolvedElementIndex;
     private CollectionInstance maxResolvedElementInstance;
     private int lastAccessedElementIndex;
     private CollectionInstance lastAccessedElementInstance;
-    private long size;
+    private volatile long size;
 
     FixSequenceOfVarCollections(DataContext context, CollectionData parent, SequenceType sequenceType, long position) {
         super(context, parent, sequenceType, position);
@@ -40,6 +40,17 @@ final class FixSequenceOfVarCollections extends AbstractSequenceOfCollections {
         maxResolvedElementIndex = -1;
         lastAccessedElementIndex = -1;
         size = -1L;
+
+        final OffsetIndex offsetIndex = DataContextImpl.offsetIndexOf(context);
+        if (offsetIndex != null) {
+            final long[] indexedOffsets = offsetIndex.get(sequenceType, position);
+            final int elementCount = sequenceType.getElementCount();
+            if (indexedOffsets != null && indexedOffsets.length == elementCount + 1 && indexedOffsets[0] == position) {
+                elementOffsets = indexedOffsets;
+                maxResolvedElementIndex = elementCount - 1;
+                size = indexedOffsets[elementCount] - position;
+            }
+        }
     }
 
     @Override
@@ -62,6 +73,14 @@ final class FixSequenceOfVarCollections extends AbstractSequenceOfCollections {
         if (isSizeResolved(index)) {
             return;
         }
+        resolveSizeSync(index);
+    }
+
+    // guards the element offsets, which are resolved in order
+    private synchronized void resolveSizeSync(int index) throws IOException {
+        if (isSizeResolved(index)) {
+            return;
+        }
 
         ensureElementOffsetsCreated();
 
@@ -81,6 +100,10 @@ final class FixSequenceOfVarCollections extends AbstractSequenceOfCollections {
         }
         if (index == getElementCount() - 1) {
             size = elementOffsets[getElementCount()] - elementOffsets[0];
+            final OffsetIndex offsetIndex = DataContextImpl.offsetIndexOf(getContext());
+            if (offsetIndex != null) {
+                offsetIndex.put(getType(), getPosition(), elementOffsets);
+            }
         }
     }
 
@@ -117,7 +140,7 @@ final class FixSequenceOfVarCollections extends AbstractSequenceOfCollections {
             return lastAccessedElementInstance;
         }
         CollectionInstance elementInstance;
-        if (index == maxResolvedElementIndex) {
+        if (index == maxResolvedElementIndex && maxResolvedElementInstance != null) {
             elementInstance = maxResolvedElementInstance;
         } else {
             elementInstance = createElementInstance(elementOffsets[index]);
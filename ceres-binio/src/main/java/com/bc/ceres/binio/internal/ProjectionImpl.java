@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.internal;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataAccessException;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.Projection;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.SimpleType;
+import com.bc.ceres.binio.Type;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A {@link Projection} of a compound of known size.
+ * The byte ranges of the projected members are visited in stream order, subsequent ranges
+ * are coalesced as long as the gap between them does not exceed the gap limit and the
+ * coalesced range does not exceed {@link Segment#getSegmentSizeLimit()} bytes.
+ */
+final class ProjectionImpl implements Projection {
+    static final int DEFAULT_GAP_LIMIT = 64;
+
+    private final DataContext context;
+    private final CompoundType type;
+    private final String[] memberNames;
+    private final SimpleType[] memberTypes;
+    private final DataAccessor[] memberAccessors;
+    private final int[] memberOffsets;
+    private final int[] memberSizes;
+    private final Integer[] rangeOrder;
+    private volatile int gapLimit;
+
+    ProjectionImpl(DataContext context, CompoundType type, String... memberNames) {
+        if (!type.isSizeKnown()) {
+            throw new IllegalArgumentException("type");
+        }
+        this.context = context;
+        this.type = type;
+        this.memberNames = memberNames.clone();
+        final int columnCount = memberNames.length;
+        this.memberTypes = new SimpleType[columnCount];
+        this.memberAccessors = new DataAccessor[columnCount];
+        this.memberOffsets = new int[columnCount];
+        this.memberSizes = new int[columnCount];
+        this.rangeOrder = new Integer[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            final int memberIndex = type.getMemberIndex(memberNames[i]);
+            if (memberIndex < 0) {
+                throw new IllegalArgumentException(MessageFormat.format("''{0}'' is not a member of ''{1}''",
+                                                                        memberNames[i], type.getName()));
+            }
+            final Type memberType = type.getMemberType(memberIndex);
+            if (!(memberType instanceof SimpleType)) {
+                throw new IllegalArgumentException(MessageFormat.format("Member ''{0}'' is not of a simple type",
+                                                                        memberNames[i]));
+            }
+            int memberOffset = 0;
+            for (int j = 0; j < memberIndex; j++) {
+                memberOffset += type.getMemberType(j).getSize();
+            }
+            memberTypes[i] = (SimpleType) memberType;
+            memberAccessors[i] = DataAccessor.getInstance(memberType, context.getFormat().getByteOrder());
+            memberOffsets[i] = memberOffset;
+            memberSizes[i] = memberType.getSize();
+            rangeOrder[i] = i;
+        }
+        Arrays.sort(rangeOrder, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return memberOffsets[i1] - memberOffsets[i2];
+            }
+        });
+        this.gapLimit = DEFAULT_GAP_LIMIT;
+    }
+
+    @Override
+    public CompoundType getType() {
+        return type;
+    }
+
+    @Override
+    public String[] getMemberNames() {
+        return memberNames.clone();
+    }
+
+    @Override
+    public int getGapLimit() {
+        return gapLimit;
+    }
+
+    @Override
+    public void setGapLimit(int gapLimit) {
+        if (gapLimit < 0) {
+            throw new IllegalArgumentException("gapLimit");
+        }
+        this.gapLimit = gapLimit;
+    }
+
+    @Override
+    public Object[] createColumns(int length) {
+        final Object[] columns = new Object[memberTypes.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = ColumnTypes.createColumn(memberTypes[i], length);
+        }
+        return columns;
+    }
+
+    @Override
+    public Object[] read(SequenceData sequence) throws IOException {
+        if (sequence.getType().getElementType() != type) {
+            throw new DataAccessException(MessageFormat.format("Illegal data access, element type of ''{0}'' is not ''{1}''",
+                                                               sequence.getType().getName(), type.getName()));
+        }
+        return read(sequence.getPosition(), sequence.getElementCount());
+    }
+
+    @Override
+    public Object[] read(long position, int recordCount) throws IOException {
+        final Object[] columns = createColumns(recordCount);
+        read(position, recordCount, columns, 0);
+        return columns;
+    }
+
+    @Override
+    public void read(long position, int recordCount, Object[] columns, int columnOffset) throws IOException {
+        final int columnCount = memberTypes.length;
+        if (recordCount <= 0 || columnCount == 0) {
+            return;
+        }
+        final int gapLimit = this.gapLimit;
+        final long readSizeLimit = Math.max(1L, Segment.getSegmentSizeLimit());
+        final long rangeCount = (long) recordCount * columnCount;
+        byte[] data = null;
+        long firstRange = 0;
+        long readStart = getRangePosition(position, 0);
+        long readEnd = readStart + memberSizes[rangeOrder[0]];
+        for (long range = 1; range < rangeCount; range++) {
+            final long rangeStart = getRangePosition(position, range);
+            final long rangeEnd = Math.max(readEnd, rangeStart + memberSizes[getColumnIndex(range)]);
+            if (rangeStart - readEnd <= gapLimit && rangeEnd - readStart <= readSizeLimit) {
+                readEnd = rangeEnd;
+            } else {
+                data = readRanges(position, firstRange, range, readStart, readEnd, data, columns, columnOffset);
+                firstRange = range;
+                readStart = rangeStart;
+                readEnd = rangeEnd;
+            }
+        }
+        readRanges(position, firstRange, rangeCount, readStart, readEnd, data, columns, columnOffset);
+    }
+
+    private byte[] readRanges(long position, long firstRange, long lastRange, long readStart, long readEnd,
+                              byte[] data, Object[] columns, int columnOffset) throws IOException {
+        final int readSize = (int) (readEnd - readStart);
+        if (data == null || data.length != readSize) {
+            // never read beyond the last range, some handlers report EOF
+            data = new byte[readSize];
+        }
+        context.getHandler().read(context, data, readStart);
+        final int columnCount = memberTypes.length;
+        for (long range = firstRange; range < lastRange; range++) {
+            final int columnIndex = getColumnIndex(range);
+            final int dataOffset = (int) (getRangePosition(position, range) - readStart);
+            final int elementIndex = columnOffset + (int) (range / columnCount);
+            setElement(columns[columnIndex], elementIndex, memberTypes[columnIndex], memberAccessors[columnIndex],
+                       data, dataOffset);
+        }
+        return data;
+    }
+
+    private int getColumnIndex(long range) {
+        return rangeOrder[(int) (range % memberTypes.length)];
+    }
+
+    private long getRangePosition(long position, long range) {
+        final long recordIndex = range / memberTypes.length;
+        return position + recordIndex * type.getSize() + memberOffsets[getColumnIndex(range)];
+    }
+
+    private static void setElement(Object column, int elementIndex, SimpleType memberType, DataAccessor accessor,
+                                   byte[] data, int dataOffset) {
+        if (memberType == SimpleType.FLOAT) {
+            ((float[]) column)[elementIndex] = accessor.getFloat(data, dataOffset);
+        } else if (memberType == SimpleType.DOUBLE) {
+            ((double[]) column)[elementIndex] = accessor.getDouble(data, dataOffset);
+        } else if (memberType.getSize() == 1) {
+            ((byte[]) column)[elementIndex] = accessor.getByte(data, dataOffset);
+        } else if (memberType.getSize() == 2) {
+            ((short[]) column)[elementIndex] = accessor.getShort(data, dataOffset);
+        } else if (memberType.getSize() == 4) {
+            ((int[]) column)[elementIndex] = accessor.getInt(data, dataOffset);
+        } else {
+            ((long[]) column)[elementIndex] = accessor.getLong(data, dataOffset);
+        }
+    }
+}
@@ -16,16 +16,31 @@
 
 package com.bc.ceres.binio.internal;
 
+import com.bc.ceres.binio.BufferViewIOHandler;
 import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOStatistics;
+import com.bc.ceres.binio.IOHandler;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 
+/**
+ * A contiguous range of bytes shared by the instances located within it.
+ * <p>
+ * The data array and the buffer view are published through volatile fields after they have been
+ * filled, so that instances may be read by multiple threads. If the context is in
+ * {@link com.bc.ceres.binio.ExtendedDataContext#isConcurrent() concurrent mode}, the data is read by exactly one thread
+ * while holding the segment's lock.
+ */
 final class Segment {
     private final long position;
     private final int size;
-    private byte[] data;
+    private volatile byte[] data;
+    private volatile ByteBuffer buffer;
+    private DataContext context;
     private boolean dirty;
+    private boolean referenced;
 
     static final String SEGMENT_SIZE_LIMIT_PROPERTY = "ceres.binio.segmentSizeLimit";
 
@@ -51,11 +66,11 @@ final class Segment {
         this.size = size;
     }
 
-    public boolean isDirty() {
+    public synchronized boolean isDirty() {
         return dirty;
     }
 
-    public void setDirty(boolean dirty) {
+    public synchronized void setDirty(boolean dirty) {
         this.dirty = dirty;
     }
 
@@ -67,20 +82,435 @@ final class Segment {
         return size;
     }
 
+    /**
+     * Gets the segment's data array. If the segment is backed by a read-only buffer view,
+     * the view's content is copied into a new array first, so that it can be modified.
+     *
+     * @return The data array or {@code null} if the data is not accessible.
+     */
     public byte[] getData() {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null || buffer == null) {
+            return data;
+        }
+        return copyBufferView();
+    }
+
+    private synchronized byte[] copyBufferView() {
+        final ByteBuffer buffer = this.buffer;
+        if (data == null && buffer != null) {
+            final byte[] copy = new byte[size];
+            final ByteBuffer view = buffer.duplicate();
+            view.position(0);
+            view.get(copy);
+            // the array is published before the view is cleared, see reloadData()
+            data = copy;
+            this.buffer = null;
+        }
         return data;
     }
 
     public boolean isDataAccessible() {
-        return data != null;
+        return data != null || buffer != null;
     }
 
     public void makeDataAccessible(DataContext context) throws IOException {
+        if (isDataAccessible()) {
+            return;
+        }
+        if (DataContextImpl.isConcurrent(context)) {
+            synchronized (this) {
+                if (isDataAccessible()) {
+                    return;
+                }
+                readData(context);
+            }
+            // Registered outside of the segment lock, because the cache flushes other segments while
+            // holding its own lock. The segment itself is never evicted by its registration.
+            register(context);
+        } else {
+            register(context);
+            readData(context);
+        }
+    }
+
+    private void register(DataContext context) throws IOException {
+        if (context instanceof DataContextImpl) {
+            ((DataContextImpl) context).getSegmentCache().add(context, this);
+        }
+    }
+
+    private void readData(DataContext context) throws IOException {
+        this.context = context;
+        setDirty(false);
+        final IOHandler handler = context.getHandler();
+        ByteBuffer view = null;
+        if (handler instanceof BufferViewIOHandler) {
+            view = ((BufferViewIOHandler) handler).getBufferView(context, position, size);
+            if (view != null) {
+                view.order(context.getFormat().getByteOrder());
+            }
+        }
+        referenced = true;
+        if (view != null) {
+            buffer = view;
+        } else {
+            final byte[] data = new byte[size];
+            handler.read(context, data, position);
+            this.data = data;
+        }
+        final IOStatistics statistics = DataContextImpl.statisticsOf(context);
+        if (statistics != null) {
+            statistics.recordSegment(size);
+        }
+    }
+
+    /**
+     * Called by the read accessors if neither the data array nor the buffer view is set. This is the case
+     * if the buffer view has been replaced by a copy in the meantime, or if the data has been released
+     * by the segment cache after it has been made accessible.
+     *
+     * @return The data array.
+     * @throws IOException If an I/O error occurs.
+     */
+    private byte[] reloadData() throws IOException {
+        byte[] data = this.data;
         if (data == null) {
-            data = new byte[size];
-            setDirty(false);
-            context.getHandler().read(context, data, position);
+            makeDataAccessible(context);
+            data = getData();
+        }
+        return data;
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    // Read access, decodes from the data array or from the buffer view
+
+    byte getByte(DataAccessor accessor, int offset) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            return accessor.getByte(data, offset);
         }
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getByte(buffer, offset) : accessor.getByte(reloadData(), offset);
+    }
+
+    short getShort(DataAccessor accessor, int offset) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            return accessor.getShort(data, offset);
+        }
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getShort(buffer, offset) : accessor.getShort(reloadData(), offset);
+    }
+
+    int getInt(DataAccessor accessor, int offset) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            return accessor.getInt(data, offset);
+        }
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getInt(buffer, offset) : accessor.getInt(reloadData(), offset);
+    }
+
+    long getLong(DataAccessor accessor, int offset) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            return accessor.getLong(data, offset);
+        }
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getLong(buffer, offset) : accessor.getLong(reloadData(), offset);
+    }
+
+    float getFloat(DataAccessor accessor, int offset) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            return accessor.getFloat(data, offset);
+        }
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getFloat(buffer, offset) : accessor.getFloat(reloadData(), offset);
+    }
+
+    double getDouble(DataAccessor accessor, int offset) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            return accessor.getDouble(data, offset);
+        }
+        final ByteBuffer buffer = this.buffer;
+        return buffer != null ? accessor.getDouble(buffer, offset) : accessor.getDouble(reloadData(), offset);
+    }
+
+    void getBytes(DataAccessor accessor, int offset, byte[] values, int valuesOffset, int length) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            accessor.getBytes(data, offset, values, valuesOffset, length);
+            return;
+        }
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getBytes(buffer, offset, values, valuesOffset, length);
+        } else {
+            accessor.getBytes(reloadData(), offset, values, valuesOffset, length);
+        }
+    }
+
+    void getShorts(DataAccessor accessor, int offset, short[] values, int valuesOffset, int length) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            accessor.getShorts(data, offset, values, valuesOffset, length);
+            return;
+        }
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getShorts(buffer, offset, values, valuesOffset, length);
+        } else {
+            accessor.getShorts(reloadData(), offset, values, valuesOffset, length);
+        }
+    }
+
+    void getInts(DataAccessor accessor, int offset, int[] values, int valuesOffset, int length) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            accessor.getInts(data, offset, values, valuesOffset, length);
+            return;
+        }
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getInts(buffer, offset, values, valuesOffset, length);
+        } else {
+            accessor.getInts(reloadData(), offset, values, valuesOffset, length);
+        }
+    }
+
+    void getLongs(DataAccessor accessor, int offset, long[] values, int valuesOffset, int length) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            accessor.getLongs(data, offset, values, valuesOffset, length);
+            return;
+        }
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getLongs(buffer, offset, values, valuesOffset, length);
+        } else {
+            accessor.getLongs(reloadData(), offset, values, valuesOffset, length);
+        }
+    }
+
+    void getFloats(DataAccessor accessor, int offset, float[] values, int valuesOffset, int length) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            accessor.getFloats(data, offset, values, valuesOffset, length);
+            return;
+        }
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getFloats(buffer, offset, values, valuesOffset, length);
+        } else {
+            accessor.getFloats(reloadData(), offset, values, valuesOffset, length);
+        }
+    }
+
+    void getDoubles(DataAccessor accessor, int offset, double[] values, int valuesOffset, int length) throws IOException {
+        referenced = true;
+        final byte[] data = this.data;
+        if (data != null) {
+            accessor.getDoubles(data, offset, values, valuesOffset, length);
+            return;
+        }
+        final ByteBuffer buffer = this.buffer;
+        if (buffer != null) {
+            accessor.getDoubles(buffer, offset, values, valuesOffset, length);
+        } else {
+            accessor.getDoubles(reloadData(), offset, values, valuesOffset, length);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    // Write access, encodes into the data array while holding the segment's lock, so that
+    // the segment cannot be flushed and released by the segment cache in the meantime
+
+    void setByte(DataAccessor accessor, int offset, byte value) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setByte(data, offset, value);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setShort(DataAccessor accessor, int offset, short value) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setShort(data, offset, value);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setInt(DataAccessor accessor, int offset, int value) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setInt(data, offset, value);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setLong(DataAccessor accessor, int offset, long value) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setLong(data, offset, value);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setFloat(DataAccessor accessor, int offset, float value) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setFloat(data, offset, value);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setDouble(DataAccessor accessor, int offset, double value) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setDouble(data, offset, value);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setBytes(DataAccessor accessor, int offset, byte[] values, int valuesOffset, int length) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setBytes(data, offset, values, valuesOffset, length);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setShorts(DataAccessor accessor, int offset, short[] values, int valuesOffset, int length) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setShorts(data, offset, values, valuesOffset, length);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setInts(DataAccessor accessor, int offset, int[] values, int valuesOffset, int length) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setInts(data, offset, values, valuesOffset, length);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setLongs(DataAccessor accessor, int offset, long[] values, int valuesOffset, int length) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setLongs(data, offset, values, valuesOffset, length);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setFloats(DataAccessor accessor, int offset, float[] values, int valuesOffset, int length) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setFloats(data, offset, values, valuesOffset, length);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    void setDoubles(DataAccessor accessor, int offset, double[] values, int valuesOffset, int length) throws IOException {
+        final boolean reloaded;
+        synchronized (this) {
+            reloaded = prepareWrite();
+            accessor.setDoubles(data, offset, values, valuesOffset, length);
+            dirty = true;
+        }
+        registerReloaded(reloaded);
+    }
+
+    /**
+     * Makes the data array writable. Must be called while holding the segment's lock.
+     *
+     * @return {@code true} if the data had been released and has been read again.
+     * @throws IOException If an I/O error occurs.
+     */
+    private boolean prepareWrite() throws IOException {
+        referenced = true;
+        boolean reloaded = false;
+        if (data == null && buffer == null) {
+            readData(context);
+            reloaded = true;
+        }
+        if (data == null) {
+            copyBufferView();
+        }
+        return reloaded;
+    }
+
+    /**
+     * Registers a segment reloaded by a write access. Called after the segment's lock has been
+     * released, because the cache flushes other segments while holding its own lock.
+     */
+    private void registerReloaded(boolean reloaded) throws IOException {
+        if (reloaded) {
+            register(context);
+        }
+    }
+
+    /**
+     * Flushes the data of this segment, if dirty, and releases it. The data will be read again
+     * on next access. Both happen while holding the segment's lock, so that no write access
+     * can modify the data in between.
+     *
+     * @param context The context.
+     * @throws IOException If an I/O error occurs.
+     */
+    synchronized void flushAndReleaseData(DataContext context) throws IOException {
+        flushData(context);
+        data = null;
+        buffer = null;
+        dirty = false;
+    }
+
+    /**
+     * @return {@code true} if the data has been accessed since the last call.
+     */
+    boolean clearReferenced() {
+        final boolean wasReferenced = referenced;
+        referenced = false;
+        return wasReferenced;
     }
 
     public synchronized void flushData(DataContext context) throws IOException {
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.internal;
+
+import com.bc.ceres.binio.DataContext;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+
+/**
+ * Bounds the number of bytes held by the data segments of a {@link DataContext}.
+ * <p>
+ * Segments are registered before their data is read. If the capacity is exceeded, segments
+ * are evicted in CLOCK (second chance) order: a segment which has been accessed since it was
+ * last visited is moved to the end of the queue, otherwise its data is flushed, if dirty,
+ * and released. Released segments re-read their data on next access.
+ * <p>
+ * The default capacity can be set by the {@code ceres.binio.segmentCacheCapacity} system property
+ * (in bytes). A negative capacity, which is the default, disables the cache.
+ */
+final class SegmentCache {
+
+    static final String SEGMENT_CACHE_CAPACITY_PROPERTY = "ceres.binio.segmentCacheCapacity";
+
+    private static long defaultCapacity = -1L;
+
+    static {
+        final String value = System.getProperty(SEGMENT_CACHE_CAPACITY_PROPERTY);
+        if (value != null) {
+            try {
+                defaultCapacity = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                // ignored
+            }
+        }
+    }
+
+    static long getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    private final ArrayDeque<Segment> queue;
+    private volatile long capacity;
+    private long size;
+
+    SegmentCache(long capacity) {
+        this.queue = new ArrayDeque<Segment>();
+        this.capacity = capacity;
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+
+    synchronized void setCapacity(DataContext context, long capacity) throws IOException {
+        this.capacity = capacity;
+        if (capacity < 0) {
+            queue.clear();
+            size = 0;
+        } else {
+            evict(context, 0);
+        }
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Registers a segment whose data is about to be made accessible.
+     * Other segments are evicted as needed, the given segment is never evicted by this call.
+     *
+     * @param context The context.
+     * @param segment The segment.
+     * @throws IOException If flushing an evicted dirty segment fails.
+     */
+    void add(DataContext context, Segment segment) throws IOException {
+        if (capacity < 0) {
+            return;
+        }
+        synchronized (this) {
+            if (capacity < 0) {
+                return;
+            }
+            evict(context, segment.getSize());
+            queue.addLast(segment);
+            size += segment.getSize();
+        }
+    }
+
+    /**
+     * Flushes all dirty segments and releases the data of all registered segments.
+     *
+     * @param context The context.
+     * @throws IOException If flushing a dirty segment fails.
+     */
+    synchronized void clear(DataContext context) throws IOException {
+        try {
+            for (Segment segment : queue) {
+                segment.flushAndReleaseData(context);
+            }
+        } finally {
+            queue.clear();
+            size = 0;
+        }
+    }
+
+    private void evict(DataContext context, long requiredSize) throws IOException {
+        while (!queue.isEmpty() && size + requiredSize > capacity) {
+            final Segment segment = queue.peekFirst();
+            if (segment.clearReferenced() && queue.size() > 1) {
+                queue.addLast(queue.pollFirst());
+            } else {
+                segment.flushAndReleaseData(context);
+                queue.pollFirst();
+                size -= segment.getSize();
+            }
+        }
+    }
+}
@@ -27,7 +27,8 @@ final class SimpleMember implements MemberInstance {
     private final SimpleType simpleType;
     private final Segment segment;
     private final int segmentOffset;
-    private DataAccessor dataAccessor;
+    private final DataAccessor dataAccessor;
+    private boolean accessed;
 
     protected SimpleMember(DataContext context,
                            CollectionData parent,
@@ -39,6 +40,7 @@ final class SimpleMember implements MemberInstance {
         this.simpleType = simpleType;
         this.segment = segment;
         this.segmentOffset = segmentOffset;
+        this.dataAccessor = DataAccessor.getInstance(simpleType, context.getFormat().getByteOrder());
     }
 
     public CollectionData getParent() {
@@ -79,79 +81,73 @@ final class SimpleMember implements MemberInstance {
     @Override
     public byte getByte() throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getByte(segment.getData(), segmentOffset);
+        return segment.getByte(dataAccessor, segmentOffset);
     }
 
     @Override
     public void setByte(byte value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setByte(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        segment.setByte(dataAccessor, segmentOffset, value);
     }
 
     @Override
     public short getShort() throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getShort(segment.getData(), segmentOffset);
+        return segment.getShort(dataAccessor, segmentOffset);
     }
 
     @Override
     public void setShort(short value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setShort(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        segment.setShort(dataAccessor, segmentOffset, value);
     }
 
     @Override
     public int getInt() throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getInt(segment.getData(), segmentOffset);
+        return segment.getInt(dataAccessor, segmentOffset);
     }
 
     @Override
     public void setInt(int value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setInt(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        segment.setInt(dataAccessor, segmentOffset, value);
     }
 
     @Override
     public long getLong() throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getLong(segment.getData(), segmentOffset);
+        return segment.getLong(dataAccessor, segmentOffset);
     }
 
     @Override
     public void setLong(long value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setLong(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        segment.setLong(dataAccessor, segmentOffset, value);
     }
 
     @Override
     public float getFloat() throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getFloat(segment.getData(), segmentOffset);
+        return segment.getFloat(dataAccessor, segmentOffset);
     }
 
     @Override
     public void setFloat(float value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setFloat(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        segment.setFloat(dataAccessor, segmentOffset, value);
     }
 
     @Override
     public double getDouble() throws IOException {
         ensureDataAccessible();
-        return dataAccessor.getDouble(segment.getData(), segmentOffset);
+        return segment.getDouble(dataAccessor, segmentOffset);
     }
 
     @Override
     public void setDouble(double value) throws IOException {
         ensureDataAccessible();
-        dataAccessor.setDouble(segment.getData(), segmentOffset, value);
-        segment.setDirty(true);
+        segment.setDouble(dataAccessor, segmentOffset, value);
     }
 
     @Override
@@ -173,11 +169,16 @@ final class SimpleMember implements MemberInstance {
     ////////////////////////////////////////////////////
 
     private void ensureDataAccessible() throws IOException {
-        if (dataAccessor == null) {
-            this.dataAccessor = DataAccessor.getInstance(simpleType, context.getFormat().getByteOrder());
-            if (!segment.isDataAccessible()) {
-                segment.makeDataAccessible(context);
+        if (!accessed) {
+            // a racy check, it is only used for statistics
+            accessed = true;
+            final IOStatistics statistics = DataContextImpl.statisticsOf(context);
+            if (statistics != null && segment.isDataAccessible()) {
+                statistics.recordSegmentReuse();
             }
         }
+        if (!segment.isDataAccessible()) {
+            segment.makeDataAccessible(context);
+        }
     }
 }
@@ -19,14 +19,18 @@ package com.bc.ceres.binio.internal;
 import com.bc.ceres.binio.CollectionData;
 import com.bc.ceres.binio.CompoundType;
 import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.OffsetIndex;
+import com.bc.ceres.binio.SequenceData;
 import com.bc.ceres.binio.Type;
 
 import java.io.IOException;
 
 
 final class VarCompound extends AbstractCompound {
-    private int maxResolvedIndex;
-    private long size;
+    private final OffsetIndex offsetIndex;
+    private volatile int maxResolvedIndex;
+    private volatile long size;
+    private long[] memberPositions;
 
     public VarCompound(DataContext context, CollectionData parent, CompoundType compoundType, long position) {
         super(context, parent, compoundType, position);
@@ -56,6 +60,18 @@ final class VarCompound extends AbstractCompound {
         }
 
         maxResolvedIndex = maxMemberIndex;
+
+        // Elements of sequences are not indexed, they are located by the sequence's index entry
+        offsetIndex = parent instanceof SequenceData ? null : DataContextImpl.offsetIndexOf(context);
+        if (offsetIndex != null) {
+            final long[] indexedPositions = offsetIndex.get(compoundType, position);
+            final int memberCount = compoundType.getMemberCount();
+            if (indexedPositions != null && indexedPositions.length == memberCount + 1 && indexedPositions[0] == position) {
+                memberPositions = indexedPositions;
+                maxResolvedIndex = memberCount - 1;
+                size = indexedPositions[memberCount] - position;
+            }
+        }
     }
 
     @Override
@@ -83,13 +99,27 @@ final class VarCompound extends AbstractCompound {
         if (isSizeResolved(index)) {
             return;
         }
+        // No lock is held while members are resolved, because resolving a member may read members
+        // of enclosing compounds. Threads resolving the same members concurrently compute the same sizes.
+        final int lastIndex = getMemberCount() - 1;
         for (int i = maxResolvedIndex + 1; i <= index; i++) {
             MemberInstance memberInstance = getMemberInstance(i);
             if (!memberInstance.isSizeResolved()) {
                 memberInstance.resolveSize();
             }
-            size += memberInstance.getSize();
-            maxResolvedIndex = i;
+            if (i == lastIndex) {
+                size = memberInstance.getPosition() + memberInstance.getSize() - getPosition();
+            }
+            setMaxResolvedIndex(i);
+        }
+        if (offsetIndex != null && isSizeResolved()) {
+            final int memberCount = getMemberCount();
+            final long[] positions = new long[memberCount + 1];
+            for (int i = 0; i < memberCount; i++) {
+                positions[i] = getMemberInstance(i).getPosition();
+            }
+            positions[memberCount] = getPosition() + size;
+            offsetIndex.put(getType(), getPosition(), positions);
         }
     }
 
@@ -97,17 +127,24 @@ final class VarCompound extends AbstractCompound {
     protected MemberInstance getMemberInstance(int i) throws IOException {
         MemberInstance memberInstance = super.getMemberInstance(i);
         if (memberInstance == null) {
-            memberInstance = createMemberInstance(i);
-            setMemberInstance(i, memberInstance);
+            memberInstance = installMemberInstance(i, createMemberInstance(i));
         }
         return memberInstance;
     }
 
+    private synchronized void setMaxResolvedIndex(int index) {
+        if (index > maxResolvedIndex) {
+            maxResolvedIndex = index;
+        }
+    }
+
     private MemberInstance createMemberInstance(int index) throws IOException {
         final DataContext context = getContext();
         final Type memberType = getType().getMemberType(index);
         final long position;
-        if (index > 0) {
+        if (memberPositions != null) {
+            position = memberPositions[index];
+        } else if (index > 0) {
             final MemberInstance prevMember = getMemberInstance(index - 1);
             if (!prevMember.isSizeResolved()) {
                 prevMember.resolveSize();
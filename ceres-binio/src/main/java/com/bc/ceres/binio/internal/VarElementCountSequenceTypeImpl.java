@@ -18,6 +18,7 @@ package com.bc.ceres.binio.internal;
 
 import com.bc.ceres.binio.CollectionData;
 import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
 import com.bc.ceres.binio.Type;
 
 import java.io.IOException;
@@ -25,46 +26,89 @@ import java.io.IOException;
 /**
  * Represents a data type that is composed of a sequence of zero or more elements
  * all having the same data type.
+ * <p>
+ * The element count is the value of an integer member of the parent compound, given either by its index
+ * or by its name. A name may be qualified by the name of a compound type, e.g. {@code "Dataset.lineCount"},
+ * in which case the member is looked up in the nearest enclosing compound of that type.
+ * Names are bound to member indexes once per compound type, the member values are memoized
+ * by the compound instances.
  */
 public final class VarElementCountSequenceTypeImpl extends VarElementCountSequenceType {
     private final String memberName;
-    private volatile int memberIndex;
+    private final int memberIndex;
+    private final String qualifier;
+    private final String simpleName;
+    private volatile Binding binding;
 
     public VarElementCountSequenceTypeImpl(Type elementType, int memberIndex) {
         super(elementType.getName() + "[$" + memberIndex + "]", elementType);
         this.memberName = null;
         this.memberIndex = memberIndex;
+        this.qualifier = null;
+        this.simpleName = null;
     }
 
     public VarElementCountSequenceTypeImpl(Type elementType, String memberName) {
         super(elementType.getName() + "[$" + memberName + "]", elementType);
         this.memberName = memberName;
         this.memberIndex = -1;
+        final int dotPos = memberName.lastIndexOf('.');
+        this.qualifier = dotPos > 0 ? memberName.substring(0, dotPos) : null;
+        this.simpleName = memberName.substring(dotPos + 1);
     }
 
     public String getMemberName() {
         return memberName;
     }
 
+    /**
+     * @return The index of the member providing the element count, or {@code -1} if it is given by name.
+     */
     public int getMemberIndex() {
         return memberIndex;
     }
 
     @Override
     protected int resolveElementCount(CollectionData parent) throws IOException {
-        if (memberIndex == -1) {
-            synchronized (this) {
-                if (memberIndex == -1) {
-                    if (parent instanceof CompoundData) {
-                        CompoundData compoundData = (CompoundData) parent;
-                        memberIndex = compoundData.getType().getMemberIndex(memberName);
-                    }
-                }
-            }
-            if (memberIndex == -1) {
-                throw new IllegalArgumentException("parent");
+        if (memberName == null) {
+            return getCount(parent, memberIndex);
+        }
+        CollectionData countParent = parent;
+        if (qualifier != null) {
+            while (countParent != null && !(countParent instanceof CompoundData
+                                             && qualifier.equals(((CompoundData) countParent).getType().getName()))) {
+                countParent = countParent.getParent();
             }
         }
-        return parent.getInt(memberIndex);
+        if (!(countParent instanceof CompoundData)) {
+            throw new IllegalArgumentException("parent");
+        }
+        final CompoundType compoundType = ((CompoundData) countParent).getType();
+        Binding binding = this.binding;
+        if (binding == null || binding.compoundType != compoundType) {
+            binding = new Binding(compoundType, compoundType.getMemberIndex(simpleName));
+            this.binding = binding;
+        }
+        if (binding.memberIndex == -1) {
+            throw new IllegalArgumentException("parent");
+        }
+        return getCount(countParent, binding.memberIndex);
+    }
+
+    private static int getCount(CollectionData parent, int index) throws IOException {
+        if (parent instanceof AbstractCompound) {
+            return ((AbstractCompound) parent).getCount(index);
+        }
+        return parent.getInt(index);
+    }
+
+    private static final class Binding {
+        private final CompoundType compoundType;
+        private final int memberIndex;
+
+        private Binding(CompoundType compoundType, int memberIndex) {
+            this.compoundType = compoundType;
+            this.memberIndex = memberIndex;
+        }
     }
-}
\ No newline at end of file
+}
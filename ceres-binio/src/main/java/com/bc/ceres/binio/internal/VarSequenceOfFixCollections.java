@@ -24,12 +24,14 @@ import com.bc.ceres.binio.SequenceData;
 import com.bc.ceres.binio.Type;
 import com.bc.ceres.binio.CompoundData;
 import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.OffsetIndex;
+import com.bc.ceres.binio.TypeBuilder;
 
 import java.io.IOException;
 
 
 final class VarSequenceOfFixCollections extends AbstractSequenceOfCollections {
-    private SequenceType resolvedSequenceType;
+    private volatile SequenceType resolvedSequenceType;
 
     public VarSequenceOfFixCollections(DataContext context, CollectionData parent, SequenceType sequenceType, long position) {
         super(context, parent, sequenceType, position);
@@ -51,10 +53,26 @@ final class VarSequenceOfFixCollections extends AbstractSequenceOfCollections {
     @Override
     public void resolveSize() throws IOException {
         if (resolvedSequenceType == null) {
-            resolvedSequenceType = resolveSequenceType();
-            if (!resolvedSequenceType.isSizeKnown()) {
+            final SequenceType unresolvedSequenceType = super.getType();
+            final OffsetIndex offsetIndex = DataContextImpl.offsetIndexOf(getContext());
+            if (offsetIndex != null) {
+                // the entry is the resolved element count
+                final long[] indexedCount = offsetIndex.get(unresolvedSequenceType, getPosition());
+                if (indexedCount != null && indexedCount.length == 1) {
+                    resolvedSequenceType = TypeBuilder.SEQUENCE(unresolvedSequenceType.getElementType(),
+                                                                (int) indexedCount[0]);
+                    return;
+                }
+            }
+            // resolved without a lock, concurrent threads resolve equal types
+            final SequenceType type = resolveSequenceType();
+            if (!type.isSizeKnown()) {
                 throw new DataAccessException(toString());
             }
+            if (offsetIndex != null) {
+                offsetIndex.put(unresolvedSequenceType, getPosition(), new long[]{type.getElementCount()});
+            }
+            resolvedSequenceType = type;
         }
     }
 
@@ -22,8 +22,8 @@ import java.io.IOException;
 
 
 final class VarSequenceOfSimples extends AbstractSequenceOfSimples {
-    private SequenceType resolvedSequenceType;
-    private Segment segment;
+    private volatile SequenceType resolvedSequenceType;
+    private volatile Segment segment;
     private final long position;
 
     public VarSequenceOfSimples(DataContext context, CollectionData parent, SequenceType sequenceType, long position) {
@@ -53,12 +53,14 @@ final class VarSequenceOfSimples extends AbstractSequenceOfSimples {
 
     @Override
     public long getSize() {
-        return resolvedSequenceType != null ? resolvedSequenceType.getSize() : -1L;
+        final SequenceType type = resolvedSequenceType;
+        return type != null ? type.getSize() : -1L;
     }
 
     @Override
     public int getElementCount() {
-        return resolvedSequenceType != null ? resolvedSequenceType.getElementCount() : -1;
+        final SequenceType type = resolvedSequenceType;
+        return type != null ? type.getElementCount() : -1;
     }
 
     // todo - code duplication: see VarSequenceOfFixCollections.resolveSize()
@@ -77,29 +79,41 @@ final class VarSequenceOfSimples extends AbstractSequenceOfSimples {
     @Override
     public void resolveSize() throws IOException {
         if (resolvedSequenceType == null) {
-            resolvedSequenceType = resolveSequenceType();
-            if (!resolvedSequenceType.isSizeKnown()) {
+            // resolved without a lock, concurrent threads resolve equal types
+            final SequenceType type = resolveSequenceType();
+            if (!type.isSizeKnown()) {
                 throw new DataAccessException(toString());
             }
+            resolvedSequenceType = type;
         }
     }
 
     @Override
     public boolean isDataAccessible() {
+        final Segment segment = this.segment;
         return segment != null && segment.isDataAccessible();
     }
 
     @Override
     public void makeDataAccessible() throws IOException {
-        if (!isDataAccessible()) {
-            segment = new Segment(position, resolvedSequenceType.getSize());
-            segment.makeDataAccessible(getContext());
+        Segment segment = this.segment;
+        if (segment == null) {
+            segment = installSegment(new Segment(position, resolvedSequenceType.getSize()));
         }
+        segment.makeDataAccessible(getContext());
+    }
+
+    private synchronized Segment installSegment(Segment segment) {
+        if (this.segment == null) {
+            this.segment = segment;
+        }
+        return this.segment;
     }
 
     @Override
     public void flush() throws IOException {
-        if (isDataAccessible()) {
+        final Segment segment = this.segment;
+        if (segment != null && segment.isDataAccessible()) {
             segment.flushData(getContext());
         }
     }
@@ -16,6 +16,7 @@
 
 package com.bc.ceres.binio.util;
 
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 /**
@@ -26,6 +27,13 @@ public abstract class ByteArrayCodec {
     public final static ByteArrayCodec LITTLE_ENDIAN = new LE();
     public final static ByteArrayCodec BIG_ENDIAN = new BE();
 
+    /**
+     * Bulk operations on at least this number of elements reinterpret the byte array by a typed
+     * view of a wrapping {@link ByteBuffer}, which converts whole ranges at once. Shorter ranges are
+     * converted element by element, because creating the view costs more than it saves.
+     */
+    static final int BULK_VIEW_THRESHOLD = 16;
+
     public static ByteArrayCodec getInstance(ByteOrder byteOrder) {
         if (byteOrder == ByteOrder.LITTLE_ENDIAN) {
             return LITTLE_ENDIAN;
@@ -101,6 +109,10 @@ public abstract class ByteArrayCodec {
 
     public abstract void setDoubles(byte[] b, int boff, double[] v, int voff, int vlen);
 
+    private static ByteBuffer wrap(byte[] b, int boff, int blen, ByteOrder order) {
+        return ByteBuffer.wrap(b, boff, blen).order(order);
+    }
+
     private static short decodeSLE(byte[] b, int boff) {
         int b0 = b[boff + 1];
         int b1 = b[boff + 0] & 0xff;
@@ -260,19 +272,19 @@ public abstract class ByteArrayCodec {
     }
 
     private static void encodeFLE(byte[] b, int boff, float v) {
-        encodeILE(b, boff, Float.floatToIntBits(v));
+        encodeILE(b, boff, Float.floatToRawIntBits(v));
     }
 
     private static void encodeFBE(byte[] b, int boff, float v) {
-        encodeIBE(b, boff, Float.floatToIntBits(v));
+        encodeIBE(b, boff, Float.floatToRawIntBits(v));
     }
 
     private static void encodeDLE(byte[] b, int boff, double v) {
-        encodeLLE(b, boff, Double.doubleToLongBits(v));
+        encodeLLE(b, boff, Double.doubleToRawLongBits(v));
     }
 
     private static void encodeDBE(byte[] b, int boff, double v) {
-        encodeLBE(b, boff, Double.doubleToLongBits(v));
+        encodeLBE(b, boff, Double.doubleToRawLongBits(v));
     }
 
     private final static class LE extends ByteArrayCodec {
@@ -309,6 +321,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getShorts(byte[] b, int boff, short[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 2 * vlen, ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeSLE(b, boff);
                 boff += 2;
@@ -317,6 +333,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getInts(byte[] b, int boff, int[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 4 * vlen, ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeILE(b, boff);
                 boff += 4;
@@ -325,6 +345,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getLongs(byte[] b, int boff, long[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 8 * vlen, ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeLLE(b, boff);
                 boff += 8;
@@ -333,6 +357,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getFloats(byte[] b, int boff, float[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 4 * vlen, ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeFLE(b, boff);
                 boff += 4;
@@ -341,6 +369,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getDoubles(byte[] b, int boff, double[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 8 * vlen, ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeDL(b, boff);
                 boff += 8;
@@ -374,6 +406,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setShorts(byte[] b, int boff, short[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 2 * vlen, ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeSLE(b, boff, v[voff + i]);
                 boff += 2;
@@ -382,6 +418,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setInts(byte[] b, int boff, int[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 4 * vlen, ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeILE(b, boff, v[voff + i]);
                 boff += 4;
@@ -390,6 +430,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setLongs(byte[] b, int boff, long[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 8 * vlen, ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeLLE(b, boff, v[voff + i]);
                 boff += 8;
@@ -398,6 +442,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setFloats(byte[] b, int boff, float[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 4 * vlen, ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeFLE(b, boff, v[voff + i]);
                 boff += 4;
@@ -406,6 +454,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setDoubles(byte[] b, int boff, double[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 8 * vlen, ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeDLE(b, boff, v[voff + i]);
                 boff += 8;
@@ -447,6 +499,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getShorts(byte[] b, int boff, short[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 2 * vlen, ByteOrder.BIG_ENDIAN).asShortBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeSBE(b, boff);
                 boff += 2;
@@ -455,6 +511,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getInts(byte[] b, int boff, int[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 4 * vlen, ByteOrder.BIG_ENDIAN).asIntBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeIBE(b, boff);
                 boff += 4;
@@ -463,6 +523,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getLongs(byte[] b, int boff, long[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 8 * vlen, ByteOrder.BIG_ENDIAN).asLongBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeLBE(b, boff);
                 boff += 8;
@@ -471,6 +535,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getFloats(byte[] b, int boff, float[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 4 * vlen, ByteOrder.BIG_ENDIAN).asFloatBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeFBE(b, boff);
                 boff += 4;
@@ -479,6 +547,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void getDoubles(byte[] b, int boff, double[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 8 * vlen, ByteOrder.BIG_ENDIAN).asDoubleBuffer().get(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 v[voff + i] = decodeDBE(b, boff);
                 boff += 8;
@@ -512,6 +584,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setShorts(byte[] b, int boff, short[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 2 * vlen, ByteOrder.BIG_ENDIAN).asShortBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeSBE(b, boff, v[voff + i]);
                 boff += 2;
@@ -520,6 +596,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setInts(byte[] b, int boff, int[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 4 * vlen, ByteOrder.BIG_ENDIAN).asIntBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeIBE(b, boff, v[voff + i]);
                 boff += 4;
@@ -528,6 +608,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setLongs(byte[] b, int boff, long[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 8 * vlen, ByteOrder.BIG_ENDIAN).asLongBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeLBE(b, boff, v[voff + i]);
                 boff += 8;
@@ -536,6 +620,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setFloats(byte[] b, int boff, float[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 4 * vlen, ByteOrder.BIG_ENDIAN).asFloatBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeFBE(b, boff, v[voff + i]);
                 boff += 4;
@@ -544,6 +632,10 @@ public abstract class ByteArrayCodec {
 
         @Override
         public void setDoubles(byte[] b, int boff, double[] v, int voff, int vlen) {
+            if (vlen >= BULK_VIEW_THRESHOLD) {
+                wrap(b, boff, 8 * vlen, ByteOrder.BIG_ENDIAN).asDoubleBuffer().put(v, voff, vlen);
+                return;
+            }
             for (int i = 0; i < vlen; i++) {
                 encodeDBE(b, boff, v[voff + i]);
                 boff += 8;
@@ -65,7 +65,7 @@ public class ByteArrayIOHandler implements IOHandler {
         int pos = (int) position;
         ensureCapacity(pos + n);
         System.arraycopy(data, 0, byteArray, pos, n);
-        size = pos + n;
+        size = Math.max(size, pos + n);
     }
     
     @Override
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataAccessException;
+import com.bc.ceres.binio.ExtendedDataContext;
+import com.bc.ceres.binio.Projection;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.Type;
+
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Materializes a sequence of fixed-size compounds as columns, one primitive array per selected member
+ * (struct of arrays).
+ * <pre>
+ *     Object[] columns = ColumnMaterializer.materialize(records, "lat", "lon", "flags");
+ *     float[] lat = (float[]) columns[0];
+ * </pre>
+ * The records are read in chunks of up to {@code ceres.binio.segmentSizeLimit} bytes, each chunk is decoded
+ * straight into the columns by a {@link Projection} of the element type. The column element types are those
+ * of {@link Projection#createColumns(int)}.
+ * <p>
+ * When a {@link ForkJoinPool} is given, contiguous record ranges are materialized in parallel.
+ * The context's {@link com.bc.ceres.binio.IOHandler} must then support concurrent reads, e.g.
+ * {@link ReadOnlyFileChannelIOHandler} or {@link MappedFileChannelIOHandler}.
+ * <p>
+ * Records are read directly from the context's I/O handler, so pending modifications of instances
+ * must be flushed before.
+ *
+ * @since Ceres 0.14
+ */
+public final class ColumnMaterializer {
+
+    private ColumnMaterializer() {
+    }
+
+    /**
+     * Materializes the given members of all records.
+     *
+     * @param sequence    A sequence of fixed-size compounds.
+     * @param memberNames The names of the selected members, which must be of simple types.
+     * @return The columns, one per selected member.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Object[] materialize(SequenceData sequence, String... memberNames) throws IOException {
+        final Projection projection = createProjection(sequence, memberNames);
+        final Object[] columns = projection.createColumns(sequence.getElementCount());
+        materialize(sequence, projection, columns, 0, null, 0);
+        return columns;
+    }
+
+    /**
+     * Materializes the given members of all records in parallel, using a shared pool with one thread
+     * per available processor.
+     *
+     * @param sequence    A sequence of fixed-size compounds.
+     * @param memberNames The names of the selected members, which must be of simple types.
+     * @return The columns, one per selected member.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static Object[] materializeParallel(SequenceData sequence, String... memberNames) throws IOException {
+        final Projection projection = createProjection(sequence, memberNames);
+        final Object[] columns = projection.createColumns(sequence.getElementCount());
+        materialize(sequence, projection, columns, 0, ParallelScan.getDefaultPool(), ParallelScan.DEFAULT_MIN_RANGE_SIZE);
+        return columns;
+    }
+
+    /**
+     * Materializes the given members of all records into preallocated columns.
+     *
+     * @param sequence     A sequence of fixed-size compounds.
+     * @param memberNames  The names of the selected members, which must be of simple types.
+     * @param columns      The columns, one per selected member, as created by {@link Projection#createColumns(int)}.
+     * @param columnOffset The index of the column element receiving the first record.
+     * @param pool         The pool used to materialize record ranges in parallel, or {@code null}.
+     * @param minRangeSize The minimum number of records per range, ignored if {@code pool} is {@code null}.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static void materialize(SequenceData sequence, String[] memberNames,
+                                   Object[] columns, int columnOffset,
+                                   ForkJoinPool pool, int minRangeSize) throws IOException {
+        if (pool != null && minRangeSize <= 0) {
+            throw new IllegalArgumentException("minRangeSize");
+        }
+        if (columns.length != memberNames.length) {
+            throw new IllegalArgumentException("columns");
+        }
+        materialize(sequence, createProjection(sequence, memberNames), columns, columnOffset, pool, minRangeSize);
+    }
+
+    private static Projection createProjection(SequenceData sequence, String[] memberNames) throws IOException {
+        sequence.resolveSize();
+        final Type elementType = sequence.getType().getElementType();
+        if (!elementType.isCompoundType() || !elementType.isSizeKnown()) {
+            throw new DataAccessException(MessageFormat.format("Illegal data access, ''{0}'' is not a sequence of fixed-size compounds",
+                                                               sequence.getType().getName()));
+        }
+        if (!(sequence.getContext() instanceof ExtendedDataContext)) {
+            throw new IllegalArgumentException("sequence: context does not support projections");
+        }
+        final CompoundType recordType = (CompoundType) elementType;
+        final Projection projection = ((ExtendedDataContext) sequence.getContext()).createProjection(recordType, memberNames);
+        // read whole chunks of records, the gaps between the selected members are never larger than a record
+        projection.setGapLimit(recordType.getSize());
+        return projection;
+    }
+
+    private static void materialize(SequenceData sequence, Projection projection,
+                                    Object[] columns, int columnOffset,
+                                    ForkJoinPool pool, int minRangeSize) throws IOException {
+        final long position = sequence.getPosition();
+        final int recordCount = sequence.getElementCount();
+        final int recordSize = projection.getType().getSize();
+        if (pool == null || recordCount <= minRangeSize) {
+            projection.read(position, recordCount, columns, columnOffset);
+            return;
+        }
+        final int rangeSize = ParallelScan.getRangeSize(pool, recordCount, minRangeSize);
+        ParallelScan.invoke(pool, new MaterializeTask(projection, position, recordSize, columns, columnOffset,
+                                                      rangeSize, 0, recordCount));
+    }
+
+    private static class MaterializeTask extends RecursiveAction {
+        private final Projection projection;
+        private final long position;
+        private final int recordSize;
+        private final Object[] columns;
+        private final int columnOffset;
+        private final int rangeSize;
+        private final int fromIndex;
+        private final int toIndex;
+
+        private MaterializeTask(Projection projection, long position, int recordSize,
+                                Object[] columns, int columnOffset,
+                                int rangeSize, int fromIndex, int toIndex) {
+            this.projection = projection;
+            this.position = position;
+            this.recordSize = recordSize;
+            this.columns = columns;
+            this.columnOffset = columnOffset;
+            this.rangeSize = rangeSize;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        @Override
+        protected void compute() {
+            if (toIndex - fromIndex <= rangeSize) {
+                try {
+                    projection.read(position + (long) fromIndex * recordSize, toIndex - fromIndex,
+                                    columns, columnOffset + fromIndex);
+                } catch (IOException e) {
+                    throw new ParallelScan.TaskException(e);
+                }
+                return;
+            }
+            final int rangeCount = (toIndex - fromIndex + rangeSize - 1) / rangeSize;
+            final int midIndex = fromIndex + (rangeCount / 2) * rangeSize;
+            invokeAll(new MaterializeTask(projection, position, recordSize, columns, columnOffset,
+                                          rangeSize, fromIndex, midIndex),
+                      new MaterializeTask(projection, position, recordSize, columns, columnOffset,
+                                          rangeSize, midIndex, toIndex));
+        }
+    }
+}
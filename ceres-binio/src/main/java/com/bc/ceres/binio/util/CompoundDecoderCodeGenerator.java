@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundDecoder;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.SimpleType;
+import com.bc.ceres.binio.Type;
+import com.bc.ceres.binio.internal.ColumnTypes;
+
+import java.nio.ByteOrder;
+import java.text.MessageFormat;
+
+/**
+ * Generates the Java source code of a {@link CompoundDecoder} for a given compound type and byte order.
+ * Member offsets, sizes and byte order are compiled into the code as constants.
+ *
+ * @since Ceres 0.14
+ */
+public class CompoundDecoderCodeGenerator {
+
+    private static final String HEAD_PART = "" +
+            "/*\n" +
+            " * This is machine-generated code, DO NOT EDIT!\n" +
+            " * Code generated by {2}.\n" +
+            " */\n" +
+            "package {0};\n" +
+            "\n" +
+            "import com.bc.ceres.binio.CompoundType;\n" +
+            "import java.nio.ByteOrder;\n" +
+            "\n" +
+            "public final class {1} implements com.bc.ceres.binio.CompoundDecoder '{'\n" +
+            "\n" +
+            "    private final CompoundType type;\n" +
+            "\n" +
+            "    public {1}(CompoundType type) '{'\n" +
+            "        this.type = type;\n" +
+            "    '}'\n" +
+            "\n" +
+            "    public CompoundType getType() '{'\n" +
+            "        return type;\n" +
+            "    '}'\n" +
+            "\n" +
+            "    public ByteOrder getByteOrder() '{'\n" +
+            "        return ByteOrder.{3};\n" +
+            "    '}'\n" +
+            "\n" +
+            "    private static IndexOutOfBoundsException memberIndexError(int memberIndex) '{'\n" +
+            "        return new IndexOutOfBoundsException(\"memberIndex=\" + memberIndex);\n" +
+            "    '}'\n";
+
+    private final CompoundType type;
+    private final boolean bigEndian;
+    private final SimpleType[] memberTypes;
+    private final int[] memberOffsets;
+
+    private CompoundDecoderCodeGenerator(CompoundType type, ByteOrder byteOrder) {
+        this.type = type;
+        this.bigEndian = ByteOrder.BIG_ENDIAN.equals(byteOrder);
+        final int memberCount = type.getMemberCount();
+        this.memberTypes = new SimpleType[memberCount];
+        this.memberOffsets = new int[memberCount];
+        int memberOffset = 0;
+        for (int i = 0; i < memberCount; i++) {
+            final Type memberType = type.getMemberType(i);
+            if (!(memberType instanceof SimpleType)) {
+                throw new IllegalArgumentException(MessageFormat.format(
+                        "Member ''{0}'' of compound ''{1}'' is not of a simple type.",
+                        type.getMemberName(i), type.getName()));
+            }
+            memberTypes[i] = (SimpleType) memberType;
+            memberOffsets[i] = memberOffset;
+            memberOffset += memberType.getSize();
+        }
+    }
+
+    /**
+     * Generates the source code of a {@link CompoundDecoder}.
+     * The generated class has a public constructor taking the {@link CompoundType}.
+     *
+     * @param packageName The package name of the generated class.
+     * @param className   The simple name of the generated class.
+     * @param type        The compound type. All members must be of simple types.
+     * @param byteOrder   The byte order.
+     * @return The source code.
+     * @throws IllegalArgumentException If a member is not of a simple type.
+     */
+    public static String generate(String packageName, String className, CompoundType type, ByteOrder byteOrder) {
+        return new CompoundDecoderCodeGenerator(type, byteOrder).generate(packageName, className);
+    }
+
+    private String generate(String packageName, String className) {
+        final StringBuilder code = new StringBuilder();
+        code.append(MessageFormat.format(HEAD_PART,
+                                         packageName,
+                                         className,
+                                         CompoundDecoderCodeGenerator.class.getName(),
+                                         bigEndian ? "BIG_ENDIAN" : "LITTLE_ENDIAN"));
+        appendGetter(code, "byte", "getByte");
+        appendGetter(code, "int", "getUByte");
+        appendGetter(code, "short", "getShort");
+        appendGetter(code, "int", "getUShort");
+        appendGetter(code, "int", "getInt");
+        appendGetter(code, "long", "getUInt");
+        appendGetter(code, "long", "getLong");
+        appendGetter(code, "float", "getFloat");
+        appendGetter(code, "double", "getDouble");
+        appendSetter(code, "byte", "setByte");
+        appendSetter(code, "short", "setShort");
+        appendSetter(code, "int", "setInt");
+        appendSetter(code, "long", "setLong");
+        appendSetter(code, "float", "setFloat");
+        appendSetter(code, "double", "setDouble");
+        appendCreateColumns(code);
+        appendDecode(code);
+        code.append("}\n");
+        return code.toString();
+    }
+
+    private void appendGetter(StringBuilder code, String returnType, String methodName) {
+        code.append("\n");
+        code.append("    public ").append(returnType).append(' ').append(methodName);
+        code.append("(byte[] data, int p, int memberIndex) {\n");
+        code.append("        switch (memberIndex) {\n");
+        for (int i = 0; i < memberTypes.length; i++) {
+            final String value = getValueExpr(i, "p");
+            final String result;
+            if (methodName.equals("getUByte")) {
+                result = "((byte) (" + value + ")) & 0xFF";
+            } else if (methodName.equals("getUShort")) {
+                result = "((short) (" + value + ")) & 0xFFFF";
+            } else if (methodName.equals("getUInt")) {
+                result = "((int) (" + value + ")) & 0xFFFFFFFFL";
+            } else {
+                result = "(" + returnType + ") (" + value + ")";
+            }
+            code.append("            case ").append(i).append(":\n");
+            code.append("                return ").append(result).append(";\n");
+        }
+        code.append("            default:\n");
+        code.append("                throw memberIndexError(memberIndex);\n");
+        code.append("        }\n");
+        code.append("    }\n");
+    }
+
+    private void appendSetter(StringBuilder code, String valueType, String methodName) {
+        code.append("\n");
+        code.append("    public void ").append(methodName);
+        code.append("(byte[] data, int p, int memberIndex, ").append(valueType).append(" value) {\n");
+        code.append("        switch (memberIndex) {\n");
+        for (int i = 0; i < memberTypes.length; i++) {
+            code.append("            case ").append(i).append(": {\n");
+            appendStore(code, i, "p", "(" + getJavaType(memberTypes[i]) + ") value", "                ");
+            code.append("                return;\n");
+            code.append("            }\n");
+        }
+        code.append("            default:\n");
+        code.append("                throw memberIndexError(memberIndex);\n");
+        code.append("        }\n");
+        code.append("    }\n");
+    }
+
+    private void appendCreateColumns(StringBuilder code) {
+        code.append("\n");
+        code.append("    public Object[] createColumns(int length) {\n");
+        code.append("        return new Object[]{\n");
+        for (SimpleType memberType : memberTypes) {
+            code.append("                new ").append(getColumnType(memberType)).append("[length],\n");
+        }
+        code.append("        };\n");
+        code.append("    }\n");
+    }
+
+    private void appendDecode(StringBuilder code) {
+        code.append("\n");
+        code.append("    public void decode(byte[] data, int offset, int recordCount, Object[] columns, int columnOffset) {\n");
+        for (int i = 0; i < memberTypes.length; i++) {
+            final String columnType = getColumnType(memberTypes[i]);
+            code.append("        final ").append(columnType).append("[] c").append(i);
+            code.append(" = (").append(columnType).append("[]) columns[").append(i).append("];\n");
+        }
+        for (int i = 0; i < memberTypes.length; i++) {
+            code.append("        if (c").append(i).append(" != null) {\n");
+            code.append("            for (int k = 0, p = offset; k < recordCount; k++, p += ").append(type.getSize()).append(") {\n");
+            code.append("                c").append(i).append("[columnOffset + k] = ");
+            code.append(getRawExpr(i, "p", getColumnType(memberTypes[i]))).append(";\n");
+            code.append("            }\n");
+            code.append("        }\n");
+        }
+        code.append("    }\n");
+    }
+
+    /**
+     * @return An expression evaluating to the member value, using the Java type given by {@link #getJavaType}.
+     */
+    private String getValueExpr(int memberIndex, String p) {
+        final SimpleType memberType = memberTypes[memberIndex];
+        if (memberType == SimpleType.UBYTE) {
+            return getBitsExpr(memberIndex, p) + " & 0xFF";
+        } else if (memberType == SimpleType.USHORT) {
+            // composed of masked bytes, hence never negative
+            return getBitsExpr(memberIndex, p);
+        } else if (memberType == SimpleType.UINT) {
+            return "(" + getBitsExpr(memberIndex, p) + ") & 0xFFFFFFFFL";
+        }
+        return getRawExpr(memberIndex, p, getJavaType(memberType));
+    }
+
+    /**
+     * @return An expression evaluating to the raw member value of the given (signed) Java type.
+     */
+    private String getRawExpr(int memberIndex, String p, String javaType) {
+        final String bits = getBitsExpr(memberIndex, p);
+        if (javaType.equals("float")) {
+            return "Float.intBitsToFloat(" + bits + ")";
+        } else if (javaType.equals("double")) {
+            return "Double.longBitsToDouble(" + bits + ")";
+        } else if (javaType.equals("byte") || javaType.equals("short")) {
+            return "(" + javaType + ") (" + bits + ")";
+        }
+        return bits;
+    }
+
+    /**
+     * @return An expression evaluating to the member's bits as {@code int} (size &lt;= 4) or {@code long} (size 8).
+     */
+    private String getBitsExpr(int memberIndex, String p) {
+        final int size = memberTypes[memberIndex].getSize();
+        final int offset = memberOffsets[memberIndex];
+        if (size == 1) {
+            return "data[" + p + " + " + offset + "]";
+        }
+        final String mask = size == 8 ? "0xFFL" : "0xFF";
+        final StringBuilder expr = new StringBuilder();
+        for (int k = 0; k < size; k++) {
+            final int shift = 8 * (bigEndian ? size - 1 - k : k);
+            if (k > 0) {
+                expr.append(" | ");
+            }
+            expr.append("(data[").append(p).append(" + ").append(offset + k).append("] & ").append(mask).append(')');
+            if (shift > 0) {
+                expr.append(" << ").append(shift);
+            }
+        }
+        return expr.toString();
+    }
+
+    private void appendStore(StringBuilder code, int memberIndex, String p, String value, String indent) {
+        final SimpleType memberType = memberTypes[memberIndex];
+        final int size = memberType.getSize();
+        final int offset = memberOffsets[memberIndex];
+        final String javaType = getJavaType(memberType);
+        final String bits;
+        if (javaType.equals("float")) {
+            bits = "Float.floatToRawIntBits(" + value + ")";
+        } else if (javaType.equals("double")) {
+            bits = "Double.doubleToRawLongBits(" + value + ")";
+        } else if (javaType.equals("long") && size < 8) {
+            bits = "(int) " + value;
+        } else {
+            bits = value;
+        }
+        code.append(indent).append("final ").append(size == 8 ? "long" : "int").append(" bits = ").append(bits).append(";\n");
+        for (int k = 0; k < size; k++) {
+            final int shift = 8 * (bigEndian ? size - 1 - k : k);
+            code.append(indent).append("data[").append(p).append(" + ").append(offset + k).append("] = (byte) ");
+            code.append(shift > 0 ? "(bits >> " + shift + ")" : "bits").append(";\n");
+        }
+    }
+
+    /**
+     * @return The Java type used to represent member values, unsigned types are widened.
+     */
+    private static String getJavaType(SimpleType type) {
+        if (type == SimpleType.BYTE) {
+            return "byte";
+        } else if (type == SimpleType.SHORT) {
+            return "short";
+        } else if (type == SimpleType.UBYTE || type == SimpleType.USHORT || type == SimpleType.INT) {
+            return "int";
+        } else if (type == SimpleType.UINT || type == SimpleType.LONG || type == SimpleType.ULONG) {
+            return "long";
+        } else if (type == SimpleType.FLOAT) {
+            return "float";
+        } else if (type == SimpleType.DOUBLE) {
+            return "double";
+        }
+        throw new IllegalArgumentException("type");
+    }
+
+    /**
+     * @return The element type of a column array, see {@link ColumnTypes#getColumnType(SimpleType)}.
+     */
+    private static String getColumnType(SimpleType type) {
+        return ColumnTypes.getColumnType(type).getName();
+    }
+}
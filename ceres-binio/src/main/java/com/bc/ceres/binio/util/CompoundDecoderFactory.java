@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundDecoder;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataAccessException;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteOrder;
+import java.security.CodeSource;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Creates {@link CompoundDecoder}s by generating and compiling Java code at runtime
+ * (see {@link CompoundDecoderCodeGenerator}).
+ * <p>
+ * Generated decoder classes are cached per compound type and byte order. The cache neither
+ * prevents a compound type nor its decoders from being garbage collected: a generated class does
+ * not refer to its type, and decoder instances are only weakly referenced. Compilation requires
+ * the system Java compiler, which is only available if running on a JDK.
+ *
+ * @since Ceres 0.14
+ */
+public final class CompoundDecoderFactory {
+
+    private static final String PACKAGE_NAME = "com.bc.ceres.binio.generated";
+
+    private static final Map<CompoundType, CacheEntry> decoderCache = new WeakHashMap<CompoundType, CacheEntry>();
+    private static int classCount;
+
+    private CompoundDecoderFactory() {
+    }
+
+    /**
+     * @return {@code true} if decoders can be generated, that is, if the system Java compiler is available.
+     */
+    public static boolean isAvailable() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /**
+     * Gets the decoder for the given compound type and byte order.
+     * The decoder is generated and compiled on first request.
+     *
+     * @param type      The compound type. All members must be of simple types.
+     * @param byteOrder The byte order.
+     * @return The decoder.
+     * @throws IllegalArgumentException If a member is not of a simple type.
+     * @throws DataAccessException      If the decoder code cannot be compiled.
+     */
+    public static CompoundDecoder getDecoder(CompoundType type, ByteOrder byteOrder) {
+        final int orderIndex = ByteOrder.BIG_ENDIAN.equals(byteOrder) ? 0 : 1;
+        synchronized (decoderCache) {
+            CacheEntry entry = decoderCache.get(type);
+            if (entry == null) {
+                entry = new CacheEntry();
+                decoderCache.put(type, entry);
+            }
+            final WeakReference<CompoundDecoder> decoderRef = entry.decoders[orderIndex];
+            CompoundDecoder decoder = decoderRef != null ? decoderRef.get() : null;
+            if (decoder == null) {
+                if (entry.decoderClasses[orderIndex] == null) {
+                    entry.decoderClasses[orderIndex] = createDecoderClass(type, byteOrder);
+                }
+                decoder = createDecoder(entry.decoderClasses[orderIndex], type);
+                entry.decoders[orderIndex] = new WeakReference<CompoundDecoder>(decoder);
+            }
+            return decoder;
+        }
+    }
+
+    private static Class<?> createDecoderClass(CompoundType type, ByteOrder byteOrder) {
+        final String className = "CompoundDecoder" + (++classCount);
+        final String code = CompoundDecoderCodeGenerator.generate(PACKAGE_NAME, className, type, byteOrder);
+        try {
+            return compile(PACKAGE_NAME + '.' + className, code);
+        } catch (DataAccessException e) {
+            throw e;
+        } catch (Exception e) {
+            throw createException(type, e);
+        }
+    }
+
+    private static CompoundDecoder createDecoder(Class<?> decoderClass, CompoundType type) {
+        try {
+            return (CompoundDecoder) decoderClass.getConstructor(CompoundType.class).newInstance(type);
+        } catch (Exception e) {
+            throw createException(type, e);
+        }
+    }
+
+    private static DataAccessException createException(CompoundType type, Exception cause) {
+        final DataAccessException exception = new DataAccessException(
+                MessageFormat.format("Failed to create decoder for compound ''{0}''.", type.getName()));
+        exception.initCause(cause);
+        return exception;
+    }
+
+    private static Class<?> compile(String className, String code) throws IOException, ClassNotFoundException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new DataAccessException("No Java compiler available.");
+        }
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        final File classPathEntry = getClassPathEntry();
+        if (classPathEntry != null) {
+            final List<File> classPath = new ArrayList<File>();
+            classPath.add(classPathEntry);
+            for (String path : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+                if (!path.isEmpty()) {
+                    classPath.add(new File(path));
+                }
+            }
+            standardFileManager.setLocation(StandardLocation.CLASS_PATH, classPath);
+        }
+        final ClassFileManager fileManager = new ClassFileManager(standardFileManager);
+        try {
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                                                                       Arrays.asList("-g:none"), null,
+                                                                       Arrays.asList(new SourceCode(className, code)));
+            if (!task.call()) {
+                throw new DataAccessException("Code compilation failed: " + diagnostics.getDiagnostics());
+            }
+        } finally {
+            fileManager.close();
+        }
+        return new ClassDefiner(fileManager.classBytes).loadClass(className);
+    }
+
+    private static File getClassPathEntry() {
+        final CodeSource codeSource = CompoundDecoder.class.getProtectionDomain().getCodeSource();
+        if (codeSource != null) {
+            final URL location = codeSource.getLocation();
+            if (location != null && "file".equals(location.getProtocol())) {
+                try {
+                    return new File(location.toURI());
+                } catch (URISyntaxException e) {
+                    // fall through, use the default class path
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The cache value of a compound type. Must not strongly refer to the type, which is the weak key:
+     * the generated classes don't, and the decoders, which do, are only weakly referenced.
+     */
+    private static class CacheEntry {
+        private final Class<?>[] decoderClasses = new Class<?>[2];
+        @SuppressWarnings("unchecked")
+        private final WeakReference<CompoundDecoder>[] decoders = new WeakReference[2];
+    }
+
+    private static class SourceCode extends SimpleJavaFileObject {
+        private final String code;
+
+        SourceCode(String className, String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return code;
+        }
+    }
+
+    private static class ClassCode extends SimpleJavaFileObject {
+        private final ByteArrayOutputStream stream;
+
+        ClassCode(String className) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.stream = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return stream;
+        }
+    }
+
+    /**
+     * Keeps compiled classes in memory instead of writing them to an output directory.
+     */
+    private static class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, ClassCode> classBytes = new HashMap<String, ClassCode>();
+
+        ClassFileManager(StandardJavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className,
+                                                   JavaFileObject.Kind kind, FileObject sibling) {
+            final ClassCode classCode = new ClassCode(className);
+            classBytes.put(className, classCode);
+            return classCode;
+        }
+    }
+
+    private static class ClassDefiner extends ClassLoader {
+        private final Map<String, ClassCode> classBytes;
+
+        ClassDefiner(Map<String, ClassCode> classBytes) {
+            super(CompoundDecoder.class.getClassLoader());
+            this.classBytes = classBytes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            final ClassCode classCode = classBytes.get(name);
+            if (classCode == null) {
+                throw new ClassNotFoundException(name);
+            }
+            final byte[] bytes = classCode.stream.toByteArray();
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
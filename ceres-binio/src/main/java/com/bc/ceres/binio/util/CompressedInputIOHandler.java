@@ -0,0 +1,457 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A read-only I/O handler which reads gzip-compressed files or deflated ZIP entries in place.
+ * <p>
+ * The uncompressed data is decoded in blocks of a fixed size, the most recently used blocks are cached.
+ * Reads ahead of the current decoder position continue decoding, reads behind it restart decoding
+ * at the nearest checkpoint. Since the state of an {@link Inflater} cannot be saved, checkpoints can
+ * only be placed where decoding can start from scratch: at the member boundaries of gzip files
+ * consisting of multiple members (as written by <code>bgzip</code> or <code>pigz --independent</code>).
+ * Checkpoints are recorded while decoding, at most one per checkpoint interval. For single-member gzip
+ * files and ZIP entries the only checkpoint is the start of the data.
+ * <p>
+ * {@link #getMaxPosition()} decodes the data once up to its end, if its uncompressed size is unknown.
+ *
+ * @since Ceres 0.14
+ */
+public class CompressedInputIOHandler implements IOHandler, Closeable {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+    public static final int DEFAULT_MAX_CACHED_BLOCKS = 16;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL = 8L << 20;
+
+    private final Source source;
+    private final int blockSize;
+    private final long checkpointInterval;
+    private final Map<Long, byte[]> blockCache;
+    private final TreeMap<Long, Long> checkpoints;
+    private Decoder decoder;
+    private byte[] skipBuffer;
+    private long length;
+
+    private CompressedInputIOHandler(Source source, long length, int blockSize, final int maxCachedBlocks, long checkpointInterval) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize <= 0");
+        }
+        if (maxCachedBlocks <= 0) {
+            throw new IllegalArgumentException("maxCachedBlocks <= 0");
+        }
+        if (checkpointInterval <= 0) {
+            throw new IllegalArgumentException("checkpointInterval <= 0");
+        }
+        this.source = source;
+        this.length = length;
+        this.blockSize = blockSize;
+        this.checkpointInterval = checkpointInterval;
+        this.blockCache = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > maxCachedBlocks;
+            }
+        };
+        this.checkpoints = new TreeMap<Long, Long>();
+        this.checkpoints.put(0L, 0L);
+    }
+
+    /**
+     * Creates a handler for a gzip file using default settings.
+     *
+     * @param file The gzip file.
+     * @return The handler.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static CompressedInputIOHandler createGzipHandler(File file) throws IOException {
+        return createGzipHandler(file, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_CACHED_BLOCKS, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Creates a handler for a gzip file.
+     *
+     * @param file               The gzip file.
+     * @param blockSize          The size of the decoded blocks in bytes.
+     * @param maxCachedBlocks    The maximum number of cached blocks.
+     * @param checkpointInterval The minimum distance between two checkpoints in uncompressed bytes.
+     * @return The handler.
+     * @throws IOException If the file cannot be opened.
+     */
+    public static CompressedInputIOHandler createGzipHandler(File file, int blockSize, int maxCachedBlocks, long checkpointInterval) throws IOException {
+        return new CompressedInputIOHandler(new GzipSource(new RandomAccessFile(file, "r")), -1L,
+                                            blockSize, maxCachedBlocks, checkpointInterval);
+    }
+
+    /**
+     * Creates a handler for an entry of a ZIP file using default settings.
+     *
+     * @param file      The ZIP file.
+     * @param entryName The name of the entry.
+     * @return The handler.
+     * @throws IOException If the file cannot be opened or if the entry does not exist.
+     */
+    public static CompressedInputIOHandler createZipHandler(File file, String entryName) throws IOException {
+        final ZipFile zipFile = new ZipFile(file);
+        final ZipEntry entry = zipFile.getEntry(entryName);
+        if (entry == null) {
+            zipFile.close();
+            throw new IOException("ZIP entry not found: " + entryName);
+        }
+        return new CompressedInputIOHandler(new ZipSource(zipFile, entry), entry.getSize(),
+                                            DEFAULT_BLOCK_SIZE, DEFAULT_MAX_CACHED_BLOCKS, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * @return The number of checkpoints recorded so far, including the start of the data.
+     */
+    public synchronized int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    @Override
+    public synchronized void read(DataContext context, byte[] data, long position) throws IOException {
+        int done = 0;
+        while (done < data.length) {
+            final long blockIndex = (position + done) / blockSize;
+            final byte[] block = getBlock(blockIndex);
+            final int blockOffset = (int) (position + done - blockIndex * blockSize);
+            if (block == null || blockOffset >= block.length) {
+                // We do not report EOF here, because read() is called whenever
+                // segment data is allocated
+                break;
+            }
+            final int n = Math.min(block.length - blockOffset, data.length - done);
+            System.arraycopy(block, blockOffset, data, done, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(DataContext context, byte[] data, long position) throws IOException {
+        throw new IOException("Read only.");
+    }
+
+    @Override
+    public synchronized long getMaxPosition() throws IOException {
+        if (length < 0) {
+            final Decoder decoder = getDecoder(checkpoints.lastKey());
+            skip(decoder, Long.MAX_VALUE);
+            length = decoder.position;
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (decoder != null) {
+            decoder.close();
+            decoder = null;
+        }
+        blockCache.clear();
+        source.close();
+    }
+
+    private byte[] getBlock(long blockIndex) throws IOException {
+        byte[] block = blockCache.get(blockIndex);
+        if (block != null) {
+            return block;
+        }
+        final long blockStart = blockIndex * blockSize;
+        if (length >= 0 && blockStart >= length) {
+            return null;
+        }
+        final Decoder decoder = getDecoder(blockStart);
+        skip(decoder, blockStart);
+        if (decoder.position < blockStart) {
+            return null;
+        }
+        block = new byte[blockSize];
+        int n = 0;
+        while (n < blockSize) {
+            final int m = decoder.read(block, n, blockSize - n);
+            if (m < 0) {
+                length = blockStart + n;
+                final byte[] lastBlock = new byte[n];
+                System.arraycopy(block, 0, lastBlock, 0, n);
+                block = lastBlock;
+                break;
+            }
+            n += m;
+        }
+        blockCache.put(blockIndex, block);
+        return block;
+    }
+
+    /**
+     * @return A decoder positioned at or before the given position, reusing the current one if possible.
+     */
+    private Decoder getDecoder(long position) throws IOException {
+        final Map.Entry<Long, Long> checkpoint = checkpoints.floorEntry(position);
+        if (decoder == null || decoder.position > position || decoder.position < checkpoint.getKey()) {
+            if (decoder != null) {
+                decoder.close();
+            }
+            decoder = source.createDecoder(this, checkpoint.getKey(), checkpoint.getValue());
+        }
+        return decoder;
+    }
+
+    private void skip(Decoder decoder, long position) throws IOException {
+        if (skipBuffer == null) {
+            skipBuffer = new byte[64 * 1024];
+        }
+        while (decoder.position < position) {
+            if (decoder.read(skipBuffer, 0, (int) Math.min(skipBuffer.length, position - decoder.position)) < 0) {
+                if (length < 0) {
+                    length = decoder.position;
+                }
+                return;
+            }
+        }
+    }
+
+    private void addCheckpoint(long position, long compressedPosition) {
+        final Long floorPosition = checkpoints.floorKey(position);
+        if (position - floorPosition >= checkpointInterval) {
+            checkpoints.put(position, compressedPosition);
+        }
+    }
+
+    private interface Source extends Closeable {
+        Decoder createDecoder(CompressedInputIOHandler handler, long position, long compressedPosition) throws IOException;
+    }
+
+    private abstract static class Decoder implements Closeable {
+        long position;
+
+        /**
+         * Reads uncompressed data and advances {@link #position}.
+         *
+         * @return The number of bytes read, or {@code -1} at the end of the data.
+         */
+        abstract int read(byte[] b, int off, int len) throws IOException;
+    }
+
+    private static class GzipSource implements Source {
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+
+        private GzipSource(RandomAccessFile raf) {
+            this.raf = raf;
+            this.channel = raf.getChannel();
+        }
+
+        @Override
+        public Decoder createDecoder(CompressedInputIOHandler handler, long position, long compressedPosition) {
+            return new GzipDecoder(handler, channel, position, compressedPosition);
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+
+    /**
+     * Decodes the members of a gzip file, starting at the beginning of a member.
+     */
+    private static class GzipDecoder extends Decoder {
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+        private static final int TRAILER_SIZE = 8;
+
+        private final CompressedInputIOHandler handler;
+        private final FileChannel channel;
+        private final byte[] input;
+        private Inflater inflater;
+        private long inputPosition;
+        private boolean eof;
+
+        private GzipDecoder(CompressedInputIOHandler handler, FileChannel channel, long position, long compressedPosition) {
+            this.handler = handler;
+            this.channel = channel;
+            this.input = new byte[64 * 1024];
+            this.position = position;
+            this.inputPosition = compressedPosition;
+        }
+
+        @Override
+        int read(byte[] b, int off, int len) throws IOException {
+            while (!eof) {
+                if (inflater == null || inflater.finished()) {
+                    if (!startMember()) {
+                        eof = true;
+                        break;
+                    }
+                }
+                if (inflater.needsInput()) {
+                    final int n = readInput(input, 0, input.length);
+                    if (n <= 0) {
+                        throw new EOFException("Unexpected end of gzip data.");
+                    }
+                    inflater.setInput(input, 0, n);
+                }
+                final int n;
+                try {
+                    n = inflater.inflate(b, off, len);
+                } catch (DataFormatException e) {
+                    throw new IOException("Invalid gzip data: " + e.getMessage());
+                }
+                if (n > 0) {
+                    position += n;
+                    return n;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Invalid gzip data: dictionary required.");
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Skips the trailer of the current member, records a checkpoint and parses the header of the next member.
+         *
+         * @return {@code false}, if there are no more members.
+         */
+        private boolean startMember() throws IOException {
+            long memberPosition = inputPosition;
+            if (inflater != null) {
+                memberPosition = inputPosition - inflater.getRemaining() + TRAILER_SIZE;
+                inflater.end();
+                inflater = null;
+            }
+            final byte[] header = new byte[10];
+            inputPosition = memberPosition;
+            if (readInput(header, 0, header.length) < header.length
+                    || (header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B) {
+                // end of file, trailing garbage is ignored
+                return false;
+            }
+            if (header[2] != 8) {
+                throw new IOException("Unsupported gzip compression method: " + header[2]);
+            }
+            final int flags = header[3];
+            if ((flags & FEXTRA) != 0) {
+                final byte[] extraLength = new byte[2];
+                readFully(extraLength);
+                inputPosition += (extraLength[0] & 0xFF) | (extraLength[1] & 0xFF) << 8;
+            }
+            if ((flags & FNAME) != 0) {
+                skipZeroTerminated();
+            }
+            if ((flags & FCOMMENT) != 0) {
+                skipZeroTerminated();
+            }
+            if ((flags & FHCRC) != 0) {
+                inputPosition += 2;
+            }
+            handler.addCheckpoint(position, memberPosition);
+            inflater = new Inflater(true);
+            return true;
+        }
+
+        private void skipZeroTerminated() throws IOException {
+            final byte[] b = new byte[1];
+            do {
+                readFully(b);
+            } while (b[0] != 0);
+        }
+
+        private void readFully(byte[] b) throws IOException {
+            if (readInput(b, 0, b.length) < b.length) {
+                throw new EOFException("Unexpected end of gzip header.");
+            }
+        }
+
+        private int readInput(byte[] b, int off, int len) throws IOException {
+            final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                final int n = channel.read(buffer, inputPosition);
+                if (n < 0) {
+                    break;
+                }
+                inputPosition += n;
+            }
+            return buffer.position() - off;
+        }
+
+        @Override
+        public void close() {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+
+    private static class ZipSource implements Source {
+        private final ZipFile zipFile;
+        private final ZipEntry entry;
+
+        private ZipSource(ZipFile zipFile, ZipEntry entry) {
+            this.zipFile = zipFile;
+            this.entry = entry;
+        }
+
+        @Override
+        public Decoder createDecoder(CompressedInputIOHandler handler, long position, long compressedPosition) throws IOException {
+            // the start of the entry is the only checkpoint
+            final InputStream stream = zipFile.getInputStream(entry);
+            return new Decoder() {
+                @Override
+                int read(byte[] b, int off, int len) throws IOException {
+                    final int n = stream.read(b, off, len);
+                    if (n > 0) {
+                        position += n;
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    stream.close();
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            zipFile.close();
+        }
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundMember;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceType;
+import com.bc.ceres.binio.SimpleType;
+import com.bc.ceres.binio.Type;
+import com.bc.ceres.binio.internal.GrowableSequenceTypeImpl;
+import com.bc.ceres.binio.internal.SequenceTypeImpl;
+import com.bc.ceres.binio.internal.VarElementCountSequenceTypeImpl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+/**
+ * A cache of {@link DataFormat}s stored in a compact binary form, used to avoid parsing schema files
+ * such as BinX documents again and again.
+ * <p>
+ * Entries are keyed by a hash of the schema content and of everything else the resulting format depends on
+ * (see {@link #computeKey(byte[][])}). A cached entry comprises the format's name, version, byte order,
+ * compound type, type definitions and basis format. Supported types are simple types, compounds, fixed and
+ * growable sequences and sequences whose element count is given by a member (see
+ * {@link com.bc.ceres.binio.TypeBuilder#VAR_SEQUENCE(Type, String)}). Formats using other types or
+ * metadata cannot be cached.
+ *
+ * @since Ceres 0.14
+ */
+public class DataFormatCache {
+
+    /**
+     * The version of the binary representation. Entries of other versions are ignored.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x42444643; // "BDFC"
+    private static final String FILE_EXTENSION = ".bdf";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int KIND_SIMPLE = 0;
+    private static final int KIND_COMPOUND = 1;
+    private static final int KIND_SEQUENCE = 2;
+    private static final int KIND_GROWABLE_SEQUENCE = 3;
+    private static final int KIND_VAR_SEQUENCE_BY_NAME = 4;
+    private static final int KIND_VAR_SEQUENCE_BY_INDEX = 5;
+
+    private final File cacheDir;
+
+    /**
+     * @param cacheDir The directory where cache entries are stored. Created if it does not exist.
+     */
+    public DataFormatCache(File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Computes a cache key from the given parts using SHA-256.
+     *
+     * @param parts The parts, e.g. the schema content and a description of parser settings.
+     * @return The key as a hexadecimal string.
+     */
+    public static String computeKey(byte[]... parts) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update((byte) VERSION);
+        for (byte[] part : parts) {
+            // length prefix, so that ("ab","c") and ("a","bc") differ
+            final int length = part.length;
+            digest.update(new byte[]{(byte) (length >> 24), (byte) (length >> 16), (byte) (length >> 8), (byte) length});
+            digest.update(part);
+        }
+        final StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Gets a cached format. An invalid entry, e.g. a corrupt or outdated one, is deleted.
+     *
+     * @param key The key.
+     * @return The format, or {@code null} if there is no valid entry for the given key.
+     */
+    public DataFormat get(String key) {
+        final File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return readDataFormat(readFile(file));
+        } catch (IOException e) {
+            // corrupt or outdated entry, it is replaced by the next put()
+            if (file.exists() && !file.delete()) {
+                final Logger logger = Logger.getLogger(System.getProperty("ceres.context", "ceres"));
+                logger.log(Level.WARNING, "Invalid data format cache entry NOT deleted: " + file, e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Reads a cache file into a heap buffer. Entries are small, and unlike a mapped file,
+     * a file which has been read can be deleted on all platforms.
+     */
+    private static ByteBuffer readFile(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid data format cache entry: " + file);
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file: " + file);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Puts a format into the cache.
+     *
+     * @param key    The key.
+     * @param format The format.
+     * @throws IOException If the format cannot be cached or if an I/O error occurs.
+     */
+    public void put(String key, DataFormat format) throws IOException {
+        final byte[] bytes = writeDataFormat(format);
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Failed to create cache directory " + cacheDir);
+        }
+        final File file = getFile(key);
+        // write to a temporary file first, so that readers never see incomplete entries
+        final File tempFile = File.createTempFile(key, ".tmp", cacheDir);
+        try {
+            final FileOutputStream stream = new FileOutputStream(tempFile);
+            try {
+                stream.write(bytes);
+            } finally {
+                stream.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                file.delete();
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Failed to create cache entry " + file);
+                }
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(cacheDir, key + FILE_EXTENSION);
+    }
+
+    /**
+     * Writes a format into its binary representation.
+     *
+     * @param format The format.
+     * @return The binary representation.
+     * @throws IOException If the format uses types or metadata which cannot be cached.
+     */
+    public static byte[] writeDataFormat(DataFormat format) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeFormat(out, format);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a format from its binary representation.
+     *
+     * @param buffer The buffer.
+     * @return The format.
+     * @throws IOException If the buffer does not contain a valid representation of the current version.
+     */
+    public static DataFormat readDataFormat(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Not a data format cache entry of version " + VERSION);
+            }
+            return readFormat(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated data format cache entry.");
+        } catch (RuntimeException e) {
+            // e.g. thrown by the type builder for inconsistent types
+            final IOException exception = new IOException("Invalid data format cache entry: " + e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    private static void writeFormat(DataOutputStream out, DataFormat format) throws IOException {
+        writeString(out, format.getName());
+        writeString(out, format.getVersion());
+        out.writeBoolean(ByteOrder.LITTLE_ENDIAN.equals(format.getByteOrder()));
+
+        final TypeTable typeTable = new TypeTable();
+        final String[] typeDefNames = format.getTypeDefNames();
+        Arrays.sort(typeDefNames);
+        final CompoundType type = format.getType();
+        if (type != null) {
+            typeTable.add(type);
+        }
+        for (String name : typeDefNames) {
+            typeTable.add(format.getTypeDef(name));
+        }
+
+        out.writeInt(typeTable.types.size());
+        for (Type t : typeTable.types) {
+            typeTable.write(out, t);
+        }
+        out.writeInt(type != null ? typeTable.ids.get(type) : -1);
+        out.writeInt(typeDefNames.length);
+        for (String name : typeDefNames) {
+            writeString(out, name);
+            out.writeInt(typeTable.ids.get(format.getTypeDef(name)));
+        }
+
+        final DataFormat basisFormat = format.getBasisFormat();
+        out.writeBoolean(basisFormat != null);
+        if (basisFormat != null) {
+            writeFormat(out, basisFormat);
+        }
+    }
+
+    private static DataFormat readFormat(ByteBuffer buffer) throws IOException {
+        final DataFormat format = new DataFormat();
+        final String name = readString(buffer);
+        if (name != null) {
+            format.setName(name);
+        }
+        final String version = readString(buffer);
+        if (version != null) {
+            format.setVersion(version);
+        }
+        format.setByteOrder(buffer.get() != 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+        // a type is encoded in at least 2 bytes, a type definition in at least 8 bytes
+        final Type[] types = new Type[readCount(buffer, 2)];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = readType(buffer, types, i);
+        }
+        final int typeId = buffer.getInt();
+        if (typeId != -1) {
+            final Type type = getType(types, typeId, types.length);
+            if (!(type instanceof CompoundType)) {
+                throw new IOException("Not a compound type: " + type.getName());
+            }
+            format.setType((CompoundType) type);
+        }
+        final int typeDefCount = readCount(buffer, 8);
+        for (int i = 0; i < typeDefCount; i++) {
+            final String typeDefName = readString(buffer);
+            format.addTypeDef(typeDefName, readTypeRef(buffer, types, types.length));
+        }
+
+        if (buffer.get() != 0) {
+            format.setBasisFormat(readFormat(buffer));
+        }
+        return format;
+    }
+
+    /**
+     * @param typeCount The number of types read so far. Types only refer to types preceding them.
+     */
+    private static Type readType(ByteBuffer buffer, Type[] types, int typeCount) throws IOException {
+        final int kind = buffer.get();
+        switch (kind) {
+            case KIND_SIMPLE: {
+                final int index = buffer.get();
+                if (index < 0 || index >= TypeParser.SIMPLE_TYPES.length) {
+                    throw new IOException("Invalid simple type index " + index);
+                }
+                return TypeParser.SIMPLE_TYPES[index];
+            }
+            case KIND_COMPOUND: {
+                final String name = readString(buffer);
+                // a member is encoded in at least 8 bytes
+                final CompoundMember[] members = new CompoundMember[readCount(buffer, 8)];
+                for (int i = 0; i < members.length; i++) {
+                    final String memberName = readString(buffer);
+                    members[i] = MEMBER(memberName, readTypeRef(buffer, types, typeCount));
+                }
+                return COMPOUND(name, members);
+            }
+            case KIND_SEQUENCE: {
+                final Type elementType = readTypeRef(buffer, types, typeCount);
+                return SEQUENCE(elementType, buffer.getInt());
+            }
+            case KIND_GROWABLE_SEQUENCE:
+                return SEQUENCE(readTypeRef(buffer, types, typeCount), -1);
+            case KIND_VAR_SEQUENCE_BY_NAME: {
+                final Type elementType = readTypeRef(buffer, types, typeCount);
+                return VAR_SEQUENCE(elementType, readString(buffer));
+            }
+            case KIND_VAR_SEQUENCE_BY_INDEX: {
+                final Type elementType = readTypeRef(buffer, types, typeCount);
+                return VAR_SEQUENCE(elementType, buffer.getInt());
+            }
+            default:
+                throw new IOException("Unknown type kind " + kind);
+        }
+    }
+
+    private static Type readTypeRef(ByteBuffer buffer, Type[] types, int typeCount) throws IOException {
+        return getType(types, buffer.getInt(), typeCount);
+    }
+
+    private static Type getType(Type[] types, int id, int typeCount) throws IOException {
+        if (id < 0 || id >= typeCount) {
+            throw new IOException("Invalid type id " + id);
+        }
+        return types[id];
+    }
+
+    /**
+     * Reads the number of elements which follow, validated against the remaining bytes,
+     * so that corrupt entries don't cause huge allocations.
+     */
+    private static int readCount(ByteBuffer buffer, int minElementSize) throws IOException {
+        final int count = buffer.getInt();
+        if (count < 0 || (long) count * minElementSize > buffer.remaining()) {
+            throw new IOException("Invalid element count " + count);
+        }
+        return count;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = s.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        final int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Assigns ids to all types of a type graph, such that referenced types precede referencing types.
+     */
+    private static class TypeTable {
+        private final List<Type> types = new ArrayList<Type>();
+        private final Map<Type, Integer> ids = new IdentityHashMap<Type, Integer>();
+        private final Map<Type, Type> visiting = new IdentityHashMap<Type, Type>();
+        private final Map<SimpleType, Integer> simpleTypeIndices = new HashMap<SimpleType, Integer>();
+
+        private TypeTable() {
+            for (int i = 0; i < TypeParser.SIMPLE_TYPES.length; i++) {
+                simpleTypeIndices.put(TypeParser.SIMPLE_TYPES[i], i);
+            }
+        }
+
+        private void add(Type type) throws IOException {
+            if (ids.containsKey(type)) {
+                return;
+            }
+            if (visiting.put(type, type) != null) {
+                throw new IOException("Cyclic type definition: " + type.getName());
+            }
+            if (type instanceof CompoundType) {
+                final CompoundType compoundType = (CompoundType) type;
+                if (compoundType.getMetadata() != null) {
+                    throw new IOException("Cannot cache metadata of type " + type.getName());
+                }
+                for (CompoundMember member : compoundType.getMembers()) {
+                    if (member.getMetadata() != null) {
+                        throw new IOException("Cannot cache metadata of member " + member.getName());
+                    }
+                    add(member.getType());
+                }
+            } else if (type instanceof SequenceType) {
+                add(((SequenceType) type).getElementType());
+            }
+            visiting.remove(type);
+            ids.put(type, types.size());
+            types.add(type);
+        }
+
+        private void write(DataOutputStream out, Type type) throws IOException {
+            if (type instanceof SimpleType) {
+                out.writeByte(KIND_SIMPLE);
+                out.writeByte(simpleTypeIndices.get(type));
+            } else if (type instanceof CompoundType) {
+                final CompoundType compoundType = (CompoundType) type;
+                out.writeByte(KIND_COMPOUND);
+                writeString(out, compoundType.getName());
+                out.writeInt(compoundType.getMemberCount());
+                for (CompoundMember member : compoundType.getMembers()) {
+                    writeString(out, member.getName());
+                    out.writeInt(ids.get(member.getType()));
+                }
+            } else if (type instanceof SequenceTypeImpl) {
+                final SequenceType sequenceType = (SequenceType) type;
+                out.writeByte(KIND_SEQUENCE);
+                out.writeInt(ids.get(sequenceType.getElementType()));
+                out.writeInt(sequenceType.getElementCount());
+            } else if (type instanceof GrowableSequenceTypeImpl) {
+                out.writeByte(KIND_GROWABLE_SEQUENCE);
+                out.writeInt(ids.get(((SequenceType) type).getElementType()));
+            } else if (type instanceof VarElementCountSequenceTypeImpl) {
+                final VarElementCountSequenceTypeImpl sequenceType = (VarElementCountSequenceTypeImpl) type;
+                final int elementTypeId = ids.get(sequenceType.getElementType());
+                if (sequenceType.getMemberName() != null) {
+                    out.writeByte(KIND_VAR_SEQUENCE_BY_NAME);
+                    out.writeInt(elementTypeId);
+                    writeString(out, sequenceType.getMemberName());
+                } else {
+                    out.writeByte(KIND_VAR_SEQUENCE_BY_INDEX);
+                    out.writeInt(elementTypeId);
+                    out.writeInt(sequenceType.getMemberIndex());
+                }
+            } else {
+                throw new IOException("Cannot cache type " + type.getName() + " of " + type.getClass());
+            }
+        }
+    }
+}
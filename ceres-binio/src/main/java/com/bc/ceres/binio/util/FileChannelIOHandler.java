@@ -31,6 +31,10 @@ public class FileChannelIOHandler implements IOHandler {
         this.fileChannel = fileChannel;
     }
 
+    public FileChannel getFileChannel() {
+        return fileChannel;
+    }
+
     @Override
     public void read(DataContext context, byte[] data, long position) throws IOException {
         synchronized (fileChannel) {
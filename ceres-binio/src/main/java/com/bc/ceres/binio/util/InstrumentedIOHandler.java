@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.ExtendedDataContext;
+import com.bc.ceres.binio.IOHandler;
+import com.bc.ceres.binio.IOStatistics;
+
+import java.io.IOException;
+
+/**
+ * An I/O handler which records the number, size and latency of the read and write calls
+ * passed to its delegate. Calls are recorded in the statistics of this handler and in the
+ * {@link ExtendedDataContext#getStatistics() statistics} of the calling context, if it has any.
+ * <pre>
+ *     InstrumentedIOHandler handler = new InstrumentedIOHandler(new FileChannelIOHandler(channel));
+ *     handler.getStatistics().registerMBean("SMOS L1C");
+ *     DataContext context = format.createContext(handler);
+ * </pre>
+ *
+ * @since Ceres 0.14
+ */
+public class InstrumentedIOHandler extends FilterIOHandler {
+    private final IOStatistics statistics;
+
+    public InstrumentedIOHandler(IOHandler delegate) {
+        this(delegate, new IOStatistics());
+    }
+
+    /**
+     * @param delegate   The delegate.
+     * @param statistics The statistics, which may be shared by multiple handlers.
+     */
+    public InstrumentedIOHandler(IOHandler delegate, IOStatistics statistics) {
+        super(delegate);
+        this.statistics = statistics;
+    }
+
+    public IOStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public void read(DataContext context, byte[] data, long position) throws IOException {
+        final long t0 = System.nanoTime();
+        try {
+            super.read(context, data, position);
+        } finally {
+            final long nanos = System.nanoTime() - t0;
+            statistics.recordRead(data.length, nanos);
+            if (context instanceof ExtendedDataContext) {
+                ((ExtendedDataContext) context).getStatistics().recordRead(data.length, nanos);
+            }
+        }
+    }
+
+    @Override
+    public void write(DataContext context, byte[] data, long position) throws IOException {
+        final long t0 = System.nanoTime();
+        try {
+            super.write(context, data, position);
+        } finally {
+            final long nanos = System.nanoTime() - t0;
+            statistics.recordWrite(data.length, nanos);
+            if (context instanceof ExtendedDataContext) {
+                ((ExtendedDataContext) context).getStatistics().recordWrite(data.length, nanos);
+            }
+        }
+    }
+}
@@ -16,90 +16,204 @@
 
 package com.bc.ceres.binio.util;
 
+import com.bc.ceres.binio.BufferViewIOHandler;
 import com.bc.ceres.binio.DataContext;
-import com.bc.ceres.binio.IOHandler;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
-public class MappedFileChannelIOHandler implements IOHandler {
+/**
+ * An I/O handler which maps a file into memory using fixed-size windows.
+ * <p>
+ * The file is divided into windows of {@code windowSize} bytes, which are mapped on first access and
+ * cached, up to {@code maxWindowCount} windows (least recently used windows are dropped first).
+ * Reads and writes which straddle multiple windows are split accordingly, therefore files larger
+ * than 2 GB are supported.
+ * <p>
+ * In {@link FileChannel.MapMode#READ_WRITE READ_WRITE} mode, data is written into the mapped windows
+ * and {@link #force()} may be used to write it back to the storage device. Writes beyond the current
+ * end of the file grow the file through the channel. Windows which are dropped from the cache are
+ * forced before, so that {@link #force()} covers all writes.
+ * <p>
+ * Read-only {@link #getBufferView buffer views} of the mapped windows are provided, so that
+ * segment data can be decoded without copying.
+ */
+public class MappedFileChannelIOHandler implements BufferViewIOHandler {
 
-    private final FileChannel channel;
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_MAX_WINDOW_COUNT = 16;
 
-    private MappedByteBuffer mappedBuffer;
-    private long mappedPos;
-    private long mappedUpperBound;
-    private long streamPos;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mapMode;
+    private final int windowSize;
+    private final Map<Long, MappedByteBuffer> windows;
 
     public MappedFileChannelIOHandler(FileChannel channel) throws IOException {
+        this(channel, FileChannel.MapMode.READ_ONLY);
+    }
+
+    public MappedFileChannelIOHandler(FileChannel channel, FileChannel.MapMode mapMode) throws IOException {
+        this(channel, mapMode, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_WINDOW_COUNT);
+    }
+
+    public MappedFileChannelIOHandler(FileChannel channel, FileChannel.MapMode mapMode,
+                                      int windowSize, final int maxWindowCount) throws IOException {
         if (channel == null) {
             throw new IllegalArgumentException("channel == null");
         }
         if (!channel.isOpen()) {
             throw new IllegalArgumentException("channel.isOpen() == false");
         }
-
+        if (mapMode != FileChannel.MapMode.READ_ONLY && mapMode != FileChannel.MapMode.READ_WRITE) {
+            throw new IllegalArgumentException("mapMode must be READ_ONLY or READ_WRITE");
+        }
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize <= 0");
+        }
+        if (maxWindowCount <= 0) {
+            throw new IllegalArgumentException("maxWindowCount <= 0");
+        }
         this.channel = channel;
-        long channelPosition = channel.position();
-        streamPos = channelPosition;
-        long fullSize = channel.size() - channelPosition;
-        long mappedSize = Math.min(fullSize, 2147483647L);
-        mappedPos = 0L;
-        mappedUpperBound = mappedPos + mappedSize;
-        mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, channelPosition, mappedSize);
+        this.mapMode = mapMode;
+        this.windowSize = windowSize;
+        this.windows = new LinkedHashMap<Long, MappedByteBuffer>(2 * maxWindowCount, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                if (size() > maxWindowCount) {
+                    dropWindow(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public FileChannel.MapMode getMapMode() {
+        return mapMode;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
     }
 
     @Override
     public void read(DataContext context, byte[] data, long position) throws IOException {
-        synchronized (this) {
-            seek(position);
-            read(data);
+        final long fileSize = channel.size();
+        int offset = 0;
+        // We do not check for EOF here, because read() is called whenever
+        // segment data is allocated
+        while (offset < data.length && position < fileSize) {
+            final ByteBuffer window = getWindow(position, position + 1);
+            final int n = Math.min(data.length - offset, window.limit() - window.position());
+            window.get(data, offset, n);
+            offset += n;
+            position += n;
         }
     }
 
     @Override
     public void write(DataContext context, byte[] data, long position) throws IOException {
-        throw new RuntimeException("not implemented");
+        if (mapMode != FileChannel.MapMode.READ_WRITE) {
+            throw new IOException("Read only.");
+        }
+        final long fileSize = channel.size();
+        if (position + data.length > fileSize) {
+            // Mapping beyond the end of the file would grow it by a whole window, so the
+            // channel is used. Windows mapped before are remapped when accessed beyond their end.
+            final ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+            return;
+        }
+        int offset = 0;
+        while (offset < data.length) {
+            final ByteBuffer window = getWindow(position, position + 1);
+            final int n = Math.min(data.length - offset, window.limit() - window.position());
+            window.put(data, offset, n);
+            offset += n;
+            position += n;
+        }
     }
-    
+
+    /**
+     * Gets a read-only view of the mapped data. Views are only provided for ranges which
+     * lie completely within the file and within a single window.
+     */
     @Override
-    public long getMaxPosition() throws IOException {
-        synchronized (this) {
-            return channel.size();
+    public ByteBuffer getBufferView(DataContext context, long position, int size) throws IOException {
+        final long windowStart = (position / windowSize) * windowSize;
+        if (position + size > windowStart + windowSize || position + size > channel.size()) {
+            return null;
         }
+        final ByteBuffer window = getWindow(position, position + size);
+        window.limit(window.position() + size);
+        return window.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public long getMaxPosition() throws IOException {
+        return channel.size();
     }
 
-    private void seek(long pos) throws IOException {
-        streamPos = pos;
-        if (pos >= mappedPos && pos < mappedUpperBound) {
-            mappedBuffer.position((int) (pos - mappedPos));
-        } else {
-            int len = (int) Math.min(channel.size() - pos, 2147483647L);
-            mappedBuffer = getMappedBuffer(len);
+    /**
+     * Forces all writes, made to the mapped windows or through the channel, to be written to the
+     * storage device.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    public void force() throws IOException {
+        if (mapMode == FileChannel.MapMode.READ_WRITE) {
+            final List<MappedByteBuffer> mappedBuffers;
+            synchronized (windows) {
+                mappedBuffers = new ArrayList<MappedByteBuffer>(windows.values());
+            }
+            for (MappedByteBuffer mappedBuffer : mappedBuffers) {
+                mappedBuffer.force();
+            }
+            // data written beyond the end of the file
+            channel.force(false);
         }
     }
 
-    private int read(byte b[]) throws IOException {
-        if (b.length == 0) {
-            return 0;
+    /**
+     * Gets a private view of the window containing the given position.
+     * The view's position is set to the given position, its limit to the window's end.
+     * A window mapped while the file was shorter is remapped, if it ends before {@code requiredEnd}.
+     */
+    private ByteBuffer getWindow(long position, long requiredEnd) throws IOException {
+        final long windowIndex = position / windowSize;
+        final long windowStart = windowIndex * windowSize;
+        MappedByteBuffer mappedBuffer;
+        synchronized (windows) {
+            mappedBuffer = windows.get(windowIndex);
+            if (mappedBuffer == null || windowStart + mappedBuffer.capacity() < requiredEnd) {
+                final long mappedSize = Math.min(windowSize, channel.size() - windowStart);
+                mappedBuffer = channel.map(mapMode, windowStart, mappedSize);
+                final MappedByteBuffer replacedBuffer = windows.put(windowIndex, mappedBuffer);
+                if (replacedBuffer != null) {
+                    dropWindow(replacedBuffer);
+                }
+            }
         }
-        final int len = b.length;
-        ByteBuffer byteBuffer = getMappedBuffer(len);
-        byteBuffer.get(b, 0, len);
-        streamPos += len;
-        return len;
+        final ByteBuffer view = mappedBuffer.duplicate();
+        view.position((int) (position - windowStart));
+        return view;
     }
 
-    private MappedByteBuffer getMappedBuffer(int len) throws IOException {
-        if (streamPos < mappedPos || streamPos + (long) len >= mappedUpperBound) {
-            mappedPos = streamPos;
-            long mappedSize = Math.min(channel.size() - mappedPos, 2147483647L);
-            mappedUpperBound = mappedPos + mappedSize;
-            mappedBuffer = channel.map(
-                    FileChannel.MapMode.READ_ONLY, mappedPos, mappedSize);
+    /**
+     * Called while the windows are locked, before a window is dropped. Changes made to the window
+     * are forced, because {@link #force()} cannot reach it anymore.
+     */
+    private void dropWindow(MappedByteBuffer mappedBuffer) {
+        if (mapMode == FileChannel.MapMode.READ_WRITE) {
+            mappedBuffer.force();
         }
-        return mappedBuffer;
     }
 }
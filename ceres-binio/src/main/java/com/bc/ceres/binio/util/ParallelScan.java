@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.RangeScanner;
+import com.bc.ceres.binio.SequenceData;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scans a sequence in parallel. The sequence is split into contiguous index ranges, each range
+ * is represented by its own {@link SequenceData#createSubSequence(int, int) sub-sequence} and
+ * passed to a {@link RangeScanner} on a {@link ForkJoinPool}. The range results are combined in
+ * index order.
+ * <p>
+ * The context's {@link com.bc.ceres.binio.IOHandler} must support concurrent reads, e.g.
+ * {@link ReadOnlyFileChannelIOHandler} or {@link MappedFileChannelIOHandler}.
+ * For sequences of variable-size elements, the range boundaries are resolved sequentially
+ * before the ranges are scanned.
+ *
+ * @since Ceres 0.14
+ */
+public final class ParallelScan {
+
+    /**
+     * The default minimum number of elements per range.
+     */
+    public static final int DEFAULT_MIN_RANGE_SIZE = 1024;
+
+    private static ForkJoinPool defaultPool;
+
+    private ParallelScan() {
+    }
+
+    /**
+     * Scans the given sequence using a shared pool with one thread per available processor.
+     *
+     * @param sequence The sequence.
+     * @param scanner  The scanner.
+     * @param <T>      The result type.
+     * @return The combined result of all ranges.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static <T> T scan(SequenceData sequence, RangeScanner<T> scanner) throws IOException {
+        return scan(sequence, scanner, getDefaultPool(), DEFAULT_MIN_RANGE_SIZE);
+    }
+
+    /**
+     * Scans the given sequence.
+     *
+     * @param sequence     The sequence.
+     * @param scanner      The scanner.
+     * @param pool         The pool used to execute the scans.
+     * @param minRangeSize The minimum number of elements per range.
+     * @param <T>          The result type.
+     * @return The combined result of all ranges. An empty sequence is scanned as a single empty range.
+     * @throws IOException If an I/O error occurs.
+     */
+    public static <T> T scan(SequenceData sequence, RangeScanner<T> scanner, ForkJoinPool pool, int minRangeSize) throws IOException {
+        if (minRangeSize <= 0) {
+            throw new IllegalArgumentException("minRangeSize");
+        }
+        sequence.resolveSize();
+        final int elementCount = sequence.getElementCount();
+        final int rangeSize = getRangeSize(pool, elementCount, minRangeSize);
+        final int rangeCount = Math.max(1, (elementCount + rangeSize - 1) / rangeSize);
+        final SequenceData[] ranges = new SequenceData[rangeCount];
+        final int[] rangeOffsets = new int[rangeCount];
+        for (int i = 0; i < rangeCount; i++) {
+            final int fromIndex = i * rangeSize;
+            final int toIndex = Math.min(elementCount, fromIndex + rangeSize);
+            ranges[i] = sequence.createSubSequence(fromIndex, toIndex);
+            rangeOffsets[i] = fromIndex;
+        }
+        return invoke(pool, new ScanTask<T>(scanner, ranges, rangeOffsets, 0, rangeCount));
+    }
+
+    /**
+     * @return The number of elements per range, so that there are some more ranges than threads
+     *         and threads finishing early can steal work.
+     */
+    static int getRangeSize(ForkJoinPool pool, int elementCount, int minRangeSize) {
+        final int maxRangeCount = 4 * pool.getParallelism();
+        return Math.max(minRangeSize, (elementCount + maxRangeCount - 1) / maxRangeCount);
+    }
+
+    /**
+     * Invokes the given task and rethrows an {@link IOException} thrown by any of its subtasks,
+     * which must wrap it into a {@link TaskException}.
+     */
+    static <T> T invoke(ForkJoinPool pool, ForkJoinTask<T> task) throws IOException {
+        try {
+            return pool.invoke(task);
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+    static synchronized ForkJoinPool getDefaultPool() {
+        if (defaultPool == null) {
+            defaultPool = new ForkJoinPool();
+        }
+        return defaultPool;
+    }
+
+    private static class ScanTask<T> extends RecursiveTask<T> {
+        private final RangeScanner<T> scanner;
+        private final SequenceData[] ranges;
+        private final int[] rangeOffsets;
+        private final int from;
+        private final int to;
+
+        private ScanTask(RangeScanner<T> scanner, SequenceData[] ranges, int[] rangeOffsets, int from, int to) {
+            this.scanner = scanner;
+            this.ranges = ranges;
+            this.rangeOffsets = rangeOffsets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from == 1) {
+                try {
+                    return scanner.scan(ranges[from], rangeOffsets[from]);
+                } catch (IOException e) {
+                    throw new TaskException(e);
+                }
+            }
+            final int mid = (from + to) >>> 1;
+            final ScanTask<T> task1 = new ScanTask<T>(scanner, ranges, rangeOffsets, from, mid);
+            final ScanTask<T> task2 = new ScanTask<T>(scanner, ranges, rangeOffsets, mid, to);
+            task2.fork();
+            final T result1 = task1.compute();
+            final T result2 = task2.join();
+            return scanner.combine(result1, result2);
+        }
+    }
+
+    static final class TaskException extends RuntimeException {
+        TaskException(IOException cause) {
+            super(cause);
+        }
+    }
+}
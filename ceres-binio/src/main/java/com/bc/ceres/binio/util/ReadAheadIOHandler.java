@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An I/O handler which detects sequential reads of a {@link DataContext} and asynchronously
+ * reads ahead the next {@code depth} blocks, so that I/O latency overlaps with decoding.
+ * <p>
+ * Reads are considered sequential, if a read starts where the previous read of the same context ended.
+ * Prefetched blocks have the size of the last read. A read which is fully contained in a prefetched block
+ * is served from it, all other reads are delegated. Writes are delegated and drop overlapping blocks.
+ * <p>
+ * Call {@link #dispose()} to cancel pending prefetches and to release the executor.
+ *
+ * @since Ceres 0.14
+ */
+public class ReadAheadIOHandler extends FilterIOHandler {
+
+    public static final int DEFAULT_DEPTH = 4;
+
+    private final int depth;
+    private final ExecutorService executor;
+    private final boolean executorOwner;
+    private final Map<DataContext, Stream> streams;
+    private boolean disposed;
+
+    public ReadAheadIOHandler(IOHandler delegate) {
+        this(delegate, DEFAULT_DEPTH);
+    }
+
+    public ReadAheadIOHandler(IOHandler delegate, int depth) {
+        this(delegate, depth, Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "binio-read-ahead");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }), true);
+    }
+
+    /**
+     * @param delegate The handler to read from.
+     * @param depth    The maximum number of blocks read ahead per context.
+     * @param executor The executor used to read ahead. It will not be shut down by {@link #dispose()}.
+     */
+    public ReadAheadIOHandler(IOHandler delegate, int depth, ExecutorService executor) {
+        this(delegate, depth, executor, false);
+    }
+
+    private ReadAheadIOHandler(IOHandler delegate, int depth, ExecutorService executor, boolean executorOwner) {
+        super(delegate);
+        if (depth <= 0) {
+            throw new IllegalArgumentException("depth <= 0");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor == null");
+        }
+        this.depth = depth;
+        this.executor = executor;
+        this.executorOwner = executorOwner;
+        this.streams = new WeakHashMap<DataContext, Stream>();
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public void read(DataContext context, byte[] data, long position) throws IOException {
+        final Block block;
+        final boolean consumed;
+        synchronized (this) {
+            Stream stream = streams.get(context);
+            if (stream == null) {
+                stream = new Stream();
+                streams.put(context, stream);
+            }
+            block = stream.find(position, data.length);
+            consumed = block != null && position + data.length == block.getEnd();
+            if (consumed) {
+                stream.blocks.remove(block);
+            } else if (block != null) {
+                block.shared = true;
+            }
+            final boolean sequential = position == stream.nextPosition;
+            stream.nextPosition = position + data.length;
+            if (sequential && data.length > 0) {
+                schedule(context, stream, data.length);
+            } else if (!sequential) {
+                stream.cancel();
+            }
+        }
+        if (block != null && block.copyTo(data, position)) {
+            if (consumed) {
+                synchronized (this) {
+                    final Stream stream = streams.get(context);
+                    // blocks which have been partially served to other reads may still be copied from
+                    if (stream != null && !block.shared) {
+                        stream.recycle(block.data);
+                    }
+                }
+            }
+        } else {
+            getDelegate().read(context, data, position);
+        }
+    }
+
+    @Override
+    public void write(DataContext context, byte[] data, long position) throws IOException {
+        synchronized (this) {
+            for (Stream stream : streams.values()) {
+                stream.cancel(position, position + data.length);
+            }
+        }
+        getDelegate().write(context, data, position);
+    }
+
+    /**
+     * Cancels all pending prefetches. If the executor has been created by this handler, it is shut down.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        for (Stream stream : streams.values()) {
+            stream.cancel();
+        }
+        streams.clear();
+        if (executorOwner) {
+            executor.shutdown();
+        }
+    }
+
+    private void schedule(final DataContext context, Stream stream, int blockSize) throws IOException {
+        if (disposed) {
+            return;
+        }
+        final long maxPosition = getDelegate().getMaxPosition();
+        long blockPosition = stream.blocks.isEmpty() ? stream.nextPosition : stream.blocks.getLast().getEnd();
+        while (stream.blocks.size() < depth && (maxPosition < 0 || blockPosition < maxPosition)) {
+            final Block block = new Block(blockPosition, stream.allocate(blockSize));
+            block.future = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws IOException {
+                    getDelegate().read(context, block.data, block.position);
+                    return null;
+                }
+            });
+            stream.blocks.addLast(block);
+            blockPosition = block.getEnd();
+        }
+    }
+
+    private final class Stream {
+        private final ArrayDeque<Block> blocks = new ArrayDeque<Block>();
+        private final ArrayDeque<byte[]> freeArrays = new ArrayDeque<byte[]>();
+        private long nextPosition = -1L;
+
+        Block find(long position, int length) {
+            final Iterator<Block> iterator = blocks.iterator();
+            while (iterator.hasNext()) {
+                final Block block = iterator.next();
+                if (block.getEnd() <= position) {
+                    // skipped, will not be read anymore
+                    block.cancel();
+                    iterator.remove();
+                } else if (block.position <= position && position + length <= block.getEnd()) {
+                    return block;
+                } else {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        void cancel() {
+            for (Block block : blocks) {
+                block.cancel();
+            }
+            blocks.clear();
+        }
+
+        void cancel(long start, long end) {
+            final Iterator<Block> iterator = blocks.iterator();
+            while (iterator.hasNext()) {
+                final Block block = iterator.next();
+                if (block.position < end && start < block.getEnd()) {
+                    block.cancel();
+                    iterator.remove();
+                }
+            }
+        }
+
+        byte[] allocate(int size) {
+            final byte[] array = freeArrays.pollFirst();
+            return array != null && array.length == size ? array : new byte[size];
+        }
+
+        void recycle(byte[] array) {
+            if (freeArrays.size() < depth) {
+                freeArrays.addLast(array);
+            }
+        }
+    }
+
+    private static final class Block {
+        private final long position;
+        private final byte[] data;
+        private Future<?> future;
+        private boolean shared;
+
+        Block(long position, byte[] data) {
+            this.position = position;
+            this.data = data;
+        }
+
+        long getEnd() {
+            return position + data.length;
+        }
+
+        void cancel() {
+            // Must not interrupt, since interrupting a thread blocked in a
+            // FileChannel operation closes the channel.
+            future.cancel(false);
+        }
+
+        /**
+         * Waits until the block has been read and copies the requested range.
+         *
+         * @return {@code false} if the block has been cancelled or could not be read.
+         */
+        boolean copyTo(byte[] target, long targetPosition) throws IOException {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                return false;
+            } catch (CancellationException e) {
+                return false;
+            }
+            System.arraycopy(data, (int) (targetPosition - position), target, 0, target.length);
+            return true;
+        }
+    }
+}
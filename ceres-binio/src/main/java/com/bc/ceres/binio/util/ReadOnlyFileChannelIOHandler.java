@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only I/O handler which uses the positional {@link FileChannel#read(ByteBuffer, long)} method.
+ * <p>
+ * In contrast to the {@link FileChannelIOHandler} and the {@link RandomAccessFileIOHandler}, no
+ * lock is held while reading and the channel's position is never modified. Therefore multiple threads
+ * may read concurrently from the same file.
+ * <p>
+ * Note that interrupting a thread blocked in a read operation closes the channel for all other threads.
+ *
+ * @since Ceres 0.14
+ */
+public class ReadOnlyFileChannelIOHandler implements IOHandler {
+    private final FileChannel fileChannel;
+
+    public ReadOnlyFileChannelIOHandler(FileChannel fileChannel) {
+        if (fileChannel == null) {
+            throw new IllegalArgumentException("fileChannel == null");
+        }
+        this.fileChannel = fileChannel;
+    }
+
+    @Override
+    public void read(DataContext context, byte[] data, long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            // We do not report EOF here, because read() is called whenever
+            // segment data is allocated
+            final int n = fileChannel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void write(DataContext context, byte[] data, long position) throws IOException {
+        throw new IOException("Read only.");
+    }
+
+    @Override
+    public long getMaxPosition() throws IOException {
+        return fileChannel.size();
+    }
+}
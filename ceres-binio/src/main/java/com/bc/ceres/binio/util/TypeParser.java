@@ -24,6 +24,7 @@ import com.bc.ceres.binio.internal.VarElementCountSequenceTypeImpl;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StreamTokenizer;
+import java.io.StringReader;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -122,6 +123,47 @@ public class TypeParser {
         return compoundTypes;
     }
 
+    /**
+     * Parses a unit, using a cache of previously parsed units.
+     *
+     * @param reader The reader providing the unit.
+     * @param cache  The cache. Units are looked up by a hash of their text.
+     * @return The compound types of the unit.
+     * @throws IOException    If an I/O error occurs.
+     * @throws ParseException If the unit cannot be parsed.
+     * @since Ceres 0.14
+     */
+    public static CompoundType[] parseUnit(Reader reader, DataFormatCache cache) throws IOException, ParseException {
+        final StringBuilder text = new StringBuilder();
+        final char[] buffer = new char[8192];
+        int n;
+        while ((n = reader.read(buffer)) > 0) {
+            text.append(buffer, 0, n);
+        }
+        final String key = DataFormatCache.computeKey(TypeParser.class.getName().getBytes("UTF-8"),
+                                                      text.toString().getBytes("UTF-8"));
+        DataFormat format = cache.get(key);
+        if (format != null) {
+            // type definitions are named by the index of the compound type in the unit
+            final CompoundType[] compoundTypes = new CompoundType[format.getTypeDefNames().length];
+            for (int i = 0; i < compoundTypes.length; i++) {
+                compoundTypes[i] = (CompoundType) format.getTypeDef(String.valueOf(i));
+            }
+            return compoundTypes;
+        }
+        final CompoundType[] compoundTypes = parseUnit(new StringReader(text.toString()));
+        format = new DataFormat();
+        for (int i = 0; i < compoundTypes.length; i++) {
+            format.addTypeDef(String.valueOf(i), compoundTypes[i]);
+        }
+        try {
+            cache.put(key, format);
+        } catch (IOException e) {
+            // not cacheable
+        }
+        return compoundTypes;
+    }
+
     private void resolve(CompoundType[] compoundTypes) throws ParseException {
         for (CompoundType compoundType : compoundTypes) {
             resolve(compoundType);
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An I/O handler which collects writes and writes them back in position order.
+ * <p>
+ * Pending writes are written when {@link #flush()} is called, when the context is
+ * {@link DataContext#dispose() disposed} or when the number of pending bytes exceeds a threshold.
+ * Adjacent and overlapping writes are coalesced. If the delegate is a {@link FileChannelIOHandler},
+ * adjacent writes are passed to the channel in a single gathering write, otherwise they are
+ * merged into one array. Reads see the pending writes.
+ *
+ * @since Ceres 0.14
+ */
+public class WriteBackIOHandler extends FilterIOHandler implements Flushable {
+
+    public static final long DEFAULT_THRESHOLD = 16L << 20;
+
+    private static final Comparator<PendingWrite> POSITION_ORDER = new Comparator<PendingWrite>() {
+        @Override
+        public int compare(PendingWrite w1, PendingWrite w2) {
+            return w1.position < w2.position ? -1 : w1.position > w2.position ? 1 : 0;
+        }
+    };
+
+    private final long threshold;
+    private final List<PendingWrite> pendingWrites;
+    private long pendingBytes;
+
+    public WriteBackIOHandler(IOHandler delegate) {
+        this(delegate, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param delegate  The handler to write to.
+     * @param threshold The number of pending bytes which triggers a write-back.
+     */
+    public WriteBackIOHandler(IOHandler delegate, long threshold) {
+        super(delegate);
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold <= 0");
+        }
+        this.threshold = threshold;
+        this.pendingWrites = new ArrayList<PendingWrite>();
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    @Override
+    public synchronized void read(DataContext context, byte[] data, long position) throws IOException {
+        getDelegate().read(context, data, position);
+        final long end = position + data.length;
+        // in order of writing, so that later writes win
+        for (PendingWrite write : pendingWrites) {
+            final long from = Math.max(position, write.position);
+            final long to = Math.min(end, write.getEnd());
+            if (from < to) {
+                System.arraycopy(write.data, (int) (from - write.position), data, (int) (from - position), (int) (to - from));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void write(DataContext context, byte[] data, long position) throws IOException {
+        // the caller keeps on using the array, so it must be copied
+        pendingWrites.add(new PendingWrite(context, position, data.clone()));
+        pendingBytes += data.length;
+        if (pendingBytes >= threshold) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized long getMaxPosition() throws IOException {
+        long maxPosition = getDelegate().getMaxPosition();
+        for (PendingWrite write : pendingWrites) {
+            maxPosition = Math.max(maxPosition, write.getEnd());
+        }
+        return maxPosition;
+    }
+
+    /**
+     * Writes all pending writes to the delegate.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        final List<PendingWrite> writes = new ArrayList<PendingWrite>(pendingWrites);
+        for (int i = 0; i < writes.size(); i++) {
+            writes.get(i).sequence = i;
+        }
+        // stable sort, writes at same position keep their order
+        Collections.sort(writes, POSITION_ORDER);
+        int runStart = 0;
+        while (runStart < writes.size()) {
+            long runEnd = writes.get(runStart).getEnd();
+            boolean overlapping = false;
+            int runStop = runStart + 1;
+            while (runStop < writes.size() && writes.get(runStop).position <= runEnd) {
+                final PendingWrite write = writes.get(runStop);
+                overlapping |= write.position < runEnd;
+                runEnd = Math.max(runEnd, write.getEnd());
+                runStop++;
+            }
+            writeRun(writes.subList(runStart, runStop), overlapping);
+            runStart = runStop;
+        }
+        pendingWrites.clear();
+        pendingBytes = 0;
+    }
+
+    private void writeRun(List<PendingWrite> run, boolean overlapping) throws IOException {
+        final PendingWrite first = run.get(0);
+        if (run.size() == 1) {
+            getDelegate().write(first.context, first.data, first.position);
+        } else if (overlapping || !(getDelegate() instanceof FileChannelIOHandler)) {
+            getDelegate().write(first.context, merge(run), first.position);
+        } else {
+            final ByteBuffer[] buffers = new ByteBuffer[run.size()];
+            for (int i = 0; i < buffers.length; i++) {
+                buffers[i] = ByteBuffer.wrap(run.get(i).data);
+            }
+            final FileChannel channel = ((FileChannelIOHandler) getDelegate()).getFileChannel();
+            synchronized (channel) {
+                channel.position(first.position);
+                final ByteBuffer last = buffers[buffers.length - 1];
+                while (last.hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+        }
+    }
+
+    private static byte[] merge(List<PendingWrite> run) {
+        final long position = run.get(0).position;
+        long end = position;
+        for (PendingWrite write : run) {
+            end = Math.max(end, write.getEnd());
+        }
+        final byte[] data = new byte[(int) (end - position)];
+        final List<PendingWrite> writeOrder = new ArrayList<PendingWrite>(run);
+        Collections.sort(writeOrder, new Comparator<PendingWrite>() {
+            @Override
+            public int compare(PendingWrite w1, PendingWrite w2) {
+                return w1.sequence - w2.sequence;
+            }
+        });
+        for (PendingWrite write : writeOrder) {
+            System.arraycopy(write.data, 0, data, (int) (write.position - position), write.data.length);
+        }
+        return data;
+    }
+
+    private static final class PendingWrite {
+        private final DataContext context;
+        private final long position;
+        private final byte[] data;
+        private int sequence;
+
+        private PendingWrite(DataContext context, long position, byte[] data) {
+            this.context = context;
+            this.position = position;
+            this.data = data;
+        }
+
+        private long getEnd() {
+            return position + data.length;
+        }
+    }
+}
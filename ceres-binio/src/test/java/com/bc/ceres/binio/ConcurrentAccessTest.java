@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import com.bc.ceres.binio.util.ByteArrayIOHandler;
+import com.bc.ceres.binio.util.FilterIOHandler;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class ConcurrentAccessTest extends TestCase {
+
+    private static final int N = 200;
+    private static final int THREAD_COUNT = 8;
+
+    private ExecutorService executor;
+    private DataFormat format;
+    private byte[] bytes;
+    private long size;
+
+    @Override
+    protected void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        final CompoundType recordType = COMPOUND("Record",
+                                                 MEMBER("n", INT),
+                                                 MEMBER("v", VAR_SEQUENCE(INT, "n")),
+                                                 MEMBER("tail", DOUBLE));
+        format = new DataFormat(COMPOUND("Dataset",
+                                         MEMBER("recordCount", INT),
+                                         MEMBER("Records", SEQUENCE(recordType, N)),
+                                         MEMBER("Samples", VAR_SEQUENCE(SHORT, "recordCount"))));
+        final ByteBuffer buffer = ByteBuffer.allocate(4 + N * 12 + 4 * 3 * N + 2 * N);
+        buffer.putInt(N);
+        for (int i = 0; i < N; i++) {
+            final int n = i % 7;
+            buffer.putInt(n);
+            for (int j = 0; j < n; j++) {
+                buffer.putInt(100 * i + j);
+            }
+            buffer.putDouble(0.25 * i);
+        }
+        for (int i = 0; i < N; i++) {
+            buffer.putShort((short) (N - i));
+        }
+        bytes = buffer.array();
+        size = buffer.position();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    public void testConcurrentMode() {
+        final ExtendedDataContext context = (ExtendedDataContext) format.createContext(new ByteArrayIOHandler(bytes));
+        assertFalse(context.isConcurrent());
+        context.setConcurrent(true);
+        assertTrue(context.isConcurrent());
+        context.setConcurrent(false);
+        assertFalse(context.isConcurrent());
+    }
+
+    public void testSharedSegmentIsReadOnce() throws Exception {
+        for (int k = 0; k < 5; k++) {
+            final ExtendedDataContext context = (ExtendedDataContext) format.createContext(new SlowIOHandler(new ByteArrayIOHandler(bytes)));
+            context.setConcurrent(true);
+            final CompoundData data = context.getData();
+            final List<Integer> results = invokeAll(new Reader<Integer>() {
+                @Override
+                public Integer read() throws IOException {
+                    return data.getInt("recordCount");
+                }
+            });
+            for (Integer result : results) {
+                assertEquals(N, result.intValue());
+            }
+            assertEquals(1, context.getStatistics().getSegmentCount());
+        }
+    }
+
+    public void testSharedInstanceTree() throws Exception {
+        final ExtendedDataContext context = (ExtendedDataContext) format.createContext(new ByteArrayIOHandler(bytes));
+        context.setConcurrent(true);
+        final CompoundData data = context.getData();
+        final List<Long> results = invokeAll(new Reader<Long>() {
+            @Override
+            public Long read() throws IOException {
+                long checksum = 0;
+                final SequenceData samples = data.getSequence("Samples");
+                for (int i = 0; i < N; i++) {
+                    assertEquals(N - i, samples.getShort(i));
+                }
+                final SequenceData records = data.getSequence("Records");
+                for (int i = N - 1; i >= 0; i--) {
+                    final CompoundData record = records.getCompound(i);
+                    final int n = record.getInt("n");
+                    assertEquals(i % 7, n);
+                    final SequenceData v = record.getSequence("v");
+                    assertEquals(n, v.getElementCount());
+                    for (int j = 0; j < n; j++) {
+                        assertEquals(100 * i + j, v.getInt(j));
+                        checksum += v.getInt(j);
+                    }
+                    assertEquals(0.25 * i, record.getDouble("tail"));
+                }
+                return checksum;
+            }
+        });
+        for (Long result : results) {
+            assertEquals(results.get(0), result);
+        }
+        data.resolveSize();
+        assertEquals(size, data.getSize());
+    }
+
+    public void testConcurrentWritesWithEviction() throws Exception {
+        final ByteArrayIOHandler handler = new ByteArrayIOHandler(bytes.clone());
+        final ExtendedDataContext context = (ExtendedDataContext) format.createContext(new SynchronizedIOHandler(handler));
+        context.setConcurrent(true);
+        context.setSegmentCacheCapacity(16);
+        final CompoundData data = context.getData();
+        final AtomicInteger threadIndex = new AtomicInteger();
+        invokeAll(new Reader<Object>() {
+            @Override
+            public Object read() throws IOException {
+                final int t = threadIndex.getAndIncrement();
+                final SequenceData records = data.getSequence("Records");
+                final SequenceData samples = data.getSequence("Samples");
+                for (int k = 0; k < 200; k++) {
+                    for (int i = t; i < N; i += THREAD_COUNT) {
+                        final CompoundData record = records.getCompound(i);
+                        record.setDouble("tail", -0.5 * (i + k));
+                        samples.setShort(i, (short) (2 * (i + k)));
+                        assertEquals(i % 7, record.getInt("n"));
+                    }
+                }
+                return null;
+            }
+        });
+        context.setSegmentCacheCapacity(0);
+
+        final CompoundData copy = format.createContext(new ByteArrayIOHandler(handler.toByteArray())).getData();
+        final SequenceData records = copy.getSequence("Records");
+        final SequenceData samples = copy.getSequence("Samples");
+        for (int i = 0; i < N; i++) {
+            final CompoundData record = records.getCompound(i);
+            assertEquals(i % 7, record.getInt("n"));
+            assertEquals(-0.5 * (i + 199), record.getDouble("tail"));
+            assertEquals(2 * (i + 199), samples.getShort(i));
+        }
+    }
+
+    private <T> List<T> invokeAll(final Reader<T> reader) throws Exception {
+        final CyclicBarrier barrier = new CyclicBarrier(THREAD_COUNT);
+        final List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            tasks.add(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    barrier.await();
+                    return reader.read();
+                }
+            });
+        }
+        final List<T> results = new ArrayList<T>();
+        for (Future<T> future : executor.invokeAll(tasks)) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    private interface Reader<T> {
+        T read() throws IOException;
+    }
+
+    private static class SynchronizedIOHandler extends FilterIOHandler {
+        private SynchronizedIOHandler(IOHandler ioHandler) {
+            super(ioHandler);
+        }
+
+        @Override
+        public synchronized void read(DataContext context, byte[] data, long position) throws IOException {
+            super.read(context, data, position);
+        }
+
+        @Override
+        public synchronized void write(DataContext context, byte[] data, long position) throws IOException {
+            super.write(context, data, position);
+        }
+    }
+
+    private static class SlowIOHandler extends FilterIOHandler {
+        private SlowIOHandler(IOHandler ioHandler) {
+            super(ioHandler);
+        }
+
+        @Override
+        public void read(DataContext context, byte[] data, long position) throws IOException {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            super.read(context, data, position);
+        }
+    }
+}
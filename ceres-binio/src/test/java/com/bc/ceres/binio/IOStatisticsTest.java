@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import junit.framework.TestCase;
+
+public class IOStatisticsTest extends TestCase {
+
+    public void testLatencyBucket() {
+        assertEquals(0, IOStatistics.getLatencyBucket(0L));
+        assertEquals(0, IOStatistics.getLatencyBucket(999L));
+        assertEquals(1, IOStatistics.getLatencyBucket(1000L));
+        assertEquals(2, IOStatistics.getLatencyBucket(2000L));
+        assertEquals(2, IOStatistics.getLatencyBucket(3999L));
+        assertEquals(3, IOStatistics.getLatencyBucket(4000L));
+        assertEquals(IOStatistics.LATENCY_BUCKET_COUNT - 1, IOStatistics.getLatencyBucket(Long.MAX_VALUE));
+    }
+}
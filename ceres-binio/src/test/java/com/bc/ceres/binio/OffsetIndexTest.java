@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import com.bc.ceres.binio.util.ByteArrayIOHandler;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class OffsetIndexTest extends TestCase {
+
+    private static final int N = 100;
+    private static final CompoundType RECORD_TYPE = COMPOUND("Record", MEMBER("n", INT), MEMBER("v", VAR_SEQUENCE(INT, "n")));
+    private static final DataFormat FORMAT = new DataFormat(COMPOUND("Dataset", MEMBER("Records", SEQUENCE(RECORD_TYPE, N))));
+
+    private byte[] bytes;
+    private long lastRecordPosition;
+
+    @Override
+    protected void setUp() throws Exception {
+        final ByteBuffer buffer = ByteBuffer.allocate(4 * N + 4 * 2 * N);
+        for (int i = 0; i < N; i++) {
+            lastRecordPosition = buffer.position();
+            final int n = i % 5;
+            buffer.putInt(n);
+            for (int k = 0; k < n; k++) {
+                buffer.putInt(i);
+            }
+        }
+        bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+    }
+
+    public void testIndexedPositionsAreReused() throws IOException {
+        final OffsetIndex offsetIndex = new OffsetIndex();
+
+        TracingIOHandler handler = new TracingIOHandler(new ByteArrayIOHandler(bytes));
+        ExtendedDataContext context = (ExtendedDataContext) FORMAT.createContext(handler);
+        context.setOffsetIndex(offsetIndex);
+        assertEquals(99, context.getData().getSequence("Records").getCompound(N - 1).getSequence("v").getInt(3));
+        assertTrue(handler.getTrace().startsWith("R(0,4)R(4,4)R(12,4)"));
+        // positions are recorded once a structure is completely resolved
+        assertEquals(0, offsetIndex.getEntryCount());
+        context.getData().resolveSize();
+        assertTrue(offsetIndex.isModified());
+        assertEquals(2, offsetIndex.getEntryCount());
+        context.dispose();
+
+        handler = new TracingIOHandler(new ByteArrayIOHandler(bytes));
+        context = (ExtendedDataContext) FORMAT.createContext(handler);
+        context.setOffsetIndex(offsetIndex);
+        final CompoundData lastRecord = context.getData().getSequence("Records").getCompound(N - 1);
+        assertEquals(lastRecordPosition, lastRecord.getPosition());
+        assertEquals(4, lastRecord.getInt("n"));
+        assertEquals("R(" + lastRecordPosition + ",4)", handler.getTrace());
+        assertEquals(bytes.length, context.getData().getSize());
+        context.dispose();
+    }
+
+    public void testSidecarFile() throws IOException {
+        final File dataFile = File.createTempFile("ceres-binio-", ".dat");
+        final File indexFile = OffsetIndex.getSidecarFile(dataFile);
+        try {
+            final FileOutputStream stream = new FileOutputStream(dataFile);
+            try {
+                stream.write(bytes);
+            } finally {
+                stream.close();
+            }
+
+            OffsetIndex offsetIndex = OffsetIndex.load(indexFile, dataFile, FORMAT.getName());
+            assertEquals(0, offsetIndex.getEntryCount());
+            ExtendedDataContext context = (ExtendedDataContext) FORMAT.createContext(dataFile, "r");
+            context.setOffsetIndex(offsetIndex);
+            context.getData().resolveSize();
+            context.dispose();
+            offsetIndex.store(indexFile);
+            assertTrue(indexFile.length() < 4 * N);
+
+            offsetIndex = OffsetIndex.load(indexFile, dataFile, FORMAT.getName());
+            assertEquals(2, offsetIndex.getEntryCount());
+            assertFalse(offsetIndex.isModified());
+            context = (ExtendedDataContext) FORMAT.createContext(dataFile, "r");
+            context.setOffsetIndex(offsetIndex);
+            assertEquals(lastRecordPosition, context.getData().getSequence("Records").getCompound(N - 1).getPosition());
+            context.dispose();
+
+            assertEquals(0, OffsetIndex.load(indexFile, dataFile, "Other").getEntryCount());
+            assertTrue(dataFile.setLastModified(dataFile.lastModified() - 10000L));
+            assertEquals(0, OffsetIndex.load(indexFile, dataFile, FORMAT.getName()).getEntryCount());
+        } finally {
+            indexFile.delete();
+            dataFile.delete();
+        }
+    }
+
+    public void testCorruptSidecarFile() throws IOException {
+        final File dataFile = File.createTempFile("ceres-binio-", ".dat");
+        final File indexFile = OffsetIndex.getSidecarFile(dataFile);
+        try {
+            final FileOutputStream stream = new FileOutputStream(dataFile);
+            try {
+                stream.write(bytes);
+            } finally {
+                stream.close();
+            }
+            final OffsetIndex offsetIndex = OffsetIndex.load(indexFile, dataFile, FORMAT.getName());
+            final ExtendedDataContext context = (ExtendedDataContext) FORMAT.createContext(dataFile, "r");
+            context.setOffsetIndex(offsetIndex);
+            context.getData().resolveSize();
+            context.dispose();
+            offsetIndex.store(indexFile);
+
+            // magic, version, format name, file length and modification time
+            final long entryCountPosition = 4 + 4 + 2 + FORMAT.getName().length() + 8 + 8;
+            final RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+            try {
+                // Expected: a position count which does not fit into an int is rejected
+                file.seek(entryCountPosition + 4);
+                file.seek(entryCountPosition + 4 + 2 + file.readUnsignedShort());
+                file.write(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+                assertEquals(0, OffsetIndex.load(indexFile, dataFile, FORMAT.getName()).getEntryCount());
+
+                // Expected: a negative or huge entry count is rejected
+                file.seek(entryCountPosition);
+                file.writeInt(-1);
+                assertEquals(0, OffsetIndex.load(indexFile, dataFile, FORMAT.getName()).getEntryCount());
+                file.seek(entryCountPosition);
+                file.writeInt(Integer.MAX_VALUE);
+                assertEquals(0, OffsetIndex.load(indexFile, dataFile, FORMAT.getName()).getEntryCount());
+            } finally {
+                file.close();
+            }
+        } finally {
+            indexFile.delete();
+            dataFile.delete();
+        }
+    }
+
+    public void testSharedIndex() throws IOException {
+        final File dataFile = File.createTempFile("ceres-binio-", ".dat");
+        try {
+            final OffsetIndex offsetIndex = OffsetIndex.getShared(dataFile, "A");
+            assertSame(offsetIndex, OffsetIndex.getShared(dataFile, "A"));
+            assertNotSame(offsetIndex, OffsetIndex.getShared(dataFile, "B"));
+            assertTrue(dataFile.setLastModified(dataFile.lastModified() - 10000L));
+            assertNotSame(offsetIndex, OffsetIndex.getShared(dataFile, "A"));
+        } finally {
+            dataFile.delete();
+        }
+    }
+
+    public void testSharedIndexesAreBounded() throws IOException {
+        final File dataFile = File.createTempFile("ceres-binio-", ".dat");
+        try {
+            final OffsetIndex offsetIndex = OffsetIndex.getShared(dataFile, "F0");
+            for (int i = 1; i < OffsetIndex.MAX_SHARED_INDEX_COUNT; i++) {
+                OffsetIndex.getShared(dataFile, "F" + i);
+            }
+            assertSame(offsetIndex, OffsetIndex.getShared(dataFile, "F0"));
+            // "F1" is now the least recently used index
+            final OffsetIndex offsetIndex1 = OffsetIndex.getShared(dataFile, "F1");
+            OffsetIndex.getShared(dataFile, "F" + OffsetIndex.MAX_SHARED_INDEX_COUNT);
+            OffsetIndex.getShared(dataFile, "F" + (OffsetIndex.MAX_SHARED_INDEX_COUNT + 1));
+            assertSame(offsetIndex, OffsetIndex.getShared(dataFile, "F0"));
+            assertSame(offsetIndex1, OffsetIndex.getShared(dataFile, "F1"));
+            assertNotSame(offsetIndex, OffsetIndex.getShared(dataFile, "F2"));
+        } finally {
+            dataFile.delete();
+        }
+    }
+
+    public void testTypesOfSameNameDoNotCollide() {
+        final CompoundType type1 = COMPOUND("Record", MEMBER("n", INT), MEMBER("v", VAR_SEQUENCE(INT, "n")));
+        final CompoundType type2 = COMPOUND("Record", MEMBER("n", SHORT), MEMBER("v", VAR_SEQUENCE(SHORT, "n")));
+        final CompoundType type3 = COMPOUND("Record", MEMBER("n", INT), MEMBER("v", VAR_SEQUENCE(INT, "n")));
+
+        final OffsetIndex offsetIndex = new OffsetIndex();
+        offsetIndex.put(type1, 8L, new long[]{8L, 12L, 20L});
+        assertNull(offsetIndex.get(type2, 8L));
+        assertNull(offsetIndex.get(type1, 12L));
+        // structurally equal types share entries
+        assertNotNull(offsetIndex.get(type3, 8L));
+        offsetIndex.put(type2, 8L, new long[]{8L, 10L, 14L});
+        assertEquals(2, offsetIndex.getEntryCount());
+        assertEquals(12L, offsetIndex.get(type1, 8L)[1]);
+        assertEquals(10L, offsetIndex.get(type2, 8L)[1]);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio;
+
+import com.bc.ceres.binio.util.ByteArrayIOHandler;
+import junit.framework.TestCase;
+
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class ProjectionTest extends TestCase {
+
+    private static final int N = 1000;
+
+    private static final CompoundType RECORD_TYPE = COMPOUND("Record",
+                                                             MEMBER("id", UINT),
+                                                             MEMBER("payload", SEQUENCE(BYTE, 100)),
+                                                             MEMBER("lat", FLOAT),
+                                                             MEMBER("lon", FLOAT),
+                                                             MEMBER("flags", USHORT),
+                                                             MEMBER("value", DOUBLE));
+    private static final CompoundType DATASET_TYPE = COMPOUND("Dataset",
+                                                              MEMBER("Count", INT),
+                                                              MEMBER("Records", VAR_SEQUENCE(RECORD_TYPE, "Count")));
+
+    private TracingIOHandler ioHandler;
+    private ExtendedDataContext context;
+
+    @Override
+    protected void setUp() throws Exception {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(baos);
+        ios.writeInt(N);
+        for (int i = 0; i < N; i++) {
+            ios.writeInt(0x80000000 + i);
+            ios.write(new byte[100]);
+            ios.writeFloat(0.5F * i);
+            ios.writeFloat(-0.25F * i);
+            ios.writeShort(60000 + i);
+            ios.writeDouble(1.5 * i);
+        }
+        ios.close();
+        ioHandler = new TracingIOHandler(new ByteArrayIOHandler(baos.toByteArray()));
+        context = (ExtendedDataContext) new DataFormat(DATASET_TYPE).createContext(ioHandler);
+    }
+
+    public void testRead() throws IOException {
+        final SequenceData records = context.getData().getSequence("Records");
+        final Projection projection = context.createProjection(RECORD_TYPE, "lon", "id", "lat");
+        assertSame(RECORD_TYPE, projection.getType());
+        assertEquals(3, projection.getMemberNames().length);
+        assertEquals("lon", projection.getMemberNames()[0]);
+
+        ioHandler.reset();
+        final Object[] columns = projection.read(records);
+        final float[] lon = (float[]) columns[0];
+        final int[] id = (int[]) columns[1];
+        final float[] lat = (float[]) columns[2];
+        assertEquals(N, lon.length);
+        for (int i = 0; i < N; i++) {
+            assertEquals(0x80000000L + i, id[i] & 0xFFFFFFFFL);
+            assertEquals(0.5F * i, lat[i], 0.0F);
+            assertEquals(-0.25F * i, lon[i], 0.0F);
+        }
+        // lat and lon are adjacent, the 12 bytes between lon and the next record's id are coalesced
+        assertEquals("R(4,4)R(108,22)R(230,22)", ioHandler.getTrace().substring(0, 24));
+        assertTrue(getBytesRead(ioHandler.getTrace()) < 30 * N);
+    }
+
+    public void testReadWithGapLimit() throws IOException {
+        final Projection projection = context.createProjection(RECORD_TYPE, "flags", "value");
+        projection.setGapLimit(0);
+        ioHandler.reset();
+        final Object[] columns = projection.read(4 + 122, 3);
+        assertEquals("R(238,10)R(360,10)R(482,10)", ioHandler.getTrace());
+        assertEquals((short) 60001, ((short[]) columns[0])[0]);
+        assertEquals(1.5 * 3, ((double[]) columns[1])[2], 0.0);
+
+        projection.setGapLimit(200);
+        ioHandler.reset();
+        projection.read(4, N, projection.createColumns(N + 1), 1);
+        assertEquals(N * 122 / 16384 + 1, ioHandler.getTrace().split("R").length - 1);
+    }
+
+    public void testIllegalArguments() throws IOException {
+        try {
+            context.createProjection(RECORD_TYPE, "payload");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            context.createProjection(RECORD_TYPE, "height");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            context.createProjection(DATASET_TYPE, "Count");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            context.createProjection(RECORD_TYPE, "id").read(context.getData().getCompound("Records").getSequence("payload"));
+            fail("DataAccessException expected");
+        } catch (DataAccessException e) {
+            // ok
+        }
+    }
+
+    private static int getBytesRead(String trace) {
+        int bytesRead = 0;
+        for (String read : trace.split("R")) {
+            if (!read.isEmpty()) {
+                bytesRead += Integer.parseInt(read.substring(read.indexOf(',') + 1, read.indexOf(')')));
+            }
+        }
+        return bytesRead;
+    }
+}
@@ -106,6 +106,44 @@ public class ReadWriteTest extends TestCase {
         assertEquals("R(0,16)R(16,16)R(32,16)R(48,16)R(64,16)", tracingIOHandler.getTrace());
     }
 
+    public void testSegmentCacheEvictsAndRereads() throws IOException {
+
+        CompoundType type =
+                COMPOUND("Data",
+                         MEMBER("Complex_List",
+                                SEQUENCE(COMPOUND("Complex",
+                                                  MEMBER("x", DOUBLE),
+                                                  MEMBER("y", DOUBLE)), 4)));
+
+        ByteArrayIOHandler byteArrayIOHandler = new ByteArrayIOHandler(new byte[4 * 16]);
+        TracingIOHandler tracingIOHandler = new TracingIOHandler(byteArrayIOHandler);
+        ExtendedDataContext context = (ExtendedDataContext) new DataFormat(type).createContext(tracingIOHandler);
+        assertTrue(context.getSegmentCacheCapacity() < 0);
+        context.setSegmentCacheCapacity(2 * 16);
+        assertEquals(2 * 16, context.getSegmentCacheCapacity());
+
+        SequenceData seq = context.getData().getSequence("Complex_List");
+        CompoundData[] complexes = new CompoundData[4];
+        for (int i = 0; i < 4; i++) {
+            complexes[i] = seq.getCompound(i);
+        }
+
+        complexes[0].setDouble("x", 23.04);
+        complexes[1].getDouble("x");
+        assertEquals("R(0,16)R(16,16)", tracingIOHandler.getTrace());
+
+        tracingIOHandler.reset();
+        complexes[2].getDouble("x");
+        complexes[3].getDouble("x");
+        assertEquals("W(0,16)R(32,16)R(48,16)", tracingIOHandler.getTrace());
+
+        tracingIOHandler.reset();
+        assertEquals(23.04, complexes[0].getDouble("x"), 1e-10);
+        assertEquals("R(0,16)", tracingIOHandler.getTrace());
+
+        context.dispose();
+    }
+
     public void testWriteVarSequence() throws IOException {
 
         CompoundType type =
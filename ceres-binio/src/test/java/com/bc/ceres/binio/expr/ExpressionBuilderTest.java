@@ -77,6 +77,26 @@ public class ExpressionBuilderTest {
         assertEquals(SimpleType.INT, result);
     }
 
+    @Test
+    public void testIntReference() throws IOException {
+        final IntReferenceExpr reference = IREF("n");
+        final CompoundType aType = TypeBuilder.COMPOUND("A", TypeBuilder.MEMBER("n", INT));
+        final CompoundType bType = TypeBuilder.COMPOUND("B", TypeBuilder.MEMBER("m", INT), TypeBuilder.MEMBER("n", INT));
+        final byte[] bytes = {0, 0, 0, 5, 0, 0, 0, 6};
+        final CompoundData a = new DataFormat(aType).createContext(new com.bc.ceres.binio.util.ByteArrayIOHandler(bytes)).getData();
+        final CompoundData b = new DataFormat(bType).createContext(new com.bc.ceres.binio.util.ByteArrayIOHandler(bytes)).getData();
+        assertEquals(5, reference.evaluate(a));
+        assertEquals(6, reference.evaluate(b));
+        assertEquals(5, reference.evaluate(a));
+        assertEquals(6, new IntReferenceExpr(1).evaluate(b));
+        try {
+            IREF("x").evaluate(a);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
     @Test
     public void testComplexExpressionTree() {
         final CompoundExpr SNAPSHOT_INFO =
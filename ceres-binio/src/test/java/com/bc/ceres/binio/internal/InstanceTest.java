@@ -358,6 +358,158 @@ public class InstanceTest extends TestCase {
         }
     }
 
+    public void testFixSequenceOfSimplesBulkAccess() throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(baos);
+        ios.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 6; i++) {
+            ios.writeFloat(0.5f * i);
+        }
+        ios.close();
+
+        final DataContext context = new DataFormat(COMPOUND("UNDEFINED"), ByteOrder.LITTLE_ENDIAN).createContext(
+                new ByteArrayIOHandler(baos.toByteArray()));
+        final FixSequenceOfSimples sequenceInstance = new FixSequenceOfSimples(context, null,
+                                                                               SEQUENCE(SimpleType.FLOAT, 6), 0);
+
+        final float[] floats = new float[5];
+        sequenceInstance.getFloats(2, floats, 1, 4);
+        assertEquals(0.0f, floats[0], 0.0f);
+        assertEquals(1.0f, floats[1], 0.0f);
+        assertEquals(1.5f, floats[2], 0.0f);
+        assertEquals(2.0f, floats[3], 0.0f);
+        assertEquals(2.5f, floats[4], 0.0f);
+
+        final int[] ints = new int[6];
+        sequenceInstance.getInts(0, ints, 0, 6);
+        assertEquals(0, ints[1]);
+        assertEquals(1, ints[2]);
+        assertEquals(2, ints[5]);
+
+        sequenceInstance.setFloats(4, new float[]{-1.0f, -2.0f}, 0, 2);
+        assertEquals(-1.0f, sequenceInstance.getFloat(4), 0.0f);
+        assertEquals(-2.0f, sequenceInstance.getFloat(5), 0.0f);
+
+        sequenceInstance.setInts(0, new int[]{7}, 0, 1);
+        assertEquals(7.0f, sequenceInstance.getFloat(0), 0.0f);
+
+        try {
+            sequenceInstance.getFloats(3, floats, 0, 4);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+    }
+
+    public void testRecordCursor() throws IOException {
+        final int n = 3000;
+        final CompoundType recordType = COMPOUND("Record",
+                                                 MEMBER("id", SimpleType.USHORT),
+                                                 MEMBER("flag", SimpleType.BYTE),
+                                                 MEMBER("pad", SEQUENCE(SimpleType.BYTE, 1)),
+                                                 MEMBER("value", SimpleType.DOUBLE));
+        final CompoundType type = COMPOUND("Data",
+                                           MEMBER("Count", SimpleType.INT),
+                                           MEMBER("Records", VAR_SEQUENCE(recordType, "Count")));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(baos);
+        ios.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            ios.writeShort(40000 + i);
+            ios.writeByte(i % 2);
+            ios.writeByte(0);
+            ios.writeDouble(0.5 * i);
+        }
+        ios.close();
+
+        final TracingIOHandler ioHandler = new TracingIOHandler(new ByteArrayIOHandler(baos.toByteArray()));
+        final DataContext context = new DataFormat(type).createContext(ioHandler);
+        final SequenceData records = context.getData().getSequence("Records");
+        final RecordCursor cursor = records.cursor();
+        assertEquals(n, cursor.getRecordCount());
+        assertEquals(-1, cursor.getRecordIndex());
+        final int idIndex = cursor.getMemberIndex("id");
+        final int flagIndex = cursor.getMemberIndex("flag");
+        final int valueIndex = cursor.getMemberIndex("value");
+        int count = 0;
+        while (cursor.next()) {
+            final int i = cursor.getRecordIndex();
+            assertEquals(4 + 12L * i, cursor.getPosition());
+            assertEquals(40000 + i, cursor.getUShort(idIndex));
+            assertEquals(i % 2, cursor.getByte(flagIndex));
+            assertEquals(0.5 * i, cursor.getDouble(valueIndex), 0.0);
+            count++;
+        }
+        assertEquals(n, count);
+        assertFalse(cursor.next());
+        assertEquals("R(0,4)R(4,16380)R(16384,16380)R(32764,3240)", ioHandler.getTrace());
+
+        try {
+            cursor.getInt(cursor.getMemberIndex("pad"));
+            fail("DataAccessException expected");
+        } catch (DataAccessException e) {
+            // ok
+        }
+        try {
+            records.getCompound(0).getSequence("pad").cursor();
+            fail("DataAccessException expected");
+        } catch (DataAccessException e) {
+            // ok
+        }
+    }
+
+    public void testVarSequenceTypeSharedByCompoundTypes() throws IOException {
+        final VarSequenceType valuesType = VAR_SEQUENCE(SHORT, "n");
+        final CompoundType aType = COMPOUND("A", MEMBER("n", INT), MEMBER("values", valuesType));
+        final CompoundType bType = COMPOUND("B", MEMBER("flags", INT), MEMBER("n", INT), MEMBER("values", valuesType));
+        final CompoundType type = COMPOUND("Dataset", MEMBER("a", aType), MEMBER("b", bType));
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(baos);
+        ios.writeInt(2);
+        ios.writeShorts(new short[]{1, 2}, 0, 2);
+        ios.writeInt(7);
+        ios.writeInt(3);
+        ios.writeShorts(new short[]{4, 5, 6}, 0, 3);
+        ios.close();
+
+        final CompoundData data = new DataFormat(type).createContext(new ByteArrayIOHandler(baos.toByteArray())).getData();
+        assertEquals(2, data.getCompound("a").getSequence("values").getElementCount());
+        assertEquals(3, data.getCompound("b").getSequence("values").getElementCount());
+        assertEquals(6, data.getCompound("b").getSequence("values").getShort(2));
+        assertEquals(2, data.getCompound("a").getSequence("values").getElementCount());
+        data.resolveSize();
+        assertEquals(4 + 2 * 2 + 8 + 3 * 2, data.getSize());
+    }
+
+    public void testVarSequenceCountOfEnclosingCompound() throws IOException {
+        final CompoundType lineType = COMPOUND("Line", MEMBER("values", VAR_SEQUENCE(BYTE, "Dataset.width")));
+        final CompoundType type = COMPOUND("Dataset",
+                                           MEMBER("width", INT),
+                                           MEMBER("lines", SEQUENCE(lineType, 2)));
+        final byte[] bytes = {0, 0, 0, 3, 1, 2, 3, 4, 5, 6};
+        final CompoundData data = new DataFormat(type).createContext(new ByteArrayIOHandler(bytes)).getData();
+        final SequenceData lines = data.getSequence("lines");
+        assertEquals(3, lines.getCompound(0).getSequence("values").getElementCount());
+        assertEquals(4, lines.getCompound(1).getSequence("values").getByte(0));
+        data.resolveSize();
+        assertEquals(bytes.length, data.getSize());
+    }
+
+    public void testVarSequenceCountIsMemoized() throws IOException {
+        final VarSequenceType valuesType = VAR_SEQUENCE(BYTE, "n");
+        final CompoundType type = COMPOUND("Dataset",
+                                           MEMBER("n", INT),
+                                           MEMBER("values", valuesType));
+        final TracingIOHandler ioHandler = new TracingIOHandler(new ByteArrayIOHandler(new byte[]{0, 0, 0, 2, 9, 9}));
+        final CompoundData data = new DataFormat(type).createContext(ioHandler).getData();
+        assertEquals(2, valuesType.resolve(data).getElementCount());
+        assertEquals(2, valuesType.resolve(data).getElementCount());
+        assertEquals("R(0,4)", ioHandler.getTrace());
+
+        data.setInt("n", 1);
+        assertEquals(1, valuesType.resolve(data).getElementCount());
+    }
+
     // create a pseudo VarSequenceType
     static VarSequenceType _SEQ(final Type elementType, final int elementCount) {
         return new VarElementCountSequenceType(elementType) {
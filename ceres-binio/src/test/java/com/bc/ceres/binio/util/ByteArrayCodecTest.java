@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class ByteArrayCodecTest extends TestCase {
+
+    private static final int[] LENGTHS = {0, 1, ByteArrayCodec.BULK_VIEW_THRESHOLD - 1, ByteArrayCodec.BULK_VIEW_THRESHOLD, 1000};
+
+    public void testBulkGetMatchesElementGet() {
+        testBulkGet(ByteArrayCodec.LITTLE_ENDIAN);
+        testBulkGet(ByteArrayCodec.BIG_ENDIAN);
+    }
+
+    public void testBulkSetMatchesElementSet() {
+        testBulkSet(ByteArrayCodec.LITTLE_ENDIAN);
+        testBulkSet(ByteArrayCodec.BIG_ENDIAN);
+    }
+
+    public void testNaNPayloadsArePreserved() {
+        testNaNPayloads(ByteArrayCodec.LITTLE_ENDIAN);
+        testNaNPayloads(ByteArrayCodec.BIG_ENDIAN);
+    }
+
+    private static void testNaNPayloads(ByteArrayCodec codec) {
+        for (int n : LENGTHS) {
+            final float[] floats = new float[n];
+            final double[] doubles = new double[n];
+            for (int i = 0; i < n; i++) {
+                floats[i] = Float.intBitsToFloat(0x7fc00000 | (i + 1));
+                doubles[i] = Double.longBitsToDouble(0x7ff8000000000000L | (i + 1));
+            }
+            final byte[] b = new byte[8 * n];
+            final float[] actualFloats = new float[n];
+            final double[] actualDoubles = new double[n];
+
+            codec.setFloats(b, 0, floats, 0, n);
+            codec.getFloats(b, 0, actualFloats, 0, n);
+            for (int i = 0; i < n; i++) {
+                assertEquals(Float.floatToRawIntBits(floats[i]), Float.floatToRawIntBits(actualFloats[i]));
+                assertEquals(Float.floatToRawIntBits(floats[i]), Float.floatToRawIntBits(codec.getFloat(b, 4 * i)));
+            }
+
+            codec.setDoubles(b, 0, doubles, 0, n);
+            codec.getDoubles(b, 0, actualDoubles, 0, n);
+            for (int i = 0; i < n; i++) {
+                assertEquals(Double.doubleToRawLongBits(doubles[i]), Double.doubleToRawLongBits(actualDoubles[i]));
+                assertEquals(Double.doubleToRawLongBits(doubles[i]), Double.doubleToRawLongBits(codec.getDouble(b, 8 * i)));
+            }
+        }
+    }
+
+    private static void testBulkGet(ByteArrayCodec codec) {
+        final byte[] b = new byte[3 + 8 * 1000];
+        new Random(5).nextBytes(b);
+        for (int n : LENGTHS) {
+            final short[] shorts = new short[n + 2];
+            final int[] ints = new int[n + 2];
+            final long[] longs = new long[n + 2];
+            final float[] floats = new float[n + 2];
+            final double[] doubles = new double[n + 2];
+            codec.getShorts(b, 3, shorts, 2, n);
+            codec.getInts(b, 3, ints, 2, n);
+            codec.getLongs(b, 3, longs, 2, n);
+            codec.getFloats(b, 3, floats, 2, n);
+            codec.getDoubles(b, 3, doubles, 2, n);
+            for (int i = 0; i < n; i++) {
+                assertEquals(codec.getShort(b, 3 + 2 * i), shorts[2 + i]);
+                assertEquals(codec.getInt(b, 3 + 4 * i), ints[2 + i]);
+                assertEquals(codec.getLong(b, 3 + 8 * i), longs[2 + i]);
+                assertEquals(Float.floatToRawIntBits(codec.getFloat(b, 3 + 4 * i)), Float.floatToRawIntBits(floats[2 + i]));
+                assertEquals(Double.doubleToRawLongBits(codec.getDouble(b, 3 + 8 * i)), Double.doubleToRawLongBits(doubles[2 + i]));
+            }
+        }
+    }
+
+    private static void testBulkSet(ByteArrayCodec codec) {
+        final Random random = new Random(7);
+        for (int n : LENGTHS) {
+            final short[] shorts = new short[n + 2];
+            final int[] ints = new int[n + 2];
+            final long[] longs = new long[n + 2];
+            final float[] floats = new float[n + 2];
+            final double[] doubles = new double[n + 2];
+            for (int i = 0; i < n + 2; i++) {
+                shorts[i] = (short) random.nextInt();
+                ints[i] = random.nextInt();
+                longs[i] = random.nextLong();
+                floats[i] = random.nextFloat();
+                doubles[i] = random.nextDouble();
+            }
+            final byte[] expected = new byte[3 + 8 * n];
+            final byte[] actual = new byte[3 + 8 * n];
+
+            for (int i = 0; i < n; i++) {
+                codec.setShort(expected, 3 + 2 * i, shorts[2 + i]);
+            }
+            codec.setShorts(actual, 3, shorts, 2, n);
+            assertTrue(Arrays.equals(expected, actual));
+
+            for (int i = 0; i < n; i++) {
+                codec.setInt(expected, 3 + 4 * i, ints[2 + i]);
+            }
+            codec.setInts(actual, 3, ints, 2, n);
+            assertTrue(Arrays.equals(expected, actual));
+
+            for (int i = 0; i < n; i++) {
+                codec.setLong(expected, 3 + 8 * i, longs[2 + i]);
+            }
+            codec.setLongs(actual, 3, longs, 2, n);
+            assertTrue(Arrays.equals(expected, actual));
+
+            for (int i = 0; i < n; i++) {
+                codec.setFloat(expected, 3 + 4 * i, floats[2 + i]);
+            }
+            codec.setFloats(actual, 3, floats, 2, n);
+            assertTrue(Arrays.equals(expected, actual));
+
+            for (int i = 0; i < n; i++) {
+                codec.setDouble(expected, 3 + 8 * i, doubles[2 + i]);
+            }
+            codec.setDoubles(actual, 3, doubles, 2, n);
+            assertTrue(Arrays.equals(expected, actual));
+        }
+    }
+}
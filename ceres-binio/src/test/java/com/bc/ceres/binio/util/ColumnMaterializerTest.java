@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataAccessException;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceData;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class ColumnMaterializerTest extends TestCase {
+
+    private static final int N = 10000;
+
+    private ForkJoinPool pool;
+    private SequenceData records;
+
+    @Override
+    protected void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+        final ByteBuffer buffer = ByteBuffer.allocate(19 * N + 3);
+        buffer.put(new byte[3]);
+        for (int i = 0; i < N; i++) {
+            buffer.putInt(i).putShort((short) (i % 1000)).putDouble(0.5 * i).put((byte) i).putInt(-i);
+        }
+        final CompoundType recordType = COMPOUND("Record",
+                                                 MEMBER("id", INT),
+                                                 MEMBER("flags", SHORT),
+                                                 MEMBER("value", DOUBLE),
+                                                 MEMBER("pad", BYTE),
+                                                 MEMBER("neg", INT));
+        final DataFormat format = new DataFormat(COMPOUND("Dataset",
+                                                          MEMBER("Header", SEQUENCE(BYTE, 3)),
+                                                          MEMBER("Records", SEQUENCE(recordType, N))));
+        final DataContext context = format.createContext(new ByteArrayIOHandler(buffer.array()));
+        records = context.getData().getSequence("Records");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.shutdown();
+    }
+
+    public void testMaterialize() throws IOException {
+        final Object[] columns = ColumnMaterializer.materialize(records, "neg", "value", "id");
+        assertColumns(columns);
+    }
+
+    public void testMaterializeParallel() throws IOException {
+        final Object[] columns = new Object[]{new int[N + 2], new double[N + 2], new int[N + 2]};
+        ColumnMaterializer.materialize(records, new String[]{"neg", "value", "id"}, columns, 2, pool, 100);
+        final int[] neg = (int[]) columns[0];
+        final double[] value = (double[]) columns[1];
+        final int[] id = (int[]) columns[2];
+        for (int i = 0; i < N; i++) {
+            assertEquals(-i, neg[2 + i]);
+            assertEquals(0.5 * i, value[2 + i]);
+            assertEquals(i, id[2 + i]);
+        }
+        assertEquals(0, id[0]);
+        assertEquals(0, id[1]);
+    }
+
+    public void testMaterializeParallelOddRanges() throws IOException {
+        final Object[] columns = new Object[]{new int[N], new double[N], new int[N]};
+        ColumnMaterializer.materialize(records, new String[]{"neg", "value", "id"}, columns, 0, pool, 1500);
+        assertColumns(columns);
+    }
+
+    public void testMaterializeMatchesInstances() throws IOException {
+        final Object[] columns = ColumnMaterializer.materialize(records, "flags", "pad");
+        final short[] flags = (short[]) columns[0];
+        final byte[] pad = (byte[]) columns[1];
+        for (int i = 0; i < N; i += 97) {
+            final CompoundData record = records.getCompound(i);
+            assertEquals(record.getShort("flags"), flags[i]);
+            assertEquals(record.getByte("pad"), pad[i]);
+        }
+    }
+
+    public void testIllegalArguments() throws IOException {
+        try {
+            ColumnMaterializer.materialize(records, "unknown");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            ColumnMaterializer.materialize(records, new String[]{"id"}, new Object[]{new int[N], new int[N]}, 0, pool, 100);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            ColumnMaterializer.materialize(records, new String[]{"id"}, new Object[]{new int[N]}, 0, pool, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        final DataFormat format = new DataFormat(COMPOUND("Dataset", MEMBER("Values", SEQUENCE(INT, 4))));
+        final DataContext context = format.createContext(new ByteArrayIOHandler(new byte[16]));
+        try {
+            ColumnMaterializer.materialize(context.getData().getSequence("Values"), "id");
+            fail();
+        } catch (DataAccessException e) {
+            // ok
+        }
+    }
+
+    private static void assertColumns(Object[] columns) {
+        assertEquals(3, columns.length);
+        final int[] neg = (int[]) columns[0];
+        final double[] value = (double[]) columns[1];
+        final int[] id = (int[]) columns[2];
+        assertEquals(N, id.length);
+        for (int i = 0; i < N; i++) {
+            assertEquals(-i, neg[i]);
+            assertEquals(0.5 * i, value[i]);
+            assertEquals(i, id[i]);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundDecoder;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteOrder;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class CompoundDecoderFactoryTest extends TestCase {
+
+    private static final CompoundType RECORD_TYPE = COMPOUND("Record",
+                                                             MEMBER("b", BYTE),
+                                                             MEMBER("ub", UBYTE),
+                                                             MEMBER("s", SHORT),
+                                                             MEMBER("us", USHORT),
+                                                             MEMBER("i", INT),
+                                                             MEMBER("ui", UINT),
+                                                             MEMBER("l", LONG),
+                                                             MEMBER("f", FLOAT),
+                                                             MEMBER("d", DOUBLE));
+
+    @Override
+    protected void setUp() throws Exception {
+        if (!CompoundDecoderFactory.isAvailable()) {
+            System.out.println("Warning: " + getClass() + " skipped, no Java compiler available.");
+        }
+    }
+
+    public void testDecoderIsCached() {
+        if (!CompoundDecoderFactory.isAvailable()) {
+            return;
+        }
+        final CompoundDecoder decoder = CompoundDecoderFactory.getDecoder(RECORD_TYPE, ByteOrder.BIG_ENDIAN);
+        assertSame(RECORD_TYPE, decoder.getType());
+        assertEquals(ByteOrder.BIG_ENDIAN, decoder.getByteOrder());
+        assertSame(decoder, CompoundDecoderFactory.getDecoder(RECORD_TYPE, ByteOrder.BIG_ENDIAN));
+        assertNotSame(decoder, CompoundDecoderFactory.getDecoder(RECORD_TYPE, ByteOrder.LITTLE_ENDIAN));
+    }
+
+    public void testDroppedTypeIsCollectable() throws InterruptedException {
+        if (!CompoundDecoderFactory.isAvailable()) {
+            return;
+        }
+        CompoundType type = COMPOUND("Transient", MEMBER("i", INT), MEMBER("d", DOUBLE));
+        CompoundDecoder decoder = CompoundDecoderFactory.getDecoder(type, ByteOrder.BIG_ENDIAN);
+        assertSame(type, decoder.getType());
+        final WeakReference<CompoundType> typeRef = new WeakReference<CompoundType>(type);
+        final WeakReference<CompoundDecoder> decoderRef = new WeakReference<CompoundDecoder>(decoder);
+        type = null;
+        decoder = null;
+        for (int i = 0; i < 50 && (typeRef.get() != null || decoderRef.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(decoderRef.get());
+        assertNull(typeRef.get());
+    }
+
+    public void testNonSimpleMembersAreRejected() {
+        try {
+            CompoundDecoderFactory.getDecoder(COMPOUND("Outer", MEMBER("a", SEQUENCE(INT, 2))), ByteOrder.BIG_ENDIAN);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testBigEndian() throws IOException {
+        testDecoder(ByteOrder.BIG_ENDIAN);
+    }
+
+    public void testLittleEndian() throws IOException {
+        testDecoder(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void testNaNPayloadsArePreserved() throws IOException {
+        testNaNPayloads(ByteOrder.BIG_ENDIAN);
+        testNaNPayloads(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void testNaNPayloads(ByteOrder byteOrder) throws IOException {
+        if (!CompoundDecoderFactory.isAvailable()) {
+            return;
+        }
+        final byte[] data = createRecords(byteOrder, 2);
+        final CompoundDecoder decoder = CompoundDecoderFactory.getDecoder(RECORD_TYPE, byteOrder);
+        final int recordSize = RECORD_TYPE.getSize();
+        final int floatBits = 0x7fc00000 | 42;
+        final long doubleBits = 0x7ff8000000000000L | 42;
+
+        decoder.setFloat(data, recordSize, 7, Float.intBitsToFloat(floatBits));
+        decoder.setDouble(data, recordSize, 8, Double.longBitsToDouble(doubleBits));
+        assertEquals(floatBits, Float.floatToRawIntBits(decoder.getFloat(data, recordSize, 7)));
+        assertEquals(doubleBits, Double.doubleToRawLongBits(decoder.getDouble(data, recordSize, 8)));
+
+        final Object[] columns = decoder.createColumns(2);
+        decoder.decode(data, 0, 2, columns, 0);
+        assertEquals(floatBits, Float.floatToRawIntBits(((float[]) columns[7])[1]));
+        assertEquals(doubleBits, Double.doubleToRawLongBits(((double[]) columns[8])[1]));
+    }
+
+    private static void testDecoder(ByteOrder byteOrder) throws IOException {
+        if (!CompoundDecoderFactory.isAvailable()) {
+            return;
+        }
+        final byte[] data = createRecords(byteOrder, 3);
+        final CompoundDecoder decoder = CompoundDecoderFactory.getDecoder(RECORD_TYPE, byteOrder);
+        final int recordSize = RECORD_TYPE.getSize();
+
+        for (int r = 0; r < 3; r++) {
+            final int p = r * recordSize;
+            assertEquals((byte) -(r + 1), decoder.getByte(data, p, 0));
+            assertEquals(250 + r, decoder.getUByte(data, p, 1));
+            assertEquals((short) -(r + 1000), decoder.getShort(data, p, 2));
+            assertEquals(65000 + r, decoder.getUShort(data, p, 3));
+            assertEquals(-(r + 100000), decoder.getInt(data, p, 4));
+            assertEquals(4000000000L + r, decoder.getUInt(data, p, 5));
+            assertEquals(-(r + 10000000000L), decoder.getLong(data, p, 6));
+            assertEquals(r + 0.5F, decoder.getFloat(data, p, 7), 0.0F);
+            assertEquals(r + 0.25, decoder.getDouble(data, p, 8), 0.0);
+        }
+        // conversions
+        assertEquals(250.0, decoder.getDouble(data, 0, 1), 0.0);
+        assertEquals(-100000L, decoder.getLong(data, 0, 4));
+        assertEquals(2, decoder.getInt(data, 2 * recordSize, 7));
+
+        decoder.setInt(data, recordSize, 4, 42);
+        decoder.setDouble(data, recordSize, 7, 1.5);
+        decoder.setLong(data, recordSize, 5, 0xFFFFFFFEL);
+        assertEquals(42, decoder.getInt(data, recordSize, 4));
+        assertEquals(1.5F, decoder.getFloat(data, recordSize, 7), 0.0F);
+        assertEquals(0xFFFFFFFEL, decoder.getUInt(data, recordSize, 5));
+        assertEquals(-(2 + 10000000000L), decoder.getLong(data, 2 * recordSize, 6));
+
+        try {
+            decoder.getInt(data, 0, 9);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+
+        final Object[] columns = decoder.createColumns(4);
+        assertEquals(9, columns.length);
+        columns[2] = null;
+        decoder.decode(data, recordSize, 2, columns, 1);
+        final byte[] ub = (byte[]) columns[1];
+        final int[] i = (int[]) columns[4];
+        final int[] ui = (int[]) columns[5];
+        final float[] f = (float[]) columns[7];
+        final double[] d = (double[]) columns[8];
+        assertEquals(0, i[0]);
+        assertEquals(42, i[1]);
+        assertEquals(-100002, i[2]);
+        assertEquals(251, ub[1] & 0xFF);
+        assertEquals(0xFFFFFFFEL, ui[1] & 0xFFFFFFFFL);
+        assertEquals(1.5F, f[1], 0.0F);
+        assertEquals(2.5F, f[2], 0.0F);
+        assertEquals(2.25, d[2], 0.0);
+    }
+
+    private static byte[] createRecords(ByteOrder byteOrder, int recordCount) throws IOException {
+        final DataFormat format = new DataFormat(COMPOUND("Dataset", MEMBER("Records", SEQUENCE(RECORD_TYPE, recordCount))), byteOrder);
+        final ByteArrayIOHandler handler = new ByteArrayIOHandler();
+        final DataContext context = format.createContext(handler);
+        final CompoundData dataset = context.createData();
+        for (int r = 0; r < recordCount; r++) {
+            final CompoundData record = dataset.getSequence("Records").getCompound(r);
+            record.setByte("b", (byte) -(r + 1));
+            record.setUByte("ub", 250 + r);
+            record.setShort("s", (short) -(r + 1000));
+            record.setUShort("us", 65000 + r);
+            record.setInt("i", -(r + 100000));
+            record.setUInt("ui", 4000000000L + r);
+            record.setLong("l", -(r + 10000000000L));
+            record.setFloat("f", r + 0.5F);
+            record.setDouble("d", r + 0.25);
+            record.flush();
+        }
+        context.dispose();
+        return handler.toByteArray();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceData;
+import junit.framework.TestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class CompressedInputIOHandlerTest extends TestCase {
+
+    private static final int MEMBER_VALUE_COUNT = 16 * 1024;
+    private static final int MEMBER_COUNT = 8;
+    private static final int N = MEMBER_COUNT * MEMBER_VALUE_COUNT;
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("ceres-binio-", ".gz");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testSingleMemberGzip() throws IOException {
+        final DataOutputStream stream = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)));
+        try {
+            writeValues(stream, 0, N);
+        } finally {
+            stream.close();
+        }
+        final CompressedInputIOHandler handler = CompressedInputIOHandler.createGzipHandler(file, 16 * 1024, 2, 64 * 1024);
+        try {
+            assertValues(handler);
+            assertEquals(1, handler.getCheckpointCount());
+        } finally {
+            handler.close();
+        }
+    }
+
+    public void testMultiMemberGzip() throws IOException {
+        final FileOutputStream fileStream = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < MEMBER_COUNT; i++) {
+                final GZIPOutputStream memberStream = new GZIPOutputStream(fileStream);
+                final DataOutputStream stream = new DataOutputStream(memberStream);
+                writeValues(stream, i * MEMBER_VALUE_COUNT, MEMBER_VALUE_COUNT);
+                stream.flush();
+                memberStream.finish();
+            }
+        } finally {
+            fileStream.close();
+        }
+        // members have 64K uncompressed bytes, so every other member start becomes a checkpoint
+        final CompressedInputIOHandler handler = CompressedInputIOHandler.createGzipHandler(file, 16 * 1024, 2, 100 * 1024);
+        try {
+            assertValues(handler);
+            assertEquals(MEMBER_COUNT / 2, handler.getCheckpointCount());
+        } finally {
+            handler.close();
+        }
+    }
+
+    public void testZipEntry() throws IOException {
+        final ZipOutputStream zipStream = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            zipStream.putNextEntry(new ZipEntry("data.bin"));
+            final DataOutputStream stream = new DataOutputStream(zipStream);
+            writeValues(stream, 0, N);
+            stream.flush();
+            zipStream.closeEntry();
+        } finally {
+            zipStream.close();
+        }
+        final CompressedInputIOHandler handler = CompressedInputIOHandler.createZipHandler(file, "data.bin");
+        try {
+            assertValues(handler);
+        } finally {
+            handler.close();
+        }
+        try {
+            CompressedInputIOHandler.createZipHandler(file, "other.bin");
+            fail("IOException expected");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    private static void writeValues(DataOutputStream stream, int offset, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            stream.writeInt(offset + i);
+        }
+    }
+
+    private static void assertValues(CompressedInputIOHandler handler) throws IOException {
+        final DataFormat format = new DataFormat(COMPOUND("Data", MEMBER("Values", SEQUENCE(INT, N))));
+        final DataContext context = format.createContext(handler);
+        final SequenceData values = context.getData().getSequence("Values");
+        for (int i = N - 1; i >= 0; i -= 997) {
+            assertEquals(i, values.getInt(i));
+        }
+        final int[] all = new int[N];
+        values.getInts(0, all, 0, N);
+        for (int i = 0; i < N; i++) {
+            assertEquals(i, all[i]);
+        }
+        assertEquals(4L * N, handler.getMaxPosition());
+        final byte[] b = new byte[4];
+        // backwards, so that decoding restarts at checkpoints
+        for (int i = N - 1; i >= 0; i -= 9973) {
+            handler.read(context, b, 4L * i);
+            assertEquals(i, (b[0] & 0xFF) << 24 | (b[1] & 0xFF) << 16 | (b[2] & 0xFF) << 8 | (b[3] & 0xFF));
+        }
+        try {
+            handler.write(context, new byte[4], 0);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // ok
+        }
+        context.dispose();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceType;
+import com.bc.ceres.binio.SimpleType;
+import com.bc.ceres.binio.binx.BinX;
+import com.bc.ceres.binio.binx.BinXException;
+import com.bc.ceres.binio.internal.GrowableSequenceTypeImpl;
+import com.bc.ceres.binio.internal.VarElementCountSequenceTypeImpl;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.ParseException;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class DataFormatCacheTest extends TestCase {
+
+    private File cacheDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        cacheDir = File.createTempFile("ceres-binio-", ".cache");
+        cacheDir.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    public void testRoundTrip() throws IOException {
+        final DataFormat format = createFormat();
+
+        final DataFormat copy = DataFormatCache.readDataFormat(ByteBuffer.wrap(DataFormatCache.writeDataFormat(format)));
+        assertEquals("Test", copy.getName());
+        assertEquals("2.0", copy.getVersion());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, copy.getByteOrder());
+        final CompoundType type = copy.getType();
+        assertEquals("Dataset", type.getName());
+        assertEquals(6, type.getMemberCount());
+        assertSame(type.getMemberType(0), copy.getTypeDef("Point"));
+        assertSame(type.getMemberType(0), ((SequenceType) type.getMemberType(2)).getElementType());
+        assertEquals(8, type.getMemberType(0).getSize());
+        assertEquals("count", ((VarElementCountSequenceTypeImpl) type.getMemberType(2)).getMemberName());
+        assertEquals(1, ((VarElementCountSequenceTypeImpl) type.getMemberType(3)).getMemberIndex());
+        assertSame(SimpleType.UBYTE, ((SequenceType) type.getMemberType(3)).getElementType());
+        assertEquals(72, type.getMemberType(4).getSize());
+        assertTrue(type.getMemberType(5) instanceof GrowableSequenceTypeImpl);
+        assertEquals("Point", copy.getBasisFormat().getType().getName());
+    }
+
+    public void testCorruptEntries() {
+        final byte[] bytes;
+        try {
+            bytes = DataFormatCache.writeDataFormat(createFormat());
+        } catch (IOException e) {
+            fail(e.getMessage());
+            return;
+        }
+        // Expected: truncated entries are rejected
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                DataFormatCache.readDataFormat(ByteBuffer.wrap(bytes, 0, length).slice());
+                fail("IOException expected for length " + length);
+            } catch (IOException e) {
+                // ok
+            }
+        }
+        // Expected: entries with a flipped byte are either read or rejected with an IOException
+        for (int i = 0; i < bytes.length; i++) {
+            for (int flip : new int[]{0x01, 0x80, 0xFF}) {
+                final byte[] corruptBytes = bytes.clone();
+                corruptBytes[i] ^= flip;
+                try {
+                    DataFormatCache.readDataFormat(ByteBuffer.wrap(corruptBytes));
+                } catch (IOException e) {
+                    // ok
+                }
+            }
+        }
+    }
+
+    public void testCorruptEntryIsCacheMiss() throws IOException {
+        final DataFormatCache cache = new DataFormatCache(cacheDir);
+        final String key = DataFormatCache.computeKey("schema".getBytes("UTF-8"));
+        cache.put(key, createFormat());
+        final File file = cacheDir.listFiles()[0];
+        final byte[] bytes = DataFormatCache.writeDataFormat(createFormat());
+
+        // Expected: a type id which is out of bounds, the entry ends with the id of the last type definition
+        // of the basis format and the flag indicating that there is no further basis format
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(bytes.length - 5);
+            raf.writeInt(Integer.MAX_VALUE);
+        } finally {
+            raf.close();
+        }
+        assertNull(cache.get(key));
+        assertFalse(file.exists());
+
+        cache.put(key, createFormat());
+        assertNotNull(cache.get(key));
+    }
+
+    private static DataFormat createFormat() {
+        final CompoundType pointType = COMPOUND("Point", MEMBER("x", FLOAT), MEMBER("y", FLOAT));
+        final CompoundType datasetType = COMPOUND("Dataset",
+                                                  MEMBER("origin", pointType),
+                                                  MEMBER("count", INT),
+                                                  MEMBER("points", VAR_SEQUENCE(pointType, "count")),
+                                                  MEMBER("flags", VAR_SEQUENCE(UBYTE, 1)),
+                                                  MEMBER("matrix", SEQUENCE(SEQUENCE(DOUBLE, 3), 3)),
+                                                  MEMBER("tail", SEQUENCE(ULONG, -1)));
+        final DataFormat basisFormat = new DataFormat(pointType);
+        basisFormat.addTypeDef("Point", pointType);
+        final DataFormat format = new DataFormat(datasetType, ByteOrder.LITTLE_ENDIAN);
+        format.setName("Test");
+        format.setVersion("2.0");
+        format.addTypeDef("Point", pointType);
+        format.setBasisFormat(basisFormat);
+        return format;
+    }
+
+    public void testGetAndPut() throws IOException {
+        final DataFormatCache cache = new DataFormatCache(cacheDir);
+        final String key = DataFormatCache.computeKey("schema".getBytes("UTF-8"));
+        assertEquals(64, key.length());
+        assertFalse(key.equals(DataFormatCache.computeKey("sch".getBytes("UTF-8"), "ema".getBytes("UTF-8"))));
+        assertNull(cache.get(key));
+        cache.put(key, new DataFormat(COMPOUND("Dataset", MEMBER("a", INT))));
+        final DataFormat format = cache.get(key);
+        assertNotNull(format);
+        assertEquals("Dataset", format.getName());
+        assertEquals(4, format.getType().getSize());
+
+        try {
+            final DataFormat format2 = new DataFormat(COMPOUND("Dataset", MEMBER("a", INT)));
+            format2.getType().setMetadata("metadata");
+            cache.put(key, format2);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    public void testBinXUsesCache() throws IOException, BinXException, URISyntaxException {
+        final URI uri = BinX.class.getResource("ArrayVariable.binXschema.xml").toURI();
+        final DataFormatCache cache = new DataFormatCache(cacheDir);
+
+        BinX binx = new BinX();
+        binx.setDataFormatCache(cache);
+        binx.setArrayVariableInlined(true);
+        final DataFormat format1 = binx.readDataFormat(uri, "ArrayVariableTest");
+        assertEquals(1, cacheDir.listFiles().length);
+
+        binx = new BinX();
+        binx.setDataFormatCache(cache);
+        binx.setArrayVariableInlined(true);
+        final DataFormat format2 = binx.readDataFormat(uri, "ArrayVariableTest");
+        assertNotSame(format1, format2);
+        assertEquals(1, cacheDir.listFiles().length);
+        assertEquals("ArrayVariableTest", format2.getName());
+        assertEquals(format1.getType().getMemberCount(), format2.getType().getMemberCount());
+        assertTrue(binx.getDefinition("Ernie") instanceof CompoundType);
+        assertSame(binx.getDefinition("Ernie"), format2.getTypeDef("Ernie"));
+        assertEquals("float[$af32_Counter]", ((CompoundType) binx.getDefinition("Ernie")).getMemberType(1).getName());
+
+        binx = new BinX();
+        binx.setDataFormatCache(cache);
+        binx.readDataFormat(uri, "ArrayVariableTest");
+        assertEquals(2, cacheDir.listFiles().length);
+    }
+
+    public void testTypeParserUsesCache() throws IOException, ParseException {
+        final String unit = "Dataset { int lineCount; Scanline[lineCount] scanlines; };\n" +
+                            "Scanline { int flags; double[512] data; };";
+        final DataFormatCache cache = new DataFormatCache(cacheDir);
+        final CompoundType[] types1 = TypeParser.parseUnit(new StringReader(unit), cache);
+        final CompoundType[] types2 = TypeParser.parseUnit(new StringReader(unit), cache);
+        assertEquals(1, cacheDir.listFiles().length);
+        assertEquals(2, types2.length);
+        assertNotSame(types1[0], types2[0]);
+        assertEquals("Dataset", types2[0].getName());
+        assertEquals("Scanline", types2[1].getName());
+        assertSame(types2[1], ((SequenceType) types2[0].getMemberType(1)).getElementType());
+        assertEquals(types1[1].getSize(), types2[1].getSize());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.ExtendedDataContext;
+import com.bc.ceres.binio.IOStatistics;
+import com.bc.ceres.binio.SequenceData;
+import junit.framework.TestCase;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class InstrumentedIOHandlerTest extends TestCase {
+
+    private static final CompoundType RECORD_TYPE = COMPOUND("Record", MEMBER("a", INT), MEMBER("b", FLOAT));
+    private static final CompoundType TYPE = COMPOUND("Dataset",
+                                                      MEMBER("Header", SEQUENCE(BYTE, 16)),
+                                                      MEMBER("Records", SEQUENCE(RECORD_TYPE, 100)));
+
+    public void testStatistics() throws IOException {
+        final InstrumentedIOHandler handler = new InstrumentedIOHandler(new ByteArrayIOHandler(new byte[16 + 800]));
+        final ExtendedDataContext context = (ExtendedDataContext) new DataFormat(TYPE).createContext(handler);
+        final IOStatistics.Snapshot s0 = context.getStatistics().snapshot();
+
+        final SequenceData records = context.getData().getSequence("Records");
+        for (int i = 0; i < 100; i++) {
+            final CompoundData record = records.getCompound(i);
+            record.setInt(0, i);
+            record.setFloat(1, 0.5F * i);
+            record.flush();
+        }
+        context.getData().getSequence("Header").getByte(0);
+
+        final IOStatistics.Snapshot s1 = context.getStatistics().snapshot();
+        final IOStatistics.Snapshot delta = s1.minus(s0);
+        // each record has its own segment, the header shares the segment of the dataset
+        assertEquals(101, delta.getSegmentCount());
+        assertEquals(800 + 816, delta.getSegmentBytes());
+        assertEquals(100, delta.getSegmentReuseCount());
+        assertEquals(101, delta.getReadCount());
+        assertEquals(800 + 816, delta.getReadBytes());
+        assertEquals(100, delta.getWriteCount());
+        assertEquals(800, delta.getWriteBytes());
+        assertEquals(101, sum(delta.getReadLatencyHistogram()));
+        assertEquals(100, sum(delta.getWriteLatencyHistogram()));
+
+        final IOStatistics handlerStatistics = handler.getStatistics();
+        assertEquals(101, handlerStatistics.getReadCount());
+        assertEquals(800 + 816, handlerStatistics.getReadBytes());
+        assertEquals(0, handlerStatistics.getSegmentCount());
+
+        context.getStatistics().reset();
+        assertEquals(0, context.getStatistics().getReadCount());
+        assertEquals(0, sum(context.getStatistics().getReadLatencyHistogram()));
+        assertEquals(101, handlerStatistics.getReadCount());
+        context.dispose();
+    }
+
+    public void testMBean() throws IOException, JMException {
+        final InstrumentedIOHandler handler = new InstrumentedIOHandler(new ByteArrayIOHandler(new byte[16 + 800]));
+        final ObjectName objectName = handler.getStatistics().registerMBean("test");
+        try {
+            assertEquals("com.bc.ceres.binio:type=IOStatistics,name=\"test\"", objectName.toString());
+            handler.read(null, new byte[10], 0);
+            handler.read(null, new byte[20], 10);
+            assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "ReadCount"));
+            assertEquals(30L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "ReadBytes"));
+            handler.getStatistics().registerMBean("test");
+        } finally {
+            IOStatistics.unregisterMBean(objectName);
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+
+    private static long sum(long[] histogram) {
+        assertEquals(IOStatistics.LATENCY_BUCKET_COUNT, histogram.length);
+        long sum = 0;
+        for (long count : histogram) {
+            sum += count;
+        }
+        return sum;
+    }
+}
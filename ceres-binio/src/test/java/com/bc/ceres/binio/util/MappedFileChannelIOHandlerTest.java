@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceData;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class MappedFileChannelIOHandlerTest extends TestCase {
+    private File file;
+    private RandomAccessFile raf;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("ceres-binio-", ".dat");
+        raf = new RandomAccessFile(file, "rw");
+        for (int i = 0; i < 100; i++) {
+            raf.write(i);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            raf.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    public void testReadStraddlingWindows() throws IOException {
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel(),
+                                                                                  FileChannel.MapMode.READ_ONLY,
+                                                                                  16, 2);
+        final byte[] data = new byte[40];
+        handler.read(null, data, 10);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(10 + i, data[i]);
+        }
+
+        final byte[] tail = new byte[8];
+        handler.read(null, tail, 96);
+        assertEquals(99, tail[3]);
+        assertEquals(0, tail[4]);
+
+        try {
+            handler.write(null, tail, 0);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    public void testWrite() throws IOException {
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel(),
+                                                                                  FileChannel.MapMode.READ_WRITE,
+                                                                                  16, 2);
+        handler.write(null, new byte[]{-1, -2, -3, -4}, 14);
+        handler.write(null, new byte[]{-5, -6, -7, -8}, 98);
+        handler.force();
+        assertEquals(102, handler.getMaxPosition());
+
+        final byte[] data = new byte[102];
+        handler.read(null, data, 0);
+        assertEquals(13, data[13]);
+        assertEquals(-1, data[14]);
+        assertEquals(-4, data[17]);
+        assertEquals(18, data[18]);
+        assertEquals(97, data[97]);
+        assertEquals(-5, data[98]);
+        assertEquals(-8, data[101]);
+
+        raf.seek(14);
+        assertEquals(-1, raf.readByte());
+        raf.seek(101);
+        assertEquals(-8, raf.readByte());
+    }
+
+    public void testBufferViews() throws IOException {
+        final MappedFileChannelIOHandler handler = new MappedFileChannelIOHandler(raf.getChannel(),
+                                                                                  FileChannel.MapMode.READ_WRITE,
+                                                                                  128, 2);
+        final ByteBuffer view = handler.getBufferView(null, 60, 4);
+        assertNotNull(view);
+        assertTrue(view.isReadOnly());
+        assertEquals(4, view.capacity());
+        assertEquals(60, view.get(0));
+        assertNull(handler.getBufferView(null, 96, 8));
+
+        final DataFormat format = new DataFormat(COMPOUND("Data", MEMBER("Values", SEQUENCE(INT, 25))),
+                                                 ByteOrder.LITTLE_ENDIAN);
+        final DataContext context = format.createContext(handler);
+        final SequenceData values = context.getData().getSequence("Values");
+        final ByteBuffer expected = ByteBuffer.allocate(100).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 100; i++) {
+            expected.put((byte) i);
+        }
+        for (int i = 0; i < 25; i++) {
+            assertEquals(expected.getInt(4 * i), values.getInt(i));
+        }
+        final int[] ints = new int[25];
+        values.getInts(0, ints, 0, 25);
+        assertEquals(expected.getInt(4 * 24), ints[24]);
+
+        values.setInt(1, 42);
+        values.flush();
+        assertEquals(42, values.getInt(1));
+        assertEquals(expected.getInt(4 * 2), values.getInt(2));
+        final byte[] data = new byte[4];
+        handler.read(context, data, 4);
+        assertEquals(42, data[0]);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.CompoundType;
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.RangeScanner;
+import com.bc.ceres.binio.SequenceData;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class ParallelScanTest extends TestCase {
+
+    private static final int N = 10000;
+
+    private ForkJoinPool pool;
+
+    @Override
+    protected void setUp() throws Exception {
+        pool = new ForkJoinPool(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        pool.shutdown();
+    }
+
+    public void testScanFixSequence() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8 * N);
+        for (int i = 0; i < N; i++) {
+            buffer.putInt(i).putInt(2 * i);
+        }
+        final CompoundType recordType = COMPOUND("Record", MEMBER("a", INT), MEMBER("b", INT));
+        final DataFormat format = new DataFormat(COMPOUND("Dataset", MEMBER("Records", SEQUENCE(recordType, N))));
+        final DataContext context = format.createContext(new ByteArrayIOHandler(buffer.array()));
+        final SequenceData records = context.getData().getSequence("Records");
+
+        final Long sum = ParallelScan.scan(records, new RangeScanner<Long>() {
+            @Override
+            public Long scan(SequenceData range, int rangeOffset) throws IOException {
+                long sum = 0;
+                for (int i = 0; i < range.getElementCount(); i++) {
+                    final CompoundData record = range.getCompound(i);
+                    assertEquals(rangeOffset + i, record.getInt("a"));
+                    sum += record.getInt("b");
+                }
+                return sum;
+            }
+
+            @Override
+            public Long combine(Long result1, Long result2) {
+                return result1 + result2;
+            }
+        }, pool, 100);
+        assertEquals((long) N * (N - 1), sum.longValue());
+    }
+
+    public void testScanVarCollectionsInOrder() throws IOException {
+        final int n = 500;
+        final ByteBuffer buffer = ByteBuffer.allocate(4 * n + 4 * (n * (n - 1) / 2));
+        for (int i = 0; i < n; i++) {
+            buffer.putInt(i);
+            for (int k = 0; k < i; k++) {
+                buffer.putInt(i);
+            }
+        }
+        final CompoundType recordType = COMPOUND("Record", MEMBER("n", INT), MEMBER("v", VAR_SEQUENCE(INT, "n")));
+        final DataFormat format = new DataFormat(COMPOUND("Dataset", MEMBER("Records", SEQUENCE(recordType, n))));
+        final DataContext context = format.createContext(new ByteArrayIOHandler(buffer.array()));
+        final SequenceData records = context.getData().getSequence("Records");
+
+        final List<Integer> values = ParallelScan.scan(records, new RangeScanner<List<Integer>>() {
+            @Override
+            public List<Integer> scan(SequenceData range, int rangeOffset) throws IOException {
+                final List<Integer> values = new ArrayList<Integer>();
+                for (int i = 0; i < range.getElementCount(); i++) {
+                    final SequenceData v = range.getCompound(i).getSequence("v");
+                    assertEquals(rangeOffset + i, v.getElementCount());
+                    values.add(v.getElementCount() > 0 ? v.getInt(v.getElementCount() - 1) : 0);
+                }
+                return values;
+            }
+
+            @Override
+            public List<Integer> combine(List<Integer> result1, List<Integer> result2) {
+                result1.addAll(result2);
+                return result1;
+            }
+        }, pool, 10);
+        assertEquals(n, values.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, values.get(i).intValue());
+        }
+    }
+
+    public void testIOExceptionIsRethrown() throws IOException {
+        final DataFormat format = new DataFormat(COMPOUND("Dataset", MEMBER("Values", SEQUENCE(INT, 100))));
+        final DataContext context = format.createContext(new ByteArrayIOHandler(new byte[400]));
+        final SequenceData values = context.getData().getSequence("Values");
+        try {
+            ParallelScan.scan(values, new RangeScanner<Object>() {
+                @Override
+                public Object scan(SequenceData range, int rangeOffset) throws IOException {
+                    throw new IOException("failed");
+                }
+
+                @Override
+                public Object combine(Object result1, Object result2) {
+                    return null;
+                }
+            }, pool, 10);
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+
+    public void testCreateSubSequence() throws IOException {
+        final DataFormat format = new DataFormat(COMPOUND("Dataset", MEMBER("Values", SEQUENCE(INT, 100))));
+        final DataContext context = format.createContext(new ByteArrayIOHandler(new byte[400]));
+        final SequenceData values = context.getData().getSequence("Values");
+        final SequenceData subSequence = values.createSubSequence(10, 30);
+        assertEquals(20, subSequence.getElementCount());
+        assertEquals(values.getPosition() + 40, subSequence.getPosition());
+        assertEquals(0, values.createSubSequence(100, 100).getElementCount());
+        try {
+            values.createSubSequence(90, 101);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException e) {
+            // ok
+        }
+    }
+}
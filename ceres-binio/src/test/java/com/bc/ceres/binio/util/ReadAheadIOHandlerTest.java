@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.IOHandler;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReadAheadIOHandlerTest extends TestCase {
+
+    private byte[] bytes;
+    private CountingIOHandler countingIOHandler;
+    private ReadAheadIOHandler readAheadIOHandler;
+
+    @Override
+    protected void setUp() throws Exception {
+        bytes = new byte[1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        countingIOHandler = new CountingIOHandler(new ByteArrayIOHandler(bytes));
+        readAheadIOHandler = new ReadAheadIOHandler(countingIOHandler, 3);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        readAheadIOHandler.dispose();
+    }
+
+    public void testSequentialReadsArePrefetched() throws IOException {
+        final byte[] data = new byte[64];
+        for (int position = 0; position < bytes.length; position += data.length) {
+            readAheadIOHandler.read(null, data, position);
+            assertEquals((byte) position, data[0]);
+            assertEquals((byte) (position + 63), data[63]);
+        }
+        // 2 reads before sequential access has been detected, all others have been prefetched
+        assertEquals(bytes.length / data.length, countingIOHandler.readCount.get());
+        assertEquals(2, countingIOHandler.callerReadCount.get());
+    }
+
+    public void testRandomReadsAreDelegated() throws IOException {
+        final byte[] data = new byte[16];
+        readAheadIOHandler.read(null, data, 512);
+        readAheadIOHandler.read(null, data, 32);
+        readAheadIOHandler.read(null, data, 256);
+        assertEquals((byte) 256, data[0]);
+        assertEquals(3, countingIOHandler.readCount.get());
+    }
+
+    public void testWriteDropsPrefetchedBlocks() throws IOException {
+        final byte[] data = new byte[16];
+        readAheadIOHandler.read(null, data, 0);
+        readAheadIOHandler.read(null, data, 16);
+        readAheadIOHandler.write(null, new byte[]{-1}, 40);
+        readAheadIOHandler.read(null, data, 32);
+        assertEquals(32, data[0]);
+        assertEquals(-1, data[8]);
+    }
+
+    private static class CountingIOHandler extends FilterIOHandler {
+        final AtomicInteger readCount = new AtomicInteger();
+        final AtomicInteger callerReadCount = new AtomicInteger();
+        final Thread callerThread = Thread.currentThread();
+
+        CountingIOHandler(IOHandler delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void read(DataContext context, byte[] data, long position) throws IOException {
+            readCount.incrementAndGet();
+            if (Thread.currentThread() == callerThread) {
+                callerReadCount.incrementAndGet();
+            }
+            super.read(context, data, position);
+        }
+    }
+}
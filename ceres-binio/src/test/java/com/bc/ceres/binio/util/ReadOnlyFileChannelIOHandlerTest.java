@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.CompoundData;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.ExtendedDataContext;
+import com.bc.ceres.binio.SequenceData;
+import junit.framework.TestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class ReadOnlyFileChannelIOHandlerTest extends TestCase {
+    private static final int N = 4096;
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("ceres-binio-", ".dat");
+        final DataOutputStream dos = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < N; i++) {
+                dos.writeInt(i);
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    public void testReadPastEof() throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final ReadOnlyFileChannelIOHandler handler = new ReadOnlyFileChannelIOHandler(raf.getChannel());
+            assertEquals(4 * N, handler.getMaxPosition());
+            final byte[] data = new byte[8];
+            handler.read(null, data, 4 * N - 4);
+            assertEquals((byte) ((N - 1) & 0xFF), data[3]);
+            assertEquals(0, data[4]);
+            try {
+                handler.write(null, data, 0);
+                fail("IOException expected");
+            } catch (IOException e) {
+                // ok
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    public void testDefaultReadOnlyContext() throws Exception {
+        final DataFormat format = new DataFormat(COMPOUND("Data", MEMBER("Values", SEQUENCE(INT, N))));
+        final ExtendedDataContext context = (ExtendedDataContext) format.createContext(file, "r");
+        try {
+            assertSame(RandomAccessFileIOHandler.class, context.getHandler().getClass());
+            assertFalse(context.isConcurrent());
+            assertEquals(N - 1, context.getData().getSequence("Values").getInt(N - 1));
+        } finally {
+            context.dispose();
+        }
+    }
+
+    public void testConcurrentReads() throws Exception {
+        final DataFormat format = new DataFormat(COMPOUND("Data", MEMBER("Values", SEQUENCE(INT, N))));
+        final ExtendedDataContext context = format.createConcurrentContext(file);
+        assertSame(ReadOnlyFileChannelIOHandler.class, context.getHandler().getClass());
+        assertTrue(context.isConcurrent());
+        try {
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+            final Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int offset = t;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            final CompoundData data = context.createData();
+                            final SequenceData values = data.getSequence("Values");
+                            for (int i = offset; i < N; i += threads.length) {
+                                assertEquals(i, values.getInt(i));
+                            }
+                        } catch (Throwable e) {
+                            failure.set(e);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull(failure.get());
+        } finally {
+            context.dispose();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.binio.util;
+
+import com.bc.ceres.binio.DataContext;
+import com.bc.ceres.binio.DataFormat;
+import com.bc.ceres.binio.SequenceData;
+import com.bc.ceres.binio.TracingIOHandler;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static com.bc.ceres.binio.TypeBuilder.*;
+
+public class WriteBackIOHandlerTest extends TestCase {
+
+    private ByteArrayIOHandler byteArrayIOHandler;
+    private TracingIOHandler tracingIOHandler;
+
+    @Override
+    protected void setUp() throws Exception {
+        byteArrayIOHandler = new ByteArrayIOHandler(new byte[128]);
+        tracingIOHandler = new TracingIOHandler(byteArrayIOHandler);
+    }
+
+    public void testWritesAreSortedAndCoalesced() throws IOException {
+        final WriteBackIOHandler handler = new WriteBackIOHandler(tracingIOHandler);
+        handler.write(null, fill(16, 3), 32);
+        handler.write(null, fill(16, 1), 0);
+        handler.write(null, fill(16, 2), 16);
+        handler.write(null, fill(4, 9), 100);
+        handler.write(null, fill(4, 7), 8);
+        assertEquals("", tracingIOHandler.getTrace());
+        assertEquals(56, handler.getPendingBytes());
+
+        final byte[] data = new byte[16];
+        handler.read(null, data, 4);
+        assertEquals("R(4,16)", tracingIOHandler.getTrace());
+        assertEquals(1, data[0]);
+        assertEquals(7, data[4]);
+        assertEquals(7, data[7]);
+        assertEquals(1, data[8]);
+        assertEquals(2, data[12]);
+
+        tracingIOHandler.reset();
+        handler.flush();
+        assertEquals("W(0,48)W(100,4)", tracingIOHandler.getTrace());
+        assertEquals(0, handler.getPendingBytes());
+        final byte[] bytes = byteArrayIOHandler.toByteArray();
+        assertEquals(1, bytes[7]);
+        assertEquals(7, bytes[8]);
+        assertEquals(7, bytes[11]);
+        assertEquals(1, bytes[12]);
+        assertEquals(2, bytes[31]);
+        assertEquals(3, bytes[32]);
+        assertEquals(0, bytes[48]);
+        assertEquals(9, bytes[103]);
+    }
+
+    public void testThreshold() throws IOException {
+        final WriteBackIOHandler handler = new WriteBackIOHandler(tracingIOHandler, 32);
+        handler.write(null, fill(16, 1), 16);
+        assertEquals("", tracingIOHandler.getTrace());
+        handler.write(null, fill(16, 1), 0);
+        assertEquals("W(0,32)", tracingIOHandler.getTrace());
+        assertEquals(0, handler.getPendingBytes());
+    }
+
+    public void testGatheringWrite() throws IOException {
+        final File file = File.createTempFile("ceres-binio-", ".dat");
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            final WriteBackIOHandler handler = new WriteBackIOHandler(new FileChannelIOHandler(raf.getChannel()));
+            handler.write(null, fill(8, 2), 8);
+            handler.write(null, fill(8, 1), 0);
+            handler.write(null, fill(8, 3), 16);
+            assertEquals(0, raf.length());
+            assertEquals(24, handler.getMaxPosition());
+            handler.flush();
+            assertEquals(24, raf.length());
+            final byte[] bytes = new byte[24];
+            raf.seek(0);
+            raf.readFully(bytes);
+            assertEquals(1, bytes[7]);
+            assertEquals(2, bytes[8]);
+            assertEquals(3, bytes[23]);
+        } finally {
+            raf.close();
+            file.delete();
+        }
+    }
+
+    public void testContextDisposeFlushes() throws IOException {
+        final WriteBackIOHandler handler = new WriteBackIOHandler(tracingIOHandler);
+        final DataFormat format = new DataFormat(COMPOUND("Data", MEMBER("Values", SEQUENCE(INT, 32))));
+        final DataContext context = format.createContext(handler);
+        final SequenceData values = context.getData().getSequence("Values");
+        for (int i = 0; i < 32; i++) {
+            values.setInt(i, i);
+        }
+        values.flush();
+        assertFalse(tracingIOHandler.getTrace().contains("W"));
+        context.dispose();
+        assertTrue(tracingIOHandler.getTrace().endsWith("W(0,128)"));
+        assertEquals(31, ByteBuffer.wrap(byteArrayIOHandler.toByteArray()).getInt(124));
+    }
+
+    private static byte[] fill(int length, int value) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) value;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,834 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import com.sun.media.jai.util.CacheDiagnostics;
+
+import javax.media.jai.TileCache;
+import java.awt.Point;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.bc.ceres.jai.tilecache.SwappingTileCache.*;
+
+
+/**
+ * A concurrent variant of the {@link SwappingTileCache}. Tiles which don't fit into memory
+ * anymore are swapped to a {@link SwapSpace}, which must be thread-safe.
+ * <p/>
+ * The cache is partitioned by tile key. Each partition has its own lock, LRU list and memory
+ * accounting, so that threads adding or evicting tiles of different partitions don't block each other.
+ * Cache hits are lock-free: the tile is looked up in a concurrent map and just marked as referenced.
+ * A referenced tile gets a second chance when its partition evicts tiles, so the eviction order
+ * approximates LRU.
+ * <p/>
+ * The memory capacity is enforced approximately: if the memory used by all partitions exceeds the capacity,
+ * partitions are visited round-robin, each one evicting a single tile per visit, until the total memory used
+ * is not greater than <code>memoryCapacity * memoryThreshold</code>. Partitions holding few tiles are thus
+ * not drained, while others are well above their share. Concurrent additions may exceed the capacity by a
+ * few tiles in the meantime.
+ * <p/>
+ * Evicted tiles are written to the swap space by the evicting thread after it has released the partition lock.
+ * Until then, they are pending and can be reclaimed by {@link #getTile} without any I/O.
+ * <p/>
+ * The action values of tiles passed to observers are described by
+ * {@link SwappingTileCache#getCachedTileActions()}.
+ *
+ * @author Norman Fomferra
+ * @since Ceres 0.14
+ */
+public final class ConcurrentSwappingTileCache extends Observable implements TileCache, CacheDiagnostics {
+
+    /**
+     * The default number of partitions.
+     */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private final Partition[] partitions;
+    private final ConcurrentHashMap<Object, MemoryTile> cache;
+    private final SwapSpace swapSpace;
+    private final SwapWriter swapWriter;
+    private final AtomicLong memoryUsage;
+    private final AtomicInteger nextPartitionIndex;
+    private volatile long memoryCapacity;
+    private volatile float memoryThreshold = 0.75F;
+    private volatile Comparator comparator;
+    private volatile boolean diagnostics;
+
+    /**
+     * No args constructor. Use the DEFAULT_MEMORY_CAPACITY of 16 Megs.
+     */
+    public ConcurrentSwappingTileCache() {
+        this(DEFAULT_MEMORY_CAPACITY, new DefaultSwapSpace(DEFAULT_SWAP_DIR));
+    }
+
+    /**
+     * Constructor.  The memory capacity should be explicitly specified.
+     *
+     * @param memoryCapacity The maximum cache memory size in bytes.
+     * @param swapSpace      The thread-safe space used to swap out tiles.
+     * @throws IllegalArgumentException If <code>memoryCapacity</code>
+     *                                  is less than 0.
+     */
+    public ConcurrentSwappingTileCache(long memoryCapacity, SwapSpace swapSpace) {
+        this(memoryCapacity, swapSpace, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param memoryCapacity   The maximum cache memory size in bytes.
+     * @param swapSpace        The thread-safe space used to swap out tiles.
+     * @param concurrencyLevel The estimated number of concurrently adding threads. The number of partitions
+     *                         is the next power of two.
+     * @throws IllegalArgumentException If <code>memoryCapacity</code>
+     *                                  is less than 0 or <code>concurrencyLevel</code> is less than 1.
+     */
+    public ConcurrentSwappingTileCache(long memoryCapacity, SwapSpace swapSpace, int concurrencyLevel) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("memoryCapacity < 0");
+        }
+        if (swapSpace == null) {
+            throw new NullPointerException("swapSpace");
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("concurrencyLevel < 1");
+        }
+        int partitionCount = 1;
+        while (partitionCount < concurrencyLevel) {
+            partitionCount <<= 1;
+        }
+        this.memoryCapacity = memoryCapacity;
+        this.swapSpace = swapSpace;
+        this.swapWriter = new SwapWriter(swapSpace, 0);
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition();
+        }
+        this.cache = new ConcurrentHashMap<Object, MemoryTile>(DEFAULT_HASHTABLE_CAPACITY, 0.75F, partitionCount);
+        this.memoryUsage = new AtomicLong();
+        this.nextPartitionIndex = new AtomicInteger();
+    }
+
+    /**
+     * @return The number of partitions.
+     */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Adds a tile to the cache.
+     * <p/>
+     * <p> If the specified tile is already in the cache, it will not be
+     * cached again.  If by adding this tile, the cache exceeds the memory
+     * capacity, older tiles in the cache are swapped out to keep the cache
+     * memory usage under the specified limit.
+     *
+     * @param owner The image the tile blongs to.
+     * @param tileX The tile's X index within the image.
+     * @param tileY The tile's Y index within the image.
+     * @param tile  The tile to be cached.
+     */
+    public void add(RenderedImage owner, int tileX, int tileY, Raster tile) {
+        add(owner, tileX, tileY, tile, null);
+    }
+
+    /**
+     * Adds a tile to the cache with an associated tile compute cost.
+     *
+     * @param owner           The image the tile blongs to.
+     * @param tileX           The tile's X index within the image.
+     * @param tileY           The tile's Y index within the image.
+     * @param tile            The tile to be cached.
+     * @param tileCacheMetric Metric for prioritizing tiles
+     */
+    public void add(RenderedImage owner, int tileX, int tileY, Raster tile, Object tileCacheMetric) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+        final Object key = MemoryTile.hashKey(owner, tileX, tileY);
+        final MemoryTile ct = cache.get(key);
+        if (ct != null) {
+            ct.referenced = true;
+            getPartition(key).hitCount.incrementAndGet();
+            if (diagnostics) {
+                notifyObservers(ct, UPDATE_FROM_ADD);
+            }
+        } else {
+            addTile(new MemoryTile(owner, tileX, tileY, tile, tileCacheMetric));
+        }
+    }
+
+    /**
+     * Adds an array of tiles to the tile cache.
+     *
+     * @param owner           The <code>RenderedImage</code> that the tile belongs to.
+     * @param tileIndices     An array of <code>Point</code>s containing the
+     *                        <code>tileX</code> and <code>tileY</code> indices for each tile.
+     * @param tiles           The array of tile <code>Raster</code>s containing tile data.
+     * @param tileCacheMetric Object which provides an ordering metric
+     *                        associated with the <code>RenderedImage</code> owner.
+     */
+    public void addTiles(RenderedImage owner, Point[] tileIndices, Raster[] tiles, Object tileCacheMetric) {
+        for (int i = 0; i < tileIndices.length; i++) {
+            add(owner, tileIndices[i].x, tileIndices[i].y, tiles[i], tileCacheMetric);
+        }
+    }
+
+    private void addTile(MemoryTile ct) {
+        if (!isCacheable(ct)) {
+            return;
+        }
+        final Partition partition = getPartition(ct.key);
+        synchronized (partition) {
+            if (!linkTile(partition, ct)) {
+                // added concurrently
+                return;
+            }
+        }
+        tileAdded(ct);
+    }
+
+    /**
+     * Don't cache tile if adding it would provoke memoryControl()
+     * which would in turn only end up removing the tile.
+     */
+    private boolean isCacheable(MemoryTile ct) {
+        final long memoryCapacity = this.memoryCapacity;
+        return memoryUsage.get() + ct.tileSize <= memoryCapacity ||
+                ct.tileSize <= (long) (memoryCapacity * memoryThreshold);
+    }
+
+    /**
+     * Must be called while the partition is locked.
+     *
+     * @return {@code false}, if another tile of the same key is already cached.
+     */
+    private boolean linkTile(Partition partition, MemoryTile ct) {
+        if (cache.putIfAbsent(ct.key, ct) != null) {
+            return false;
+        }
+        // new tiles are being accessed
+        ct.referenced = true;
+        partition.link(ct);
+        memoryUsage.addAndGet(ct.tileSize);
+        return true;
+    }
+
+    private void tileAdded(MemoryTile ct) {
+        if (diagnostics) {
+            notifyObservers(ct, ADD);
+        }
+        if (memoryUsage.get() > memoryCapacity) {
+            memoryControl();
+        }
+    }
+
+    /**
+     * Removes a tile from the cache and from the swap space.
+     * <p/>
+     * <p> If the specified tile is not in the cache, this method
+     * does nothing.
+     */
+    public void remove(RenderedImage owner, int tileX, int tileY) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+        final Object key = MemoryTile.hashKey(owner, tileX, tileY);
+        final MemoryTile ct = cache.get(key);
+        if (ct != null) {
+            // Notify observers that a tile is about to be removed.
+            notifyObservers(ct, ABOUT_TO_REMOVE);
+        }
+        final Partition partition = getPartition(key);
+        MemoryTile removed = null;
+        synchronized (partition) {
+            // the tile may have been restored concurrently
+            final MemoryTile cached = cache.get(key);
+            if (cached != null && cache.remove(key, cached)) {
+                partition.unlink(cached);
+                memoryUsage.addAndGet(-cached.tileSize);
+                removed = cached;
+            }
+            partition.beginDeletion(key);
+        }
+        if (removed != null && diagnostics) {
+            notifyObservers(removed, REMOVE);
+        }
+        try {
+            // a tile which is still being written must not be recreated after its deletion
+            swapWriter.cancel(key);
+            swapSpace.deleteTile(owner, tileX, tileY);
+        } finally {
+            synchronized (partition) {
+                partition.endDeletion(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all the tiles that belong to a <code>RenderedImage</code>
+     * from the cache and from the swap space.
+     *
+     * @param owner The image whose tiles are to be removed from the cache.
+     */
+    public void removeTiles(RenderedImage owner) {
+        if (memoryCapacity == 0) {
+            return;
+        }
+        final int minTx = owner.getMinTileX();
+        final int minTy = owner.getMinTileY();
+        final int maxTx = minTx + owner.getNumXTiles();
+        final int maxTy = minTy + owner.getNumYTiles();
+        for (int y = minTy; y < maxTy; y++) {
+            for (int x = minTx; x < maxTx; x++) {
+                remove(owner, x, y);
+            }
+        }
+    }
+
+    /**
+     * Retrieves a tile from the cache. Tiles which have been swapped out are restored.
+     * <p/>
+     * <p> If the specified tile is neither in the cache nor in the swap space, this method
+     * returns <code>null</code>.
+     *
+     * @param owner The image the tile blongs to.
+     * @param tileX The tile's X index within the image.
+     * @param tileY The tile's Y index within the image.
+     */
+    public Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        if (memoryCapacity == 0) {
+            return null;
+        }
+        final Object key = MemoryTile.hashKey(owner, tileX, tileY);
+        MemoryTile ct = cache.get(key);
+        if (ct == null) {
+            ct = reclaimTile(key);
+        }
+        if (ct == null) {
+            ct = restoreTile(owner, tileX, tileY, key);
+        }
+        final Partition partition = getPartition(key);
+        if (ct == null) {
+            partition.missCount.incrementAndGet();
+            return null;
+        }
+        ct.referenced = true;
+        partition.hitCount.incrementAndGet();
+        if (diagnostics) {
+            notifyObservers(ct, UPDATE_FROM_GETTILE);
+        }
+        return ct.getTile();
+    }
+
+    /**
+     * Restores a swapped tile without holding the partition lock. A tile which is removed in the meantime
+     * is not added to the cache again, because its swapped copy is being deleted.
+     *
+     * @return The restored or concurrently cached tile or {@code null}.
+     */
+    private MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY, Object key) {
+        final Partition partition = getPartition(key);
+        synchronized (partition) {
+            if (partition.deletions.containsKey(key)) {
+                // the tile has been removed, but is still being deleted from the swap space
+                return null;
+            }
+            Restore restore = partition.restores.get(key);
+            if (restore == null) {
+                restore = new Restore();
+                partition.restores.put(key, restore);
+            }
+            restore.threadCount++;
+        }
+        MemoryTile ct = null;
+        boolean added = false;
+        try {
+            ct = swapSpace.restoreTile(owner, tileX, tileY);
+        } finally {
+            synchronized (partition) {
+                final Restore restore = partition.restores.get(key);
+                if (--restore.threadCount == 0) {
+                    partition.restores.remove(key);
+                }
+                if (restore.removed) {
+                    // the tile has been removed in the meantime and must not be added again
+                    ct = null;
+                } else if (ct != null) {
+                    // another thread may have restored the tile concurrently
+                    final MemoryTile cached = cache.get(key);
+                    if (cached != null) {
+                        ct = cached;
+                    } else if (isCacheable(ct)) {
+                        added = linkTile(partition, ct);
+                    }
+                }
+            }
+        }
+        if (added) {
+            tileAdded(ct);
+        }
+        return ct;
+    }
+
+    /**
+     * Takes an evicted tile, which has not been written yet, back into the cache.
+     *
+     * @return The cached or reclaimed tile or {@code null}.
+     */
+    private MemoryTile reclaimTile(Object key) {
+        final Partition partition = getPartition(key);
+        final MemoryTile ct;
+        synchronized (partition) {
+            final MemoryTile cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            ct = swapWriter.reclaim(key);
+            if (ct == null) {
+                return null;
+            }
+            cache.put(key, ct);
+            partition.link(ct);
+            memoryUsage.addAndGet(ct.tileSize);
+        }
+        if (memoryUsage.get() > memoryCapacity) {
+            memoryControl();
+        }
+        return ct;
+    }
+
+    /**
+     * Retrieves a contiguous array of all tiles in the cache which are
+     * owned by the specified image.  May be <code>null</code> if there
+     * were no tiles in the cache.  The array contains no null entries.
+     *
+     * @param owner The <code>RenderedImage</code> to which the tiles belong.
+     * @return An array of all tiles owned by the specified image or
+     *         <code>null</code> if there are none currently in the cache.
+     */
+    public Raster[] getTiles(RenderedImage owner) {
+        if (memoryCapacity == 0) {
+            return null;
+        }
+        final int minTx = owner.getMinTileX();
+        final int minTy = owner.getMinTileY();
+        final int maxTx = minTx + owner.getNumXTiles();
+        final int maxTy = minTy + owner.getNumYTiles();
+        final ArrayList<Raster> temp = new ArrayList<Raster>(32);
+        for (int y = minTy; y < maxTy; y++) {
+            for (int x = minTx; x < maxTx; x++) {
+                final Raster tile = getTile(owner, x, y);
+                if (tile != null) {
+                    temp.add(tile);
+                }
+            }
+        }
+        if (!temp.isEmpty()) {
+            return temp.toArray(new Raster[temp.size()]);
+        }
+        return null;
+    }
+
+    /**
+     * Returns an array of tile <code>Raster</code>s from the cache.
+     * Any or all of the elements of the returned array may be <code>null</code>
+     * if the corresponding tile is not in the cache.
+     *
+     * @param owner       The <code>RenderedImage</code> that the tile belongs to.
+     * @param tileIndices An array of <code>Point</code>s containing the
+     *                    <code>tileX</code> and <code>tileY</code> indices for each tile.
+     */
+    public Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+        if (memoryCapacity == 0) {
+            return null;
+        }
+        final Raster[] tiles = new Raster[tileIndices.length];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = getTile(owner, tileIndices[i].x, tileIndices[i].y);
+        }
+        return tiles;
+    }
+
+    /**
+     * Removes -ALL- tiles from the cache. Swapped tiles are kept.
+     */
+    public void flush() {
+        for (Partition partition : partitions) {
+            final List<MemoryTile> removed = new ArrayList<MemoryTile>();
+            synchronized (partition) {
+                MemoryTile ct = partition.first;
+                while (ct != null) {
+                    final MemoryTile next = ct.next;
+                    cache.remove(ct.key, ct);
+                    memoryUsage.addAndGet(-ct.tileSize);
+                    ct.previous = null;
+                    ct.next = null;
+                    removed.add(ct);
+                    ct = next;
+                }
+                partition.first = null;
+                partition.last = null;
+                partition.tileCount = 0;
+                partition.timeStamp = 0;
+            }
+            partition.hitCount.set(0);
+            partition.missCount.set(0);
+            if (diagnostics) {
+                for (MemoryTile ct : removed) {
+                    notifyObservers(ct, REMOVE_FROM_FLUSH);
+                }
+            }
+        }
+        swapWriter.shutdown();
+    }
+
+    /**
+     * Swaps out tiles until the memory usage is memoryThreshold % of the
+     * memory capacity. Tiles are swapped out in approximate LRU order or, if
+     * a comparator is set, in the comparator's order within each partition.
+     */
+    public void memoryControl() {
+        final long limit = (long) (memoryCapacity * memoryThreshold);
+        final int mask = partitions.length - 1;
+        int index = nextPartitionIndex.getAndIncrement();
+        // the number of partitions visited in a row without finding a tile to evict
+        int idleCount = 0;
+        while (memoryUsage.get() > limit && idleCount < partitions.length) {
+            final MemoryTile ct = partitions[index++ & mask].evictNext();
+            if (ct != null) {
+                idleCount = 0;
+                if (diagnostics) {
+                    notifyObservers(ct, REMOVE_FROM_MEMCON);
+                }
+            } else {
+                idleCount++;
+            }
+        }
+        // write the evicted tiles without holding a partition lock
+        swapWriter.drain();
+    }
+
+    /**
+     * Returns the cache's tile capacity.
+     * <p/>
+     * <p> This implementation of <code>TileCache</code> does not use
+     * the tile capacity.  This method always returns 0.
+     */
+    public int getTileCapacity() {
+        return 0;
+    }
+
+    /**
+     * This implementation of <code>TileCache</code> does not use
+     * the tile capacity.  This method does nothing.
+     *
+     * @param tileCapacity The desired tile capacity for this cache
+     *                     in number of tiles.
+     */
+    public void setTileCapacity(int tileCapacity) {
+    }
+
+    /**
+     * Returns the cache's memory capacity in bytes.
+     */
+    public long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    /**
+     * Sets the cache's memory capacity to the desired number of bytes.
+     * If the new memory capacity is smaller than the amount of memory
+     * currently being used by this cache, tiles are swapped out until
+     * the memory usage is less than the specified memory capacity.
+     *
+     * @param memoryCapacity The desired memory capacity for this cache
+     *                       in bytes.
+     * @throws IllegalArgumentException If <code>memoryCapacity</code>
+     *                                  is less than 0.
+     */
+    public void setMemoryCapacity(long memoryCapacity) {
+        if (memoryCapacity < 0) {
+            throw new IllegalArgumentException("memoryCapacity < 0");
+        } else if (memoryCapacity == 0) {
+            flush();
+        }
+        this.memoryCapacity = memoryCapacity;
+        if (memoryUsage.get() > memoryCapacity) {
+            memoryControl();
+        }
+    }
+
+    /**
+     * Set the memory threshold value.
+     */
+    public void setMemoryThreshold(float mt) {
+        if (mt < 0.0F || mt > 1.0F) {
+            throw new IllegalArgumentException("mt < 0.0F || mt > 1.0F");
+        }
+        memoryThreshold = mt;
+        memoryControl();
+    }
+
+    /**
+     * Returns the current <code>memoryThreshold</code>.
+     */
+    public float getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /**
+     * The <code>Comparator</code> is used to produce an
+     * ordered list of tiles based on a user defined
+     * compute cost or priority metric.  This determines
+     * which tiles of a partition are swapped out first
+     * during a memory control operation.
+     */
+    public void setTileComparator(Comparator c) {
+        comparator = c;
+    }
+
+    /**
+     * Return the current comparator
+     */
+    public Comparator getTileComparator() {
+        return comparator;
+    }
+
+    /**
+     * Enable Tile Monitoring and Diagnostics
+     */
+    public void enableDiagnostics() {
+        diagnostics = true;
+    }
+
+    /**
+     * Turn off diagnostic notification
+     */
+    public void disableDiagnostics() {
+        diagnostics = false;
+    }
+
+    public long getCacheTileCount() {
+        return cache.size();
+    }
+
+    public long getCacheMemoryUsed() {
+        return memoryUsage.get();
+    }
+
+    public long getCacheHitCount() {
+        long hitCount = 0;
+        for (Partition partition : partitions) {
+            hitCount += partition.hitCount.get();
+        }
+        return hitCount;
+    }
+
+    public long getCacheMissCount() {
+        long missCount = 0;
+        for (Partition partition : partitions) {
+            missCount += partition.missCount.get();
+        }
+        return missCount;
+    }
+
+    /**
+     * Reset hit and miss counters.
+     */
+    public void resetCounts() {
+        for (Partition partition : partitions) {
+            partition.hitCount.set(0);
+            partition.missCount.set(0);
+        }
+    }
+
+    /**
+     * Returns a string representation of the class object.
+     */
+    public String toString() {
+        return getClass().getName() + "@" + Integer.toHexString(hashCode()) +
+                ": memoryCapacity = " + Long.toHexString(memoryCapacity) +
+                " memoryUsage = " + Long.toHexString(memoryUsage.get()) +
+                " #tilesInCache = " + Integer.toString(cache.size()) +
+                " #partitions = " + Integer.toString(partitions.length);
+    }
+
+    private Partition getPartition(Object key) {
+        int h = key.hashCode();
+        // spread the higher bits, String hash codes of similar keys differ in the lower bits only
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return partitions[h & (partitions.length - 1)];
+    }
+
+    private void notifyObservers(MemoryTile ct, int action) {
+        ct.action = action;
+        setChanged();
+        notifyObservers(ct);
+    }
+
+    /**
+     * A partition of the cache. All fields except the counters are guarded by the partition's lock.
+     */
+    private final class Partition {
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicLong missCount = new AtomicLong();
+        private MemoryTile first;
+        private MemoryTile last;
+        private long tileCount;
+        private long timeStamp;
+
+        /**
+         * Keys of tiles which are being restored outside of the partition lock, see {@link #restoreTile}.
+         */
+        private final Map<Object, Restore> restores = new HashMap<Object, Restore>();
+
+        /**
+         * Keys of removed tiles which are being deleted from the swap space outside of the partition lock,
+         * mapped to the number of deleting threads, see {@link #remove}.
+         */
+        private final Map<Object, Integer> deletions = new HashMap<Object, Integer>();
+
+        /**
+         * Puts the tile at the beginning of the list.
+         */
+        private void link(MemoryTile ct) {
+            ct.timeStamp = timeStamp++;
+            ct.previous = null;
+            ct.next = first;
+            if (first == null) {
+                last = ct;
+            } else {
+                first.previous = ct;
+            }
+            first = ct;
+            tileCount++;
+        }
+
+        private void unlink(MemoryTile ct) {
+            if (ct.previous == null) {
+                first = ct.next;
+            } else {
+                ct.previous.next = ct.next;
+            }
+            if (ct.next == null) {
+                last = ct.previous;
+            } else {
+                ct.next.previous = ct.previous;
+            }
+            ct.previous = null;
+            ct.next = null;
+            tileCount--;
+        }
+
+        /**
+         * Called while the partition is locked, after a tile has been removed from memory. Until
+         * {@link #endDeletion} is called, the tile can neither be reclaimed from the swap writer
+         * nor be restored from the swap space.
+         */
+        private void beginDeletion(Object key) {
+            swapWriter.discard(key);
+            final Integer count = deletions.get(key);
+            deletions.put(key, count != null ? count + 1 : 1);
+            final Restore restore = restores.get(key);
+            if (restore != null) {
+                restore.removed = true;
+            }
+        }
+
+        private void endDeletion(Object key) {
+            final int count = deletions.get(key);
+            if (count > 1) {
+                deletions.put(key, count - 1);
+            } else {
+                deletions.remove(key);
+            }
+        }
+
+        /**
+         * Swaps out the next tile of this partition.
+         *
+         * @return The evicted tile or {@code null}, if the partition is empty.
+         */
+        private synchronized MemoryTile evictNext() {
+            final MemoryTile ct = ConcurrentSwappingTileCache.this.comparator != null ? selectFirst() : selectLast();
+            if (ct != null) {
+                evict(ct);
+            }
+            return ct;
+        }
+
+        /**
+         * @return The first tile in the order of the tile comparator.
+         */
+        private MemoryTile selectFirst() {
+            final Comparator comparator = ConcurrentSwappingTileCache.this.comparator;
+            MemoryTile selected = first;
+            if (selected != null) {
+                for (MemoryTile ct = selected.next; ct != null; ct = ct.next) {
+                    // noinspection unchecked
+                    if (comparator.compare(ct, selected) < 0) {
+                        selected = ct;
+                    }
+                }
+            }
+            return selected;
+        }
+
+        /**
+         * CLOCK: a tile referenced since it has been visited last is moved to the beginning of the list.
+         * The number of second chances is bounded, because hits may reference tiles concurrently.
+         *
+         * @return The least recently used tile, approximately.
+         */
+        private MemoryTile selectLast() {
+            long secondChances = tileCount;
+            while (last != null) {
+                final MemoryTile ct = last;
+                if (ct.referenced && secondChances > 0) {
+                    secondChances--;
+                    ct.referenced = false;
+                    unlink(ct);
+                    link(ct);
+                } else {
+                    return ct;
+                }
+            }
+            return null;
+        }
+
+        private void evict(MemoryTile ct) {
+            // pending until written, so that concurrent readers can either reclaim it or restore it
+            swapWriter.enqueue(ct);
+            cache.remove(ct.key, ct);
+            unlink(ct);
+            ConcurrentSwappingTileCache.this.memoryUsage.addAndGet(-ct.tileSize);
+        }
+    }
+}
@@ -21,13 +21,18 @@ import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * The default implementation of the {@link SwapSpace} interface.
  * It creates a file for each swapped tile in the given swap directory.
+ * Tile files are written, read and deleted without holding the lock guarding the
+ * swapped tile map, so that different tiles can be swapped concurrently.
+ * If a {@link SwapCompression} is given, tile files contain the compressed tile data.
  *
  * @author Norman Fomferra
  */
@@ -35,15 +40,37 @@ public class DefaultSwapSpace implements SwapSpace {
     private final File swapDir;
     private final Logger logger;
     private final Map<Object, SwappedTile> swappedTiles;
+    private final Set<Object> storedKeys;
+    private final SwapCompression compression;
 
     public DefaultSwapSpace(File swapDir) {
         this(swapDir, Logger.getLogger(System.getProperty("ceres.context", "ceres")));
     }
 
     public DefaultSwapSpace(File swapDir, Logger logger) {
+        this(swapDir, logger, null);
+    }
+
+    /**
+     * @param swapDir     The directory of the tile files.
+     * @param logger      The logger.
+     * @param compression The compression of tile data, may be {@code null}.
+     * @since Ceres 0.14
+     */
+    public DefaultSwapSpace(File swapDir, Logger logger, SwapCompression compression) {
         this.swapDir = swapDir;
+        this.compression = compression;
         this.logger = logger;
         this.swappedTiles = new HashMap<Object, SwappedTile>(1009); // prime number
+        this.storedKeys = new HashSet<Object>();
+    }
+
+    /**
+     * @return The compression of tile data, may be {@code null}.
+     * @since Ceres 0.14
+     */
+    public SwapCompression getCompression() {
+        return compression;
     }
 
     @Override
@@ -54,31 +81,44 @@ public class DefaultSwapSpace implements SwapSpace {
         }
     }
 
-    public synchronized boolean storeTile(MemoryTile mt) {
-        SwappedTile st = swappedTiles.get(mt.getKey());
-        if (st == null) {
-            try {
-                st = new SwappedTile(mt, swapDir);
-                if (!st.isAvailable()) {
-                    final long t1 = System.currentTimeMillis();
-                    st.storeTile(mt.getTile());
-                    final long t2 = System.currentTimeMillis();
-                    st.getFile().deleteOnExit();
-                    logger.log(Level.FINEST, "Tile stored: " + st.getFile() + " (" + (t2 - t1) + " ms)");
-                }
-                swappedTiles.put(mt.getKey(), st);
-                return true;
-            } catch (IOException e) {
-                logger.log(Level.SEVERE, "Tile NOT stored: " + st.getFile(), e);
-                handleTileStoreFailed(mt, e);
+    public boolean storeTile(MemoryTile mt) {
+        final Object key = mt.getKey();
+        synchronized (this) {
+            // a tile which is currently being stored by another thread is not stored twice
+            if (swappedTiles.containsKey(key) || !storedKeys.add(key)) {
+                return false;
+            }
+        }
+        final SwappedTile st = new SwappedTile(mt, swapDir, compression);
+        try {
+            if (!st.isAvailable()) {
+                final long t1 = System.currentTimeMillis();
+                st.storeTile(mt.getTile());
+                final long t2 = System.currentTimeMillis();
+                st.getFile().deleteOnExit();
+                logger.log(Level.FINEST, "Tile stored: " + st.getFile() + " (" + (t2 - t1) + " ms)");
+            }
+            synchronized (this) {
+                swappedTiles.put(key, st);
+            }
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Tile NOT stored: " + st.getFile(), e);
+            handleTileStoreFailed(mt, e);
+        } finally {
+            synchronized (this) {
+                storedKeys.remove(key);
             }
         }
         return false;
     }
 
-    public synchronized MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+    public MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
         final Object key = hashKey(owner, tileX, tileY);
-        final SwappedTile st = swappedTiles.get(key);
+        final SwappedTile st;
+        synchronized (this) {
+            st = swappedTiles.get(key);
+        }
         if (st == null) {
             return null;
         }
@@ -94,9 +134,12 @@ public class DefaultSwapSpace implements SwapSpace {
         }
     }
 
-    public synchronized boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+    public boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
         final Object key = hashKey(owner, tileX, tileY);
-        final SwappedTile st = swappedTiles.remove(key);
+        final SwappedTile st;
+        synchronized (this) {
+            st = swappedTiles.remove(key);
+        }
         if (st == null || !st.getFile().exists()) {
             return false;
         }
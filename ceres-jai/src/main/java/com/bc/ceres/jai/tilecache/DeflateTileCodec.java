@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link TileCodec} using Deflate compression, optionally after the bytes of the data elements
+ * have been shuffled (see {@link ShuffleLzTileCodec}).
+ *
+ * @author Norman Fomferra
+ * @since Ceres 0.14
+ */
+public class DeflateTileCodec implements TileCodec {
+
+    private final int level;
+    private final boolean shuffle;
+
+    /**
+     * @param level The compression level, 0 to 9.
+     */
+    public DeflateTileCodec(int level) {
+        this(level, false);
+    }
+
+    /**
+     * @param level   The compression level, 0 to 9.
+     * @param shuffle If {@code true}, the element bytes are shuffled before compression.
+     */
+    public DeflateTileCodec(int level, boolean shuffle) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level");
+        }
+        this.level = level;
+        this.shuffle = shuffle;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    @Override
+    public String getName() {
+        return (shuffle ? "shuffle-deflate-" : "deflate-") + level;
+    }
+
+    @Override
+    public int encode(byte[] data, int length, int elementSize, byte[] encoded) {
+        if (shuffle) {
+            data = ShuffleLzTileCodec.shuffle(data, length, elementSize);
+        }
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            int encodedLength = 0;
+            while (!deflater.finished()) {
+                if (encodedLength == encoded.length) {
+                    return -1;
+                }
+                encodedLength += deflater.deflate(encoded, encodedLength, encoded.length - encodedLength);
+            }
+            return encodedLength;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void decode(byte[] encoded, int encodedLength, byte[] data, int length, int elementSize) throws IOException {
+        final byte[] target = shuffle ? new byte[length] : data;
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(encoded, 0, encodedLength);
+            int n = 0;
+            while (n < length) {
+                final int count = inflater.inflate(target, n, length - n);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += count;
+            }
+            if (n != length) {
+                throw new IOException("Corrupt tile data: " + n + " of " + length + " bytes decoded");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt tile data", e);
+        } finally {
+            inflater.end();
+        }
+        if (shuffle) {
+            ShuffleLzTileCodec.unshuffle(target, data, length, elementSize);
+        }
+    }
+}
@@ -61,6 +61,8 @@ public final class MemoryTile implements CachedTile {
 
     int action = 0;             // add, remove, update from tile cache
 
+    boolean referenced;         // accessed since last visited by the ConcurrentSwappingTileCache eviction
+
     MemoryTile(RenderedImage owner,
                int tileX,
                int tileY,
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link SwapSpace} which keeps swapped tiles in direct (off-heap) byte buffers and only spills
+ * tiles to another swap space, e.g. a {@link DefaultSwapSpace}, if its own capacity is exhausted.
+ * It is used to keep the Java heap small without swapping tiles to disk:
+ * <pre>
+ *     new SwappingTileCache(heapCapacity, new OffHeapSwapSpace(offHeapCapacity, new DefaultSwapSpace(swapDir)))
+ * </pre>
+ * <p/>
+ * The off-heap memory is allocated in slabs. Each slab is divided into slots of equal size, which is the
+ * size of the tile data in bytes (8-byte aligned). Slots of removed tiles are reused by tiles of the same
+ * size, empty slabs are divided anew for tiles of other sizes. Allocated slabs are kept until the swap space
+ * itself is garbage collected, so the memory usage never exceeds the capacity, even though direct buffers
+ * cannot be freed explicitly.
+ * <p/>
+ * A restored tile is kept in the off-heap memory, so that it is neither lost if the tile cache refuses
+ * it nor missed by a concurrent restore. Its slot is released when the tile is deleted or stored again.
+ * The lock of the swap space only guards the slot bookkeeping, tile data is copied without holding it.
+ *
+ * @author Norman Fomferra
+ * @since Ceres 0.14
+ */
+public class OffHeapSwapSpace implements SwapSpace {
+
+    /**
+     * The default slab size (16 MB).
+     */
+    public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private static final int SLOT_ALIGNMENT = 8;
+
+    private final long capacity;
+    private final int slabSize;
+    private final SwapSpace spillSpace;
+    private final Map<Object, Entry> entries;
+    private final Set<Object> storedKeys;
+    private final Map<Integer, ArrayDeque<Slot>> freeSlots;
+    private final List<Slab> slabs;
+    private long memoryUsage;
+    private long spillCount;
+
+    /**
+     * Creates an off-heap swap space using the default slab size.
+     *
+     * @param capacity   The maximum number of bytes of off-heap memory.
+     * @param spillSpace The swap space receiving tiles which don't fit into the off-heap memory.
+     */
+    public OffHeapSwapSpace(long capacity, SwapSpace spillSpace) {
+        this(capacity, DEFAULT_SLAB_SIZE, spillSpace);
+    }
+
+    /**
+     * Creates an off-heap swap space.
+     * <p/>
+     * The direct buffers are limited by the {@code -XX:MaxDirectMemorySize} JVM option, which defaults
+     * to the maximum heap size. It must be set to at least the given capacity plus the direct memory
+     * used by other components. If a slab cannot be allocated, tiles are passed to the spill space.
+     *
+     * @param capacity   The maximum number of bytes of off-heap memory.
+     * @param slabSize   The number of bytes of the direct buffers allocated.
+     * @param spillSpace The swap space receiving tiles which don't fit into the off-heap memory.
+     */
+    public OffHeapSwapSpace(long capacity, int slabSize, SwapSpace spillSpace) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity < 0");
+        }
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("slabSize <= 0");
+        }
+        if (spillSpace == null) {
+            throw new NullPointerException("spillSpace");
+        }
+        this.capacity = capacity;
+        this.slabSize = slabSize;
+        this.spillSpace = spillSpace;
+        this.entries = new HashMap<Object, Entry>(1009); // prime number
+        this.storedKeys = new HashSet<Object>();
+        this.freeSlots = new HashMap<Integer, ArrayDeque<Slot>>();
+        this.slabs = new ArrayList<Slab>();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public SwapSpace getSpillSpace() {
+        return spillSpace;
+    }
+
+    /**
+     * @return The number of bytes of off-heap memory allocated.
+     */
+    public synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    /**
+     * @return The number of tiles held in off-heap memory.
+     */
+    public synchronized int getTileCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of tiles passed to the spill space, because they did not fit into off-heap memory.
+     */
+    public synchronized long getSpillCount() {
+        return spillCount;
+    }
+
+    public boolean storeTile(MemoryTile mt) {
+        final Object key = mt.getKey();
+        final Raster tile = mt.getTile();
+        Entry entry = null;
+        try {
+            entry = new Entry(tile, mt.getTileCacheMetric());
+        } catch (IOException e) {
+            // unsupported data buffers are left to the spill space
+        }
+        if (entry != null) {
+            synchronized (this) {
+                // a tile which is currently being stored by another thread is not stored twice
+                if (!storedKeys.add(key)) {
+                    return false;
+                }
+                // the copy of a tile stored again is outdated
+                discardEntry(entries.remove(key));
+                entry.slot = allocateSlot(getSlotSize(entry.dataLength));
+                if (entry.slot == null) {
+                    storedKeys.remove(key);
+                }
+            }
+        }
+        if (entry == null || entry.slot == null) {
+            synchronized (this) {
+                spillCount++;
+            }
+            return spillSpace.storeTile(mt);
+        }
+        boolean stored = false;
+        try {
+            TileData.put(tile.getDataBuffer(), getSlotBuffer(entry.slot, entry.dataLength));
+            synchronized (this) {
+                entries.put(key, entry);
+            }
+            stored = true;
+        } finally {
+            synchronized (this) {
+                storedKeys.remove(key);
+                if (!stored) {
+                    releaseSlot(entry.slot);
+                }
+            }
+        }
+        // a tile spilled before is outdated now
+        spillSpace.deleteTile(mt.getOwner(), mt.getTileX(), mt.getTileY());
+        return true;
+    }
+
+    public MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(MemoryTile.hashKey(owner, tileX, tileY));
+            if (entry != null) {
+                // the slot must not be reused while it is copied
+                entry.readerCount++;
+            }
+        }
+        if (entry == null) {
+            return spillSpace.restoreTile(owner, tileX, tileY);
+        }
+        try {
+            final Raster tile = entry.createTile(getSlotBuffer(entry.slot, entry.dataLength));
+            return new MemoryTile(owner, tileX, tileY, tile, entry.tileCacheMetric);
+        } catch (IOException e) {
+            // cannot happen, the data type has been checked before
+            throw new IllegalStateException(e);
+        } finally {
+            synchronized (this) {
+                entry.readerCount--;
+                if (entry.deleted && entry.readerCount == 0) {
+                    releaseSlot(entry.slot);
+                }
+            }
+        }
+    }
+
+    public boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.remove(MemoryTile.hashKey(owner, tileX, tileY));
+            discardEntry(entry);
+        }
+        final boolean spilledDeleted = spillSpace.deleteTile(owner, tileX, tileY);
+        return entry != null || spilledDeleted;
+    }
+
+    /**
+     * Releases the slot of a removed entry, or lets the last reader release it.
+     */
+    private void discardEntry(Entry entry) {
+        if (entry != null) {
+            entry.deleted = true;
+            if (entry.readerCount == 0) {
+                releaseSlot(entry.slot);
+            }
+        }
+    }
+
+    private static int getSlotSize(int dataLength) {
+        return (dataLength + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT * SLOT_ALIGNMENT;
+    }
+
+    /**
+     * @return A free slot or {@code null}, if the capacity is exhausted.
+     */
+    private Slot allocateSlot(int slotSize) {
+        ArrayDeque<Slot> slots = freeSlots.get(slotSize);
+        if (slots == null) {
+            slots = new ArrayDeque<Slot>();
+            freeSlots.put(slotSize, slots);
+        }
+        if (slots.isEmpty()) {
+            final int size = Math.max(slabSize, slotSize);
+            ByteBuffer buffer = reuseEmptySlab(size);
+            if (buffer == null) {
+                if (memoryUsage + size > capacity) {
+                    return null;
+                }
+                try {
+                    buffer = allocateBuffer(size);
+                } catch (OutOfMemoryError e) {
+                    // the direct memory is exhausted, see -XX:MaxDirectMemorySize
+                    return null;
+                }
+                memoryUsage += size;
+            }
+            final Slab slab = new Slab(buffer);
+            slabs.add(slab);
+            final int slotCount = buffer.capacity() / slotSize;
+            for (int i = 0; i < slotCount; i++) {
+                slots.add(new Slot(slab, i * slotSize, slotSize));
+            }
+        }
+        final Slot slot = slots.poll();
+        slot.slab.usedSlotCount++;
+        return slot;
+    }
+
+    /**
+     * Removes the smallest empty slab of at least the given size, so that its buffer can be divided anew.
+     *
+     * @return The buffer of the slab or {@code null}.
+     */
+    private ByteBuffer reuseEmptySlab(int size) {
+        Slab emptySlab = null;
+        for (Slab slab : slabs) {
+            if (slab.usedSlotCount == 0 && slab.buffer.capacity() >= size
+                && (emptySlab == null || slab.buffer.capacity() < emptySlab.buffer.capacity())) {
+                emptySlab = slab;
+            }
+        }
+        if (emptySlab == null) {
+            return null;
+        }
+        removeSlab(emptySlab);
+        return emptySlab.buffer;
+    }
+
+    ByteBuffer allocateBuffer(int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    private void removeSlab(Slab slab) {
+        slabs.remove(slab);
+        for (ArrayDeque<Slot> slots : freeSlots.values()) {
+            for (Iterator<Slot> iterator = slots.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().slab == slab) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private void releaseSlot(Slot slot) {
+        slot.slab.usedSlotCount--;
+        freeSlots.get(slot.size).push(slot);
+    }
+
+    private static ByteBuffer getSlotBuffer(Slot slot, int dataLength) {
+        // duplicate, because several threads may access the same slab
+        final ByteBuffer buffer = slot.slab.buffer.duplicate();
+        buffer.position(slot.offset);
+        buffer.limit(slot.offset + dataLength);
+        return buffer.slice().order(ByteOrder.nativeOrder());
+    }
+
+    private static final class Entry extends TileLayout {
+        Slot slot;
+        int readerCount;
+        boolean deleted;
+
+        Entry(Raster tile, Object tileCacheMetric) throws IOException {
+            super(tile, tileCacheMetric, Integer.MAX_VALUE - SLOT_ALIGNMENT);
+        }
+    }
+
+    private static final class Slab {
+        final ByteBuffer buffer;
+        int usedSlotCount;
+
+        Slab(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Slot {
+        final Slab slab;
+        final int offset;
+        final int size;
+
+        Slot(Slab slab, int offset, int size) {
+            this.slab = slab;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+}
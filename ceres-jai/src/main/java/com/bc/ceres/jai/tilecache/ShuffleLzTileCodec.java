@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.io.IOException;
+
+/**
+ * A fast {@link TileCodec} which shuffles the bytes of the data elements and compresses the result
+ * with a LZ77 codec similar to LZ4.
+ * <p/>
+ * Shuffling groups the bytes of equal significance of all data elements, e.g. the sign and exponent
+ * bytes of float values, so that uniform and slowly varying tile areas result in long runs of
+ * repeating bytes.
+ * <p/>
+ * The encoded data is a sequence of tokens. The upper 4 bits of a token give the number of literal
+ * bytes which follow, the lower 4 bits the length of the match minus 4 which follows the literals.
+ * A value of 15 is continued by length bytes, each adding 0 to 255, until a byte is less than 255.
+ * Literals are followed by the 2-byte little endian offset of the match. The last token has
+ * literals only.
+ *
+ * @author Norman Fomferra
+ * @since Ceres 0.14
+ */
+public class ShuffleLzTileCodec implements TileCodec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MIN_LENGTH = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 14;
+
+    @Override
+    public String getName() {
+        return "shuffle-lz";
+    }
+
+    @Override
+    public int encode(byte[] data, int length, int elementSize, byte[] encoded) {
+        return compress(shuffle(data, length, elementSize), length, encoded);
+    }
+
+    @Override
+    public void decode(byte[] encoded, int encodedLength, byte[] data, int length, int elementSize) throws IOException {
+        if (elementSize > 1) {
+            final byte[] shuffled = new byte[length];
+            decompress(encoded, encodedLength, shuffled, length);
+            unshuffle(shuffled, data, length, elementSize);
+        } else {
+            decompress(encoded, encodedLength, data, length);
+        }
+    }
+
+    /**
+     * Groups the bytes of equal significance of all data elements.
+     *
+     * @return The shuffled data, {@code data} itself if {@code elementSize} is 1.
+     */
+    static byte[] shuffle(byte[] data, int length, int elementSize) {
+        if (elementSize <= 1) {
+            return data;
+        }
+        final byte[] shuffled = new byte[length];
+        final int elementCount = length / elementSize;
+        for (int b = 0; b < elementSize; b++) {
+            final int offset = b * elementCount;
+            for (int i = 0, j = b; i < elementCount; i++, j += elementSize) {
+                shuffled[offset + i] = data[j];
+            }
+        }
+        final int tail = elementCount * elementSize;
+        System.arraycopy(data, tail, shuffled, tail, length - tail);
+        return shuffled;
+    }
+
+    /**
+     * Reverts {@link #shuffle}.
+     */
+    static void unshuffle(byte[] shuffled, byte[] data, int length, int elementSize) {
+        if (elementSize <= 1) {
+            System.arraycopy(shuffled, 0, data, 0, length);
+            return;
+        }
+        final int elementCount = length / elementSize;
+        for (int b = 0; b < elementSize; b++) {
+            final int offset = b * elementCount;
+            for (int i = 0, j = b; i < elementCount; i++, j += elementSize) {
+                data[j] = shuffled[offset + i];
+            }
+        }
+        final int tail = elementCount * elementSize;
+        System.arraycopy(shuffled, tail, data, tail, length - tail);
+    }
+
+    static int compress(byte[] src, int length, byte[] dst) {
+        final int[] table = new int[1 << HASH_BITS];  // positions + 1, 0 means empty
+        final int matchLimit = length - LAST_LITERALS;
+        int anchor = 0;
+        int ip = 0;
+        int op = 0;
+        if (length >= MIN_LENGTH) {
+            while (ip <= length - MIN_LENGTH) {
+                final int sequence = readInt(src, ip);
+                final int hash = (sequence * -1640531535) >>> (32 - HASH_BITS);
+                final int ref = table[hash] - 1;
+                table[hash] = ip + 1;
+                if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                    matchLength++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - ref, matchLength, dst, op);
+                if (op < 0) {
+                    return -1;
+                }
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+        return writeSequence(src, anchor, length - anchor, 0, 0, dst, op);
+    }
+
+    static void decompress(byte[] src, int srcLength, byte[] dst, int length) throws IOException {
+        int ip = 0;
+        int op = 0;
+        while (ip < srcLength) {
+            final int token = src[ip++] & 0xff;
+            int literalLength = token >>> 4;
+            if (literalLength == 15) {
+                int b;
+                do {
+                    if (ip >= srcLength) {
+                        throw new IOException("Corrupt tile data");
+                    }
+                    b = src[ip++] & 0xff;
+                    literalLength += b;
+                } while (b == 255);
+            }
+            if (ip + literalLength > srcLength || op + literalLength > length) {
+                throw new IOException("Corrupt tile data");
+            }
+            System.arraycopy(src, ip, dst, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip == srcLength) {
+                break;
+            }
+            if (ip + 2 > srcLength) {
+                throw new IOException("Corrupt tile data");
+            }
+            final int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+            ip += 2;
+            int matchLength = token & 0x0f;
+            if (matchLength == 15) {
+                int b;
+                do {
+                    if (ip >= srcLength) {
+                        throw new IOException("Corrupt tile data");
+                    }
+                    b = src[ip++] & 0xff;
+                    matchLength += b;
+                } while (b == 255);
+            }
+            matchLength += MIN_MATCH;
+            if (offset == 0 || offset > op || op + matchLength > length) {
+                throw new IOException("Corrupt tile data");
+            }
+            // byte by byte, because the match may overlap the output
+            for (int ref = op - offset, end = op + matchLength; op < end; ) {
+                dst[op++] = dst[ref++];
+            }
+        }
+        if (op != length) {
+            throw new IOException("Corrupt tile data: " + op + " of " + length + " bytes decoded");
+        }
+    }
+
+    /**
+     * @return The new output position or -1, if the sequence doesn't fit into {@code dst}.
+     */
+    private static int writeSequence(byte[] src, int literalOffset, int literalLength, int offset, int matchLength,
+                                     byte[] dst, int op) {
+        final int extraLength = matchLength > 0 ? 2 + (matchLength - MIN_MATCH) / 255 + 1 : 0;
+        if (op + 1 + literalLength / 255 + 1 + literalLength + extraLength > dst.length) {
+            return -1;
+        }
+        final int tokenPos = op++;
+        int token;
+        if (literalLength >= 15) {
+            token = 15 << 4;
+            op = writeLength(literalLength - 15, dst, op);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalOffset, dst, op, literalLength);
+        op += literalLength;
+        if (matchLength > 0) {
+            dst[op++] = (byte) offset;
+            dst[op++] = (byte) (offset >>> 8);
+            final int length = matchLength - MIN_MATCH;
+            if (length >= 15) {
+                token |= 15;
+                op = writeLength(length - 15, dst, op);
+            } else {
+                token |= length;
+            }
+        }
+        dst[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLength(int length, byte[] dst, int op) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int readInt(byte[] src, int i) {
+        return (src[i] & 0xff) | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff) << 16 | (src[i + 3] & 0xff) << 24;
+    }
+}
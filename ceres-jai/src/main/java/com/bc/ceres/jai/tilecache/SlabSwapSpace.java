@@ -0,0 +1,458 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link SwapSpace} which stores all swapped tiles in a single swap file.
+ * <p/>
+ * The swap file grows in slabs. Each slab is divided into slots of equal size, which is the
+ * size of the tile data in bytes (8-byte aligned), so that tiles of equal size share slabs.
+ * Slots of deleted tiles are put into a free list and are reused by tiles of the same size.
+ * Tile data is written and read using positional channel I/O or, if memory mapping is enabled,
+ * through a mapped buffer per slab. Only the tile data is stored in the file, tile layouts are
+ * kept in memory.
+ * <p/>
+ * If a {@link SwapCompression} is given, tile data is compressed before it is written. Slot sizes
+ * are then rounded up to size classes at most 12.5% larger than the compressed data.
+ * <p/>
+ * The lock of the swap space only guards the slot bookkeeping, tiles are written and read
+ * without holding it. When closed, the swap file is deleted.
+ *
+ * @author Norman Fomferra
+ * @since Ceres 0.14
+ */
+public class SlabSwapSpace implements SwapSpace, Closeable {
+
+    /**
+     * The default slab size (16 MB).
+     */
+    public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private static final int SLOT_ALIGNMENT = 8;
+
+    private final File swapFile;
+    private final int slabSize;
+    private final boolean memoryMapped;
+    private final SwapCompression compression;
+    private final Logger logger;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final Map<Object, Entry> entries;
+    private final Set<Object> storedKeys;
+    private final Map<Integer, ArrayDeque<Slot>> freeSlots;
+    private final List<Slab> slabs;
+    private long fileSize;
+    private boolean closed;
+
+    /**
+     * Creates a swap space using a new temporary swap file in the given directory.
+     *
+     * @param swapDir The directory of the swap file.
+     * @throws IOException If the swap file cannot be created.
+     */
+    public SlabSwapSpace(File swapDir) throws IOException {
+        this(File.createTempFile("ceres-swap-", ".bin", swapDir), 0L, DEFAULT_SLAB_SIZE, false, null,
+             Logger.getLogger(System.getProperty("ceres.context", "ceres")));
+    }
+
+    /**
+     * Creates a swap space.
+     *
+     * @param swapFile     The swap file. Any existing content is discarded.
+     * @param initialSize  The number of bytes preallocated for the swap file.
+     * @param slabSize     The minimum number of bytes by which the used part of the swap file grows.
+     * @param memoryMapped If {@code true}, tile data is written and read through memory mapped slabs.
+     * @param logger       The logger.
+     * @throws IOException If the swap file cannot be created.
+     */
+    public SlabSwapSpace(File swapFile, long initialSize, int slabSize, boolean memoryMapped, Logger logger) throws IOException {
+        this(swapFile, initialSize, slabSize, memoryMapped, null, logger);
+    }
+
+    /**
+     * Creates a swap space.
+     *
+     * @param swapFile     The swap file. Any existing content is discarded.
+     * @param initialSize  The number of bytes preallocated for the swap file.
+     * @param slabSize     The minimum number of bytes by which the used part of the swap file grows.
+     * @param memoryMapped If {@code true}, tile data is written and read through memory mapped slabs.
+     * @param compression  The compression of tile data, may be {@code null}.
+     * @param logger       The logger.
+     * @throws IOException If the swap file cannot be created.
+     */
+    public SlabSwapSpace(File swapFile, long initialSize, int slabSize, boolean memoryMapped,
+                         SwapCompression compression, Logger logger) throws IOException {
+        if (initialSize < 0) {
+            throw new IllegalArgumentException("initialSize < 0");
+        }
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("slabSize <= 0");
+        }
+        this.swapFile = swapFile;
+        this.slabSize = slabSize;
+        this.memoryMapped = memoryMapped;
+        this.compression = compression;
+        this.logger = logger;
+        this.entries = new HashMap<Object, Entry>(1009); // prime number
+        this.storedKeys = new HashSet<Object>();
+        this.freeSlots = new HashMap<Integer, ArrayDeque<Slot>>();
+        this.slabs = new ArrayList<Slab>();
+        this.raf = new RandomAccessFile(swapFile, "rw");
+        this.raf.setLength(initialSize);
+        this.channel = raf.getChannel();
+        swapFile.deleteOnExit();
+    }
+
+    public File getSwapFile() {
+        return swapFile;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * @return The compression of tile data, may be {@code null}.
+     */
+    public SwapCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return The number of bytes of the swap file occupied by slabs.
+     */
+    public synchronized long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * @return The number of tiles currently stored.
+     */
+    public synchronized int getTileCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of free slots of all sizes.
+     */
+    public synchronized int getFreeSlotCount() {
+        int count = 0;
+        for (ArrayDeque<Slot> slots : freeSlots.values()) {
+            count += slots.size();
+        }
+        return count;
+    }
+
+    public boolean storeTile(MemoryTile mt) {
+        final Object key = mt.getKey();
+        final Raster tile = mt.getTile();
+        final DataBuffer dataBuffer = tile.getDataBuffer();
+        final Entry entry;
+        try {
+            entry = new Entry(tile, mt.getTileCacheMetric());
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Tile NOT stored: " + mt.getKeyAsString(), e);
+            handleTileStoreFailed(mt, e);
+            return false;
+        }
+        synchronized (this) {
+            // a tile which is currently being stored by another thread is not stored twice
+            if (closed || entries.containsKey(key) || !storedKeys.add(key)) {
+                return false;
+            }
+        }
+        try {
+            final byte[] record = encodeRecord(entry, dataBuffer);
+            synchronized (this) {
+                entry.slot = allocateSlot(getSlotSize(entry.recordLength));
+            }
+            final long t1 = System.currentTimeMillis();
+            writeRecord(entry.slot, dataBuffer, record, entry.recordLength);
+            final long t2 = System.currentTimeMillis();
+            synchronized (this) {
+                entries.put(key, entry);
+            }
+            logger.log(Level.FINEST, "Tile stored: " + mt.getKeyAsString() + " (" + (t2 - t1) + " ms)");
+            return true;
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Tile NOT stored: " + mt.getKeyAsString(), e);
+            synchronized (this) {
+                releaseSlot(entry.slot);
+            }
+            handleTileStoreFailed(mt, e);
+        } finally {
+            synchronized (this) {
+                storedKeys.remove(key);
+            }
+        }
+        return false;
+    }
+
+    public MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+        final Object key = MemoryTile.hashKey(owner, tileX, tileY);
+        final Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            // the slot must not be reused while it is read
+            entry.readerCount++;
+        }
+        try {
+            final long t1 = System.currentTimeMillis();
+            final Raster tile = entry.createTile(readRecord(entry));
+            final long t2 = System.currentTimeMillis();
+            logger.log(Level.FINEST, "Tile restored: " + key + " (" + (t2 - t1) + " ms)");
+            return new MemoryTile(owner, tileX, tileY, tile, entry.tileCacheMetric);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Tile NOT restored: " + key, e);
+            return handleTileRestoreFailed(owner, tileX, tileY, e);
+        } finally {
+            synchronized (this) {
+                entry.readerCount--;
+                if (entry.deleted && entry.readerCount == 0) {
+                    releaseSlot(entry.slot);
+                }
+            }
+        }
+    }
+
+    public synchronized boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+        final Entry entry = entries.remove(MemoryTile.hashKey(owner, tileX, tileY));
+        if (entry == null) {
+            return false;
+        }
+        entry.deleted = true;
+        if (entry.readerCount == 0) {
+            releaseSlot(entry.slot);
+        }
+        return true;
+    }
+
+    /**
+     * Discards all stored tiles, closes and deletes the swap file.
+     *
+     * @throws IOException If the swap file cannot be closed.
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        entries.clear();
+        freeSlots.clear();
+        slabs.clear();
+        fileSize = 0;
+        try {
+            channel.close();
+            raf.close();
+        } finally {
+            // Note: mapped slabs are unmapped when they are garbage collected, before that,
+            // deleting the file may fail on some platforms
+            if (!swapFile.delete()) {
+                logger.log(Level.WARNING, "Swap file NOT deleted: " + swapFile);
+            }
+        }
+    }
+
+    @Override
+    protected void finalize() throws Throwable {
+        super.finalize();
+        close();
+    }
+
+    protected void handleTileStoreFailed(MemoryTile mt, IOException e) {
+    }
+
+    protected MemoryTile handleTileRestoreFailed(RenderedImage owner, int tileX, int tileY, IOException e) {
+        return null;
+    }
+
+    private Slot allocateSlot(int slotSize) throws IOException {
+        ArrayDeque<Slot> slots = freeSlots.get(slotSize);
+        if (slots == null) {
+            slots = new ArrayDeque<Slot>();
+            freeSlots.put(slotSize, slots);
+        }
+        if (slots.isEmpty()) {
+            final int slotCount = Math.max(1, slabSize / slotSize);
+            final Slab slab = new Slab(fileSize, slotCount * slotSize);
+            if (memoryMapped) {
+                slab.buffer = channel.map(FileChannel.MapMode.READ_WRITE, slab.position, slab.size);
+            } else if (raf.length() < slab.position + slab.size) {
+                raf.setLength(slab.position + slab.size);
+            }
+            slabs.add(slab);
+            fileSize += slab.size;
+            for (int i = 0; i < slotCount; i++) {
+                slots.add(new Slot(slab, i * slotSize, slotSize));
+            }
+        }
+        return slots.poll();
+    }
+
+    private void releaseSlot(Slot slot) {
+        if (slot == null || closed) {
+            return;
+        }
+        freeSlots.get(slot.size).push(slot);
+    }
+
+    private int getSlotSize(int recordLength) {
+        if (compression == null) {
+            return (recordLength + SLOT_ALIGNMENT - 1) / SLOT_ALIGNMENT * SLOT_ALIGNMENT;
+        }
+        // compressed records vary in size, so sizes are rounded up to a multiple of 1/8 of their highest bit
+        final int step = Math.max(SLOT_ALIGNMENT, Integer.highestOneBit(recordLength) >>> 3);
+        return (int) (((long) recordLength + step - 1) / step * step);
+    }
+
+    /**
+     * @return The compressed tile data or {@code null}, if the tile data is stored uncompressed.
+     */
+    private byte[] encodeRecord(Entry entry, DataBuffer dataBuffer) {
+        if (compression != null) {
+            final byte[] data = new byte[entry.dataLength];
+            TileData.put(dataBuffer, ByteBuffer.wrap(data).order(ByteOrder.nativeOrder()));
+            final SwapCompression.Encoded encoded = compression.encode(entry.dataType, data, entry.dataLength);
+            if (encoded != null) {
+                entry.codec = encoded.codec;
+                entry.recordLength = encoded.length;
+                return encoded.data;
+            }
+        }
+        return null;
+    }
+
+    private void writeRecord(Slot slot, DataBuffer dataBuffer, byte[] record, int recordLength) throws IOException {
+        final ByteBuffer buffer = getSlotBuffer(slot, recordLength);
+        if (record != null) {
+            buffer.put(record, 0, recordLength);
+        } else {
+            TileData.put(dataBuffer, buffer);
+        }
+        if (slot.slab.buffer == null) {
+            buffer.flip();
+            long position = slot.getFilePosition();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    private ByteBuffer readRecord(Entry entry) throws IOException {
+        final Slot slot = entry.slot;
+        ByteBuffer buffer = getSlotBuffer(slot, entry.recordLength);
+        if (slot.slab.buffer == null) {
+            long position = slot.getFilePosition();
+            while (buffer.hasRemaining()) {
+                final int n = channel.read(buffer, position);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                position += n;
+            }
+            buffer.flip();
+        }
+        if (entry.codec != null) {
+            final byte[] record = new byte[entry.recordLength];
+            buffer.get(record);
+            final byte[] data = compression.decode(entry.dataType, entry.codec, record, entry.recordLength, entry.dataLength);
+            buffer = ByteBuffer.wrap(data).order(ByteOrder.nativeOrder());
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer getSlotBuffer(Slot slot, int recordLength) {
+        final ByteBuffer buffer;
+        if (slot.slab.buffer != null) {
+            // duplicate, because several threads may access the same slab
+            buffer = slot.slab.buffer.duplicate();
+            buffer.position(slot.offset);
+            buffer.limit(slot.offset + recordLength);
+            return buffer.slice().order(ByteOrder.nativeOrder());
+        }
+        buffer = ByteBuffer.allocate(recordLength);
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * The layout of a stored tile.
+     */
+    private static final class Entry extends TileLayout {
+        int recordLength;
+        TileCodec codec;
+        Slot slot;
+        int readerCount;
+        boolean deleted;
+
+        Entry(Raster tile, Object tileCacheMetric) throws IOException {
+            super(tile, tileCacheMetric, Integer.MAX_VALUE - SLOT_ALIGNMENT);
+            this.recordLength = dataLength;
+        }
+    }
+
+    private static final class Slab {
+        final long position;
+        final int size;
+        MappedByteBuffer buffer;
+
+        Slab(long position, int size) {
+            this.position = position;
+            this.size = size;
+        }
+    }
+
+    private static final class Slot {
+        final Slab slab;
+        final int offset;
+        final int size;
+
+        Slot(Slab slab, int offset, int size) {
+            this.slab = slab;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        long getFilePosition() {
+            return slab.position + offset;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.image.DataBuffer;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Selects the {@link TileCodec} used to compress swapped tiles by their data type and
+ * collects the compression statistics of a {@link SwapSpace}.
+ * <p/>
+ * Tiles of data types without a codec are swapped uncompressed. Tiles which would not become
+ * smaller by compression are swapped uncompressed as well.
+ * <p/>
+ * The encode and decode times are measured as the CPU time of the calling thread, if the JVM supports
+ * and has enabled thread CPU time measurement when this class is loaded, otherwise as elapsed
+ * wall-clock time (see {@link #isCpuTimeMeasured()}).
+ *
+ * @author Norman Fomferra
+ * @since Ceres 0.14
+ */
+public class SwapCompression {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_MEASURED = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()
+                                                     && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+
+    private final TileCodec[] codecs;
+    private final AtomicLong rawSize;
+    private final AtomicLong encodedSize;
+    private final AtomicLong encodedTileCount;
+    private final AtomicLong decodedTileCount;
+    private final AtomicLong encodeTime;
+    private final AtomicLong decodeTime;
+
+    /**
+     * Creates a compression without codecs.
+     */
+    public SwapCompression() {
+        codecs = new TileCodec[DataBuffer.TYPE_DOUBLE + 1];
+        rawSize = new AtomicLong();
+        encodedSize = new AtomicLong();
+        encodedTileCount = new AtomicLong();
+        decodedTileCount = new AtomicLong();
+        encodeTime = new AtomicLong();
+        decodeTime = new AtomicLong();
+    }
+
+    /**
+     * @return A compression using a {@link ShuffleLzTileCodec} for all data types.
+     */
+    public static SwapCompression createDefault() {
+        final SwapCompression compression = new SwapCompression();
+        final ShuffleLzTileCodec codec = new ShuffleLzTileCodec();
+        for (int dataType = DataBuffer.TYPE_BYTE; dataType <= DataBuffer.TYPE_DOUBLE; dataType++) {
+            compression.setCodec(dataType, codec);
+        }
+        return compression;
+    }
+
+    /**
+     * @param dataType The data type, one of the {@code DataBuffer.TYPE_<i>X</i>} constants.
+     * @return The codec or {@code null}, if tiles of the data type are not compressed.
+     */
+    public TileCodec getCodec(int dataType) {
+        checkDataType(dataType);
+        return codecs[dataType];
+    }
+
+    /**
+     * @param dataType The data type, one of the {@code DataBuffer.TYPE_<i>X</i>} constants.
+     * @param codec    The codec or {@code null}, if tiles of the data type shall not be compressed.
+     */
+    public void setCodec(int dataType, TileCodec codec) {
+        checkDataType(dataType);
+        codecs[dataType] = codec;
+    }
+
+    /**
+     * @return The number of bytes of all encoded tiles before compression.
+     */
+    public long getRawSize() {
+        return rawSize.get();
+    }
+
+    /**
+     * @return The number of bytes of all encoded tiles after compression.
+     */
+    public long getEncodedSize() {
+        return encodedSize.get();
+    }
+
+    /**
+     * @return The ratio of raw size to encoded size, 1 if no tiles have been encoded.
+     */
+    public double getCompressionRatio() {
+        final long encoded = encodedSize.get();
+        return encoded > 0 ? (double) rawSize.get() / encoded : 1.0;
+    }
+
+    public long getEncodedTileCount() {
+        return encodedTileCount.get();
+    }
+
+    public long getDecodedTileCount() {
+        return decodedTileCount.get();
+    }
+
+    /**
+     * @return {@code true} if the encode and decode times are CPU times,
+     *         {@code false} if they are elapsed wall-clock times.
+     */
+    public static boolean isCpuTimeMeasured() {
+        return CPU_TIME_MEASURED;
+    }
+
+    /**
+     * @return The time spent encoding tiles in nanoseconds.
+     * @see #isCpuTimeMeasured()
+     */
+    public long getEncodeTime() {
+        return encodeTime.get();
+    }
+
+    /**
+     * @return The time spent decoding tiles in nanoseconds.
+     * @see #isCpuTimeMeasured()
+     */
+    public long getDecodeTime() {
+        return decodeTime.get();
+    }
+
+    public void resetStatistics() {
+        rawSize.set(0);
+        encodedSize.set(0);
+        encodedTileCount.set(0);
+        decodedTileCount.set(0);
+        encodeTime.set(0);
+        decodeTime.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() +
+                ": encodedTileCount = " + getEncodedTileCount() +
+                " compressionRatio = " + getCompressionRatio() +
+                " encodeTime = " + getEncodeTime() / 1000000 + " ms" +
+                " decodeTime = " + getDecodeTime() / 1000000 + " ms";
+    }
+
+    /**
+     * Encodes tile data.
+     *
+     * @param dataType The data type.
+     * @param data     The tile data in native byte order.
+     * @param length   The number of bytes of the tile data.
+     * @return The encoded data, or {@code null} if the data shall be stored uncompressed. The array
+     *         may be longer than the encoded data.
+     */
+    Encoded encode(int dataType, byte[] data, int length) {
+        final TileCodec codec = codecs[dataType];
+        if (codec == null) {
+            return null;
+        }
+        final long t0 = getTime();
+        // tiles which don't get smaller are stored uncompressed
+        final byte[] encoded = new byte[length];
+        final int encodedLength = codec.encode(data, length, getElementSize(dataType), encoded);
+        encodeTime.addAndGet(getTime() - t0);
+        encodedTileCount.incrementAndGet();
+        rawSize.addAndGet(length);
+        if (encodedLength < 0 || encodedLength >= length) {
+            encodedSize.addAndGet(length);
+            return null;
+        }
+        encodedSize.addAndGet(encodedLength);
+        return new Encoded(codec, encoded, encodedLength);
+    }
+
+    /**
+     * Decodes tile data.
+     *
+     * @param dataType      The data type.
+     * @param codec         The codec which has encoded the data.
+     * @param encoded       The encoded data.
+     * @param encodedLength The number of encoded bytes.
+     * @param length        The number of bytes of the tile data.
+     * @return The tile data in native byte order.
+     * @throws IOException If the encoded data is corrupt.
+     */
+    byte[] decode(int dataType, TileCodec codec, byte[] encoded, int encodedLength, int length) throws IOException {
+        final long t0 = getTime();
+        final byte[] data = new byte[length];
+        codec.decode(encoded, encodedLength, data, length, getElementSize(dataType));
+        decodeTime.addAndGet(getTime() - t0);
+        decodedTileCount.incrementAndGet();
+        return data;
+    }
+
+    private static int getElementSize(int dataType) {
+        return DataBuffer.getDataTypeSize(dataType) / 8;
+    }
+
+    private static long getTime() {
+        if (CPU_TIME_MEASURED) {
+            return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+        }
+        return System.nanoTime();
+    }
+
+    private static void checkDataType(int dataType) {
+        if (dataType < DataBuffer.TYPE_BYTE || dataType > DataBuffer.TYPE_DOUBLE) {
+            throw new IllegalArgumentException("dataType");
+        }
+    }
+
+    /**
+     * Encoded tile data.
+     */
+    static final class Encoded {
+        final TileCodec codec;
+        final byte[] data;
+        final int length;
+
+        Encoded(TileCodec codec, byte[] data, int length) {
+            this.codec = codec;
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
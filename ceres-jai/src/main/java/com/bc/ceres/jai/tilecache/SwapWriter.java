@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import com.sun.media.jai.util.ImageUtil;
+
+import javax.media.jai.util.ImagingListener;
+import java.awt.RenderingHints;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes tiles evicted by a {@link SwappingTileCache} or a {@link ConcurrentSwappingTileCache}
+ * to a {@link SwapSpace}.
+ * <p/>
+ * Evicted tiles are pending until they have been written. Pending tiles, including the ones currently
+ * being written, can be reclaimed by the cache without any I/O. Deleting a swapped tile waits until
+ * a write of the same tile has completed.
+ * <p/>
+ * If the queue capacity is positive, tiles are written in eviction order by a background thread
+ * (write-behind), and threads which have evicted tiles wait while the number of pending tiles
+ * exceeds the capacity. Otherwise, pending tiles are written by the threads which have evicted them.
+ * The writer's lock only guards the bookkeeping, it is never held while tiles are written.
+ * <p/>
+ * The background thread is started on demand. It ends if it has been idle for a while, if it is
+ * interrupted, or if the writer is {@link #shutdown() shut down}. As long as it is not running,
+ * pending tiles are written by the threads which have evicted them.
+ *
+ * @author Norman Fomferra
+ * @since Ceres 0.14
+ */
+final class SwapWriter {
+
+    private static final long KEEP_ALIVE_MILLIS = 30 * 1000L;
+
+    private final SwapSpace swapSpace;
+    private final int queueCapacity;
+    private final Map<Object, MemoryTile> pendingTiles;
+    private final Set<Object> writtenKeys;
+    private Thread thread;
+
+    SwapWriter(SwapSpace swapSpace, int queueCapacity) {
+        this.swapSpace = swapSpace;
+        this.queueCapacity = queueCapacity;
+        this.pendingTiles = new LinkedHashMap<Object, MemoryTile>();
+        this.writtenKeys = new HashSet<Object>();
+    }
+
+    int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    synchronized int getPendingTileCount() {
+        return pendingTiles.size();
+    }
+
+    /**
+     * @return The background thread or {@code null}, if it is not running.
+     */
+    synchronized Thread getThread() {
+        return thread;
+    }
+
+    /**
+     * Adds an evicted tile. Called while the cache is locked, so this method never blocks.
+     *
+     * @param ct The evicted tile.
+     */
+    synchronized void enqueue(MemoryTile ct) {
+        pendingTiles.put(ct.key, ct);
+        if (queueCapacity > 0 && thread == null) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeTiles();
+                }
+            }, "SwapWriter");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+    /**
+     * Takes a pending tile back into the cache. If the tile is not being written yet, its write is cancelled.
+     *
+     * @param key The tile key.
+     * @return The pending tile or {@code null}.
+     */
+    synchronized MemoryTile reclaim(Object key) {
+        final MemoryTile ct = pendingTiles.get(key);
+        if (ct != null && !writtenKeys.contains(key)) {
+            pendingTiles.remove(key);
+        }
+        return ct;
+    }
+
+    /**
+     * Discards a pending tile of a removed tile, so that it cannot be reclaimed anymore.
+     * A write of the tile which is already in progress is completed. Called while the cache is locked,
+     * so this method never blocks.
+     *
+     * @param key The tile key.
+     */
+    synchronized void discard(Object key) {
+        if (pendingTiles.remove(key) != null) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Cancels the write of a pending tile and waits until a write of the tile which is already
+     * in progress has completed. Must be called before the tile is deleted from the swap space.
+     *
+     * @param key The tile key.
+     */
+    synchronized void cancel(Object key) {
+        if (!writtenKeys.contains(key)) {
+            pendingTiles.remove(key);
+        }
+        try {
+            while (writtenKeys.contains(key)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Called by threads which may have evicted tiles, after the cache has been unlocked.
+     * Either writes the pending tiles or, in write-behind mode, waits while the number of pending tiles
+     * exceeds the queue capacity. If the background thread is not running, the pending tiles are
+     * written by the calling thread.
+     */
+    void drain() {
+        if (queueCapacity > 0) {
+            synchronized (this) {
+                try {
+                    while (thread != null && pendingTiles.size() > queueCapacity) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (thread != null) {
+                    return;
+                }
+            }
+        }
+        MemoryTile ct;
+        while ((ct = nextTile(false)) != null) {
+            write(ct);
+        }
+    }
+
+    /**
+     * Waits until all pending tiles have been written.
+     *
+     * @throws InterruptedException If the current thread has been interrupted.
+     */
+    void awaitPendingWrites() throws InterruptedException {
+        while (true) {
+            drain();
+            synchronized (this) {
+                if (pendingTiles.isEmpty()) {
+                    return;
+                }
+                if (thread != null || writtenKeys.containsAll(pendingTiles.keySet())) {
+                    wait();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread after it has written the pending tiles, and waits until it has ended.
+     * The thread is started again if further tiles are evicted.
+     */
+    void shutdown() {
+        final Thread thread;
+        synchronized (this) {
+            thread = this.thread;
+            this.thread = null;
+            notifyAll();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drain();
+    }
+
+    private void writeTiles() {
+        try {
+            MemoryTile ct;
+            while ((ct = nextTile(true)) != null) {
+                write(ct);
+            }
+        } finally {
+            synchronized (this) {
+                if (thread == Thread.currentThread()) {
+                    thread = null;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @param wait If {@code true}, the background thread waits until a tile is pending. It gets
+     *             {@code null} if it has been idle for too long, has been interrupted, or has been stopped.
+     * @return The oldest pending tile which is not being written, marked as being written.
+     */
+    private synchronized MemoryTile nextTile(boolean wait) {
+        long idleTime = 0;
+        while (true) {
+            final Iterator<MemoryTile> iterator = pendingTiles.values().iterator();
+            while (iterator.hasNext()) {
+                final MemoryTile ct = iterator.next();
+                if (writtenKeys.add(ct.key)) {
+                    return ct;
+                }
+            }
+            if (!wait || thread != Thread.currentThread()) {
+                return null;
+            }
+            if (idleTime >= KEEP_ALIVE_MILLIS) {
+                // cleared while still holding the lock, so that subsequently enqueued tiles start a new thread
+                thread = null;
+                return null;
+            }
+            final long t0 = System.currentTimeMillis();
+            try {
+                wait(KEEP_ALIVE_MILLIS - idleTime);
+            } catch (InterruptedException e) {
+                thread = null;
+                notifyAll();
+                return null;
+            }
+            idleTime += System.currentTimeMillis() - t0;
+        }
+    }
+
+    private void write(MemoryTile ct) {
+        try {
+            swapSpace.storeTile(ct);
+        } catch (Throwable e) {
+            // the writer keeps on writing the next tiles
+            final ImagingListener listener = ImageUtil.getImagingListener((RenderingHints) null);
+            listener.errorOccurred("Failed to swap out tile.", e, this, false);
+        } finally {
+            synchronized (this) {
+                writtenKeys.remove(ct.key);
+                if (pendingTiles.get(ct.key) == ct) {
+                    pendingTiles.remove(ct.key);
+                }
+                notifyAll();
+            }
+        }
+    }
+}
@@ -32,7 +32,10 @@ import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 
 final class SwappedTile {
@@ -42,8 +45,21 @@ final class SwappedTile {
     private final boolean writable;
     private final Point location;
     private final Object tileCacheMetric;
+    private final SwapCompression compression;
+    // layout of compressed tile data, set by storeTile()
+    private int[] bankLengths;
+    private int bufferSize;
+    private int[] bufferOffsets;
+    private int dataLength;
+    private int recordLength;
+    private TileCodec codec;
 
     SwappedTile(MemoryTile mt, File cacheDir) {
+        this(mt, cacheDir, null);
+    }
+
+    SwappedTile(MemoryTile mt, File cacheDir, SwapCompression compression) {
+        this.compression = compression;
         this.file = new File(cacheDir, mt.getKeyAsString());
         this.fileSize = mt.getTileSize();
         this.sampleModel = mt.getTile().getSampleModel();
@@ -53,7 +69,8 @@ final class SwappedTile {
     }
 
     public boolean isAvailable() {
-        return file.length() == fileSize;
+        // the layout of compressed tile data is only known after it has been stored
+        return compression == null && file.length() == fileSize;
     }
 
     public File getFile() {
@@ -81,12 +98,16 @@ final class SwappedTile {
     }
 
     public Raster restoreTile() throws IOException {
-        final ImageInputStream stream = new FileImageInputStream(file);
         final DataBuffer dataBuffer;
-        try {
-            dataBuffer = readTileData(stream, sampleModel);
-        } finally {
-            stream.close();
+        if (compression != null) {
+            dataBuffer = readCompressedTileData();
+        } else {
+            final ImageInputStream stream = new FileImageInputStream(file);
+            try {
+                dataBuffer = readTileData(stream, sampleModel);
+            } finally {
+                stream.close();
+            }
         }
         final Raster tile;
         if (writable) {
@@ -98,6 +119,10 @@ final class SwappedTile {
     }
 
     public void storeTile(Raster tile) throws IOException {
+        if (compression != null) {
+            writeCompressedTileData(tile.getDataBuffer());
+            return;
+        }
         final ImageOutputStream stream = new FileImageOutputStream(file);
         try {
             writeTileData(stream, tile.getDataBuffer());
@@ -106,6 +131,52 @@ final class SwappedTile {
         }
     }
 
+    private void writeCompressedTileData(DataBuffer dataBuffer) throws IOException {
+        bankLengths = TileData.getBankLengths(dataBuffer);
+        bufferSize = dataBuffer.getSize();
+        bufferOffsets = dataBuffer.getOffsets().clone();
+        final long length = TileData.getDataLength(dataBuffer.getDataType(), bankLengths);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("illegal tile size: " + length);
+        }
+        dataLength = (int) length;
+        final byte[] data = new byte[dataLength];
+        TileData.put(dataBuffer, ByteBuffer.wrap(data).order(ByteOrder.nativeOrder()));
+        final SwapCompression.Encoded encoded = compression.encode(dataBuffer.getDataType(), data, dataLength);
+        final byte[] record;
+        if (encoded != null) {
+            codec = encoded.codec;
+            record = encoded.data;
+            recordLength = encoded.length;
+        } else {
+            codec = null;
+            record = data;
+            recordLength = dataLength;
+        }
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(recordLength);
+            raf.write(record, 0, recordLength);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private DataBuffer readCompressedTileData() throws IOException {
+        byte[] data = new byte[recordLength];
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.readFully(data);
+        } finally {
+            raf.close();
+        }
+        final int dataType = sampleModel.getDataType();
+        if (codec != null) {
+            data = compression.decode(dataType, codec, data, recordLength, dataLength);
+        }
+        return TileData.get(dataType, bankLengths, bufferSize, bufferOffsets, ByteBuffer.wrap(data).order(ByteOrder.nativeOrder()));
+    }
+
     private static DataBuffer readTileData(ImageInputStream stream, SampleModel sampleModel) throws IOException {
         final int dataType = sampleModel.getDataType();
         final int arrayLength = stream.readInt();
@@ -33,8 +33,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Observable;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -46,6 +48,12 @@ import java.util.logging.Logger;
  * <code>javax.media.jai.TileCache</code> interface. In opposite to the
  * Sun implementation, we'll never throw away any tiles but instead swap them to a
  * {@link SwapSpace}.
+ * <p/>
+ * The cache lock only guards the cache's bookkeeping. Tiles are swapped out, restored and deleted
+ * while the lock is released. Swapped out tiles remain in memory and can be reclaimed until they have
+ * been written to the swap space. If a write-behind capacity is given, tiles are written by a background
+ * thread, and threads evicting tiles wait while more than the given number of tiles are waiting to be
+ * written.
  *
  * @author Sun Microsystems
  * @author Norman Fomferra
@@ -146,16 +154,32 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
 
     private SwapSpace swapSpace;
 
+    /**
+     * Writes evicted tiles to the swap space outside of the cache lock.
+     */
+    private final SwapWriter swapWriter;
+
+    /**
+     * Keys of tiles which are being restored outside of the cache lock, see {@link #getTile}.
+     */
+    private final Map<Object, Restore> restores = new HashMap<Object, Restore>();
+
+    /**
+     * Keys of removed tiles which are being deleted from the swap space outside of the cache lock,
+     * mapped to the number of deleting threads, see {@link #remove}.
+     */
+    private final Map<Object, Integer> deletions = new HashMap<Object, Integer>();
+
     // diagnostic actions
     // !!! If actions are changed in any way (removal, modification, addition)
     // then the getCachedTileActions() method below should be changed to match.
-    private static final int ADD = 0;
-    private static final int REMOVE = 1;
-    private static final int REMOVE_FROM_FLUSH = 2;
-    private static final int REMOVE_FROM_MEMCON = 3;
-    private static final int UPDATE_FROM_ADD = 4;
-    private static final int UPDATE_FROM_GETTILE = 5;
-    private static final int ABOUT_TO_REMOVE = 6;
+    static final int ADD = 0;
+    static final int REMOVE = 1;
+    static final int REMOVE_FROM_FLUSH = 2;
+    static final int REMOVE_FROM_MEMCON = 3;
+    static final int UPDATE_FROM_ADD = 4;
+    static final int UPDATE_FROM_GETTILE = 5;
+    static final int ABOUT_TO_REMOVE = 6;
 
     /**
      * @return An array of <code>EnumeratedParameter</code>s corresponding
@@ -195,15 +219,35 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      *                                  is less than 0.
      */
     public SwappingTileCache(long memoryCapacity, SwapSpace swapSpace) {
+        this(memoryCapacity, swapSpace, 0);
+    }
+
+    /**
+     * Constructor.  The memory capacity should be explicitly specified.
+     *
+     * @param memoryCapacity      The maximum cache memory size in bytes.
+     * @param swapSpace           The space used to swap out tiles.
+     * @param writeBehindCapacity The maximum number of swapped out tiles waiting to be written
+     *                            by a background thread. If 0, swapped out tiles are written by
+     *                            the thread evicting them.
+     * @throws IllegalArgumentException If <code>memoryCapacity</code> or <code>writeBehindCapacity</code>
+     *                                  is less than 0.
+     * @since Ceres 0.14
+     */
+    public SwappingTileCache(long memoryCapacity, SwapSpace swapSpace, int writeBehindCapacity) {
         if (memoryCapacity < 0) {
             throw new IllegalArgumentException("memoryCapacity < 0");
         }
         if (swapSpace == null) {
             throw new NullPointerException("swapSpace");
         }
+        if (writeBehindCapacity < 0) {
+            throw new IllegalArgumentException("writeBehindCapacity < 0");
+        }
 
         this.memoryCapacity = memoryCapacity;
         this.swapSpace = swapSpace;
+        this.swapWriter = new SwapWriter(swapSpace, writeBehindCapacity);
 
         // try to get a prime number (more efficient?)
         // lower values of LOAD_FACTOR increase speed, decrease space efficiency
@@ -245,16 +289,19 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      * @param tile            The tile to be cached.
      * @param tileCacheMetric Metric for prioritizing tiles
      */
-    public synchronized void add(RenderedImage owner,
-                                 int tileX,
-                                 int tileY,
-                                 Raster tile,
-                                 Object tileCacheMetric) {
+    public void add(RenderedImage owner,
+                    int tileX,
+                    int tileY,
+                    Raster tile,
+                    Object tileCacheMetric) {
 
         if (memoryCapacity == 0) {
             return;
         }
-        addTileNonSync(owner, tileX, tileY, tile, tileCacheMetric);
+        synchronized (this) {
+            addTileNonSync(owner, tileX, tileY, tile, tileCacheMetric);
+        }
+        swapWriter.drain();
     }
 
     /**
@@ -268,19 +315,22 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      *                        associated with the <code>RenderedImage</code> owner.
      * @since 1.1
      */
-    public synchronized void addTiles(RenderedImage owner,
-                                      Point[] tileIndices,
-                                      Raster[] tiles,
-                                      Object tileCacheMetric) {
+    public void addTiles(RenderedImage owner,
+                         Point[] tileIndices,
+                         Raster[] tiles,
+                         Object tileCacheMetric) {
         if (memoryCapacity == 0) {
             return;
         }
-        for (int i = 0; i < tileIndices.length; i++) {
-            int tileX = tileIndices[i].x;
-            int tileY = tileIndices[i].y;
-            Raster tile = tiles[i];
-            addTileNonSync(owner, tileX, tileY, tile, tileCacheMetric);
+        synchronized (this) {
+            for (int i = 0; i < tileIndices.length; i++) {
+                int tileX = tileIndices[i].x;
+                int tileY = tileIndices[i].y;
+                Raster tile = tiles[i];
+                addTileNonSync(owner, tileX, tileY, tile, tileCacheMetric);
+            }
         }
+        swapWriter.drain();
     }
 
     private void addTileNonSync(RenderedImage owner, int tileX, int tileY, Raster tile, Object tileCacheMetric) {
@@ -361,7 +411,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         }
         // Bring memory usage down to memoryThreshold % of memory capacity.
         if (memoryUsage > memoryCapacity) {
-            memoryControl();
+            memoryControlNonSync();
         }
         return true;
     }
@@ -372,13 +422,24 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      * <p> If the specified tile is not in the cache, this method
      * does nothing.
      */
-    public synchronized void remove(RenderedImage owner,
-                                    int tileX,
-                                    int tileY) {
+    public void remove(RenderedImage owner,
+                       int tileX,
+                       int tileY) {
         if (memoryCapacity == 0) {
             return;
         }
-        removeNonSync(owner, tileX, tileY);
+        Object key = MemoryTile.hashKey(owner, tileX, tileY);
+        synchronized (this) {
+            removeNonSync(owner, tileX, tileY);
+            beginDeletion(key);
+        }
+        try {
+            deleteSwappedTile(owner, tileX, tileY);
+        } finally {
+            synchronized (this) {
+                endDeletion(key);
+            }
+        }
     }
 
     /**
@@ -387,7 +448,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      *
      * @param owner The image whose tiles are to be removed from the cache.
      */
-    public synchronized void removeTiles(RenderedImage owner) {
+    public void removeTiles(RenderedImage owner) {
         if (memoryCapacity == 0) {
             return;
         }
@@ -395,9 +456,27 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         int minTy = owner.getMinTileY();
         int maxTx = minTx + owner.getNumXTiles();
         int maxTy = minTy + owner.getNumYTiles();
-        for (int y = minTy; y < maxTy; y++) {
-            for (int x = minTx; x < maxTx; x++) {
-                removeNonSync(owner, x, y);
+        synchronized (this) {
+            for (int y = minTy; y < maxTy; y++) {
+                for (int x = minTx; x < maxTx; x++) {
+                    removeNonSync(owner, x, y);
+                    beginDeletion(MemoryTile.hashKey(owner, x, y));
+                }
+            }
+        }
+        try {
+            for (int y = minTy; y < maxTy; y++) {
+                for (int x = minTx; x < maxTx; x++) {
+                    deleteSwappedTile(owner, x, y);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                for (int y = minTy; y < maxTy; y++) {
+                    for (int x = minTx; x < maxTx; x++) {
+                        endDeletion(MemoryTile.hashKey(owner, x, y));
+                    }
+                }
             }
         }
     }
@@ -466,9 +545,35 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
                 ct.next = null;
             }
         }
-        // <NEW>
+    }
+
+    /**
+     * Called while the cache is locked, after a tile has been removed from memory. Until {@link #endDeletion}
+     * is called, the tile can neither be reclaimed from the swap writer nor be restored from the swap space.
+     */
+    private void beginDeletion(Object key) {
+        swapWriter.discard(key);
+        Integer count = deletions.get(key);
+        deletions.put(key, count != null ? count + 1 : 1);
+        Restore restore = restores.get(key);
+        if (restore != null) {
+            restore.removed = true;
+        }
+    }
+
+    private void endDeletion(Object key) {
+        int count = deletions.get(key);
+        if (count > 1) {
+            deletions.put(key, count - 1);
+        } else {
+            deletions.remove(key);
+        }
+    }
+
+    private void deleteSwappedTile(RenderedImage owner, int tileX, int tileY) {
+        // A tile which is still being written must not be recreated after its deletion
+        swapWriter.cancel(MemoryTile.hashKey(owner, tileX, tileY));
         swapSpace.deleteTile(owner, tileX, tileY);
-        // </NEW>
     }
 
     /**
@@ -482,13 +587,51 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      * @param tileX The tile's X index within the image.
      * @param tileY The tile's Y index within the image.
      */
-    public synchronized Raster getTile(RenderedImage owner,
-                                       int tileX,
-                                       int tileY) {
+    public Raster getTile(RenderedImage owner,
+                          int tileX,
+                          int tileY) {
         if (memoryCapacity == 0) {
             return null;
         }
-        return getTileNonSync(owner, tileX, tileY);
+        Object key = MemoryTile.hashKey(owner, tileX, tileY);
+        synchronized (this) {
+            Raster tile = getTileNonSync(key, null, false);
+            if (tile != null) {
+                return tile;
+            }
+            if (deletions.containsKey(key)) {
+                // The tile has been removed, but is still being deleted from the swap space
+                missCount++;
+                return null;
+            }
+            Restore restore = restores.get(key);
+            if (restore == null) {
+                restore = new Restore();
+                restores.put(key, restore);
+            }
+            restore.threadCount++;
+        }
+        // The tile is neither in memory nor waiting to be written, so restore it without holding the lock
+        MemoryTile restoredTile = null;
+        Raster tile = null;
+        try {
+            restoredTile = swapSpace.restoreTile(owner, tileX, tileY);
+        } finally {
+            synchronized (this) {
+                Restore restore = restores.get(key);
+                if (--restore.threadCount == 0) {
+                    restores.remove(key);
+                }
+                if (restore.removed) {
+                    // The tile has been removed in the meantime and must not be added again
+                    missCount++;
+                } else {
+                    tile = getTileNonSync(key, restoredTile, true);
+                }
+            }
+        }
+        swapWriter.drain();
+        return tile;
     }
 
     /**
@@ -500,7 +643,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      * @return An array of all tiles owned by the specified image or
      *         <code>null</code> if there are none currently in the cache.
      */
-    public synchronized Raster[] getTiles(RenderedImage owner) {
+    public Raster[] getTiles(RenderedImage owner) {
 
         if (memoryCapacity == 0) {
             return null;
@@ -516,7 +659,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             ArrayList<Raster> temp = new ArrayList<Raster>(32);
             for (int y = minTy; y < maxTy; y++) {
                 for (int x = minTx; x < maxTx; x++) {
-                    Raster tile = getTileNonSync(owner, x, y);
+                    Raster tile = getTile(owner, x, y);
                     if (tile != null) {
                         temp.add(tile);
                     }
@@ -540,7 +683,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      *                    <code>tileX</code> and <code>tileY</code> indices for each tile.
      * @since 1.1
      */
-    public synchronized Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+    public Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
         if (memoryCapacity == 0) {
             return null;
         }
@@ -548,18 +691,26 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         for (int i = 0; i < tiles.length; i++) {
             int tileX = tileIndices[i].x;
             int tileY = tileIndices[i].y;
-            tiles[i] = getTileNonSync(owner, tileX, tileY);
+            tiles[i] = getTile(owner, tileX, tileY);
         }
         return tiles;
     }
 
-    private Raster getTileNonSync(RenderedImage owner, int tileX, int tileY) {
-        Object key = MemoryTile.hashKey(owner, tileX, tileY);
+    /**
+     * @param key          The tile key.
+     * @param restoredTile The tile restored from the swap space, may be {@code null}.
+     * @param countMiss    If {@code true}, a tile which cannot be found is counted as cache miss.
+     * @return The tile or {@code null}.
+     */
+    private Raster getTileNonSync(Object key, MemoryTile restoredTile, boolean countMiss) {
         MemoryTile ct = cache.get(key);
         Raster tile = null;
         // <NEW>
         if (ct == null) {
-            ct = swapSpace.restoreTile(owner, tileX, tileY);
+            ct = swapWriter.reclaim(key);
+            if (ct == null) {
+                ct = restoredTile;
+            }
             if (ct != null) {
                 if (!addTileNonSync(ct)) {
                     return ct.getTile();
@@ -568,7 +719,9 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         }
         // </NEW>
         if (ct == null) {
-            missCount++;
+            if (countMiss) {
+                missCount++;
+            }
         } else {
             tile = ct.getTile();
             // Update last-access time. (update() inlined for performance)
@@ -604,8 +757,18 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
 
     /**
      * Removes -ALL- tiles from the cache.
+     * <p/>
+     * Also stops the write-behind thread after the tiles swapped out before have been written.
+     * The thread is started again if further tiles are swapped out.
      */
-    public synchronized void flush() {
+    public void flush() {
+        synchronized (this) {
+            flushNonSync();
+        }
+        swapWriter.shutdown();
+    }
+
+    private void flushNonSync() {
         //
         // It is necessary to clear all the elements
         // from the old cache in order to remove dangling
@@ -818,7 +981,24 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
      * (old to new) until the memory usage is memoryThreshold % of that of the
      * memory capacity.
      */
-    public synchronized void memoryControl() {
+    public void memoryControl() {
+        synchronized (this) {
+            memoryControlNonSync();
+        }
+        swapWriter.drain();
+    }
+
+    /**
+     * Waits until all swapped out tiles have been written to the swap space.
+     *
+     * @throws InterruptedException If the current thread has been interrupted.
+     * @since Ceres 0.14
+     */
+    public void awaitPendingWrites() throws InterruptedException {
+        swapWriter.awaitPendingWrites();
+    }
+
+    private void memoryControlNonSync() {
         if (cacheSortedSet == null) {
             standard_memory_control();
         } else {
@@ -836,7 +1016,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             if (ct != null) {
                 ct = cache.remove(last.key);
                 // <NEW>
-                swapSpace.storeTile(ct);
+                swapWriter.enqueue(ct);
                 // </NEW>
 
                 memoryUsage -= last.tileSize;
@@ -929,7 +1109,7 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
             cache.remove(ct.key);
 
             // <NEW>
-            swapSpace.storeTile(ct);
+            swapWriter.enqueue(ct);
             // </NEW>
 
             // diagnostics
@@ -1015,4 +1195,9 @@ public final class SwappingTileCache extends Observable implements TileCache, Ca
         // noinspection unchecked
         return Collections.synchronizedSortedSet(new TreeSet<MemoryTile>(comparator));
     }
+
+    static final class Restore {
+        int threadCount;
+        boolean removed;
+    }
 }
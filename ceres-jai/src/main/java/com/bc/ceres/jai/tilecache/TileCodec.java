@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.io.IOException;
+
+/**
+ * Encodes the data of swapped tiles.
+ *
+ * @author Norman Fomferra
+ * @see SwapCompression
+ * @since Ceres 0.14
+ */
+public interface TileCodec {
+
+    /**
+     * @return The name of the codec.
+     */
+    String getName();
+
+    /**
+     * Encodes tile data.
+     *
+     * @param data        The tile data in native byte order.
+     * @param length      The number of bytes of the tile data.
+     * @param elementSize The size of the data elements in bytes.
+     * @param encoded     Receives the encoded data.
+     * @return The number of encoded bytes or -1, if the encoded data doesn't fit into {@code encoded}.
+     */
+    int encode(byte[] data, int length, int elementSize, byte[] encoded);
+
+    /**
+     * Decodes tile data.
+     *
+     * @param encoded       The encoded data.
+     * @param encodedLength The number of encoded bytes.
+     * @param data          Receives the tile data.
+     * @param length        The number of bytes of the tile data.
+     * @param elementSize   The size of the data elements in bytes.
+     * @throws IOException If the encoded data is corrupt.
+     */
+    void decode(byte[] encoded, int encodedLength, byte[] data, int length, int elementSize) throws IOException;
+}
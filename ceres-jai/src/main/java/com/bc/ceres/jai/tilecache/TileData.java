@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts the bank data of tiles from and to bytes.
+ *
+ * @author Norman Fomferra
+ * @since Ceres 0.14
+ */
+final class TileData {
+
+    private TileData() {
+    }
+
+    /**
+     * Puts the data of all banks into the given buffer.
+     *
+     * @param dataBuffer The data buffer.
+     * @param buffer     The byte buffer, must have at least {@link #getDataLength} bytes remaining.
+     */
+    static void put(DataBuffer dataBuffer, ByteBuffer buffer) {
+        final int numBanks = dataBuffer.getNumBanks();
+        for (int bank = 0; bank < numBanks; bank++) {
+            if (dataBuffer instanceof DataBufferByte) {
+                buffer.put(((DataBufferByte) dataBuffer).getData(bank));
+            } else if (dataBuffer instanceof DataBufferShort) {
+                final short[] data = ((DataBufferShort) dataBuffer).getData(bank);
+                buffer.asShortBuffer().put(data);
+                buffer.position(buffer.position() + 2 * data.length);
+            } else if (dataBuffer instanceof DataBufferUShort) {
+                final short[] data = ((DataBufferUShort) dataBuffer).getData(bank);
+                buffer.asShortBuffer().put(data);
+                buffer.position(buffer.position() + 2 * data.length);
+            } else if (dataBuffer instanceof DataBufferInt) {
+                final int[] data = ((DataBufferInt) dataBuffer).getData(bank);
+                buffer.asIntBuffer().put(data);
+                buffer.position(buffer.position() + 4 * data.length);
+            } else if (dataBuffer instanceof DataBufferFloat) {
+                final float[] data = ((DataBufferFloat) dataBuffer).getData(bank);
+                buffer.asFloatBuffer().put(data);
+                buffer.position(buffer.position() + 4 * data.length);
+            } else if (dataBuffer instanceof DataBufferDouble) {
+                final double[] data = ((DataBufferDouble) dataBuffer).getData(bank);
+                buffer.asDoubleBuffer().put(data);
+                buffer.position(buffer.position() + 8 * data.length);
+            }
+        }
+    }
+
+    /**
+     * Creates a data buffer from the bank data in the given buffer.
+     *
+     * @param dataType      The data type.
+     * @param bankLengths   The array lengths of the banks.
+     * @param bufferSize    The size of the data buffer.
+     * @param bufferOffsets The offsets of the banks.
+     * @param buffer        The byte buffer.
+     * @return The data buffer.
+     * @throws IOException If the data type is not supported.
+     */
+    static DataBuffer get(int dataType, int[] bankLengths, int bufferSize, int[] bufferOffsets, ByteBuffer buffer) throws IOException {
+        final int numBanks = bankLengths.length;
+        switch (dataType) {
+            case DataBuffer.TYPE_BYTE: {
+                final byte[][] data = new byte[numBanks][];
+                for (int bank = 0; bank < numBanks; bank++) {
+                    data[bank] = new byte[bankLengths[bank]];
+                    buffer.get(data[bank]);
+                }
+                return new DataBufferByte(data, bufferSize, bufferOffsets);
+            }
+            case DataBuffer.TYPE_SHORT:
+            case DataBuffer.TYPE_USHORT: {
+                final short[][] data = new short[numBanks][];
+                for (int bank = 0; bank < numBanks; bank++) {
+                    data[bank] = new short[bankLengths[bank]];
+                    buffer.asShortBuffer().get(data[bank]);
+                    buffer.position(buffer.position() + 2 * bankLengths[bank]);
+                }
+                if (dataType == DataBuffer.TYPE_SHORT) {
+                    return new DataBufferShort(data, bufferSize, bufferOffsets);
+                }
+                return new DataBufferUShort(data, bufferSize, bufferOffsets);
+            }
+            case DataBuffer.TYPE_INT: {
+                final int[][] data = new int[numBanks][];
+                for (int bank = 0; bank < numBanks; bank++) {
+                    data[bank] = new int[bankLengths[bank]];
+                    buffer.asIntBuffer().get(data[bank]);
+                    buffer.position(buffer.position() + 4 * bankLengths[bank]);
+                }
+                return new DataBufferInt(data, bufferSize, bufferOffsets);
+            }
+            case DataBuffer.TYPE_FLOAT: {
+                final float[][] data = new float[numBanks][];
+                for (int bank = 0; bank < numBanks; bank++) {
+                    data[bank] = new float[bankLengths[bank]];
+                    buffer.asFloatBuffer().get(data[bank]);
+                    buffer.position(buffer.position() + 4 * bankLengths[bank]);
+                }
+                return new DataBufferFloat(data, bufferSize, bufferOffsets);
+            }
+            case DataBuffer.TYPE_DOUBLE: {
+                final double[][] data = new double[numBanks][];
+                for (int bank = 0; bank < numBanks; bank++) {
+                    data[bank] = new double[bankLengths[bank]];
+                    buffer.asDoubleBuffer().get(data[bank]);
+                    buffer.position(buffer.position() + 8 * bankLengths[bank]);
+                }
+                return new DataBufferDouble(data, bufferSize, bufferOffsets);
+            }
+            default:
+                throw new IOException("illegal data type: " + dataType);
+        }
+    }
+
+    /**
+     * @param dataBuffer The data buffer.
+     * @return The array lengths of all banks.
+     * @throws IOException If the data buffer is not supported.
+     */
+    static int[] getBankLengths(DataBuffer dataBuffer) throws IOException {
+        final int[] bankLengths = new int[dataBuffer.getNumBanks()];
+        for (int bank = 0; bank < bankLengths.length; bank++) {
+            bankLengths[bank] = getBankLength(dataBuffer, bank);
+        }
+        return bankLengths;
+    }
+
+    /**
+     * @param dataType    The data type.
+     * @param bankLengths The array lengths of the banks.
+     * @return The number of bytes of all banks.
+     */
+    static long getDataLength(int dataType, int[] bankLengths) {
+        final long elementSize = DataBuffer.getDataTypeSize(dataType) / 8;
+        long length = 0;
+        for (int bankLength : bankLengths) {
+            length += elementSize * bankLength;
+        }
+        return length;
+    }
+
+    private static int getBankLength(DataBuffer dataBuffer, int bank) throws IOException {
+        if (dataBuffer instanceof DataBufferByte) {
+            return ((DataBufferByte) dataBuffer).getData(bank).length;
+        } else if (dataBuffer instanceof DataBufferShort) {
+            return ((DataBufferShort) dataBuffer).getData(bank).length;
+        } else if (dataBuffer instanceof DataBufferUShort) {
+            return ((DataBufferUShort) dataBuffer).getData(bank).length;
+        } else if (dataBuffer instanceof DataBufferInt) {
+            return ((DataBufferInt) dataBuffer).getData(bank).length;
+        } else if (dataBuffer instanceof DataBufferFloat) {
+            return ((DataBufferFloat) dataBuffer).getData(bank).length;
+        } else if (dataBuffer instanceof DataBufferDouble) {
+            return ((DataBufferDouble) dataBuffer).getData(bank).length;
+        }
+        throw new IOException("illegal dataBuffer: " + dataBuffer.getClass());
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The layout of a tile whose bank data is stored as bytes (see {@link TileData}).
+ *
+ * @author Norman Fomferra
+ * @since Ceres 0.14
+ */
+class TileLayout {
+    final SampleModel sampleModel;
+    final Point location;
+    final boolean writable;
+    final Object tileCacheMetric;
+    final int dataType;
+    final int bufferSize;
+    final int[] bufferOffsets;
+    final int[] bankLengths;
+    final int dataLength;
+
+    /**
+     * @param tile            The tile.
+     * @param tileCacheMetric The tile cache metric, may be {@code null}.
+     * @param maxDataLength   The maximum number of bytes of the tile data.
+     * @throws IOException If the tile's data buffer is not supported.
+     */
+    TileLayout(Raster tile, Object tileCacheMetric, int maxDataLength) throws IOException {
+        final DataBuffer dataBuffer = tile.getDataBuffer();
+        this.sampleModel = tile.getSampleModel();
+        this.location = (Point) tile.getBounds().getLocation().clone();
+        this.writable = tile instanceof WritableRaster;
+        this.tileCacheMetric = tileCacheMetric;
+        this.dataType = dataBuffer.getDataType();
+        this.bufferSize = dataBuffer.getSize();
+        this.bufferOffsets = dataBuffer.getOffsets().clone();
+        this.bankLengths = TileData.getBankLengths(dataBuffer);
+        final long length = TileData.getDataLength(dataType, bankLengths);
+        if (length == 0 || length > maxDataLength) {
+            throw new IOException("illegal tile size: " + length);
+        }
+        this.dataLength = (int) length;
+    }
+
+    /**
+     * Creates a tile from the bank data in the given buffer.
+     *
+     * @param buffer The byte buffer.
+     * @return The tile.
+     * @throws IOException If the data type is not supported.
+     */
+    Raster createTile(ByteBuffer buffer) throws IOException {
+        final DataBuffer dataBuffer = TileData.get(dataType, bankLengths, bufferSize, bufferOffsets, buffer);
+        if (writable) {
+            return Raster.createWritableRaster(sampleModel, dataBuffer, location);
+        } else {
+            return Raster.createRaster(sampleModel, dataBuffer, location);
+        }
+    }
+}
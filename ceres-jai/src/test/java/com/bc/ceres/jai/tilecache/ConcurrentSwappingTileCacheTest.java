@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.bc.ceres.jai.tilecache.TileCacheFixture.*;
+
+public class ConcurrentSwappingTileCacheTest extends TestCase {
+
+    private static final int TILE_SIZE = 32;
+    private static final long TILE_BYTES = TILE_SIZE * TILE_SIZE * 4;
+
+    public void testPartitionCount() {
+        assertEquals(16, new ConcurrentSwappingTileCache(0, new SwapSpaceMock()).getPartitionCount());
+        assertEquals(1, new ConcurrentSwappingTileCache(0, new SwapSpaceMock(), 1).getPartitionCount());
+        assertEquals(8, new ConcurrentSwappingTileCache(0, new SwapSpaceMock(), 5).getPartitionCount());
+        try {
+            new ConcurrentSwappingTileCache(0, new SwapSpaceMock(), 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testSwapAndRestore() {
+        final TiledImage image = createImage(DataBuffer.TYPE_FLOAT, TILE_SIZE, 4, 4);
+        final SwapSpaceMock swapSpace = new SwapSpaceMock();
+        // a single partition behaves like the SwappingTileCache
+        final ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(3 * TILE_BYTES + 1, swapSpace, 1);
+
+        cache.add(image, 0, 0, image.getTile(0, 0));
+        cache.add(image, 1, 0, image.getTile(1, 0));
+        cache.add(image, 0, 1, image.getTile(0, 1));
+        assertEquals("", swapSpace.trace);
+        assertEquals(3, cache.getCacheTileCount());
+        assertEquals(3 * TILE_BYTES, cache.getCacheMemoryUsed());
+
+        // two tiles swapped out in LRU order, because memoryThreshold=75%
+        cache.add(image, 3, 2, image.getTile(3, 2));
+        assertEquals("storeTile(0-0-0);storeTile(0-1-0);", swapSpace.trace);
+        assertEquals(2, cache.getCacheTileCount());
+        assertEquals(2 * TILE_BYTES, cache.getCacheMemoryUsed());
+
+        // a referenced tile gets a second chance
+        swapSpace.trace = "";
+        assertSame(image.getTile(0, 1), cache.getTile(image, 0, 1));
+        assertNotNull(cache.getTile(image, 0, 0));
+        assertEquals("restoreTile(0-0-0)=MemoryTile;", swapSpace.trace);
+        swapSpace.trace = "";
+        assertNotNull(cache.getTile(image, 1, 0));
+        assertEquals("restoreTile(0-1-0)=MemoryTile;storeTile(0-3-2);storeTile(0-0-1);", swapSpace.trace);
+        assertEquals(2, cache.getCacheTileCount());
+
+        swapSpace.trace = "";
+        assertNull(cache.getTile(image, 3, 3));
+        assertEquals("restoreTile(0-3-3)=null;", swapSpace.trace);
+        assertEquals(3, cache.getCacheHitCount());
+        assertEquals(1, cache.getCacheMissCount());
+
+        swapSpace.trace = "";
+        cache.remove(image, 0, 0);
+        cache.remove(image, 3, 2);
+        assertEquals("deleteTile(0-0-0)=true;deleteTile(0-3-2)=true;", swapSpace.trace);
+        assertEquals(1, cache.getCacheTileCount());
+        assertEquals(TILE_BYTES, cache.getCacheMemoryUsed());
+
+        cache.flush();
+        assertEquals(0, cache.getCacheTileCount());
+        assertEquals(0, cache.getCacheMemoryUsed());
+        assertEquals(0, cache.getCacheHitCount());
+    }
+
+    public void testMemoryCapacity() {
+        final TiledImage image = createImage(DataBuffer.TYPE_FLOAT, TILE_SIZE, 16, 16);
+        final SwapSpaceMock swapSpace = new SwapSpaceMock();
+        swapSpace.tracing = false;
+        final ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(64 * TILE_BYTES, swapSpace, 4);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                cache.add(image, x, y, image.getTile(x, y));
+                assertTrue(cache.getCacheMemoryUsed() <= cache.getMemoryCapacity());
+            }
+        }
+        assertEquals(256, cache.getCacheTileCount() + swapSpace.tiles.size());
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                assertNotNull(cache.getTile(image, x, y));
+            }
+        }
+
+        cache.setMemoryCapacity(16 * TILE_BYTES);
+        assertTrue(cache.getCacheMemoryUsed() <= 12 * TILE_BYTES);
+        assertEquals(cache.getCacheMemoryUsed(), cache.getCacheTileCount() * TILE_BYTES);
+    }
+
+    public void testMemoryControlEvictsDownToThreshold() {
+        final TiledImage image = createImage(DataBuffer.TYPE_FLOAT, TILE_SIZE, 16, 16);
+        final SwapSpaceMock swapSpace = new SwapSpaceMock();
+        swapSpace.tracing = false;
+        final ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(256 * TILE_BYTES, swapSpace);
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                cache.add(image, x, y, image.getTile(x, y));
+            }
+        }
+        assertEquals(256, cache.getCacheTileCount());
+
+        // Expected: tiles are evicted one at a time until the memory threshold is reached, although the
+        // share of each of the 16 partitions is less than a tile
+        cache.setMemoryCapacity(16 * TILE_BYTES);
+        assertEquals(12 * TILE_BYTES, cache.getCacheMemoryUsed());
+        assertEquals(12, cache.getCacheTileCount());
+        assertEquals(244, swapSpace.tiles.size());
+    }
+
+    public void testTilesAreStoredWithoutPartitionLock() throws InterruptedException {
+        final TiledImage image = createImage(DataBuffer.TYPE_FLOAT, TILE_SIZE, 4, 4);
+        final BlockingSwapSpaceMock swapSpace = new BlockingSwapSpaceMock();
+        final ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(4 * TILE_BYTES + 1, swapSpace, 1);
+        cache.add(image, 0, 0, image.getTile(0, 0));
+        cache.add(image, 1, 0, image.getTile(1, 0));
+        cache.add(image, 0, 1, image.getTile(0, 1));
+        cache.add(image, 3, 2, image.getTile(3, 2));
+
+        // Expected: tiles 0-0-0 and 0-1-0 are evicted, 0-0-0 is being written
+        final Thread evictingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.add(image, 2, 2, image.getTile(2, 2));
+            }
+        });
+        evictingThread.start();
+        swapSpace.storeLatch.await();
+        assertEquals(3, cache.getCacheTileCount());
+
+        // Expected: the pending tile is reclaimed without I/O, and the partition is not locked
+        assertSame(image.getTile(1, 0), cache.getTile(image, 1, 0));
+        final Thread removingThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.remove(image, 0, 1);
+            }
+        });
+        removingThread.start();
+        removingThread.join(10000);
+        assertFalse(removingThread.isAlive());
+        assertEquals(3, cache.getCacheTileCount());
+
+        swapSpace.writeLatch.countDown();
+        evictingThread.join();
+        assertEquals("deleteTile(0-0-1)=false;storeTile(0-0-0);", swapSpace.trace);
+    }
+
+    public void testRemoveDuringRestore() throws InterruptedException {
+        final TiledImage image = createImage(DataBuffer.TYPE_FLOAT, TILE_SIZE, 4, 4);
+        final RestoreBlockingSwapSpaceMock swapSpace = new RestoreBlockingSwapSpaceMock();
+        final ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(3 * TILE_BYTES + 1, swapSpace, 1);
+        cache.add(image, 0, 0, image.getTile(0, 0));
+        cache.add(image, 1, 0, image.getTile(1, 0));
+        cache.add(image, 0, 1, image.getTile(0, 1));
+        cache.add(image, 3, 2, image.getTile(3, 2));
+        assertTrue(swapSpace.containsTile(image, 0, 0));
+        assertEquals(2, cache.getCacheTileCount());
+
+        final Raster[] restoredTile = new Raster[1];
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                restoredTile[0] = cache.getTile(image, 0, 0);
+            }
+        });
+        thread.start();
+        swapSpace.restoreLatch.await();
+
+        // Expected: the tile read before its removal is not added to the cache
+        cache.remove(image, 0, 0);
+        swapSpace.releaseLatch.countDown();
+        thread.join();
+        assertNull(restoredTile[0]);
+        assertEquals(2, cache.getCacheTileCount());
+        assertNull(cache.getTile(image, 0, 0));
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final TiledImage image = createImage(DataBuffer.TYPE_FLOAT, TILE_SIZE, 32, 32);
+        final SwapSpaceMock swapSpace = new SwapSpaceMock();
+        swapSpace.tracing = false;
+        final ConcurrentSwappingTileCache cache = new ConcurrentSwappingTileCache(100 * TILE_BYTES, swapSpace);
+        final int threadCount = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        try {
+            final List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+            for (int i = 0; i < threadCount; i++) {
+                final Random random = new Random(i);
+                tasks.add(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int misses = 0;
+                        for (int k = 0; k < 5000; k++) {
+                            final int x = random.nextInt(32);
+                            final int y = random.nextInt(32);
+                            final Raster tile = cache.getTile(image, x, y);
+                            if (tile == null) {
+                                misses++;
+                                cache.add(image, x, y, image.getTile(x, y));
+                            } else {
+                                assertEquals(x * TILE_SIZE, tile.getMinX());
+                                assertEquals(y * TILE_SIZE, tile.getMinY());
+                            }
+                        }
+                        return misses;
+                    }
+                });
+            }
+            for (Future<Integer> future : executor.invokeAll(tasks)) {
+                // a tile misses only until it has been added once
+                assertTrue(future.get() <= 32 * 32);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.getCacheMemoryUsed() <= cache.getMemoryCapacity());
+        assertEquals(cache.getCacheMemoryUsed(), cache.getCacheTileCount() * TILE_BYTES);
+        for (int y = 0; y < 32; y++) {
+            for (int x = 0; x < 32; x++) {
+                final Raster tile = cache.getTile(image, x, y);
+                if (tile != null) {
+                    assertEquals(x * TILE_SIZE, tile.getMinX());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.nio.ByteBuffer;
+
+import static com.bc.ceres.jai.tilecache.TileCacheFixture.*;
+
+public class OffHeapSwapSpaceTest extends TestCase {
+
+    private static final int TILE_BYTES = 64 * 64 * 4;
+
+    public void testStoreRestoreSpill() {
+        TiledImage image = createImage(DataBuffer.TYPE_FLOAT, 64, 4, 4);
+        SwapSpaceMock spillSpace = new SwapSpaceMock();
+        OffHeapSwapSpace swapSpace = new OffHeapSwapSpace(4 * TILE_BYTES, 2 * TILE_BYTES, spillSpace);
+
+        for (int x = 0; x < 4; x++) {
+            assertTrue(swapSpace.storeTile(createTile(image, x, 0)));
+        }
+        // Expected: the slot of the outdated copy is reused
+        assertTrue(swapSpace.storeTile(createTile(image, 0, 0)));
+        assertEquals(4, swapSpace.getTileCount());
+        assertEquals(4L * TILE_BYTES, swapSpace.getMemoryUsage());
+        assertEquals(0, swapSpace.getSpillCount());
+        assertEquals("" +
+                "deleteTile(0-0-0)=false;" +
+                "deleteTile(0-1-0)=false;" +
+                "deleteTile(0-2-0)=false;" +
+                "deleteTile(0-3-0)=false;" +
+                "deleteTile(0-0-0)=false;", spillSpace.trace);
+
+        // Expected: the off-heap memory is exhausted
+        spillSpace.trace = "";
+        assertTrue(swapSpace.storeTile(createTile(image, 0, 1)));
+        assertEquals(1, swapSpace.getSpillCount());
+        assertEquals("storeTile(0-0-1);", spillSpace.trace);
+
+        // Expected: restored without the spill space, and kept in off-heap memory
+        spillSpace.trace = "";
+        assertRestoredTile(swapSpace.restoreTile(image, 1, 0), 1, 0);
+        assertRestoredTile(swapSpace.restoreTile(image, 1, 0), 1, 0);
+        assertEquals("", spillSpace.trace);
+        assertEquals(4, swapSpace.getTileCount());
+        assertRestoredTile(swapSpace.restoreTile(image, 0, 1), 0, 1);
+        assertEquals("restoreTile(0-0-1)=MemoryTile;", spillSpace.trace);
+
+        spillSpace.trace = "";
+        assertTrue(swapSpace.deleteTile(image, 1, 0));
+        assertFalse(swapSpace.deleteTile(image, 1, 0));
+        assertNull(swapSpace.restoreTile(image, 1, 0));
+        assertEquals("" +
+                "deleteTile(0-1-0)=false;" +
+                "deleteTile(0-1-0)=false;" +
+                "restoreTile(0-1-0)=null;", spillSpace.trace);
+        assertEquals(3, swapSpace.getTileCount());
+
+        // Expected: the released slot is reused and the spilled copy is deleted
+        spillSpace.trace = "";
+        assertTrue(swapSpace.storeTile(createTile(image, 0, 1)));
+        assertEquals("deleteTile(0-0-1)=true;", spillSpace.trace);
+        assertEquals(4, swapSpace.getTileCount());
+        assertEquals(4L * TILE_BYTES, swapSpace.getMemoryUsage());
+    }
+
+    public void testEmptySlabsAreReused() {
+        TiledImage floatImage = createImage(DataBuffer.TYPE_FLOAT, 64, 4, 4);
+        TiledImage byteImage = createImage(DataBuffer.TYPE_BYTE, 64, 4, 4);
+        SwapSpaceMock spillSpace = new SwapSpaceMock();
+        OffHeapSwapSpace swapSpace = new OffHeapSwapSpace(4 * TILE_BYTES, 2 * TILE_BYTES, spillSpace);
+
+        for (int x = 0; x < 4; x++) {
+            assertTrue(swapSpace.storeTile(createTile(floatImage, x, 0)));
+        }
+        for (int x = 0; x < 2; x++) {
+            assertTrue(swapSpace.deleteTile(floatImage, x, 0));
+        }
+        // Expected: the empty slab is divided into 8 slots for byte tiles
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 2; y++) {
+                assertTrue(swapSpace.storeTile(createTile(byteImage, x, y)));
+            }
+        }
+        assertEquals(10, swapSpace.getTileCount());
+        assertEquals(0, swapSpace.getSpillCount());
+        assertEquals(4L * TILE_BYTES, swapSpace.getMemoryUsage());
+        assertTrue(swapSpace.storeTile(createTile(byteImage, 0, 2)));
+        assertEquals(1, swapSpace.getSpillCount());
+
+        for (int x = 0; x < 4; x++) {
+            for (int y = 0; y < 2; y++) {
+                assertRestoredTile(swapSpace.restoreTile(byteImage, x, y), x, y);
+            }
+        }
+        assertRestoredTile(swapSpace.restoreTile(floatImage, 3, 0), 3, 0);
+    }
+
+    public void testEmptySlabsRemainCounted() {
+        TiledImage smallImage = createImage(DataBuffer.TYPE_FLOAT, 64, 4, 4);
+        TiledImage largeImage = createImage(DataBuffer.TYPE_FLOAT, 128, 4, 4);
+        SwapSpaceMock spillSpace = new SwapSpaceMock();
+        OffHeapSwapSpace swapSpace = new OffHeapSwapSpace(4 * TILE_BYTES, 2 * TILE_BYTES, spillSpace);
+
+        for (int x = 0; x < 4; x++) {
+            assertTrue(swapSpace.storeTile(createTile(smallImage, x, 0)));
+        }
+        for (int x = 0; x < 4; x++) {
+            assertTrue(swapSpace.deleteTile(smallImage, x, 0));
+        }
+        // Expected: the empty slabs are too small for the large tile and cannot be freed, the tile is spilled
+        assertTrue(swapSpace.storeTile(createTile(largeImage, 0, 0)));
+        assertEquals(1, swapSpace.getSpillCount());
+        assertEquals(4L * TILE_BYTES, swapSpace.getMemoryUsage());
+
+        // Expected: the empty slabs are still used for small tiles
+        for (int x = 0; x < 4; x++) {
+            assertTrue(swapSpace.storeTile(createTile(smallImage, x, 1)));
+        }
+        assertEquals(1, swapSpace.getSpillCount());
+        assertEquals(4, swapSpace.getTileCount());
+        assertEquals(4L * TILE_BYTES, swapSpace.getMemoryUsage());
+    }
+
+    public void testDirectMemoryExhausted() {
+        TiledImage image = createImage(DataBuffer.TYPE_FLOAT, 64, 4, 4);
+        SwapSpaceMock spillSpace = new SwapSpaceMock();
+        OffHeapSwapSpace swapSpace = new OffHeapSwapSpace(4 * TILE_BYTES, 2 * TILE_BYTES, spillSpace) {
+            @Override
+            ByteBuffer allocateBuffer(int size) {
+                if (getMemoryUsage() > 0) {
+                    throw new OutOfMemoryError("Direct buffer memory");
+                }
+                return super.allocateBuffer(size);
+            }
+        };
+
+        for (int x = 0; x < 4; x++) {
+            assertTrue(swapSpace.storeTile(createTile(image, x, 0)));
+        }
+        // Expected: the tiles which don't fit into the first slab are spilled
+        assertEquals(2, swapSpace.getTileCount());
+        assertEquals(2, swapSpace.getSpillCount());
+        assertEquals(2L * TILE_BYTES, swapSpace.getMemoryUsage());
+        assertEquals(2, spillSpace.tiles.size());
+        for (int x = 0; x < 4; x++) {
+            assertRestoredTile(swapSpace.restoreTile(image, x, 0), x, 0);
+        }
+    }
+
+    public void testWithSwappingTileCache() {
+        TiledImage image = createImage(DataBuffer.TYPE_FLOAT, 64, 4, 4);
+        SwapSpaceMock spillSpace = new SwapSpaceMock();
+        OffHeapSwapSpace swapSpace = new OffHeapSwapSpace(8 * TILE_BYTES, 4 * TILE_BYTES, spillSpace);
+        SwappingTileCache cache = new SwappingTileCache(4L * TILE_BYTES, swapSpace);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                cache.add(image, x, y, createTile(image, x, y).getTile());
+            }
+        }
+        assertEquals(8, swapSpace.getTileCount());
+        assertEquals(16, swapSpace.getTileCount() + spillSpace.tiles.size() + cache.getCacheTileCount());
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                Raster tile = cache.getTile(image, x, y);
+                assertRestoredTile(new MemoryTile(image, x, y, tile, null), x, y);
+            }
+        }
+        cache.removeTiles(image);
+        assertEquals(0, swapSpace.getTileCount());
+        assertEquals(0, spillSpace.tiles.size());
+    }
+}
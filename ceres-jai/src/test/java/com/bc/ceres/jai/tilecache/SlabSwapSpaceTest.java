@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import static com.bc.ceres.jai.tilecache.TileCacheFixture.*;
+
+public class SlabSwapSpaceTest extends TestCase {
+
+    private static final int TILE_BYTES = 64 * 64 * 4;
+
+    private File swapFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        swapFile = File.createTempFile("SlabSwapSpaceTest-", ".bin");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        swapFile.delete();
+    }
+
+    public void testStoreRestoreDelete() throws IOException {
+        testStoreRestoreDelete(false);
+    }
+
+    public void testStoreRestoreDeleteMemoryMapped() throws IOException {
+        testStoreRestoreDelete(true);
+    }
+
+    private void testStoreRestoreDelete(boolean memoryMapped) throws IOException {
+        TiledImage image = createImage(DataBuffer.TYPE_FLOAT, 64, 4, 4);
+        SlabSwapSpace swapSpace = new SlabSwapSpace(swapFile, 0L, 3 * TILE_BYTES, memoryMapped, Logger.getAnonymousLogger());
+        assertEquals(0L, swapSpace.getFileSize());
+
+        assertTrue(swapSpace.storeTile(createTile(image, 0, 0)));
+        assertTrue(swapSpace.storeTile(createTile(image, 1, 0)));
+        assertFalse(swapSpace.storeTile(createTile(image, 1, 0)));
+        assertEquals(2, swapSpace.getTileCount());
+        assertEquals(1, swapSpace.getFreeSlotCount());
+        assertEquals(3L * TILE_BYTES, swapSpace.getFileSize());
+
+        assertRestoredTile(swapSpace.restoreTile(image, 0, 0), 0, 0);
+        assertRestoredTile(swapSpace.restoreTile(image, 1, 0), 1, 0);
+        assertNull(swapSpace.restoreTile(image, 2, 0));
+
+        // Expected: a second slab is added for the fourth tile
+        assertTrue(swapSpace.storeTile(createTile(image, 2, 0)));
+        assertTrue(swapSpace.storeTile(createTile(image, 3, 0)));
+        assertEquals(4, swapSpace.getTileCount());
+        assertEquals(2, swapSpace.getFreeSlotCount());
+        assertEquals(6L * TILE_BYTES, swapSpace.getFileSize());
+
+        // Expected: slots of deleted tiles are reused
+        assertTrue(swapSpace.deleteTile(image, 0, 0));
+        assertFalse(swapSpace.deleteTile(image, 0, 0));
+        assertTrue(swapSpace.deleteTile(image, 1, 0));
+        assertNull(swapSpace.restoreTile(image, 0, 0));
+        assertEquals(4, swapSpace.getFreeSlotCount());
+        assertTrue(swapSpace.storeTile(createTile(image, 0, 1)));
+        assertTrue(swapSpace.storeTile(createTile(image, 1, 1)));
+        assertTrue(swapSpace.storeTile(createTile(image, 2, 1)));
+        assertTrue(swapSpace.storeTile(createTile(image, 3, 1)));
+        assertEquals(6, swapSpace.getTileCount());
+        assertEquals(0, swapSpace.getFreeSlotCount());
+        assertEquals(6L * TILE_BYTES, swapSpace.getFileSize());
+
+        assertRestoredTile(swapSpace.restoreTile(image, 2, 0), 2, 0);
+        assertRestoredTile(swapSpace.restoreTile(image, 3, 0), 3, 0);
+        assertRestoredTile(swapSpace.restoreTile(image, 0, 1), 0, 1);
+        assertRestoredTile(swapSpace.restoreTile(image, 3, 1), 3, 1);
+
+        swapSpace.close();
+        assertFalse(swapFile.exists());
+        assertEquals(0L, swapSpace.getFileSize());
+        assertNull(swapSpace.restoreTile(image, 2, 0));
+        assertFalse(swapSpace.storeTile(createTile(image, 2, 2)));
+    }
+
+    public void testWithSwappingTileCache() throws IOException {
+        TiledImage image = createImage(DataBuffer.TYPE_FLOAT, 64, 4, 4);
+        SlabSwapSpace swapSpace = new SlabSwapSpace(swapFile, 16L * TILE_BYTES, 4 * TILE_BYTES, false, Logger.getAnonymousLogger());
+        SwappingTileCache cache = new SwappingTileCache(4L * TILE_BYTES, swapSpace);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                cache.add(image, x, y, createTile(image, x, y).getTile());
+            }
+        }
+        assertEquals(16, swapSpace.getTileCount() + cache.getCacheTileCount());
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                assertRestoredTile(new MemoryTile(image, x, y, cache.getTile(image, x, y), null), x, y);
+            }
+        }
+        cache.removeTiles(image);
+        assertEquals(0, swapSpace.getTileCount());
+        assertEquals(swapSpace.getFileSize() / TILE_BYTES, swapSpace.getFreeSlotCount());
+        swapSpace.close();
+    }
+}
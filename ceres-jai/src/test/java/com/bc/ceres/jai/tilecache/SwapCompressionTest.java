@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.ComponentSampleModelJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Logger;
+
+public class SwapCompressionTest extends TestCase {
+
+    public void testShuffle() {
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+        byte[] shuffled = ShuffleLzTileCodec.shuffle(data, data.length, 4);
+        assertTrue(Arrays.equals(new byte[]{1, 5, 2, 6, 3, 7, 4, 8, 9, 10, 11}, shuffled));
+        byte[] unshuffled = new byte[data.length];
+        ShuffleLzTileCodec.unshuffle(shuffled, unshuffled, data.length, 4);
+        assertTrue(Arrays.equals(data, unshuffled));
+        assertSame(data, ShuffleLzTileCodec.shuffle(data, data.length, 1));
+    }
+
+    public void testShuffleLzTileCodec() throws IOException {
+        testCodec(new ShuffleLzTileCodec(), 4.0);
+    }
+
+    public void testDeflateTileCodec() throws IOException {
+        testCodec(new DeflateTileCodec(1), 4.0);
+        testCodec(new DeflateTileCodec(6, true), 4.0);
+        testCodec(new DeflateTileCodec(0), 0.9);
+    }
+
+    public void testCorruptData() {
+        ShuffleLzTileCodec codec = new ShuffleLzTileCodec();
+        byte[] data = createFloatData(64 * 64, 0.5);
+        byte[] encoded = new byte[data.length];
+        int encodedLength = codec.encode(data, data.length, 4, encoded);
+        assertTrue(encodedLength > 0);
+        try {
+            codec.decode(encoded, encodedLength - 3, new byte[data.length], data.length, 4);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // ok
+        }
+        try {
+            codec.decode(encoded, encodedLength, new byte[data.length - 1], data.length - 1, 4);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // ok
+        }
+    }
+
+    public void testIncompressibleData() throws IOException {
+        SwapCompression compression = SwapCompression.createDefault();
+        byte[] data = new byte[4096];
+        new Random(5).nextBytes(data);
+        assertNull(compression.encode(DataBuffer.TYPE_BYTE, data, data.length));
+        assertEquals(1, compression.getEncodedTileCount());
+        assertEquals(1.0, compression.getCompressionRatio(), 1e-10);
+    }
+
+    public void testStatistics() throws IOException {
+        SwapCompression compression = new SwapCompression();
+        assertNull(compression.getCodec(DataBuffer.TYPE_FLOAT));
+        byte[] data = createFloatData(256 * 256, 0.1);
+        assertNull(compression.encode(DataBuffer.TYPE_FLOAT, data, data.length));
+        assertEquals(0, compression.getEncodedTileCount());
+
+        ShuffleLzTileCodec codec = new ShuffleLzTileCodec();
+        compression.setCodec(DataBuffer.TYPE_FLOAT, codec);
+        assertSame(codec, compression.getCodec(DataBuffer.TYPE_FLOAT));
+        SwapCompression.Encoded encoded = compression.encode(DataBuffer.TYPE_FLOAT, data, data.length);
+        assertNotNull(encoded);
+        assertSame(codec, encoded.codec);
+        byte[] decoded = compression.decode(DataBuffer.TYPE_FLOAT, encoded.codec, encoded.data, encoded.length, data.length);
+        assertTrue(Arrays.equals(data, decoded));
+
+        assertEquals(1, compression.getEncodedTileCount());
+        assertEquals(1, compression.getDecodedTileCount());
+        assertEquals(data.length, compression.getRawSize());
+        assertEquals(encoded.length, compression.getEncodedSize());
+        assertEquals((double) data.length / encoded.length, compression.getCompressionRatio(), 1e-10);
+        assertTrue(compression.getCompressionRatio() > 4.0);
+        assertTrue(compression.getEncodeTime() >= 0);
+        assertTrue(compression.getDecodeTime() >= 0);
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        assertEquals(threadMXBean.isCurrentThreadCpuTimeSupported() && threadMXBean.isThreadCpuTimeEnabled(),
+                     SwapCompression.isCpuTimeMeasured());
+
+        compression.resetStatistics();
+        assertEquals(0, compression.getEncodedTileCount());
+        assertEquals(1.0, compression.getCompressionRatio(), 1e-10);
+
+        try {
+            compression.setCodec(DataBuffer.TYPE_UNDEFINED, codec);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    public void testCompressedSwapSpaces() throws IOException {
+        File swapFile = File.createTempFile("SwapCompressionTest-", ".bin");
+        try {
+            SwapCompression compression = SwapCompression.createDefault();
+            compression.setCodec(DataBuffer.TYPE_USHORT, new DeflateTileCodec(6, true));
+            testSwapSpace(new SlabSwapSpace(swapFile, 0L, SlabSwapSpace.DEFAULT_SLAB_SIZE, false, compression,
+                                            Logger.getAnonymousLogger()), compression);
+            compression.resetStatistics();
+            testSwapSpace(new SlabSwapSpace(swapFile, 0L, SlabSwapSpace.DEFAULT_SLAB_SIZE, true, compression,
+                                            Logger.getAnonymousLogger()), compression);
+            compression.resetStatistics();
+            testSwapSpace(new DefaultSwapSpace(swapFile.getParentFile(), Logger.getAnonymousLogger(), compression),
+                          compression);
+        } finally {
+            swapFile.delete();
+        }
+    }
+
+    private static void testSwapSpace(SwapSpace swapSpace, SwapCompression compression) throws IOException {
+        TiledImage floatImage = createImage(DataBuffer.TYPE_FLOAT);
+        TiledImage ushortImage = createImage(DataBuffer.TYPE_USHORT);
+        for (int x = 0; x < 2; x++) {
+            fillTile((WritableRaster) floatImage.getTile(x, 0), x);
+            fillTile((WritableRaster) ushortImage.getTile(x, 0), x);
+            assertTrue(swapSpace.storeTile(new MemoryTile(floatImage, x, 0, floatImage.getTile(x, 0), null)));
+            assertTrue(swapSpace.storeTile(new MemoryTile(ushortImage, x, 0, ushortImage.getTile(x, 0), null)));
+        }
+        assertEquals(4, compression.getEncodedTileCount());
+        assertTrue(compression.getCompressionRatio() > 4.0);
+
+        for (int x = 0; x < 2; x++) {
+            testEqualTiles(floatImage.getTile(x, 0), swapSpace.restoreTile(floatImage, x, 0).getTile());
+            testEqualTiles(ushortImage.getTile(x, 0), swapSpace.restoreTile(ushortImage, x, 0).getTile());
+            assertTrue(swapSpace.deleteTile(floatImage, x, 0));
+            assertTrue(swapSpace.deleteTile(ushortImage, x, 0));
+        }
+        assertEquals(4, compression.getDecodedTileCount());
+        if (swapSpace instanceof SlabSwapSpace) {
+            ((SlabSwapSpace) swapSpace).close();
+        }
+    }
+
+    private static void testCodec(TileCodec codec, double minRatio) throws IOException {
+        testCodec(codec, createFloatData(256 * 256, 0.1), 4, minRatio);
+        testCodec(codec, createFloatData(256 * 256, 1.0), 4, 0.0);
+        testCodec(codec, createFloatData(3, 0.0), 4, 0.0);
+        testCodec(codec, new byte[17], 1, 0.0);
+        byte[] data = new byte[100000];
+        new Random(7).nextBytes(data);
+        testCodec(codec, data, 1, 0.0);
+    }
+
+    private static void testCodec(TileCodec codec, byte[] data, int elementSize, double minRatio) throws IOException {
+        byte[] encoded = new byte[data.length + 64];
+        int encodedLength = codec.encode(data, data.length, elementSize, encoded);
+        if (minRatio > 0.0) {
+            assertTrue(codec.getName(), encodedLength > 0);
+            assertTrue(codec.getName() + ": " + (double) data.length / encodedLength,
+                       (double) data.length / encodedLength >= minRatio);
+        }
+        if (encodedLength >= 0) {
+            byte[] decoded = new byte[data.length];
+            codec.decode(encoded, encodedLength, decoded, data.length, elementSize);
+            assertTrue(codec.getName(), Arrays.equals(data, decoded));
+        }
+    }
+
+    /**
+     * @return Float data with a fraction of random values, the other values being a no-data value.
+     */
+    private static byte[] createFloatData(int n, double randomFraction) {
+        Random random = new Random(42);
+        ByteBuffer buffer = ByteBuffer.allocate(4 * n).order(ByteOrder.nativeOrder());
+        int randomCount = (int) (n * randomFraction);
+        for (int i = 0; i < n; i++) {
+            buffer.putFloat(i < randomCount ? random.nextFloat() : -9999.0F);
+        }
+        return buffer.array();
+    }
+
+    private static TiledImage createImage(int dataType) {
+        ComponentSampleModelJAI sm = new ComponentSampleModelJAI(dataType, 128, 128, 1, 128, new int[1]);
+        return new TiledImage(0, 0, 2 * 128, 128, 0, 0, sm, PlanarImage.createColorModel(sm));
+    }
+
+    private static void fillTile(WritableRaster tile, int tileX) {
+        // a small ramp in a large no-data area
+        for (int y = 0; y < 16; y++) {
+            for (int x = 0; x < 16; x++) {
+                tile.setSample(tile.getMinX() + x, tile.getMinY() + y, 0, 100 * tileX + x + y);
+            }
+        }
+    }
+
+    private static void testEqualTiles(Raster expected, Raster actual) {
+        assertEquals(expected.getBounds(), actual.getBounds());
+        assertEquals(expected.getSampleModel(), actual.getSampleModel());
+        assertEquals(expected.getDataBuffer().getDataType(), actual.getDataBuffer().getDataType());
+        for (int y = expected.getMinY(); y < expected.getMinY() + expected.getHeight(); y++) {
+            for (int x = expected.getMinX(); x < expected.getMinX() + expected.getWidth(); x++) {
+                assertEquals(expected.getSampleDouble(x, y, 0), actual.getSampleDouble(x, y, 0));
+            }
+        }
+    }
+}
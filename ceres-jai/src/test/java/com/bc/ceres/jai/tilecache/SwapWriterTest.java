@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import junit.framework.TestCase;
+
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+
+import static com.bc.ceres.jai.tilecache.TileCacheFixture.*;
+
+public class SwapWriterTest extends TestCase {
+
+    private TiledImage image;
+
+    @Override
+    protected void setUp() throws Exception {
+        image = createImage(DataBuffer.TYPE_FLOAT, 16, 4, 4);
+    }
+
+    public void testShutdownEndsThread() throws InterruptedException {
+        SwapSpaceMock swapSpace = new SwapSpaceMock();
+        SwapWriter writer = new SwapWriter(swapSpace, 4);
+        assertNull(writer.getThread());
+
+        writer.enqueue(createTile(image, 0, 0));
+        Thread thread = writer.getThread();
+        assertNotNull(thread);
+        writer.shutdown();
+        assertNull(writer.getThread());
+        assertFalse(thread.isAlive());
+        assertEquals("storeTile(0-0-0);", swapSpace.trace);
+
+        // Expected: the thread is started again
+        writer.enqueue(createTile(image, 1, 0));
+        assertNotNull(writer.getThread());
+        writer.awaitPendingWrites();
+        assertEquals("storeTile(0-0-0);storeTile(0-1-0);", swapSpace.trace);
+        writer.shutdown();
+        assertNull(writer.getThread());
+    }
+
+    public void testFailedWriteDoesNotEndThread() throws InterruptedException {
+        FailingSwapSpaceMock swapSpace = new FailingSwapSpaceMock();
+        swapSpace.storeFailureCount = 1;
+        SwapWriter writer = new SwapWriter(swapSpace, 4);
+
+        writer.enqueue(createTile(image, 0, 0));
+        writer.enqueue(createTile(image, 1, 0));
+        Thread thread = writer.getThread();
+        writer.awaitPendingWrites();
+        assertEquals("storeTile(0-1-0);", swapSpace.trace);
+        assertSame(thread, writer.getThread());
+        assertTrue(thread.isAlive());
+        writer.shutdown();
+    }
+
+    public void testInterruptedThreadIsReplaced() throws InterruptedException {
+        SwapSpaceMock swapSpace = new SwapSpaceMock();
+        SwapWriter writer = new SwapWriter(swapSpace, 1);
+
+        writer.enqueue(createTile(image, 0, 0));
+        writer.awaitPendingWrites();
+        Thread thread = writer.getThread();
+        thread.interrupt();
+        thread.join();
+        assertNull(writer.getThread());
+
+        writer.enqueue(createTile(image, 1, 0));
+        writer.enqueue(createTile(image, 2, 0));
+        writer.drain();
+        writer.awaitPendingWrites();
+        assertEquals(0, writer.getPendingTileCount());
+        assertEquals("storeTile(0-0-0);storeTile(0-1-0);storeTile(0-2-0);", swapSpace.trace);
+        writer.shutdown();
+    }
+
+    public void testWriteThrough() throws InterruptedException {
+        SwapSpaceMock swapSpace = new SwapSpaceMock();
+        SwapWriter writer = new SwapWriter(swapSpace, 0);
+
+        writer.enqueue(createTile(image, 0, 0));
+        writer.enqueue(createTile(image, 1, 0));
+        assertNull(writer.getThread());
+        assertEquals(2, writer.getPendingTileCount());
+        writer.drain();
+        assertEquals(0, writer.getPendingTileCount());
+        assertEquals("storeTile(0-0-0);storeTile(0-1-0);", swapSpace.trace);
+    }
+
+    /**
+     * A swap space mock whose stores fail like an exhausted direct memory.
+     */
+    private static class FailingSwapSpaceMock extends SwapSpaceMock {
+        int storeFailureCount;
+
+        @Override
+        public synchronized boolean storeTile(MemoryTile memoryTile) {
+            if (storeFailureCount > 0) {
+                storeFailureCount--;
+                throw new OutOfMemoryError("Direct buffer memory");
+            }
+            return super.storeTile(memoryTile);
+        }
+    }
+}
@@ -18,13 +18,11 @@ package com.bc.ceres.jai.tilecache;
 
 import junit.framework.TestCase;
 
-import javax.media.jai.ComponentSampleModelJAI;
-import javax.media.jai.PlanarImage;
 import javax.media.jai.TiledImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
-import java.awt.image.RenderedImage;
-import java.util.HashMap;
+
+import static com.bc.ceres.jai.tilecache.TileCacheFixture.*;
 
 public class SwappingTileCacheTest extends TestCase {
 
@@ -32,7 +30,7 @@ public class SwappingTileCacheTest extends TestCase {
     public void testTileStoreRestore() {
         long tileSize = 256 * 256 * 4;
 
-        TiledImage im0 = createImage(4, 4);
+        TiledImage im0 = createImage(DataBuffer.TYPE_FLOAT, 256, 4, 4);
         SwapSpaceMock swapSpaceMock = new SwapSpaceMock();
         SwappingTileCache cache = new SwappingTileCache(3 * tileSize + 1, swapSpaceMock);
 
@@ -120,7 +118,7 @@ public class SwappingTileCacheTest extends TestCase {
         assertFalse(swapSpaceMock.containsTile(im0, 0, 1));
         assertTrue(swapSpaceMock.containsTile(im0, 3, 2));
 
-        TiledImage im1 = createImage(4, 4);
+        TiledImage im1 = createImage(DataBuffer.TYPE_FLOAT, 256, 4, 4);
 
         swapSpaceMock.trace = "";
         cache.add(im1, 0, 0, im1.getTile(0, 0));
@@ -202,63 +200,163 @@ public class SwappingTileCacheTest extends TestCase {
                      swapSpaceMock.trace);
     }
 
-    private static TiledImage createImage(int numXTiles, int numYTiles) {
-        ComponentSampleModelJAI sm = new ComponentSampleModelJAI(DataBuffer.TYPE_FLOAT, 256, 256, 1, 256, new int[1]);
-        return new TiledImage(0, 0, numXTiles * 256, numYTiles * 256, 0, 0, sm, PlanarImage.createColorModel(sm));
-    }
+    public void testWriteBehind() throws InterruptedException {
+        long tileSize = 256 * 256 * 4;
 
-    private void testEqualTile(Raster tile00, Raster tile00r) {
-        assertNotNull(tile00);
-        assertNotNull(tile00r);
-        assertEquals(tile00.getWidth(), tile00r.getWidth());
-        assertEquals(tile00.getHeight(), tile00r.getHeight());
-        assertEquals(tile00.getSampleModel(), tile00r.getSampleModel());
+        TiledImage im0 = createImage(DataBuffer.TYPE_FLOAT, 256, 4, 4);
+        BlockingSwapSpaceMock swapSpaceMock = new BlockingSwapSpaceMock();
+        SwappingTileCache cache = new SwappingTileCache(3 * tileSize + 1, swapSpaceMock, 4);
+
+        Raster tile00 = im0.getTile(0, 0);
+        Raster tile10 = im0.getTile(1, 0);
+        Raster tile01 = im0.getTile(0, 1);
+        Raster tile32 = im0.getTile(3, 2);
+
+        // Expected: 2 tiles swapped out, but not yet written
+        cache.add(im0, 0, 0, tile00);
+        cache.add(im0, 1, 0, tile10);
+        cache.add(im0, 0, 1, tile01);
+        cache.add(im0, 3, 2, tile32);
+        assertEquals("", swapSpaceMock.trace);
+
+        // Expected: tile 0-0-0 is being written, tile 0-1-0 is waiting
+        swapSpaceMock.storeLatch.await();
+
+        // Expected: tiles reclaimed from the writer without restoring them
+        assertSame(tile10, cache.getTile(im0, 1, 0));
+        assertSame(tile00, cache.getTile(im0, 0, 0));
+        assertEquals("", swapSpaceMock.trace);
+
+        // Expected: tile 0-1-0 has been reclaimed before it was written
+        swapSpaceMock.writeLatch.countDown();
+        cache.awaitPendingWrites();
+        assertEquals("" +
+                "storeTile(0-0-0);" +
+                "storeTile(0-0-1);" +
+                "storeTile(0-3-2);",
+                     swapSpaceMock.trace);
+        assertFalse(swapSpaceMock.containsTile(im0, 1, 0));
+
+        swapSpaceMock.trace = "";
+        assertSame(tile01, cache.getTile(im0, 0, 1));
+        cache.remove(im0, 0, 1);
+        assertEquals("" +
+                "restoreTile(0-0-1)=MemoryTile;" +
+                "deleteTile(0-0-1)=true;",
+                     swapSpaceMock.trace);
     }
 
+    public void testWriteBehindBackPressure() throws InterruptedException {
+        long tileSize = 256 * 256 * 4;
 
-    private static class SwapSpaceMock implements SwapSpace {
-        HashMap<RenderedImage, Integer> ids = new HashMap<RenderedImage, Integer>();
-        HashMap<String, MemoryTile> tiles = new HashMap<String, MemoryTile>();
-        String trace = "";
+        final TiledImage im0 = createImage(DataBuffer.TYPE_FLOAT, 256, 4, 4);
+        final BlockingSwapSpaceMock swapSpaceMock = new BlockingSwapSpaceMock();
+        final SwappingTileCache cache = new SwappingTileCache(3 * tileSize + 1, swapSpaceMock, 1);
+
+        final Raster tile01 = im0.getTile(0, 1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.add(im0, 0, 0, im0.getTile(0, 0));
+                cache.add(im0, 1, 0, im0.getTile(1, 0));
+                cache.add(im0, 0, 1, tile01);
+                cache.add(im0, 3, 2, im0.getTile(3, 2));
+            }
+        });
+        thread.start();
 
-        public boolean containsTile(RenderedImage owner, int tileX, int tileY) {
-            String key = getKey(owner, tileX, tileY);
-            return tiles.containsKey(key);
-        }
+        // Expected: the adding thread waits, because 2 tiles are waiting to be written
+        thread.join(200);
+        assertTrue(thread.isAlive());
+        // Expected: the cache is not locked meanwhile
+        assertSame(tile01, cache.getTile(im0, 0, 1));
 
-        public boolean storeTile(MemoryTile memoryTile) {
-            String key = getKey(memoryTile.getOwner(), memoryTile.getTileX(), memoryTile.getTileY());
-            tiles.put(key, memoryTile);
-            trace += "storeTile(" + key + ");";
-            return true;
-        }
+        swapSpaceMock.writeLatch.countDown();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
 
-        public MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
-            String key = getKey(owner, tileX, tileY);
-            final MemoryTile memoryTile = tiles.get(key);
-            trace += "restoreTile(" + key + ")=" + (memoryTile != null ? "MemoryTile" : "null") + ";";
-            return memoryTile;
-        }
+        cache.awaitPendingWrites();
+        assertEquals("" +
+                "storeTile(0-0-0);" +
+                "storeTile(0-1-0);",
+                     swapSpaceMock.trace);
+    }
 
-        public boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
-            String key = getKey(owner, tileX, tileY);
-            final boolean b = tiles.remove(key) != null;
-            trace += "deleteTile(" + key + ")=" + b + ";";
-            return b;
-        }
+    public void testRemoveDuringRestore() throws InterruptedException {
+        long tileSize = 256 * 256 * 4;
+
+        final TiledImage im0 = createImage(DataBuffer.TYPE_FLOAT, 256, 4, 4);
+        final RestoreBlockingSwapSpaceMock swapSpaceMock = new RestoreBlockingSwapSpaceMock();
+        final SwappingTileCache cache = new SwappingTileCache(3 * tileSize + 1, swapSpaceMock);
+        cache.add(im0, 0, 0, im0.getTile(0, 0));
+        cache.add(im0, 1, 0, im0.getTile(1, 0));
+        cache.add(im0, 0, 1, im0.getTile(0, 1));
+        cache.add(im0, 3, 2, im0.getTile(3, 2));
+        assertTrue(swapSpaceMock.containsTile(im0, 0, 0));
+        assertEquals(2, cache.getCacheTileCount());
 
-        private int getId(RenderedImage owner) {
-            Integer integer = ids.get(owner);
-            if (integer != null) {
-                return integer;
+        final Raster[] restoredTile = new Raster[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                restoredTile[0] = cache.getTile(im0, 0, 0);
             }
-            integer = ids.size();
-            ids.put(owner, integer);
-            return integer;
-        }
+        });
+        thread.start();
+        swapSpaceMock.restoreLatch.await();
 
-        private String getKey(RenderedImage owner, int tileX, int tileY) {
-            return getId(owner) + "-" + tileX + "-" + tileY;
+        // Expected: the tile read before its removal is not added to the cache
+        cache.remove(im0, 0, 0);
+        swapSpaceMock.releaseLatch.countDown();
+        thread.join();
+        assertNull(restoredTile[0]);
+        assertEquals(2, cache.getCacheTileCount());
+        assertNull(cache.getTile(im0, 0, 0));
+    }
+
+    public void testRemoveDuringWriteBehind() throws InterruptedException {
+        long tileSize = 256 * 256 * 4;
+
+        final TiledImage im0 = createImage(DataBuffer.TYPE_FLOAT, 256, 4, 4);
+        final BlockingSwapSpaceMock swapSpaceMock = new BlockingSwapSpaceMock();
+        final SwappingTileCache cache = new SwappingTileCache(3 * tileSize + 1, swapSpaceMock, 4);
+        cache.add(im0, 0, 0, im0.getTile(0, 0));
+        cache.add(im0, 1, 0, im0.getTile(1, 0));
+        cache.add(im0, 0, 1, im0.getTile(0, 1));
+        cache.add(im0, 3, 2, im0.getTile(3, 2));
+
+        // Expected: tile 0-0-0 is being written, tile 0-1-0 is waiting
+        swapSpaceMock.storeLatch.await();
+        cache.remove(im0, 1, 0);
+        assertNull(cache.getTile(im0, 1, 0));
+
+        // Expected: the removal waits until tile 0-0-0 has been written, it cannot be reclaimed meanwhile
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                cache.remove(im0, 0, 0);
+            }
+        });
+        thread.start();
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
         }
+        assertNull(cache.getTile(im0, 0, 0));
+
+        swapSpaceMock.writeLatch.countDown();
+        thread.join();
+        cache.awaitPendingWrites();
+        assertFalse(swapSpaceMock.containsTile(im0, 0, 0));
+        assertFalse(swapSpaceMock.containsTile(im0, 1, 0));
+        assertNull(cache.getTile(im0, 0, 0));
+        assertEquals(2, cache.getCacheTileCount());
+    }
+
+    private void testEqualTile(Raster tile00, Raster tile00r) {
+        assertNotNull(tile00);
+        assertNotNull(tile00r);
+        assertEquals(tile00.getWidth(), tile00r.getWidth());
+        assertEquals(tile00.getHeight(), tile00r.getHeight());
+        assertEquals(tile00.getSampleModel(), tile00r.getSampleModel());
     }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2010 Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+
+package com.bc.ceres.jai.tilecache;
+
+import javax.media.jai.ComponentSampleModelJAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.TiledImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static junit.framework.Assert.*;
+
+/**
+ * Images, tiles and swap space mocks shared by the tile cache tests.
+ */
+class TileCacheFixture {
+
+    /**
+     * Creates a single-banded image of square tiles.
+     */
+    static TiledImage createImage(int dataType, int tileSize, int numXTiles, int numYTiles) {
+        ComponentSampleModelJAI sm = new ComponentSampleModelJAI(dataType, tileSize, tileSize, 1, tileSize, new int[1]);
+        return new TiledImage(0, 0, numXTiles * tileSize, numYTiles * tileSize, 0, 0, sm, PlanarImage.createColorModel(sm));
+    }
+
+    /**
+     * @return The number of bytes of a tile of the given image.
+     */
+    static int getTileBytes(RenderedImage image) {
+        return image.getTileWidth() * image.getTileHeight() * DataBuffer.getDataTypeSize(image.getSampleModel().getDataType()) / 8;
+    }
+
+    /**
+     * Creates a tile whose first and last samples identify it, see {@link #assertRestoredTile}.
+     */
+    static MemoryTile createTile(TiledImage image, int tileX, int tileY) {
+        WritableRaster tile = (WritableRaster) image.getTile(tileX, tileY);
+        tile.setSample(tile.getMinX(), tile.getMinY(), 0, 10 * tileX + tileY + 1);
+        tile.setSample(tile.getMinX() + tile.getWidth() - 1, tile.getMinY() + tile.getHeight() - 1, 0, 99);
+        return new MemoryTile(image, tileX, tileY, tile, null);
+    }
+
+    /**
+     * Asserts that the given tile equals the one created by {@link #createTile}.
+     */
+    static void assertRestoredTile(MemoryTile mt, int tileX, int tileY) {
+        assertNotNull(mt);
+        Raster tile = mt.getTile();
+        RenderedImage owner = mt.getOwner();
+        assertTrue(tile instanceof WritableRaster);
+        assertEquals(owner.getTileWidth() * tileX, tile.getMinX());
+        assertEquals(owner.getTileHeight() * tileY, tile.getMinY());
+        assertEquals(10 * tileX + tileY + 1, tile.getSample(tile.getMinX(), tile.getMinY(), 0));
+        assertEquals(0, tile.getSample(tile.getMinX() + 1, tile.getMinY(), 0));
+        assertEquals(99, tile.getSample(tile.getMinX() + tile.getWidth() - 1, tile.getMinY() + tile.getHeight() - 1, 0));
+        assertEquals(getTileBytes(owner), mt.getTileSize());
+    }
+
+    /**
+     * A swap space which keeps the tiles in memory and traces all calls. Tiles are identified by
+     * "owner-tileX-tileY", where owner is the number of the owner in the order of first access.
+     */
+    static class SwapSpaceMock implements SwapSpace {
+        final Map<RenderedImage, Integer> ids = new HashMap<RenderedImage, Integer>();
+        final Map<String, MemoryTile> tiles = new HashMap<String, MemoryTile>();
+        String trace = "";
+        boolean tracing = true;
+
+        public synchronized boolean containsTile(RenderedImage owner, int tileX, int tileY) {
+            return tiles.containsKey(getKey(owner, tileX, tileY));
+        }
+
+        public synchronized boolean storeTile(MemoryTile memoryTile) {
+            String key = getKey(memoryTile.getOwner(), memoryTile.getTileX(), memoryTile.getTileY());
+            tiles.put(key, memoryTile);
+            if (tracing) {
+                trace += "storeTile(" + key + ");";
+            }
+            return true;
+        }
+
+        public synchronized MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+            String key = getKey(owner, tileX, tileY);
+            MemoryTile memoryTile = tiles.get(key);
+            if (tracing) {
+                trace += "restoreTile(" + key + ")=" + (memoryTile != null ? "MemoryTile" : "null") + ";";
+            }
+            return memoryTile;
+        }
+
+        public synchronized boolean deleteTile(RenderedImage owner, int tileX, int tileY) {
+            String key = getKey(owner, tileX, tileY);
+            boolean b = tiles.remove(key) != null;
+            if (tracing) {
+                trace += "deleteTile(" + key + ")=" + b + ";";
+            }
+            return b;
+        }
+
+        private String getKey(RenderedImage owner, int tileX, int tileY) {
+            Integer id = ids.get(owner);
+            if (id == null) {
+                id = ids.size();
+                ids.put(owner, id);
+            }
+            return id + "-" + tileX + "-" + tileY;
+        }
+    }
+
+    /**
+     * A swap space mock whose first store blocks until the write latch is released.
+     */
+    static class BlockingSwapSpaceMock extends SwapSpaceMock {
+        final CountDownLatch storeLatch = new CountDownLatch(1);
+        final CountDownLatch writeLatch = new CountDownLatch(1);
+
+        @Override
+        public boolean storeTile(MemoryTile memoryTile) {
+            storeLatch.countDown();
+            try {
+                writeLatch.await();
+            } catch (InterruptedException e) {
+                return false;
+            }
+            return super.storeTile(memoryTile);
+        }
+    }
+
+    /**
+     * A swap space mock whose restores block until the release latch is released.
+     */
+    static class RestoreBlockingSwapSpaceMock extends SwapSpaceMock {
+        final CountDownLatch restoreLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+
+        @Override
+        public MemoryTile restoreTile(RenderedImage owner, int tileX, int tileY) {
+            MemoryTile memoryTile = super.restoreTile(owner, tileX, tileY);
+            restoreLatch.countDown();
+            try {
+                releaseLatch.await();
+            } catch (InterruptedException e) {
+                return null;
+            }
+            return memoryTile;
+        }
+    }
+}